@@ -0,0 +1,92 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * AsyncStatementExecutor runs the blocking statement executions of the asynchronous execution methods on an Executor
+ * supplied by the caller and completes the returned futures. It is a blocking wrapper: the network I/O is not
+ * non-blocking, and each execution in flight holds a thread of the executor until it completes. The driver starts no
+ * threads of its own, so the caller's executor bounds how many executions run at once. Canceling a returned future
+ * cancels the statement on the server.
+ */
+final class AsyncStatementExecutor {
+    private static final Logger logger = Logger
+            .getLogger("com.microsoft.sqlserver.jdbc.internals.AsyncStatementExecutor");
+
+    /**
+     * An execution that produces a result or throws a SQLException.
+     */
+    @FunctionalInterface
+    interface Execution<T> {
+        T execute() throws SQLException;
+    }
+
+    private AsyncStatementExecutor() {
+        /* hide the constructor to stop the instantiation of this class. */}
+
+    /**
+     * Schedules an execution of the statement and returns a future that is completed with its result.
+     *
+     * @param stmt
+     *        the statement being executed
+     * @param execution
+     *        the blocking execution
+     * @param executor
+     *        the executor to run the execution on
+     * @return a future completed with the result of the execution, or exceptionally with the SQLException it threw
+     * @throws SQLServerException
+     *         if the executor is null
+     */
+    static <T> CompletableFuture<T> submit(SQLServerStatement stmt, Execution<T> execution,
+            Executor executor) throws SQLServerException {
+        if (null == executor) {
+            MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_NullValue"));
+            Object[] msgArgs = {"executor"};
+            throw new SQLServerException(form.format(msgArgs), null);
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        // Canceling the future cancels the statement if it is still running.
+        future.whenComplete((result, exception) -> {
+            if (future.isCancelled()) {
+                try {
+                    stmt.cancel();
+                } catch (SQLException e) {
+                    if (logger.isLoggable(Level.FINE))
+                        logger.fine(stmt.toString() + " Ignored error canceling asynchronous execution: "
+                                + e.getMessage());
+                }
+            }
+        });
+
+        try {
+            executor.execute(() -> {
+                if (future.isDone())
+                    return;
+
+                try {
+                    future.complete(execution.execute());
+                } catch (SQLException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // e.g. RejectedExecutionException from a caller-supplied executor
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+}
@@ -5,6 +5,7 @@
 
 package com.microsoft.sqlserver.jdbc;
 
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.Calendar;
 
@@ -193,6 +194,28 @@ final class Column {
         return (null != filter) ? filter.apply(value, jdbcType) : value;
     }
 
+    /**
+     * Returns the value as a read-only ByteBuffer. Unencrypted, non-PLP binary values are returned as a view of the
+     * response when they lie within one packet; everything else is converted to a byte array first.
+     */
+    ByteBuffer getByteBuffer(TDSReader tdsReader) throws SQLServerException {
+        if (null == cryptoMetadata && null == filter) {
+            switch (typeInfo.getSSType()) {
+                case BINARY:
+                case VARBINARY:
+                case IMAGE:
+                case TIMESTAMP:
+                    return getterDTV.getByteBuffer(typeInfo, tdsReader);
+
+                default:
+                    break;
+            }
+        }
+
+        byte[] value = (byte[]) getValue(JDBCType.BINARY, null, null, tdsReader);
+        return (null == value) ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
     int getInt(TDSReader tdsReader) throws SQLServerException {
         return (Integer) getValue(JDBCType.INTEGER, null, null, tdsReader);
     }
@@ -21,6 +21,9 @@ final class FailoverInfo {
     private String failoverInstance;
     private boolean setUpInfocalled;
 
+    // Set when the port of the failover partner's named instance was taken from the SQL Browser cache.
+    private boolean portFromCache;
+
     // This member is exposed outside for reading, we need to know in advance if the
     // failover partner is the currently active server before making a DNS resolution and a connect attempt.
     private boolean useFailoverPartner;
@@ -65,7 +68,13 @@ final class FailoverInfo {
                 failoverPartner = failoverPartner.substring(0, px);
                 con.ValidateMaxSQLLoginName(SQLServerDriverStringProperty.INSTANCE_NAME.toString(), instanceValue);
                 failoverInstance = instanceValue;
-                instancePort = con.getInstancePort(failoverPartner, instanceValue);
+            }
+
+            // The instance name has already been split off if its cached port was discarded.
+            if (null != failoverInstance) {
+                InstancePortCache.InstancePort browserPort = con.getInstancePort(failoverPartner, failoverInstance);
+                instancePort = browserPort.port;
+                portFromCache = browserPort.fromCache;
 
                 try {
                     portNumber = Integer.parseInt(instancePort);
@@ -81,6 +90,25 @@ final class FailoverInfo {
         setUpInfocalled = true;
     }
 
+    /**
+     * Discards the failover partner's port if it was taken from the SQL Browser cache, so that the next
+     * failoverPermissionCheck asks SQL Browser again in case the instance has moved.
+     *
+     * @return true if the port was discarded
+     */
+    synchronized boolean discardCachedInstancePort(SQLServerConnection con) {
+        if (!portFromCache)
+            return false;
+
+        if (con.getConnectionLogger().isLoggable(Level.FINE))
+            con.getConnectionLogger().fine(
+                    con.toString() + " Discarding cached SQL Browser port for failover instance: " + failoverInstance);
+        InstancePortCache.remove(failoverPartner, failoverInstance);
+        portFromCache = false;
+        setUpInfocalled = false;
+        return true;
+    }
+
     synchronized ServerPortPlaceHolder failoverPermissionCheck(SQLServerConnection con,
             boolean link) throws SQLServerException {
         setupInfo(con);
@@ -102,6 +130,8 @@ final class FailoverInfo {
         // we wont store that information.
         if (!actualUseFailoverPartner && !failoverPartner.equals(actualFailoverPartner)) {
             failoverPartner = actualFailoverPartner;
+            failoverInstance = null;
+            portFromCache = false;
             // new FO partner need to setup again.
             setUpInfocalled = false;
         }
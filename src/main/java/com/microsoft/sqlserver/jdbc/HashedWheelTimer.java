@@ -0,0 +1,294 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * HashedWheelTimer is the driver-wide scheduler for command and connection timeouts.
+ *
+ * Deadlines are hashed into the buckets of a fixed-size wheel that a single daemon thread advances once per tick.
+ * Registering and canceling a deadline are both O(1) operations under the timer lock, so the common case of a command
+ * finishing before its timeout costs no thread hand-off at all. Expired tasks are handed to a separate executor so
+ * that a task blocking on I/O (for example sending an attention signal) does not delay the rest of the wheel. The
+ * worker thread waits without ticking while there are no pending deadlines.
+ */
+final class HashedWheelTimer {
+    private static final Logger logger = Logger.getLogger("com.microsoft.sqlserver.jdbc.internals.HashedWheelTimer");
+
+    private static final String threadGroupName = "mssql-jdbc-TimeoutTimer";
+
+    // Tick duration in milliseconds and number of buckets in the wheel. Deadlines further out than one revolution
+    // (wheelSize * tickMillis) simply stay in their bucket for additional rounds.
+    private static final long DEFAULT_TICK_MILLIS = 1;
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    private static final HashedWheelTimer instance = new HashedWheelTimer(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+
+    /**
+     * @return the driver-wide timer
+     */
+    static HashedWheelTimer getTimer() {
+        return instance;
+    }
+
+    private static final ThreadFactory threadFactory = new ThreadFactory() {
+        private final AtomicReference<ThreadGroup> tgr = new AtomicReference<>();
+        private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            ThreadGroup tg = tgr.get();
+
+            if (tg == null || tg.isDestroyed()) {
+                tg = new ThreadGroup(threadGroupName);
+                tgr.set(tg);
+            }
+
+            Thread t = new Thread(tg, r, tg.getName() + "-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    // Runs expired tasks; threads are only needed when a timeout actually fires.
+    private static final ExecutorService expiredTaskExecutor = Executors.newCachedThreadPool(threadFactory);
+
+    /**
+     * A handle to a deadline registered with the timer. A timeout is either pending, canceled or expired, and only
+     * moves out of the pending state once.
+     */
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadlineTick;
+        private long remainingRounds;
+        private int state = PENDING;
+
+        // Links within the bucket; guarded by the timer lock.
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadlineTick) {
+            this.timer = timer;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Cancels the timeout if it has not expired yet.
+         *
+         * @return true if the timeout was canceled, false if it had already expired or been canceled
+         */
+        boolean cancel() {
+            return timer.cancel(this);
+        }
+
+        /**
+         * @return true if the timeout has expired and its task was dispatched
+         */
+        boolean isExpired() {
+            synchronized (timer) {
+                return EXPIRED == state;
+            }
+        }
+    }
+
+    /**
+     * A doubly-linked list of timeouts hashed to the same slot of the wheel.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (null == head) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (null != timeout.prev)
+                timeout.prev.next = next;
+            if (null != next)
+                next.prev = timeout.prev;
+            if (timeout == head)
+                head = next;
+            if (timeout == tail)
+                tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+
+    // All fields below are guarded by the timer lock.
+    private long currentTick = 0;
+    private int pendingTimeouts = 0;
+    private Thread workerThread = null;
+
+    HashedWheelTimer(long tickMillis, int wheelSize) {
+        assert tickMillis > 0;
+        assert wheelSize > 0 && 0 == (wheelSize & (wheelSize - 1)) : "wheelSize must be a power of two";
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++)
+            wheel[i] = new Bucket();
+        this.mask = wheelSize - 1;
+    }
+
+    /**
+     * Schedules a task to run once the delay has elapsed.
+     *
+     * @param task
+     *        the task to run on expiry
+     * @param delayMillis
+     *        the delay in milliseconds
+     * @return a handle that can be used to cancel the timeout
+     */
+    Timeout newTimeout(Runnable task, long delayMillis) {
+        assert null != task;
+
+        long elapsedNanos = System.nanoTime() - startTime;
+        // Round up so that a timeout never fires early.
+        long deadlineNanos = elapsedNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+        long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+
+        synchronized (this) {
+            // An idle worker does not advance the wheel, so catch it up before computing the rounds to wait.
+            if (0 == pendingTimeouts)
+                currentTick = Math.max(currentTick, elapsedNanos / tickNanos);
+
+            // A deadline that falls in a tick the worker has already processed goes into the next tick.
+            long tick = Math.max(deadlineTick, currentTick + 1);
+            Timeout timeout = new Timeout(this, task, tick);
+            timeout.remainingRounds = (tick - currentTick - 1) / wheel.length;
+            wheel[(int) (tick & mask)].add(timeout);
+
+            if (0 == pendingTimeouts++)
+                startOrWakeWorker();
+
+            return timeout;
+        }
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (Timeout.PENDING != timeout.state)
+            return false;
+
+        timeout.state = Timeout.CANCELED;
+        timeout.bucket.remove(timeout);
+        --pendingTimeouts;
+        return true;
+    }
+
+    /**
+     * @return the number of registered timeouts that have neither expired nor been canceled
+     */
+    synchronized int getPendingTimeouts() {
+        return pendingTimeouts;
+    }
+
+    private void startOrWakeWorker() {
+        assert Thread.holdsLock(this);
+
+        if (null == workerThread) {
+            workerThread = threadFactory.newThread(this::runWorker);
+            workerThread.start();
+        } else {
+            notifyAll();
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            long tickToProcess;
+            synchronized (this) {
+                // Nothing to time: wait rather than tick. Buckets are empty while waiting, and newTimeout() catches
+                // the wheel up to the current time before registering the first deadline.
+                while (0 == pendingTimeouts) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // The worker is a daemon thread that lives as long as the driver; keep going.
+                        if (logger.isLoggable(Level.FINER))
+                            logger.finer("Ignoring interrupt of timer thread");
+                    }
+                }
+                tickToProcess = currentTick + 1;
+            }
+
+            // Sleep until the next tick is due.
+            long sleepNanos = startTime + tickToProcess * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+
+            // Process every tick that is now due, in case the thread overslept.
+            long nowTick = (System.nanoTime() - startTime) / tickNanos;
+            synchronized (this) {
+                while (currentTick < nowTick)
+                    expireTimeouts(wheel[(int) (++currentTick & mask)]);
+            }
+        }
+    }
+
+    private void expireTimeouts(Bucket bucket) {
+        assert Thread.holdsLock(this);
+
+        Timeout timeout = bucket.head;
+        while (null != timeout) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0 && timeout.deadlineTick <= currentTick) {
+                bucket.remove(timeout);
+                timeout.state = Timeout.EXPIRED;
+                --pendingTimeouts;
+                dispatch(timeout.task);
+            } else {
+                --timeout.remainingRounds;
+            }
+            timeout = next;
+        }
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            expiredTaskExecutor.execute(task);
+        } catch (RuntimeException e) {
+            if (logger.isLoggable(Level.WARNING))
+                logger.log(Level.WARNING, "Failed to run expired timeout task", e);
+        }
+    }
+}
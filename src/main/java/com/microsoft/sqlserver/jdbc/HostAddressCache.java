@@ -0,0 +1,165 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+
+
+/**
+ * Caches the addresses that host names resolve to, and keeps the outcome of recent connection attempts to each address
+ * and port so that SocketFinder can try the address that has been quickest to accept connections first.
+ *
+ * Resolved addresses expire after a short time so that DNS changes are picked up. An address that failed to accept a
+ * connection recently is tried after the addresses that did not. Both caches are bounded and evict the least recently
+ * used entries, so that applications connecting to many hosts over time do not grow them without limit.
+ */
+final class HostAddressCache {
+    private static final long RESOLUTION_TIME_TO_LIVE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    // Weight of the latest sample in the moving average of the connect time.
+    private static final double LATENCY_SMOOTHING = 0.25;
+
+    private static final int RESOLUTION_CACHE_SIZE = 256;
+    private static final int STATS_CACHE_SIZE = 1024;
+
+    private static final ConcurrentLinkedHashMap<String, Resolution> resolutions =
+            new Builder<String, Resolution>().maximumWeightedCapacity(RESOLUTION_CACHE_SIZE).build();
+    private static final ConcurrentLinkedHashMap<InetSocketAddress, Stats> stats =
+            new Builder<InetSocketAddress, Stats>().maximumWeightedCapacity(STATS_CACHE_SIZE).build();
+
+    private static final class Resolution {
+        final InetAddress[] addresses;
+        final long expiry;
+
+        Resolution(InetAddress[] addresses, long expiry) {
+            this.addresses = addresses;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final class Stats {
+        // Moving average of the connect time in nanoseconds, or -1 if no connection has succeeded yet.
+        double averageConnectNanos = -1;
+        long lastFailure;
+        boolean failed = false;
+
+        synchronized void onSuccess(long connectNanos) {
+            averageConnectNanos = (averageConnectNanos < 0) ? connectNanos
+                                                            : LATENCY_SMOOTHING * connectNanos
+                                                                    + (1 - LATENCY_SMOOTHING) * averageConnectNanos;
+            failed = false;
+        }
+
+        synchronized void onFailure() {
+            lastFailure = System.nanoTime();
+            failed = true;
+        }
+
+        synchronized boolean failedRecently(long now) {
+            return failed && now - lastFailure < FAILURE_PENALTY_NANOS;
+        }
+
+        synchronized double getAverageConnectNanos() {
+            return averageConnectNanos;
+        }
+    }
+
+    private HostAddressCache() {
+        /* hide the constructor to stop the instantiation of this class. */}
+
+    /**
+     * Returns the addresses of a host, resolving the host name if it has not been resolved recently.
+     *
+     * @throws UnknownHostException
+     *         if the host name cannot be resolved
+     */
+    static InetAddress[] getAllByName(String hostName) throws UnknownHostException {
+        String key = hostName.toLowerCase(Locale.ENGLISH);
+        long now = System.nanoTime();
+        Resolution resolution = resolutions.get(key);
+        if (null == resolution || now - resolution.expiry >= 0) {
+            resolution = new Resolution(InetAddress.getAllByName(hostName), now + RESOLUTION_TIME_TO_LIVE_NANOS);
+            resolutions.put(key, resolution);
+        }
+        return resolution.addresses.clone();
+    }
+
+    /**
+     * Orders addresses for connection attempts: addresses without a recent failure first, fastest connect time first,
+     * addresses without history after those with history. Addresses that compare equal keep their DNS order.
+     */
+    static InetAddress[] order(InetAddress[] addresses, int portNumber) {
+        return order(addresses, portNumber, System.nanoTime());
+    }
+
+    static InetAddress[] order(InetAddress[] addresses, int portNumber, final long now) {
+        if (addresses.length < 2)
+            return addresses;
+
+        final int count = addresses.length;
+        final boolean[] failed = new boolean[count];
+        final double[] latency = new double[count];
+        Integer[] indexes = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+            Stats s = stats.get(new InetSocketAddress(addresses[i], portNumber));
+            failed[i] = null != s && s.failedRecently(now);
+            double average = (null == s) ? -1 : s.getAverageConnectNanos();
+            latency[i] = (average < 0) ? Double.MAX_VALUE : average;
+        }
+
+        Arrays.sort(indexes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (failed[a] != failed[b])
+                    return failed[a] ? 1 : -1;
+                return Double.compare(latency[a], latency[b]);
+            }
+        });
+
+        InetAddress[] ordered = new InetAddress[count];
+        for (int i = 0; i < count; i++)
+            ordered[i] = addresses[indexes[i]];
+        return ordered;
+    }
+
+    static void recordSuccess(InetSocketAddress address, long connectNanos) {
+        getStats(address).onSuccess(connectNanos);
+    }
+
+    static void recordFailure(InetSocketAddress address) {
+        getStats(address).onFailure();
+    }
+
+    static int getResolutionCacheSize() {
+        return resolutions.size();
+    }
+
+    static int getStatsCacheSize() {
+        return stats.size();
+    }
+
+    private static Stats getStats(InetSocketAddress address) {
+        Stats s = stats.get(address);
+        if (null == s) {
+            Stats newStats = new Stats();
+            s = stats.putIfAbsent(address, newStats);
+            if (null == s)
+                s = newStats;
+        }
+        return s;
+    }
+}
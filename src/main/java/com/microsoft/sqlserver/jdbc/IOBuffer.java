@@ -7,6 +7,7 @@ package com.microsoft.sqlserver.jdbc;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -26,10 +27,14 @@ import java.net.SocketTimeoutException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.CharBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.security.KeyStore;
 import java.security.Provider;
 import java.security.Security;
@@ -52,15 +57,10 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SimpleTimeZone;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -72,6 +72,9 @@ import javax.net.ssl.X509TrustManager;
 
 import com.microsoft.sqlserver.jdbc.dataclassification.SensitivityClassification;
 
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+
 
 final class TDS {
     // TDS protocol versions
@@ -93,6 +96,7 @@ final class TDS {
     static final int TDS_ROW = 0xD1;
     static final int TDS_NBCROW = 0xD2;
     static final int TDS_ENV_CHG = 0xE3;
+    static final int TDS_SESSION_STATE = 0xE4;
     static final int TDS_SSPI = 0xED;
     static final int TDS_DONE = 0xFD;
     static final int TDS_DONEPROC = 0xFE;
@@ -101,6 +105,9 @@ final class TDS {
     static final int TDS_SQLRESCOLSRCS = 0xa2;
     static final int TDS_SQLDATACLASSIFICATION = 0xa3;
 
+    // Session recovery
+    static final byte TDS_FEATURE_EXT_SESSIONRECOVERY = 0x01;
+
     // FedAuth
     static final byte TDS_FEATURE_EXT_FEDAUTH = 0x02;
     static final int TDS_FEDAUTH_LIBRARY_SECURITYTOKEN = 0x01;
@@ -178,6 +185,8 @@ final class TDS {
                 return "TDS_NBCROW (0xD2)";
             case TDS_ENV_CHG:
                 return "TDS_ENV_CHG (0xE3)";
+            case TDS_SESSION_STATE:
+                return "TDS_SESSION_STATE (0xE4)";
             case TDS_SSPI:
                 return "TDS_SSPI (0xED)";
             case TDS_DONE:
@@ -599,6 +608,9 @@ final class TDSChannel {
     private InputStream inputStream;
     private OutputStream outputStream;
 
+    // Non-null when the raw TCP streams are provided by a socket channel (useSocketChannel=true).
+    private SocketChannelStreams socketChannelStreams;
+
     /** TDS packet payload logger */
     private static Logger packetLogger = Logger.getLogger("com.microsoft.sqlserver.jdbc.internals.TDS.DATA");
     private final boolean isLoggingPackets = packetLogger.isLoggable(Level.FINEST);
@@ -627,6 +639,13 @@ final class TDSChannel {
         tdsWriter.resetPooledConnection();
     }
 
+    // Response packets recycled by the readers of this channel
+    private final TDSPacketPool packetPool = new TDSPacketPool();
+
+    final TDSPacketPool getPacketPool() {
+        return packetPool;
+    }
+
     TDSChannel(SQLServerConnection con) {
         this.con = con;
         traceID = "TDSChannel (" + con.toString() + ")";
@@ -662,8 +681,18 @@ final class TDSChannel {
             int socketTimeout = con.getSocketTimeoutMilliseconds();
             tcpSocket.setSoTimeout(socketTimeout);
 
-            inputStream = tcpInputStream = tcpSocket.getInputStream();
-            outputStream = tcpOutputStream = tcpSocket.getOutputStream();
+            SocketChannel socketChannel = tcpSocket.getChannel();
+            if (con.getUseSocketChannel() && null != socketChannel) {
+                socketChannelStreams = new SocketChannelStreams(socketChannel, traceID);
+                inputStream = tcpInputStream = socketChannelStreams.getInputStream();
+                outputStream = tcpOutputStream = socketChannelStreams.getOutputStream();
+            } else {
+                if (con.getUseSocketChannel() && logger.isLoggable(Level.FINER))
+                    logger.finer(this.toString() + ": Socket has no channel; using socket streams");
+
+                inputStream = tcpInputStream = tcpSocket.getInputStream();
+                outputStream = tcpOutputStream = tcpSocket.getOutputStream();
+            }
         } catch (IOException ex) {
             SQLServerException.ConvertConnectExceptionToSQLServerException(host, port, con, ex);
         }
@@ -1325,16 +1354,8 @@ final class TDSChannel {
      * A PermissiveX509TrustManager is used to "verify" the authenticity of the server when the trustServerCertificate
      * connection property is set to true.
      */
-    private final class PermissiveX509TrustManager implements X509TrustManager {
-        private final TDSChannel tdsChannel;
-        private final Logger logger;
-        private final String logContext;
-
-        PermissiveX509TrustManager(TDSChannel tdsChannel) {
-            this.tdsChannel = tdsChannel;
-            this.logger = tdsChannel.getLogger();
-            this.logContext = tdsChannel.toString() + " (PermissiveX509TrustManager):";
-        }
+    private static final class PermissiveX509TrustManager implements X509TrustManager {
+        private final String logContext = "PermissiveX509TrustManager:";
 
         public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
             if (logger.isLoggable(Level.FINER))
@@ -1355,16 +1376,15 @@ final class TDSChannel {
      * This class implements an X509TrustManager that hostname for validation.
      *
      * This validates the subject name in the certificate with the host name
+     *
+     * Trust managers are shared by the connections that use the same SSL context, so they do not refer to a channel.
      */
-    private final class HostNameOverrideX509TrustManager implements X509TrustManager {
-        private final Logger logger;
-        private final String logContext;
+    private static final class HostNameOverrideX509TrustManager implements X509TrustManager {
+        private final String logContext = "HostNameOverrideX509TrustManager:";
         private final X509TrustManager defaultTrustManager;
         private String hostName;
 
-        HostNameOverrideX509TrustManager(TDSChannel tdsChannel, X509TrustManager tm, String hostName) {
-            this.logger = tdsChannel.getLogger();
-            this.logContext = tdsChannel.toString() + " (HostNameOverrideX509TrustManager):";
+        HostNameOverrideX509TrustManager(X509TrustManager tm, String hostName) {
             defaultTrustManager = tm;
             // canonical name is in lower case so convert this to lowercase too.
             this.hostName = hostName.toLowerCase(Locale.ENGLISH);;
@@ -1544,6 +1564,104 @@ final class TDSChannel {
         SSL_HANDHSAKE_COMPLETE
     };
 
+    // Number of trust configurations whose SSL contexts are kept.
+    private static final int SSL_CONTEXT_CACHE_SIZE = 100;
+
+    /**
+     * An SSL context, the time the trust store it was created with was last modified, and the providers used to create
+     * it, which are logged when a handshake with the context fails
+     */
+    static final class CachedSSLContext {
+        final SSLContext sslContext;
+        final long trustStoreLastModified;
+        final Provider sslContextProvider;
+        final Provider tmfProvider;
+        final String tmfDefaultAlgorithm;
+        final Provider ksProvider;
+
+        CachedSSLContext(SSLContext sslContext, long trustStoreLastModified, Provider sslContextProvider,
+                Provider tmfProvider, String tmfDefaultAlgorithm, Provider ksProvider) {
+            this.sslContext = sslContext;
+            this.trustStoreLastModified = trustStoreLastModified;
+            this.sslContextProvider = sslContextProvider;
+            this.tmfProvider = tmfProvider;
+            this.tmfDefaultAlgorithm = tmfDefaultAlgorithm;
+            this.ksProvider = ksProvider;
+        }
+    }
+
+    // SSL contexts by trust configuration, see getSSLContextKey.
+    private static final ConcurrentLinkedHashMap<String, CachedSSLContext> sslContexts =
+            new Builder<String, CachedSSLContext>().maximumWeightedCapacity(SSL_CONTEXT_CACHE_SIZE).build();
+
+    /**
+     * Returns the SSL context cached with the given key, or null if there is none or the trust store has been modified
+     * since the context was created. A context for a modified trust store is removed from the cache.
+     */
+    static CachedSSLContext getCachedSSLContext(String sslContextKey, long trustStoreLastModified) {
+        CachedSSLContext cachedSSLContext = sslContexts.get(sslContextKey);
+        if (null != cachedSSLContext && cachedSSLContext.trustStoreLastModified != trustStoreLastModified) {
+            sslContexts.remove(sslContextKey, cachedSSLContext);
+            return null;
+        }
+        return cachedSSLContext;
+    }
+
+    static void putCachedSSLContext(String sslContextKey, CachedSSLContext cachedSSLContext) {
+        sslContexts.put(sslContextKey, cachedSSLContext);
+    }
+
+    static int getSSLContextCacheSize() {
+        return sslContexts.size();
+    }
+
+    /**
+     * Returns the time the trust store of the connection was last modified, or 0 if it is not read from a file.
+     */
+    long getTrustStoreLastModified(String trustStoreFileName) {
+        if (TDS.ENCRYPT_OFF == con.getRequestedEncryptionLevel()
+                || (TDS.ENCRYPT_ON == con.getRequestedEncryptionLevel() && con.trustServerCertificate())
+                || null != con.getTrustManagerClass())
+            return 0;
+
+        String trustStore = (null != trustStoreFileName) ? trustStoreFileName
+                                                         : System.getProperty("javax.net.ssl.trustStore");
+        return (null != trustStore) ? new File(trustStore).lastModified() : 0;
+    }
+
+    /**
+     * Returns the key of the SSL context for the trust configuration of the connection. Connections with the same key
+     * validate the server certificate the same way and can share an SSL context.
+     */
+    String getSSLContextKey(String host, String trustStoreFileName, String trustStorePassword,
+            String trustStoreType, String hostNameInCertificate, boolean isFips,
+            String sslProtocol) throws SQLServerException {
+        StringBuilder key = new StringBuilder(String.valueOf(sslProtocol));
+        key.append('|').append(isFips);
+
+        if (TDS.ENCRYPT_OFF == con.getRequestedEncryptionLevel()
+                || (TDS.ENCRYPT_ON == con.getRequestedEncryptionLevel() && con.trustServerCertificate())) {
+            return key.append("|trustServerCertificate").toString();
+        }
+
+        if (null != con.getTrustManagerClass()) {
+            return key.append("|trustManagerClass|").append(con.getTrustManagerClass()).append('|')
+                    .append(con.getTrustManagerConstructorArg()).toString();
+        }
+
+        String trustStore = (null != trustStoreFileName) ? trustStoreFileName
+                                                         : System.getProperty("javax.net.ssl.trustStore");
+        key.append("|trustStore|").append(trustStoreType).append('|').append(trustStore);
+        key.append('|').append(Util.passwordDigest(trustStorePassword));
+
+        // The server name is validated by the trust manager, except with FIPS.
+        if (!isFips) {
+            String name = (null != hostNameInCertificate) ? hostNameInCertificate : host;
+            key.append('|').append(name.toLowerCase(Locale.ENGLISH));
+        }
+        return key.toString();
+    }
+
     /**
      * Enables SSL Handshake.
      * 
@@ -1601,140 +1719,162 @@ final class TDSChannel {
                     TDS.ENCRYPT_ON == con.getNegotiatedEncryptionLevel() || // Full SSL
                     TDS.ENCRYPT_REQ == con.getNegotiatedEncryptionLevel(); // Full SSL
 
-            // If we requested login only SSL or full SSL without server certificate validation,
-            // then we'll "validate" the server certificate using a naive TrustManager that trusts
-            // everything it sees.
-            TrustManager[] tm = null;
-            if (TDS.ENCRYPT_OFF == con.getRequestedEncryptionLevel()
-                    || (TDS.ENCRYPT_ON == con.getRequestedEncryptionLevel() && con.trustServerCertificate())) {
+            // SSL contexts are shared by the connections with the same trust configuration, so that the trust
+            // material is loaded once and handshakes can resume the sessions cached in the context.
+            String sslContextKey = getSSLContextKey(host, trustStoreFileName, trustStorePassword, trustStoreType,
+                    hostNameInCertificate, isFips, sslProtocol);
+            SSLContext sslContext = null;
+            long trustStoreLastModified = getTrustStoreLastModified(trustStoreFileName);
+            CachedSSLContext cachedSSLContext = getCachedSSLContext(sslContextKey, trustStoreLastModified);
+            if (null != cachedSSLContext) {
+                sslContext = cachedSSLContext.sslContext;
                 if (logger.isLoggable(Level.FINER))
-                    logger.finer(toString() + " SSL handshake will trust any certificate");
+                    logger.finer(toString() + " Reusing SSL context");
 
-                tm = new TrustManager[] {new PermissiveX509TrustManager(this)};
-            }
-            // Otherwise, we'll check if a specific TrustManager implemenation has been requested and
-            // if so instantiate it, optionally specifying a constructor argument to customize it.
-            else if (con.getTrustManagerClass() != null) {
-                Class<?> tmClass = Class.forName(con.getTrustManagerClass());
-                if (!TrustManager.class.isAssignableFrom(tmClass)) {
-                    throw new IllegalArgumentException(
-                            "The class specified by the trustManagerClass property must implement javax.net.ssl.TrustManager");
+                sslContextProvider = cachedSSLContext.sslContextProvider;
+                tmfProvider = cachedSSLContext.tmfProvider;
+                tmfDefaultAlgorithm = cachedSSLContext.tmfDefaultAlgorithm;
+                ksProvider = cachedSSLContext.ksProvider;
+
+                // We are done with the trustStorePassword (if set). Clear it for better security.
+                con.activeConnectionProperties.remove(SQLServerDriverStringProperty.TRUST_STORE_PASSWORD.toString());
+            } else {
+                // If we requested login only SSL or full SSL without server certificate validation,
+                // then we'll "validate" the server certificate using a naive TrustManager that trusts
+                // everything it sees.
+                TrustManager[] tm = null;
+                if (TDS.ENCRYPT_OFF == con.getRequestedEncryptionLevel()
+                        || (TDS.ENCRYPT_ON == con.getRequestedEncryptionLevel() && con.trustServerCertificate())) {
+                    if (logger.isLoggable(Level.FINER))
+                        logger.finer(toString() + " SSL handshake will trust any certificate");
+
+                    tm = new TrustManager[] {new PermissiveX509TrustManager()};
                 }
-                String constructorArg = con.getTrustManagerConstructorArg();
-                if (constructorArg == null) {
-                    tm = new TrustManager[] {(TrustManager) tmClass.getDeclaredConstructor().newInstance()};
-                } else {
-                    tm = new TrustManager[] {
-                            (TrustManager) tmClass.getDeclaredConstructor(String.class).newInstance(constructorArg)};
+                // Otherwise, we'll check if a specific TrustManager implemenation has been requested and
+                // if so instantiate it, optionally specifying a constructor argument to customize it.
+                else if (con.getTrustManagerClass() != null) {
+                    Class<?> tmClass = Class.forName(con.getTrustManagerClass());
+                    if (!TrustManager.class.isAssignableFrom(tmClass)) {
+                        throw new IllegalArgumentException(
+                                "The class specified by the trustManagerClass property must implement javax.net.ssl.TrustManager");
+                    }
+                    String constructorArg = con.getTrustManagerConstructorArg();
+                    if (constructorArg == null) {
+                        tm = new TrustManager[] {(TrustManager) tmClass.getDeclaredConstructor().newInstance()};
+                    } else {
+                        tm = new TrustManager[] {(TrustManager) tmClass.getDeclaredConstructor(String.class)
+                                .newInstance(constructorArg)};
+                    }
                 }
-            }
-            // Otherwise, we'll validate the certificate using a real TrustManager obtained
-            // from the a security provider that is capable of validating X.509 certificates.
-            else {
-                if (logger.isLoggable(Level.FINER))
-                    logger.finer(toString() + " SSL handshake will validate server certificate");
+                // Otherwise, we'll validate the certificate using a real TrustManager obtained
+                // from the a security provider that is capable of validating X.509 certificates.
+                else {
+                    if (logger.isLoggable(Level.FINER))
+                        logger.finer(toString() + " SSL handshake will validate server certificate");
 
-                KeyStore ks = null;
+                    KeyStore ks = null;
 
-                // If we are using the system default trustStore and trustStorePassword
-                // then we can skip all of the KeyStore loading logic below.
-                // The security provider's implementation takes care of everything for us.
-                if (null == trustStoreFileName && null == trustStorePassword) {
-                    if (logger.isLoggable(Level.FINER))
-                        logger.finer(toString() + " Using system default trust store and password");
-                }
+                    // If we are using the system default trustStore and trustStorePassword
+                    // then we can skip all of the KeyStore loading logic below.
+                    // The security provider's implementation takes care of everything for us.
+                    if (null == trustStoreFileName && null == trustStorePassword) {
+                        if (logger.isLoggable(Level.FINER))
+                            logger.finer(toString() + " Using system default trust store and password");
+                    }
 
-                // Otherwise either the trustStore, trustStorePassword, or both was specified.
-                // In that case, we need to load up a KeyStore ourselves.
-                else {
-                    // First, obtain an interface to a KeyStore that can load trust material
-                    // stored in Java Key Store (JKS) format.
-                    if (logger.isLoggable(Level.FINEST))
-                        logger.finest(toString() + " Finding key store interface");
+                    // Otherwise either the trustStore, trustStorePassword, or both was specified.
+                    // In that case, we need to load up a KeyStore ourselves.
+                    else {
+                        // First, obtain an interface to a KeyStore that can load trust material
+                        // stored in Java Key Store (JKS) format.
+                        if (logger.isLoggable(Level.FINEST))
+                            logger.finest(toString() + " Finding key store interface");
 
-                    ks = KeyStore.getInstance(trustStoreType);
-                    ksProvider = ks.getProvider();
+                        ks = KeyStore.getInstance(trustStoreType);
+                        ksProvider = ks.getProvider();
 
-                    // Next, load up the trust store file from the specified location.
-                    // Note: This function returns a null InputStream if the trust store cannot
-                    // be loaded. This is by design. See the method comment and documentation
-                    // for KeyStore.load for details.
-                    InputStream is = loadTrustStore(trustStoreFileName);
+                        // Next, load up the trust store file from the specified location.
+                        // Note: This function returns a null InputStream if the trust store cannot
+                        // be loaded. This is by design. See the method comment and documentation
+                        // for KeyStore.load for details.
+                        InputStream is = loadTrustStore(trustStoreFileName);
 
-                    // Finally, load the KeyStore with the trust material (if any) from the
-                    // InputStream and close the stream.
-                    if (logger.isLoggable(Level.FINEST))
-                        logger.finest(toString() + " Loading key store");
-
-                    try {
-                        ks.load(is, (null == trustStorePassword) ? null : trustStorePassword.toCharArray());
-                    } finally {
-                        // We are done with the trustStorePassword (if set). Clear it for better security.
-                        con.activeConnectionProperties
-                                .remove(SQLServerDriverStringProperty.TRUST_STORE_PASSWORD.toString());
-
-                        // We are also done with the trust store input stream.
-                        if (null != is) {
-                            try {
-                                is.close();
-                            } catch (IOException e) {
-                                if (logger.isLoggable(Level.FINE))
-                                    logger.fine(toString() + " Ignoring error closing trust material InputStream...");
+                        // Finally, load the KeyStore with the trust material (if any) from the
+                        // InputStream and close the stream.
+                        if (logger.isLoggable(Level.FINEST))
+                            logger.finest(toString() + " Loading key store");
+
+                        try {
+                            ks.load(is, (null == trustStorePassword) ? null : trustStorePassword.toCharArray());
+                        } finally {
+                            // We are done with the trustStorePassword (if set). Clear it for better security.
+                            con.activeConnectionProperties
+                                    .remove(SQLServerDriverStringProperty.TRUST_STORE_PASSWORD.toString());
+
+                            // We are also done with the trust store input stream.
+                            if (null != is) {
+                                try {
+                                    is.close();
+                                } catch (IOException e) {
+                                    if (logger.isLoggable(Level.FINE))
+                                        logger.fine(toString()
+                                                + " Ignoring error closing trust material InputStream...");
+                                }
                             }
                         }
                     }
-                }
 
-                // Either we now have a KeyStore populated with trust material or we are using the
-                // default source of trust material (cacerts). Either way, we are now ready to
-                // use a TrustManagerFactory to create a TrustManager that uses the trust material
-                // to validate the server certificate.
+                    // Either we now have a KeyStore populated with trust material or we are using the
+                    // default source of trust material (cacerts). Either way, we are now ready to
+                    // use a TrustManagerFactory to create a TrustManager that uses the trust material
+                    // to validate the server certificate.
 
-                // Next step is to get a TrustManagerFactory that can produce TrustManagers
-                // that understands X.509 certificates.
-                TrustManagerFactory tmf = null;
+                    // Next step is to get a TrustManagerFactory that can produce TrustManagers
+                    // that understands X.509 certificates.
+                    TrustManagerFactory tmf = null;
 
-                if (logger.isLoggable(Level.FINEST))
-                    logger.finest(toString() + " Locating X.509 trust manager factory");
+                    if (logger.isLoggable(Level.FINEST))
+                        logger.finest(toString() + " Locating X.509 trust manager factory");
 
-                tmfDefaultAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
-                tmf = TrustManagerFactory.getInstance(tmfDefaultAlgorithm);
-                tmfProvider = tmf.getProvider();
+                    tmfDefaultAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
+                    tmf = TrustManagerFactory.getInstance(tmfDefaultAlgorithm);
+                    tmfProvider = tmf.getProvider();
 
-                // Tell the TrustManagerFactory to give us TrustManagers that we can use to
-                // validate the server certificate using the trust material in the KeyStore.
-                if (logger.isLoggable(Level.FINEST))
-                    logger.finest(toString() + " Getting trust manager");
+                    // Tell the TrustManagerFactory to give us TrustManagers that we can use to
+                    // validate the server certificate using the trust material in the KeyStore.
+                    if (logger.isLoggable(Level.FINEST))
+                        logger.finest(toString() + " Getting trust manager");
 
-                tmf.init(ks);
-                tm = tmf.getTrustManagers();
+                    tmf.init(ks);
+                    tm = tmf.getTrustManagers();
 
-                // if the host name in cert provided use it or use the host name Only if it is not FIPS
-                if (!isFips) {
-                    if (null != hostNameInCertificate) {
-                        tm = new TrustManager[] {new HostNameOverrideX509TrustManager(this, (X509TrustManager) tm[0],
-                                hostNameInCertificate)};
-                    } else {
-                        tm = new TrustManager[] {
-                                new HostNameOverrideX509TrustManager(this, (X509TrustManager) tm[0], host)};
+                    // if the host name in cert provided use it or use the host name Only if it is not FIPS
+                    if (!isFips) {
+                        if (null != hostNameInCertificate) {
+                            tm = new TrustManager[] {new HostNameOverrideX509TrustManager((X509TrustManager) tm[0],
+                                    hostNameInCertificate)};
+                        } else {
+                            tm = new TrustManager[] {
+                                    new HostNameOverrideX509TrustManager((X509TrustManager) tm[0], host)};
+                        }
                     }
-                }
-            } // end if (!con.trustServerCertificate())
-
-            // Now, with a real or fake TrustManager in hand, get a context for creating a
-            // SSL sockets through a SSL socket factory. We require at least TLS support.
-            SSLContext sslContext = null;
+                } // end if (!con.trustServerCertificate())
 
-            if (logger.isLoggable(Level.FINEST))
-                logger.finest(toString() + " Getting TLS or better SSL context");
+                // Now, with a real or fake TrustManager in hand, get a context for creating a
+                // SSL sockets through a SSL socket factory. We require at least TLS support.
+                if (logger.isLoggable(Level.FINEST))
+                    logger.finest(toString() + " Getting TLS or better SSL context");
 
-            sslContext = SSLContext.getInstance(sslProtocol);
-            sslContextProvider = sslContext.getProvider();
+                sslContext = SSLContext.getInstance(sslProtocol);
+                sslContextProvider = sslContext.getProvider();
 
-            if (logger.isLoggable(Level.FINEST))
-                logger.finest(toString() + " Initializing SSL context");
+                if (logger.isLoggable(Level.FINEST))
+                    logger.finest(toString() + " Initializing SSL context");
 
-            sslContext.init(null, tm, null);
+                sslContext.init(null, tm, null);
+                putCachedSSLContext(sslContextKey, new CachedSSLContext(sslContext, trustStoreLastModified,
+                        sslContextProvider, tmfProvider, tmfDefaultAlgorithm, ksProvider));
+            }
 
             // Got the SSL context. Now create an SSL socket over our own proxy socket
             // which we can toggle between TDS-encapsulated and raw communications.
@@ -2005,7 +2145,41 @@ final class TDSChannel {
         }
     }
 
+    /**
+     * Checks, without waiting for the server, whether the network connection is still open. Used before a request is
+     * sent on a connection that has been idle. Data from the server that no request is waiting for is treated like a
+     * broken connection, since it has been consumed.
+     */
+    final boolean isNetworkConnectionAlive() {
+        if (null != socketChannelStreams)
+            return socketChannelStreams.isConnectionAlive();
+
+        if (null == tcpSocket)
+            return false;
+
+        try {
+            int soTimeout = tcpSocket.getSoTimeout();
+            tcpSocket.setSoTimeout(1);
+            try {
+                tcpInputStream.read();
+                return false;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } finally {
+                tcpSocket.setSoTimeout(soTimeout);
+            }
+        } catch (IOException e) {
+            if (logger.isLoggable(Level.FINER))
+                logger.finer(toString() + " Network connection is broken: " + e.getMessage());
+            return false;
+        }
+    }
+
     final void close() {
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(this.toString() + ": " + packetPool.toString());
+        packetPool.clear();
+
         if (null != sslSocket)
             disableSSL();
 
@@ -2197,6 +2371,10 @@ final class SocketFinder {
     // When parallel connections are to be used, use minimum timeout slice of 1500 milliseconds.
     private static final int minTimeoutForParallelConnections = 1500;
 
+    // Delay before the connection attempt to the next address is started when connecting in parallel, so that the
+    // address that has been fastest to connect to gets a head start.
+    private static final int connectionAttemptDelay = 250;
+
     // lock used for synchronization while updating
     // data within a socketFinder object
     private final Object socketFinderlock = new Object();
@@ -2215,7 +2393,7 @@ final class SocketFinder {
 
     // no of threads that finished their socket connection
     // attempts and notified socketFinder about their result
-    private int noOfThreadsThatNotified = 0;
+    private volatile int noOfThreadsThatNotified = 0;
 
     // If a valid connected socket is found, this value would be non-null,
     // else this would be null
@@ -2268,7 +2446,7 @@ final class SocketFinder {
             // case.
             if (useParallel || useTnir) {
                 // Ignore TNIR if host resolves to more than 64 IPs. Make sure we are using original timeout for this.
-                inetAddrs = InetAddress.getAllByName(hostName);
+                inetAddrs = HostAddressCache.order(HostAddressCache.getAllByName(hostName), portNumber);
 
                 if ((useTnir) && (inetAddrs.length > ipAddressLimit)) {
                     useTnir = false;
@@ -2409,6 +2587,7 @@ final class SocketFinder {
         Selector selector = null;
         LinkedList<SocketChannel> socketChannels = new LinkedList<>();
         SocketChannel selectedChannel = null;
+        long connectStart = System.nanoTime();
 
         try {
             selector = Selector.open();
@@ -2422,9 +2601,10 @@ final class SocketFinder {
 
                 // register the channel for connect event
                 int ops = SelectionKey.OP_CONNECT;
-                SelectionKey key = sChannel.register(selector, ops);
+                InetSocketAddress inetSocketAddress = new InetSocketAddress(inetAddr, portNumber);
+                sChannel.register(selector, ops, inetSocketAddress);
 
-                sChannel.connect(new InetSocketAddress(inetAddr, portNumber));
+                sChannel.connect(inetSocketAddress);
 
                 if (logger.isLoggable(Level.FINER))
                     logger.finer(this.toString() + " initiated connection to address: " + inetAddr + ", portNumber: "
@@ -2476,6 +2656,8 @@ final class SocketFinder {
                             assert connected == true : "finishConnect on channel:" + ch + " cannot be false";
 
                             selectedChannel = ch;
+                            HostAddressCache.recordSuccess((InetSocketAddress) ch.getRemoteAddress(),
+                                    System.nanoTime() - connectStart);
 
                             if (logger.isLoggable(Level.FINER))
                                 logger.finer(this.toString() + " selected the channel :" + selectedChannel);
@@ -2486,6 +2668,7 @@ final class SocketFinder {
                                 logger.finer(this.toString() + " the exception: " + ex.getClass() + " with message: "
                                         + ex.getMessage() + " occurred while processing the channel: " + ch);
                             updateSelectedException(ex, this.toString());
+                            HostAddressCache.recordFailure((InetSocketAddress) key.attachment());
                             // close the channel pro-actively so that we do not
                             // rely to network resources
                             ch.close();
@@ -2546,13 +2729,10 @@ final class SocketFinder {
     // is common for hostName or InetAddress.
     private Socket getDefaultSocket(String hostName, int portNumber, int timeoutInMilliSeconds) throws IOException {
         // Open the socket, with or without a timeout, throwing an UnknownHostException
-        // if there is a failure to resolve the host name to an InetSocketAddress.
-        //
-        // Note that Socket(host, port) throws an UnknownHostException if the host name
-        // cannot be resolved, but that InetSocketAddress(host, port) does not - it sets
-        // the returned InetSocketAddress as unresolved.
-        InetSocketAddress addr = new InetSocketAddress(hostName, portNumber);
-        return getConnectedSocket(addr, timeoutInMilliSeconds);
+        // if there is a failure to resolve the host name. Of the addresses the host name
+        // resolves to, use the one that has been quickest to accept connections.
+        InetAddress[] inetAddrs = HostAddressCache.order(HostAddressCache.getAllByName(hostName), portNumber);
+        return getConnectedSocket(inetAddrs[0], portNumber, timeoutInMilliSeconds);
     }
 
     private Socket getConnectedSocket(InetAddress inetAddr, int portNumber,
@@ -2565,8 +2745,17 @@ final class SocketFinder {
         assert timeoutInMilliSeconds != 0 : "timeout cannot be zero";
         if (addr.isUnresolved())
             throw new java.net.UnknownHostException();
-        selectedSocket = new Socket();
-        selectedSocket.connect(addr, timeoutInMilliSeconds);
+        // A socket created from a channel connects in blocking mode; TDSChannel switches the channel to non-blocking
+        // I/O once it is connected.
+        selectedSocket = conn.getUseSocketChannel() ? SocketChannel.open().socket() : new Socket();
+        long connectStart = System.nanoTime();
+        try {
+            selectedSocket.connect(addr, timeoutInMilliSeconds);
+        } catch (IOException e) {
+            HostAddressCache.recordFailure(addr);
+            throw e;
+        }
+        HostAddressCache.recordSuccess(addr, System.nanoTime() - connectStart);
         return selectedSocket;
     }
 
@@ -2594,15 +2783,37 @@ final class SocketFinder {
                 socketConnectors.add(socketConnector);
             }
 
-            // acquire parent lock and spawn all threads
+            // acquire parent lock and spawn the threads, fastest address first. Each following attempt starts
+            // after a short delay, or as soon as an earlier attempt fails, unless an earlier attempt has connected by
+            // then.
             synchronized (parentThreadLock) {
+                long timerNow = System.currentTimeMillis();
+                long timerExpire = timerNow + timeoutInMilliSeconds;
+
+                // Failed attempts that have already started a following attempt.
+                int noOfHandledFailures = 0;
+
                 for (SocketConnector sc : socketConnectors) {
+                    if (!result.equals(Result.UNKNOWN))
+                        break;
+
+                    if (sc != socketConnectors.getFirst()) {
+                        long nextAttempt = Math.min(timerNow + connectionAttemptDelay, timerExpire);
+                        while (timerNow < nextAttempt && result.equals(Result.UNKNOWN)
+                                && noOfThreadsThatNotified <= noOfHandledFailures) {
+                            parentThreadLock.wait(nextAttempt - timerNow);
+                            timerNow = System.currentTimeMillis();
+                        }
+                        if (!result.equals(Result.UNKNOWN) || timerNow >= timerExpire)
+                            break;
+
+                        // While the result is unknown, every thread that notified has failed.
+                        if (noOfThreadsThatNotified > noOfHandledFailures)
+                            noOfHandledFailures++;
+                    }
                     threadPoolExecutor.execute(sc);
                 }
 
-                long timerNow = System.currentTimeMillis();
-                long timerExpire = timerNow + timeoutInMilliSeconds;
-
                 // The below loop is to guard against the spurious wake up problem
                 while (true) {
                     long timeRemaining = timerExpire - timerNow;
@@ -2759,7 +2970,9 @@ final class SocketFinder {
                     result = Result.FAILURE;
                 }
 
-                if (!result.equals(Result.UNKNOWN)) {
+                // A failed attempt also wakes the parent thread, so that it can start the next attempt without
+                // waiting for the delay between attempts.
+                if (!result.equals(Result.UNKNOWN) || null != exception) {
                     // 1) Note that at any point of time, there is only one
                     // thread(parent/child thread) competing for parentThreadLock.
                     // 2) The only time where a child thread could be waiting on
@@ -2775,7 +2988,9 @@ final class SocketFinder {
                     // would be known(Refer the double-checked locking done at the
                     // start of this method). So, all child threads would exit
                     // as no-ops and would never compete with parent thread
-                    // for acquiring parentThreadLock
+                    // for acquiring parentThreadLock. A child thread that notifies
+                    // about a failure competes with the parent thread the same way,
+                    // and the parent thread never takes socketFinderLock.
                     // 4) As the parent thread is the only thread that competes for the
                     // parentThreadLock, it need not wait to acquire the lock once it wakes
                     // up and gets scheduled.
@@ -2909,12 +3124,17 @@ final class SocketConnector implements Runnable {
                             + " with timeout:" + timeoutInMilliseconds);
                 }
 
+                long connectStart = System.nanoTime();
                 socket.connect(inetSocketAddress, timeoutInMilliseconds);
+                HostAddressCache.recordSuccess(inetSocketAddress, System.nanoTime() - connectStart);
             } catch (IOException ex) {
                 if (logger.isLoggable(Level.FINER)) {
                     logger.finer(this.toString() + " exception:" + ex.getClass() + " with message:" + ex.getMessage()
                             + " occurred while connecting to InetSocketAddress:" + inetSocketAddress);
                 }
+                // A socket closed because another address connected first says nothing about this address.
+                if (socketFinder.getResult().equals(SocketFinder.Result.UNKNOWN))
+                    HostAddressCache.recordFailure(inetSocketAddress);
                 exception = ex;
             }
 
@@ -3002,6 +3222,9 @@ final class TDSWriter {
     // the channel buffers.
     private byte valueBytes[] = new byte[256];
 
+    // Encoder for non-Unicode character data, reused for as long as consecutive values share a collation charset.
+    private CharsetEncoder encoder;
+
     // Monotonically increasing packet number associated with the current message
     private int packetNum = 0;
 
@@ -3706,19 +3929,92 @@ final class TDSWriter {
         int charsCopied = 0;
         int length = value.length();
         while (charsCopied < length) {
-            int bytesToCopy = 2 * (length - charsCopied);
-
-            if (bytesToCopy > valueBytes.length)
-                bytesToCopy = valueBytes.length;
+            // A character that straddles a packet boundary is split by writeChar.
+            if (stagingBuffer.remaining() < 2) {
+                writeChar(value.charAt(charsCopied++));
+                continue;
+            }
 
-            int bytesCopied = 0;
-            while (bytesCopied < bytesToCopy) {
+            // Encode as UTF-16LE straight into the staging buffer.
+            int charsToCopy = Math.min(length - charsCopied, stagingBuffer.remaining() / 2);
+            int startPosition = ((Buffer) stagingBuffer).position();
+            byte[] stagingBytes = stagingBuffer.array();
+            int offset = stagingBuffer.arrayOffset() + startPosition;
+            for (int i = 0; i < charsToCopy; i++) {
                 char ch = value.charAt(charsCopied++);
-                valueBytes[bytesCopied++] = (byte) ((ch >> 0) & 0xFF);
-                valueBytes[bytesCopied++] = (byte) ((ch >> 8) & 0xFF);
+                stagingBytes[offset++] = (byte) ((ch >> 0) & 0xFF);
+                stagingBytes[offset++] = (byte) ((ch >> 8) & 0xFF);
             }
+            ((Buffer) stagingBuffer).position(startPosition + 2 * charsToCopy);
+            logStagedBytes(startPosition);
+        }
+    }
+
+    /**
+     * Writes a string in the encoding of the given collation, which is what String.getBytes(charset) would produce,
+     * encoding straight into the staging buffer.
+     * 
+     * @param value
+     *        the string value
+     * @param collation
+     *        the collation whose charset to use, or null for the default charset of the JVM
+     */
+    void writeNonUnicodeString(String value, SQLCollation collation) throws SQLServerException {
+        CharsetEncoder charsetEncoder = getEncoder((null == collation) ? Charset.defaultCharset()
+                                                                       : collation.getCharset());
+        CharBuffer chars = CharBuffer.wrap(value);
+
+        CoderResult result;
+        do {
+            if (0 == stagingBuffer.remaining())
+                writePacket(TDS.STATUS_NORMAL);
+
+            int startPosition = ((Buffer) stagingBuffer).position();
+            result = charsetEncoder.encode(chars, stagingBuffer, true);
+            logStagedBytes(startPosition);
+
+            // The encoder does not split a character's bytes, so a character that does not fit in the rest of the
+            // packet goes through the scratch array, which can.
+            if (result.isOverflow() && startPosition == ((Buffer) stagingBuffer).position())
+                writeEncodedChars(charsetEncoder, chars);
+        } while (result.isOverflow());
+
+        ByteBuffer scratch = ByteBuffer.wrap(valueBytes);
+        charsetEncoder.flush(scratch);
+        writeBytes(valueBytes, 0, ((Buffer) scratch).position());
+    }
+
+    /**
+     * Encodes as many characters as fit in the scratch array and writes them, spanning packets if needed.
+     */
+    private void writeEncodedChars(CharsetEncoder charsetEncoder, CharBuffer chars) throws SQLServerException {
+        ByteBuffer scratch = ByteBuffer.wrap(valueBytes);
+        charsetEncoder.encode(chars, scratch, true);
+        writeBytes(valueBytes, 0, ((Buffer) scratch).position());
+    }
 
-            writeBytes(valueBytes, 0, bytesCopied);
+    /**
+     * Returns a reset encoder for the charset, creating one only when the charset differs from the previous value's.
+     */
+    private CharsetEncoder getEncoder(Charset charset) {
+        if (null == encoder || !encoder.charset().equals(charset)) {
+            // Replace unmappable characters the same way String.getBytes(charset) does.
+            encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        return encoder.reset();
+    }
+
+    /**
+     * Mirrors the bytes put in the staging buffer since startPosition to the packet log buffer.
+     */
+    private void logStagedBytes(int startPosition) {
+        if (tdsChannel.isLoggingPackets()) {
+            int bytesStaged = ((Buffer) stagingBuffer).position() - startPosition;
+            if (dataIsLoggable)
+                logBuffer.put(stagingBuffer.array(), stagingBuffer.arrayOffset() + startPosition, bytesStaged);
+            else
+                ((Buffer) logBuffer).position(((Buffer) logBuffer).position() + bytesStaged);
         }
     }
 
@@ -3786,6 +4082,7 @@ final class TDSWriter {
         // The unicode version, writeReader() allocates a byte buffer that is 4 times the currentPacketSize, not sure
         // why.
         byte[] streamByteBuffer = new byte[currentPacketSize];
+        ByteBuffer encodedByteBuffer = ByteBuffer.wrap(streamByteBuffer);
         int charsRead = 0;
         int charsToWrite;
         int bytesToWrite;
@@ -3820,18 +4117,26 @@ final class TDSWriter {
                 // The Do-While loop goes on one more time as charsToWrite is greater than 0 for the last chunk, and
                 // in this last round the only thing that is written is an int value of 0, which is the PLP Terminator
                 // token(0x00000000).
-                writeInt(charsToWrite);
-
-                for (int charsCopied = 0; charsCopied < charsToWrite; ++charsCopied) {
-                    if (null == charSet) {
+                if (null == charSet) {
+                    writeInt(charsToWrite);
+                    for (int charsCopied = 0; charsCopied < charsToWrite; ++charsCopied)
                         streamByteBuffer[charsCopied] = (byte) (streamCharBuffer[charsCopied] & 0xFF);
-                    } else {
-                        // encoding as per collation
-                        streamByteBuffer[charsCopied] = new String(streamCharBuffer[charsCopied] + "")
-                                .getBytes(charSet)[0];
-                    }
+                    writeBytes(streamByteBuffer, 0, charsToWrite);
+                } else {
+                    // encoding as per collation; the chunk length is the length of the encoded bytes
+                    CharsetEncoder charsetEncoder = getEncoder(charSet);
+                    int maxBytes = (int) Math.ceil(charsToWrite * (double) charsetEncoder.maxBytesPerChar());
+                    if (encodedByteBuffer.capacity() < maxBytes)
+                        encodedByteBuffer = ByteBuffer.allocate(maxBytes);
+                    ((Buffer) encodedByteBuffer).clear();
+
+                    charsetEncoder.encode(CharBuffer.wrap(streamCharBuffer, 0, charsToWrite), encodedByteBuffer, true);
+                    charsetEncoder.flush(encodedByteBuffer);
+
+                    int encodedLength = ((Buffer) encodedByteBuffer).position();
+                    writeInt(encodedLength);
+                    writeBytes(encodedByteBuffer.array(), 0, encodedLength);
                 }
-                writeBytes(streamByteBuffer, 0, charsToWrite);
             } else {
                 bytesToWrite = charsToWrite;
                 if (0 != charsToWrite)
@@ -4081,6 +4386,12 @@ final class TDSWriter {
                         this.toString() + " sending packet (" + ((Buffer) socketBuffer).limit() + " bytes)");
             }
 
+            PacketCapture packetCapture = con.getPacketCapture();
+            if (null != packetCapture) {
+                packetCapture.capture(PacketCapture.DIRECTION_SENT, socketBuffer.array(), 0, socketBuffer.array(),
+                        TDS_PACKET_HEADER_SIZE, ((Buffer) socketBuffer).limit() - TDS_PACKET_HEADER_SIZE);
+            }
+
             // Prepare for the next packet
             if (!atEOM)
                 preparePacket();
@@ -6145,10 +6456,20 @@ final class TDSWriter {
  */
 final class TDSPacket {
     final byte[] header = new byte[TDS.PACKET_HEADER_SIZE];
-    final byte[] payload;
+    byte[] payload;
     int payloadLength;
     volatile TDSPacket next;
 
+    // True when this packet may still be reachable from a TDSReaderMark, in which case it must never be recycled.
+    boolean pinned;
+
+    // True while this packet is counted against the reader's in-memory buffering limit.
+    boolean readAhead;
+
+    // Offset of the payload in the reader's spill file, or -1 if the packet was never spilled. The payload of a
+    // spilled packet is only held in memory while it is the reader's current packet.
+    long spillOffset = -1;
+
     final public String toString() {
         return "TDSPacket(SPID:" + Util.readUnsignedShortBigEndian(header, TDS.PACKET_HEADER_SPID) + " Seq:"
                 + header[TDS.PACKET_HEADER_SEQUENCE_NUM] + ")";
@@ -6166,6 +6487,88 @@ final class TDSPacket {
 };
 
 
+/**
+ * TDSPacketPool recycles response packets for a single TDS channel.
+ *
+ * A streaming TDSReader hands back each packet it has consumed and unlinked, provided that no TDSReaderMark can still
+ * reach it. Subsequent reads on the channel then reuse those packets rather than allocating a new payload buffer for
+ * every packet received. Pooled packets whose payload size no longer matches the negotiated packet size are dropped.
+ */
+final class TDSPacketPool {
+    // A streaming reader only has a couple of packets in flight at any time, so a small pool is sufficient.
+    private static final int MAX_POOLED_PACKETS = 8;
+
+    private final TDSPacket[] packets = new TDSPacket[MAX_POOLED_PACKETS];
+    private int numPooled = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Returns an empty packet with a payload of the requested size, reusing a pooled packet when one is available.
+     *
+     * @param size
+     *        the payload size
+     * @return an empty packet
+     */
+    synchronized TDSPacket acquire(int size) {
+        while (numPooled > 0) {
+            TDSPacket packet = packets[--numPooled];
+            packets[numPooled] = null;
+            if (packet.payload.length == size) {
+                ++hits;
+                packet.payloadLength = 0;
+                packet.next = null;
+                packet.pinned = false;
+                packet.readAhead = false;
+                return packet;
+            }
+        }
+
+        ++misses;
+        return new TDSPacket(size);
+    }
+
+    /**
+     * Returns a consumed packet to the pool. The caller guarantees that nothing else references the packet and that
+     * the packet was never spilled to disk.
+     *
+     * @param packet
+     *        the packet to recycle
+     */
+    synchronized void release(TDSPacket packet) {
+        if (numPooled < MAX_POOLED_PACKETS && 0 != packet.payload.length)
+            packets[numPooled++] = packet;
+    }
+
+    /**
+     * Drops all pooled packets.
+     */
+    synchronized void clear() {
+        Arrays.fill(packets, 0, numPooled, null);
+        numPooled = 0;
+    }
+
+    /**
+     * @return the number of packets that were served from the pool
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of packets that had to be allocated because the pool was empty
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    final public String toString() {
+        return "TDSPacketPool(hits:" + getHits() + " misses:" + getMisses() + ")";
+    }
+}
+
+
 /**
  * TDSReaderMark encapsulates a fixed position in the response data stream.
  *
@@ -6218,6 +6621,11 @@ final class TDSReader {
     private int packetNum = 0;
 
     private boolean isStreaming = true;
+
+    // Bytes of packets read ahead of the reader and held in memory, and the file holding packets beyond that limit.
+    private long bufferedBytes = 0;
+    private ResponseSpillFile spillFile;
+
     private boolean useColumnEncryption = false;
     private boolean serverSupportsColumnEncryption = false;
     private boolean serverSupportsDataClassification = false;
@@ -6322,18 +6730,94 @@ final class TDSReader {
         // Advance to that packet. If we are streaming through the
         // response, then unlink the current packet from the next
         // before moving to allow the packet to be reclaimed.
+        // Otherwise the next packet stays reachable from whichever
+        // mark started the buffering, so it must not be recycled.
         TDSPacket nextPacket = consumedPacket.next;
         if (isStreaming) {
             if (logger.isLoggable(Level.FINEST))
                 logger.finest(toString() + " Moving to next packet -- unlinking consumed packet");
 
             consumedPacket.next = null;
+        } else {
+            nextPacket.pinned = true;
         }
+        if (nextPacket.readAhead)
+            consumeReadAhead(nextPacket);
+        loadSpilledPayload(nextPacket);
         currentPacket = nextPacket;
         payloadOffset = 0;
+
+        // A spilled packet gives up its payload again once the reader moves past it. Otherwise, a consumed packet
+        // that no mark can reach is referenced by nothing else now, so recycle it.
+        if (consumedPacket.spillOffset >= 0)
+            consumedPacket.payload = null;
+        else if (isStreaming && !consumedPacket.pinned)
+            tdsChannel.getPacketPool().release(consumedPacket);
+
         return true;
     }
 
+    /**
+     * Stops counting a packet that the reader has reached against the in-memory buffering limit.
+     */
+    private synchronized void consumeReadAhead(TDSPacket packet) {
+        packet.readAhead = false;
+        bufferedBytes -= packet.payloadLength;
+    }
+
+    /**
+     * Holds a newly read packet in memory, or writes its payload to the spill file if buffering it would take the
+     * response past the responseBufferingMaxMemory limit.
+     */
+    private void bufferPacket(TDSPacket packet) {
+        int maxMemory = con.getResponseBufferingMaxMemory();
+        if (maxMemory > 0 && bufferedBytes + packet.payloadLength > maxMemory && packet.payloadLength > 0) {
+            try {
+                if (null == spillFile)
+                    spillFile = new ResponseSpillFile(toString());
+
+                packet.spillOffset = spillFile.write(packet.payload, packet.payloadLength);
+                packet.payload = null;
+                return;
+            } catch (IOException e) {
+                // The response can still be processed from memory; it just isn't bounded.
+                if (logger.isLoggable(Level.WARNING))
+                    logger.warning(toString() + " Failed to spill buffered response to disk: " + e.getMessage());
+            }
+        }
+
+        packet.readAhead = true;
+        bufferedBytes += packet.payloadLength;
+    }
+
+    /**
+     * Reads the payload of a spilled packet back into memory so that it can be read.
+     */
+    private void loadSpilledPayload(TDSPacket packet) throws SQLServerException {
+        if (null != packet.payload)
+            return;
+
+        assert packet.spillOffset >= 0 && null != spillFile;
+        byte[] payload = new byte[packet.payloadLength];
+        try {
+            spillFile.read(packet.spillOffset, payload, packet.payloadLength);
+        } catch (IOException e) {
+            MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_responseSpillReadFailed"));
+            SQLServerException.makeFromDriverError(con, this, form.format(new Object[] {e.getMessage()}), null, false);
+        }
+        packet.payload = payload;
+    }
+
+    /**
+     * Releases the spill file, if any, once the response has been processed.
+     */
+    final synchronized void closeSpillFile() {
+        if (null != spillFile) {
+            spillFile.close();
+            spillFile = null;
+        }
+    }
+
     /**
      * Reads the next packet of the TDS channel.
      *
@@ -6350,7 +6834,7 @@ final class TDSReader {
         assert tdsChannel.numMsgsRcvd < tdsChannel.numMsgsSent : "numMsgsRcvd:" + tdsChannel.numMsgsRcvd
                 + " should be less than numMsgsSent:" + tdsChannel.numMsgsSent;
 
-        TDSPacket newPacket = new TDSPacket(con.getTDSPacketSize());
+        TDSPacket newPacket = tdsChannel.getPacketPool().acquire(con.getTDSPacketSize());
         if (null != tcpKeepAliveTimeoutTimer) {
             if (logger.isLoggable(Level.FINEST)) {
                 logger.finest(this.toString() + ": starting timer...");
@@ -6419,8 +6903,11 @@ final class TDSReader {
 
         ++packetNum;
 
-        lastPacket.next = newPacket;
-        lastPacket = newPacket;
+        PacketCapture packetCapture = con.getPacketCapture();
+        if (null != packetCapture) {
+            packetCapture.capture(PacketCapture.DIRECTION_RECEIVED, newPacket.header, 0, newPacket.payload, 0,
+                    newPacket.payloadLength);
+        }
 
         // When logging, append the payload to the log buffer and write out the whole thing.
         if (tdsChannel.isLoggingPackets()) {
@@ -6429,11 +6916,17 @@ final class TDSReader {
                     this.toString() + " received Packet:" + packetNum + " (" + newPacket.payloadLength + " bytes)");
         }
 
+        bufferPacket(newPacket);
+
+        lastPacket.next = newPacket;
+        lastPacket = newPacket;
+
         // If end of message, then bump the count of messages received and disable
         // interrupts. If an interrupt happened prior to disabling, then expect
         // to read the attention ack packet as well.
         if (newPacket.isEOM()) {
             ++tdsChannel.numMsgsRcvd;
+            con.onResponseReceived();
 
             // Notify the command (if any) that we've reached the end of the response.
             if (null != command)
@@ -6445,6 +6938,7 @@ final class TDSReader {
 
     final TDSReaderMark mark() {
         TDSReaderMark mark = new TDSReaderMark(currentPacket, payloadOffset);
+        currentPacket.pinned = true;
         isStreaming = false;
 
         if (logger.isLoggable(Level.FINEST))
@@ -6453,10 +6947,16 @@ final class TDSReader {
         return mark;
     }
 
-    final void reset(TDSReaderMark mark) {
+    final void reset(TDSReaderMark mark) throws SQLServerException {
         if (logger.isLoggable(Level.FINEST))
             logger.finest(this.toString() + ": Resetting to: " + mark.toString());
 
+        if (mark.packet != currentPacket) {
+            loadSpilledPayload(mark.packet);
+            if (currentPacket.spillOffset >= 0)
+                currentPacket.payload = null;
+        }
+
         currentPacket = mark.packet;
         payloadOffset = mark.payloadOffset;
     }
@@ -6609,6 +7109,31 @@ final class TDSReader {
         }
     }
 
+    /**
+     * Reads a value as a read-only ByteBuffer. A value that lies within the current packet is returned as a view of the
+     * packet's payload without copying; a value that spans packets is gathered into a new buffer.
+     */
+    final ByteBuffer readByteBuffer(int valueLength) throws SQLServerException {
+        if (0 == valueLength)
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+        if (!ensurePayload())
+            throwInvalidTDS();
+
+        if (valueLength <= currentPacket.payloadLength - payloadOffset) {
+            // The view shares the payload, so the packet must never go back to the packet pool.
+            currentPacket.pinned = true;
+            ByteBuffer view = ByteBuffer.wrap(currentPacket.payload, payloadOffset, valueLength).slice()
+                    .asReadOnlyBuffer();
+            payloadOffset += valueLength;
+            return view;
+        }
+
+        byte[] value = new byte[valueLength];
+        readBytes(value, 0, valueLength);
+        return ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
     final byte[] readWrappedBytes(int valueLength) throws SQLServerException {
         assert valueLength <= valueBytes.length;
         readBytes(valueBytes, 0, valueLength);
@@ -6975,33 +7500,11 @@ final class TDSReader {
  * interrupts its associated Command with a reason like "timed out".
  */
 final class TimeoutTimer implements Runnable {
-    private static final String threadGroupName = "mssql-jdbc-TimeoutTimer";
     private final int timeoutSeconds;
     private final TDSCommand command;
-    private volatile Future<?> task;
+    private volatile HashedWheelTimer.Timeout timeout;
     private final SQLServerConnection con;
 
-    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
-        private final AtomicReference<ThreadGroup> tgr = new AtomicReference<>();
-        private final AtomicInteger threadNumber = new AtomicInteger(0);
-
-        @Override
-        public Thread newThread(Runnable r) {
-            ThreadGroup tg = tgr.get();
-
-            if (tg == null || tg.isDestroyed()) {
-                tg = new ThreadGroup(threadGroupName);
-                tgr.set(tg);
-            }
-
-            Thread t = new Thread(tg, r, tg.getName() + "-" + threadNumber.incrementAndGet());
-            t.setDaemon(true);
-            return t;
-        }
-    });
-
-    private volatile boolean canceled = false;
-
     TimeoutTimer(int timeoutSeconds, TDSCommand command, SQLServerConnection con) {
         assert timeoutSeconds > 0;
 
@@ -7011,33 +7514,16 @@ final class TimeoutTimer implements Runnable {
     }
 
     final void start() {
-        task = executor.submit(this);
+        timeout = HashedWheelTimer.getTimer().newTimeout(this, timeoutSeconds * 1000L);
     }
 
     final void stop() {
-        task.cancel(true);
-        canceled = true;
+        timeout.cancel();
     }
 
     public void run() {
-        int secondsRemaining = timeoutSeconds;
-        try {
-            // Poll every second while time is left on the timer.
-            // Return if/when the timer is canceled.
-            do {
-                if (canceled)
-                    return;
-
-                Thread.sleep(1000);
-            } while (--secondsRemaining > 0);
-        } catch (InterruptedException e) {
-            // re-interrupt the current thread, in order to restore the thread's interrupt status.
-            Thread.currentThread().interrupt();
-            return;
-        }
-
-        // If the timer wasn't canceled before it ran out of
-        // time then interrupt the registered command.
+        // The shared timer only runs this once the timeout expired without
+        // being canceled, so interrupt the registered command.
         try {
             // If TCP Connection to server is silently dropped, exceeding the query timeout on the same connection does
             // not throw SQLTimeoutException
@@ -7200,6 +7686,27 @@ abstract class TDSCommand {
         return readingResponse;
     }
 
+    // Flag set when the connection's deferred session state changes are to be sent at the start of this command's
+    // next SQL batch.
+    private boolean carriesSessionState = false;
+
+    /**
+     * Returns whether this command's request is a SQL batch that the connection's deferred session state changes can
+     * be prepended to. Session state changes cannot be carried by RPC requests, because SET options changed within an
+     * RPC are restored when the RPC completes.
+     */
+    boolean canCarrySessionState() {
+        return false;
+    }
+
+    final void carrySessionState() {
+        carriesSessionState = true;
+    }
+
+    final boolean carriesSessionState() {
+        return carriesSessionState;
+    }
+
     /**
      * Creates this command with an optional timeout.
      *
@@ -7350,6 +7857,10 @@ abstract class TDSCommand {
             }
         }
 
+        // Nothing reads the response after this point, so drop any of it that was spilled to disk.
+        if (null != tdsReader)
+            tdsReader.closeSpillFile();
+
         // Postcondition:
         // Response has been processed and there is no attention pending -- the command is closed.
         // Of course the connection may be closed too, but the command is done regardless...
@@ -7556,6 +8067,11 @@ abstract class TDSCommand {
             throw e;
         }
 
+        if (carriesSessionState && TDS.PKT_QUERY == tdsMessageType) {
+            carriesSessionState = false;
+            tdsWriter.writeString(tdsReader.getConnection().takePendingSessionState());
+        }
+
         // (Re)initialize this command's interrupt state for its current execution.
         // To ensure atomically consistent behavior, do not leave the interrupt lock
         // until interrupts have been (re)enabled.
@@ -343,4 +343,34 @@ public interface ISQLServerConnection extends java.sql.Connection {
      * @return true if statement pooling is disabled, false if it is enabled.
      */
     public boolean getDisableStatementPooling();
+
+    /**
+     * Creates a pipeline that sends several independent statements to the server in one round trip and returns their
+     * update counts in order.
+     *
+     * @return a new, empty pipeline that executes on this connection
+     * @throws SQLServerException
+     *         if the connection is closed
+     */
+    public SQLServerPipeline pipeline() throws SQLServerException;
+
+    /**
+     * Writes the most recent TDS packets sent and received on this connection to a file in libpcap format. Packets are
+     * only kept when the packetCaptureBufferSize connection property is set. Each frame uses the DLT_USER0 link type
+     * and holds a direction byte (0 for client to server, 1 for server to client) followed by the TDS packet. Payloads
+     * of login packets are not captured.
+     *
+     * @param fileName
+     *        the file to write
+     * @throws SQLServerException
+     *         if packet capture is not enabled or the file cannot be written
+     */
+    public void dumpPacketCapture(String fileName) throws SQLServerException;
+
+    /**
+     * Clears the parameter names of stored procedures that this connection keeps for calls that set parameters by name.
+     * The cached names are used without asking the server whether the procedure has changed. Call this after a
+     * procedure that the connection has called is altered, so that the next call looks up its parameters again.
+     */
+    public void clearProcedureParameterNamesCache();
 }
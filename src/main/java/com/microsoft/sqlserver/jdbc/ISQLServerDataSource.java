@@ -805,4 +805,136 @@ public interface ISQLServerDataSource extends javax.sql.CommonDataSource {
      *        indicates whether Bulk Copy API should be used for Batch Insert operations.
      */
     public void setUseBulkCopyForBatchInsert(boolean useBulkCopyForBatchInsert);
+
+    /**
+     * Returns whether the rows of a batch insert are combined into multi-row INSERT statements.
+     * 
+     * @return whether the driver rewrites batch insert operations into multi-row INSERT statements.
+     */
+    public boolean getRewriteBatchedInserts();
+
+    /**
+     * Sets whether the rows of a batch insert should be combined into multi-row INSERT statements.
+     * 
+     * @param rewriteBatchedInserts
+     *        indicates whether batch insert operations should be rewritten into multi-row INSERT statements.
+     */
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts);
+
+    /**
+     * Returns whether the driver performs network I/O through a non-blocking socket channel.
+     * 
+     * @return whether the socket channel transport is used.
+     */
+    public boolean getUseSocketChannel();
+
+    /**
+     * Sets whether the driver should perform network I/O through a non-blocking socket channel with pooled direct
+     * buffers instead of blocking socket streams.
+     * 
+     * @param useSocketChannel
+     *        indicates whether the socket channel transport should be used.
+     */
+    public void setUseSocketChannel(boolean useSocketChannel);
+
+    /**
+     * Sets the maximum number of bytes of a buffered response that the driver holds in memory. Response packets that
+     * are read ahead of the application beyond this limit, for example when responseBuffering is full or when another
+     * statement is executed before a result set has been read, are written to a temporary file until they are needed.
+     * 
+     * @param responseBufferingMaxMemory
+     *        the limit in bytes, or 0 for no limit.
+     */
+    public void setResponseBufferingMaxMemory(int responseBufferingMaxMemory);
+
+    /**
+     * Returns the maximum number of bytes of a buffered response that the driver holds in memory.
+     * 
+     * @return the limit in bytes, or 0 if there is no limit.
+     */
+    public int getResponseBufferingMaxMemory();
+
+    /**
+     * Sets the size of the ring buffer that keeps the most recent TDS packets of each connection for diagnostics. The
+     * capture is written to a file when the connection is terminated by an error, or on request through
+     * {@link ISQLServerConnection#dumpPacketCapture(String)}.
+     * 
+     * @param packetCaptureBufferSize
+     *        the size in bytes, or 0 to disable packet capture.
+     */
+    public void setPacketCaptureBufferSize(int packetCaptureBufferSize);
+
+    /**
+     * Returns the size of the packet capture ring buffer.
+     * 
+     * @return the size in bytes, or 0 if packet capture is disabled.
+     */
+    public int getPacketCaptureBufferSize();
+
+    /**
+     * Sets whether changes to the auto-commit mode and the transaction isolation level are sent to the server with the
+     * next request instead of in a round trip of their own. Changes that cancel each other out are not sent at all,
+     * and commit and rollback do not contact the server when no transaction is open.
+     * 
+     * @param deferSessionStateChanges
+     *        indicates whether session state changes should be deferred.
+     */
+    public void setDeferSessionStateChanges(boolean deferSessionStateChanges);
+
+    /**
+     * Returns whether changes to the auto-commit mode and the transaction isolation level are deferred until the next
+     * request.
+     * 
+     * @return whether session state changes are deferred.
+     */
+    public boolean getDeferSessionStateChanges();
+
+    /**
+     * Sets how long after a response from the server {@link java.sql.Connection#isValid(int)} considers the connection
+     * valid without contacting the server. Outside of this window, isValid sends an empty request to the server.
+     * 
+     * @param validationActivityWindow
+     *        the window in milliseconds, or 0 to always contact the server.
+     */
+    public void setValidationActivityWindow(int validationActivityWindow);
+
+    /**
+     * Returns how long after a response from the server isValid considers the connection valid without contacting the
+     * server.
+     * 
+     * @return the window in milliseconds, or 0 if the server is always contacted.
+     */
+    public int getValidationActivityWindow();
+
+    /**
+     * Sets the number of attempts to recover a session whose network connection was broken while the connection was
+     * idle. The session is recovered before the next request is sent, if the server supports session recovery and
+     * the session has no state that cannot be recovered, such as an open transaction.
+     * 
+     * @param connectRetryCount
+     *        the number of attempts from 0 to 255, or 0 to disable session recovery.
+     */
+    public void setConnectRetryCount(int connectRetryCount);
+
+    /**
+     * Returns the number of attempts to recover a session whose network connection was broken.
+     * 
+     * @return the number of attempts, or 0 if session recovery is disabled.
+     */
+    public int getConnectRetryCount();
+
+    /**
+     * Sets the number of seconds between attempts to recover a session.
+     * 
+     * @param connectRetryInterval
+     *        the interval in seconds from 1 to 60.
+     */
+    public void setConnectRetryInterval(int connectRetryInterval);
+
+    /**
+     * Returns the number of seconds between attempts to recover a session.
+     * 
+     * @return the interval in seconds.
+     */
+    public int getConnectRetryInterval();
 }
@@ -9,6 +9,8 @@ import java.math.BigDecimal;
 import java.sql.ParameterMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLType;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -763,4 +765,34 @@ public interface ISQLServerPreparedStatement extends java.sql.PreparedStatement,
      */
     public ParameterMetaData getParameterMetaData(boolean forceRefresh) throws SQLServerException;
 
+
+    /**
+     * Runs executeQuery on the given executor and returns a future for its result. This is a blocking wrapper, not
+     * non-blocking I/O: the execution holds one of the executor's threads until it completes, so the executor decides
+     * how many executions run at once. Parameters must not be changed and the statement must not be used again until
+     * the returned future completes. Canceling the future cancels the statement.
+     * 
+     * @param executor
+     *        the executor that runs the execution
+     * @return a future that is completed with the ResultSet produced by the query, or exceptionally with the
+     *         SQLException raised by the execution
+     * @throws SQLServerException
+     *         if the statement is closed or the executor is null
+     */
+    public CompletableFuture<ResultSet> executeQueryAsync(Executor executor) throws SQLServerException;
+
+    /**
+     * Runs executeUpdate on the given executor and returns a future for its row count. This is a blocking wrapper,
+     * not non-blocking I/O: the execution holds one of the executor's threads until it completes, so the executor
+     * decides how many executions run at once. Parameters must not be changed and the statement must not be used again
+     * until the returned future completes. Canceling the future cancels the statement.
+     * 
+     * @param executor
+     *        the executor that runs the execution
+     * @return a future that is completed with the row count, or exceptionally with the SQLException raised by the
+     *         execution
+     * @throws SQLServerException
+     *         if the statement is closed or the executor is null
+     */
+    public CompletableFuture<Integer> executeUpdateAsync(Executor executor) throws SQLServerException;
 }
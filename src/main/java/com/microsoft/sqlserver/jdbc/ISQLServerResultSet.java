@@ -6,6 +6,7 @@
 package com.microsoft.sqlserver.jdbc;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.SQLType;
 import java.util.Calendar;
 
@@ -274,6 +275,32 @@ public interface ISQLServerResultSet extends java.sql.ResultSet {
      */
     public BigDecimal getSmallMoney(String columnName) throws SQLServerException;
 
+    /**
+     * Returns the value of the designated column in the current row of this ResultSet object as a read-only ByteBuffer.
+     * When the value is received in a single network packet, the buffer is a view of the response data and no copy is
+     * made. The buffer must not be used after the cursor is moved.
+     * 
+     * @param columnIndex
+     *        the first column is 1, the second is 2, ...
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws SQLServerException
+     *         when an error occurs
+     */
+    public ByteBuffer getByteBuffer(int columnIndex) throws SQLServerException;
+
+    /**
+     * Returns the value of the designated column in the current row of this ResultSet object as a read-only ByteBuffer.
+     * When the value is received in a single network packet, the buffer is a view of the response data and no copy is
+     * made. The buffer must not be used after the cursor is moved.
+     * 
+     * @param columnName
+     *        the name of the column
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws SQLServerException
+     *         when an error occurs
+     */
+    public ByteBuffer getByteBuffer(String columnName) throws SQLServerException;
+
     /**
      * Updates the value of the column specified to the DateTimeOffset Class value, given a zero-based column ordinal.
      * 
@@ -5,6 +5,11 @@
 
 package com.microsoft.sqlserver.jdbc;
 
+import java.sql.ResultSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+
 /**
  * Provides an interface to the {@link SQLServerStatement} class.
  */
@@ -56,4 +61,38 @@ public interface ISQLServerStatement extends java.sql.Statement {
      *         if any error occurs
      */
     public void setCancelQueryTimeout(int seconds) throws SQLServerException;
+
+    /**
+     * Runs executeQuery on the given executor and returns a future for its result. This is a blocking wrapper, not
+     * non-blocking I/O: the execution holds one of the executor's threads until it completes, so the executor decides
+     * how many executions run at once. The statement must not be used again until the returned future completes.
+     * Canceling the future cancels the statement.
+     * 
+     * @param sql
+     *        an SQL statement to be sent to the database, typically a static SQL SELECT statement
+     * @param executor
+     *        the executor that runs the execution
+     * @return a future that is completed with the ResultSet produced by the query, or exceptionally with the
+     *         SQLException raised by the execution
+     * @throws SQLServerException
+     *         if the statement is closed or the executor is null
+     */
+    public CompletableFuture<ResultSet> executeQueryAsync(String sql, Executor executor) throws SQLServerException;
+
+    /**
+     * Runs executeUpdate on the given executor and returns a future for its row count. This is a blocking wrapper,
+     * not non-blocking I/O: the execution holds one of the executor's threads until it completes, so the executor
+     * decides how many executions run at once. The statement must not be used again until the returned future
+     * completes. Canceling the future cancels the statement.
+     * 
+     * @param sql
+     *        an SQL Data Manipulation Language (DML) statement, or an SQL statement that returns nothing
+     * @param executor
+     *        the executor that runs the execution
+     * @return a future that is completed with the row count, or exceptionally with the SQLException raised by the
+     *         execution
+     * @throws SQLServerException
+     *         if the statement is closed or the executor is null
+     */
+    public CompletableFuture<Integer> executeUpdateAsync(String sql, Executor executor) throws SQLServerException;
 }
@@ -0,0 +1,83 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Caches the TCP ports that the SQL Server Browser service reports for named instances, so that connections to the same
+ * instance do not each need a UDP round trip to the Browser service before connecting.
+ *
+ * Entries expire after a fixed time. A connection that fails to reach an instance at a cached port removes the entry
+ * so that its next attempt asks the Browser service again, in case the instance has moved to a different port.
+ */
+final class InstancePortCache {
+    private static final long TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private static final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final String port;
+        final long expiry;
+
+        Entry(String port, long expiry) {
+            this.port = port;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * The port of an instance, and whether it was taken from the cache rather than from the Browser service.
+     */
+    static final class InstancePort {
+        final String port;
+        final boolean fromCache;
+
+        InstancePort(String port, boolean fromCache) {
+            this.port = port;
+            this.fromCache = fromCache;
+        }
+    }
+
+    private InstancePortCache() {
+        /* hide the constructor to stop the instantiation of this class. */}
+
+    private static String key(String server, String instanceName) {
+        // Server and instance names are not case sensitive.
+        return server.toLowerCase(Locale.ENGLISH) + "\\" + instanceName.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the cached port of an instance, or null if there is none or it has expired.
+     */
+    static String get(String server, String instanceName) {
+        return get(server, instanceName, System.nanoTime());
+    }
+
+    static String get(String server, String instanceName, long now) {
+        String key = key(server, instanceName);
+        Entry entry = cache.get(key);
+        if (null == entry)
+            return null;
+
+        if (now - entry.expiry >= 0) {
+            cache.remove(key, entry);
+            return null;
+        }
+        return entry.port;
+    }
+
+    static void put(String server, String instanceName, String port) {
+        cache.put(key(server, instanceName), new Entry(port, System.nanoTime() + TIME_TO_LIVE_NANOS));
+    }
+
+    static void remove(String server, String instanceName) {
+        cache.remove(key(server, instanceName));
+    }
+}
@@ -15,12 +15,15 @@ import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.text.MessageFormat;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.naming.NamingException;
 import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosTicket;
 import javax.security.auth.login.Configuration;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
@@ -34,6 +37,10 @@ import org.ietf.jgss.Oid;
 
 import com.microsoft.sqlserver.jdbc.dns.DNSKerberosLocator;
 
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import mssql.googlecode.concurrentlinkedhashmap.EvictionListener;
+
 
 /**
  * KerbAuthentication for int auth.
@@ -46,11 +53,122 @@ final class KerbAuthentication extends SSPIAuthentication {
     private final String spn;
 
     private final GSSManager manager = GSSManager.getInstance();
-    private LoginContext lc = null;
     private boolean isUserCreatedCredential = false;
     private GSSCredential peerCredentials = null;
     private GSSContext peerContext = null;
 
+    // Key of the cached login this connection authenticates with, if any.
+    private String loginKey = null;
+    private CachedLogin login = null;
+
+    // A cached login is replaced once its tickets expire within this time.
+    private static final long LOGIN_RENEWAL_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // Lifetime of a cached login whose subject holds no tickets to take the expiry from.
+    private static final long DEFAULT_LOGIN_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    // Realms found for an SPN are looked up again after this time.
+    private static final long REALM_TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private static final int LOGIN_CACHE_SIZE = 64;
+
+    // Subjects logged in through JAAS, by configuration name, user and password, shared by all connections.
+    private static final ConcurrentLinkedHashMap<String, CachedLogin> logins = new Builder<String, CachedLogin>()
+            .maximumWeightedCapacity(LOGIN_CACHE_SIZE).listener(new LoginEvictionListener()).build();
+    private static final Object loginLock = new Object();
+
+    // SPNs enriched with their realm, by SPN as built or supplied.
+    private static final ConcurrentHashMap<String, CachedSpn> enrichedSpns = new ConcurrentHashMap<>();
+
+    /**
+     * Creates and logs in a JAAS login context.
+     */
+    interface LoginFactory {
+        LoginContext login() throws LoginException;
+    }
+
+    /**
+     * A JAAS login shared by connections. Once it is replaced, invalidated or evicted from the cache it is retired, and
+     * it is logged out as soon as no connection is authenticating with it any more.
+     */
+    static final class CachedLogin {
+        private final LoginContext loginContext;
+        final Subject subject;
+        final long expiresOn;
+
+        // Connections authenticating with this login.
+        private int users = 0;
+        private boolean retired = false;
+
+        CachedLogin(LoginContext loginContext, long expiresOn) {
+            this.loginContext = loginContext;
+            this.subject = loginContext.getSubject();
+            this.expiresOn = expiresOn;
+        }
+
+        boolean needsRenewal() {
+            return expiresOn - System.currentTimeMillis() <= LOGIN_RENEWAL_MARGIN_MILLIS;
+        }
+
+        /**
+         * @return false if the login has been retired and must not be used
+         */
+        synchronized boolean acquire() {
+            if (retired)
+                return false;
+            users++;
+            return true;
+        }
+
+        void release() {
+            boolean logout;
+            synchronized (this) {
+                users--;
+                logout = retired && 0 == users;
+            }
+            if (logout)
+                logout();
+        }
+
+        void retire() {
+            boolean logout;
+            synchronized (this) {
+                if (retired)
+                    return;
+                retired = true;
+                logout = 0 == users;
+            }
+            if (logout)
+                logout();
+        }
+
+        private void logout() {
+            try {
+                loginContext.logout();
+            } catch (LoginException e) {
+                if (authLogger.isLoggable(Level.FINE))
+                    authLogger.fine("Failed to log out of Kerberos: " + e.getMessage());
+            }
+        }
+    }
+
+    static final class LoginEvictionListener implements EvictionListener<String, CachedLogin> {
+        @Override
+        public void onEviction(String key, CachedLogin login) {
+            login.retire();
+        }
+    }
+
+    private static final class CachedSpn {
+        final String spn;
+        final long expiry;
+
+        CachedSpn(String spn, long expiry) {
+            this.spn = spn;
+            this.expiry = expiry;
+        }
+    }
+
     static {
         // Overrides the default JAAS configuration loader.
         // This one will forward to the default one in all cases but the default configuration is empty.
@@ -83,10 +201,7 @@ final class KerbAuthentication extends SSPIAuthentication {
                     AccessControlContext context = AccessController.getContext();
                     currentSubject = Subject.getSubject(context);
                     if (null == currentSubject) {
-                        lc = new LoginContext(configName, callback);
-                        lc.login();
-                        // per documentation LoginContext will instantiate a new subject.
-                        currentSubject = lc.getSubject();
+                        currentSubject = login(configName, callback);
                     }
                 } catch (LoginException le) {
                     if (authLogger.isLoggable(Level.FINE)) {
@@ -132,16 +247,103 @@ final class KerbAuthentication extends SSPIAuthentication {
 
         catch (GSSException ge) {
             authLogger.finer(toString() + "initAuthInit failed GSSException:-" + ge);
+            invalidateLogin();
             con.terminate(SQLServerException.DRIVER_ERROR_NONE,
                     SQLServerException.getErrString("R_integratedAuthenticationFailed"), ge);
         } catch (PrivilegedActionException ge) {
             authLogger.finer(toString() + "initAuthInit failed privileged exception:-" + ge);
+            invalidateLogin();
             con.terminate(SQLServerException.DRIVER_ERROR_NONE,
                     SQLServerException.getErrString("R_integratedAuthenticationFailed"), ge);
         }
 
     }
 
+    /**
+     * Returns a subject logged in with the JAAS configuration and the user and password of the connection. Logins are
+     * shared by all connections with the same configuration, user and password until their tickets are about to
+     * expire, so that a burst of connections does not send a login request to the KDC for each connection.
+     */
+    private Subject login(String configName, KerbCallback callback) throws LoginException, SQLServerException {
+        String user = con.activeConnectionProperties.getProperty(SQLServerDriverStringProperty.USER.toString());
+        String password = con.activeConnectionProperties
+                .getProperty(SQLServerDriverStringProperty.PASSWORD.toString());
+        String key = configName + "|" + user + "|" + Util.passwordDigest(password);
+
+        login = acquireLogin(key, () -> {
+            if (authLogger.isLoggable(Level.FINER)) {
+                authLogger.finer(toString() + " Logging in to Kerberos");
+            }
+            LoginContext lc = new LoginContext(configName, callback);
+            lc.login();
+            return lc;
+        });
+        loginKey = key;
+        return login.subject;
+    }
+
+    /**
+     * Returns the cached login for the key, logging in if there is none or its tickets are about to expire. The caller
+     * must release the login once it no longer authenticates with it.
+     */
+    static CachedLogin acquireLogin(String key, LoginFactory loginFactory) throws LoginException {
+        CachedLogin cached = logins.get(key);
+        if (null != cached && !cached.needsRenewal() && cached.acquire()) {
+            if (authLogger.isLoggable(Level.FINER)) {
+                authLogger.finer("Reusing Kerberos login");
+            }
+            return cached;
+        }
+
+        synchronized (loginLock) {
+            // Another connection may have logged in while this one waited.
+            cached = logins.get(key);
+            if (null != cached && !cached.needsRenewal() && cached.acquire())
+                return cached;
+
+            // per documentation LoginContext will instantiate a new subject.
+            LoginContext lc = loginFactory.login();
+            cached = new CachedLogin(lc, getTicketExpiry(lc.getSubject()));
+            cached.acquire();
+
+            // The replaced login is logged out once the connections authenticating with it are done.
+            CachedLogin replaced = logins.put(key, cached);
+            if (null != replaced)
+                replaced.retire();
+            return cached;
+        }
+    }
+
+    /**
+     * Removes the login from the cache so that the next connection logs in again.
+     */
+    static void invalidateLogin(String key, CachedLogin login) {
+        if (logins.remove(key, login))
+            login.retire();
+    }
+
+    /**
+     * Returns when the first of the tickets of a subject expires.
+     */
+    private static long getTicketExpiry(Subject subject) {
+        long expiry = Long.MAX_VALUE;
+        try {
+            for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+                if (null != ticket.getEndTime())
+                    expiry = Math.min(expiry, ticket.getEndTime().getTime());
+            }
+        } catch (SecurityException e) {
+            // Not allowed to look at the tickets, fall back to the default lifetime.
+        }
+        return (Long.MAX_VALUE == expiry) ? System.currentTimeMillis() + DEFAULT_LOGIN_LIFETIME_MILLIS : expiry;
+    }
+
+    // Drops the cached login after authentication with it failed, so that the next connection logs in again.
+    private void invalidateLogin() {
+        if (null != login)
+            invalidateLogin(loginKey, login);
+    }
+
     // We have to do a privileged action to create the credential of the user in the current context
     private static GSSCredential getClientCredential(final Subject subject, final GSSManager MANAGER,
             final Oid kerboid) throws PrivilegedActionException {
@@ -180,6 +382,7 @@ final class KerbAuthentication extends SSPIAuthentication {
             return byteToken;
         } catch (GSSException ge) {
             authLogger.finer(toString() + "initSecContext Failed :-" + ge);
+            invalidateLogin();
             con.terminate(SQLServerException.DRIVER_ERROR_NONE,
                     SQLServerException.getErrString("R_integratedAuthenticationFailed"), ge);
         }
@@ -228,7 +431,7 @@ final class KerbAuthentication extends SSPIAuthentication {
         } else {
             spn = makeSpn(address, port);
         }
-        this.spn = enrichSpnWithRealm(spn, null == userSuppliedServerSpn);
+        this.spn = getEnrichedSpn(spn, null == userSuppliedServerSpn);
         if (!this.spn.equals(spn) && authLogger.isLoggable(Level.FINER)) {
             authLogger.finer(toString() + "SPN enriched: " + spn + " := " + this.spn);
         }
@@ -237,6 +440,28 @@ final class KerbAuthentication extends SSPIAuthentication {
     private static final Pattern SPN_PATTERN = Pattern.compile("MSSQLSvc/(.*):([^:@]+)(@.+)?",
             Pattern.CASE_INSENSITIVE);
 
+    /**
+     * Returns the SPN enriched with its realm, looking the realm up only if it has not been looked up for the SPN
+     * recently. Realm lookups go to DNS for each candidate part of the host name.
+     */
+    private String getEnrichedSpn(String spn, boolean allowHostnameCanonicalization) {
+        return getEnrichedSpn(spn, allowHostnameCanonicalization, System.nanoTime());
+    }
+
+    String getEnrichedSpn(String spn, boolean allowHostnameCanonicalization, long now) {
+        if (spn == null) {
+            return spn;
+        }
+        String key = spn + "|" + allowHostnameCanonicalization;
+        CachedSpn cached = enrichedSpns.get(key);
+        if (null == cached || now - cached.expiry >= 0) {
+            cached = new CachedSpn(enrichSpnWithRealm(spn, allowHostnameCanonicalization),
+                    now + REALM_TIME_TO_LIVE_NANOS);
+            enrichedSpns.put(key, cached);
+        }
+        return cached.spn;
+    }
+
     private String enrichSpnWithRealm(String spn, boolean allowHostnameCanonicalization) {
         if (spn == null) {
             return spn;
@@ -367,19 +592,20 @@ final class KerbAuthentication extends SSPIAuthentication {
             }
             if (null != peerContext)
                 peerContext.dispose();
-            if (null != lc)
-                lc.logout();
-        } catch (LoginException e) {
-            // yes we are eating exceptions here but this should not fail in the normal circumstances and we do not want
-            // to eat previous
-            // login errors if caused before which is more useful to the user than the cleanup errors.
-            authLogger.fine(toString() + " Release of the credentials failed LoginException: " + e);
         } catch (GSSException e) {
             // yes we are eating exceptions here but this should not fail in the normal circumstances and we do not want
             // to eat previous
             // login errors if caused before which is more useful to the user than the cleanup errors.
             authLogger.fine(toString() + " Release of the credentials failed GSSException: " + e);
         }
+
+        // The subject of a login is shared with other connections, so it is only logged out once it has been retired
+        // and no other connection uses it.
+        if (null != login) {
+            login.release();
+            login = null;
+            loginKey = null;
+        }
         return 0;
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * PacketCapture keeps the most recent TDS packets sent and received on a connection in a fixed-size off-heap ring
+ * buffer, so that protocol problems can be diagnosed under production load without the cost of the TDS.DATA packet
+ * logger.
+ *
+ * Capturing a packet is a single copy of its bytes into the ring; when the ring is full the oldest packets are
+ * overwritten. The capture can be written out in libpcap format with the DLT_USER0 link type. Each captured frame is
+ * one direction byte (0 for client to server, 1 for server to client) followed by the TDS packet, header included.
+ * The payloads of login and federated authentication token packets are not captured because they carry credentials.
+ */
+final class PacketCapture {
+    static final byte DIRECTION_SENT = 0;
+    static final byte DIRECTION_RECEIVED = 1;
+
+    // Record layout in the ring: int record length, int original packet length, long timestamp (microseconds since
+    // the epoch), byte direction, captured packet bytes.
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 1;
+
+    private static final int PCAP_MAGIC = 0xa1b2c3d4;
+    private static final int LINKTYPE_USER0 = 147;
+
+    private final ByteBuffer ring;
+    private final int capacity;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private final byte[] lengthBytes = new byte[4];
+
+    // Ring position of the oldest record, position at which the next record is written, and bytes in use.
+    private int head = 0;
+    private int tail = 0;
+    private int used = 0;
+
+    private long packetsCaptured = 0;
+    private long packetsDropped = 0;
+
+    PacketCapture(int capacity) {
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Copies a packet into the ring, evicting the oldest packets as needed.
+     *
+     * @param direction
+     *        DIRECTION_SENT or DIRECTION_RECEIVED
+     * @param header
+     *        array holding the packet header
+     * @param headerOffset
+     *        offset of the packet header in the array
+     * @param payload
+     *        array holding the packet payload, which may be the header array when the packet is contiguous
+     * @param payloadOffset
+     *        offset of the payload in its array
+     * @param payloadLength
+     *        the payload length
+     */
+    synchronized void capture(byte direction, byte[] header, int headerOffset, byte[] payload, int payloadOffset,
+            int payloadLength) {
+        int originalLength = TDS.PACKET_HEADER_SIZE + payloadLength;
+        byte messageType = header[headerOffset + TDS.PACKET_HEADER_MESSAGE_TYPE];
+        if (TDS.PKT_LOGON70 == messageType || TDS.PKT_FEDAUTH_TOKEN_MESSAGE == messageType)
+            payloadLength = 0;
+
+        int recordLength = RECORD_HEADER_SIZE + TDS.PACKET_HEADER_SIZE + payloadLength;
+        if (recordLength > capacity) {
+            ++packetsDropped;
+            return;
+        }
+
+        while (used + recordLength > capacity) {
+            int oldestLength = getInt(head);
+            head = (head + oldestLength) % capacity;
+            used -= oldestLength;
+        }
+
+        long timestamp = System.currentTimeMillis() * 1000;
+        ((Buffer) recordHeader).clear();
+        recordHeader.putInt(recordLength).putInt(originalLength).putLong(timestamp).put(direction);
+
+        tail = put(tail, recordHeader.array(), 0, RECORD_HEADER_SIZE);
+        tail = put(tail, header, headerOffset, TDS.PACKET_HEADER_SIZE);
+        tail = put(tail, payload, payloadOffset, payloadLength);
+        used += recordLength;
+        ++packetsCaptured;
+    }
+
+    private int put(int position, byte[] bytes, int offset, int length) {
+        int firstPart = Math.min(length, capacity - position);
+        ((Buffer) ring).position(position);
+        ring.put(bytes, offset, firstPart);
+        if (firstPart < length) {
+            ((Buffer) ring).position(0);
+            ring.put(bytes, offset + firstPart, length - firstPart);
+        }
+        return (position + length) % capacity;
+    }
+
+    private void get(int position, byte[] bytes, int offset, int length) {
+        int firstPart = Math.min(length, capacity - position);
+        ((Buffer) ring).position(position);
+        ring.get(bytes, offset, firstPart);
+        if (firstPart < length) {
+            ((Buffer) ring).position(0);
+            ring.get(bytes, offset + firstPart, length - firstPart);
+        }
+    }
+
+    private int getInt(int position) {
+        get(position, lengthBytes, 0, 4);
+        return ByteBuffer.wrap(lengthBytes).getInt();
+    }
+
+    /**
+     * Writes the captured packets, oldest first, to a file in libpcap format.
+     *
+     * @param path
+     *        the file to write
+     */
+    void dump(Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            dump(out);
+        }
+    }
+
+    void dump(OutputStream out) throws IOException {
+        // Copy the records out of the ring first so that capturing is not held up by the file I/O.
+        byte[] records;
+        synchronized (this) {
+            records = new byte[used];
+            get(head, records, 0, used);
+        }
+
+        ByteBuffer fileHeader = ByteBuffer.allocate(24).order(ByteOrder.nativeOrder());
+        fileHeader.putInt(PCAP_MAGIC).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0)
+                .putInt(1 + TDS.MAX_PACKET_SIZE).putInt(LINKTYPE_USER0);
+        out.write(fileHeader.array());
+
+        ByteBuffer recordBuffer = ByteBuffer.wrap(records).order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer frameHeader = ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+        for (int position = 0; position < records.length;) {
+            int recordLength = recordBuffer.getInt(position);
+            int originalLength = recordBuffer.getInt(position + 4);
+            long timestamp = recordBuffer.getLong(position + 8);
+
+            // The frame starts at the direction byte.
+            int capturedLength = recordLength - RECORD_HEADER_SIZE + 1;
+            ((Buffer) frameHeader).clear();
+            frameHeader.putInt((int) (timestamp / 1000000)).putInt((int) (timestamp % 1000000)).putInt(capturedLength)
+                    .putInt(1 + originalLength);
+            out.write(frameHeader.array());
+            out.write(records, position + RECORD_HEADER_SIZE - 1, capturedLength);
+
+            position += recordLength;
+        }
+    }
+
+    synchronized long getPacketsCaptured() {
+        return packetsCaptured;
+    }
+
+    synchronized long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    final public String toString() {
+        return "PacketCapture(capacity:" + capacity + " captured:" + getPacketsCaptured() + " dropped:"
+                + getPacketsDropped() + ")";
+    }
+}
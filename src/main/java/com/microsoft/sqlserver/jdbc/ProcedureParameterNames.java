@@ -0,0 +1,71 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * The parameter names of a stored procedure in the order sp_sproc_columns returns them, starting with @RETURN_VALUE,
+ * indexed for looking up the position of a parameter by name.
+ *
+ * Instances are immutable, so that the connection can share them between the callable statements that call the same
+ * procedure.
+ */
+final class ProcedureParameterNames {
+    private final int size;
+
+    // Positions by name without the leading '@', for case-sensitive and for case-insensitive lookups.
+    private final HashMap<String, Integer> positions;
+    private final HashMap<String, Integer> caseInsensitivePositions;
+
+    /**
+     * @param names
+     *        the parameter names as sp_sproc_columns returns them, including the leading '@'
+     */
+    ProcedureParameterNames(List<String> names) {
+        size = names.size();
+        positions = new HashMap<>(size * 2);
+        caseInsensitivePositions = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String name = names.get(i);
+            name = name.substring(1, name.length());
+
+            // The first parameter with a name wins, as with a search from the start.
+            positions.putIfAbsent(name, i);
+            caseInsensitivePositions.putIfAbsent(foldCase(name), i);
+        }
+    }
+
+    /**
+     * Folds the case of a name so that names that String.equalsIgnoreCase considers equal fold to the same string.
+     */
+    private static String foldCase(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        return new String(chars);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the position of a parameter, preferring a case-sensitive match over a case-insensitive one.
+     *
+     * @param name
+     *        the parameter name without the leading '@'
+     * @return the position, or -1 if the procedure has no parameter with that name
+     */
+    int indexOf(String name) {
+        Integer position = positions.get(name);
+        if (null == position)
+            position = caseInsensitivePositions.get(foldCase(name));
+        return (null == position) ? -1 : position;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * ResponseSpillFile holds the payloads of response packets that a TDSReader has buffered beyond the
+ * responseBufferingMaxMemory limit.
+ *
+ * Packets are appended to an anonymous temporary file and read back by position when the reader reaches them. The
+ * file is deleted as soon as it is opened where the platform allows it, and otherwise when it is closed, so no data is
+ * left behind on disk once the response has been processed.
+ */
+final class ResponseSpillFile {
+    private static final Logger logger = Logger.getLogger("com.microsoft.sqlserver.jdbc.internals.TDS.Reader");
+
+    private final String traceID;
+    private final FileChannel channel;
+    private long size = 0;
+
+    ResponseSpillFile(String traceID) throws IOException {
+        this.traceID = traceID + " (ResponseSpillFile)";
+
+        Path path = Files.createTempFile("mssql-jdbc-response", ".tmp");
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+
+        // Unlink the file right away where the platform allows it; the open channel keeps the data reachable.
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            if (logger.isLoggable(Level.FINEST))
+                logger.finest(toString() + " Spill file will be deleted on close: " + e.getMessage());
+        }
+
+        if (logger.isLoggable(Level.FINER))
+            logger.finer(toString() + " Created spill file");
+    }
+
+    final public String toString() {
+        return traceID;
+    }
+
+    /**
+     * Appends bytes to the spill file.
+     *
+     * @return the offset at which the bytes were written
+     */
+    long write(byte[] bytes, int length) throws IOException {
+        long offset = size;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        long position = offset;
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+        size = position;
+        return offset;
+    }
+
+    /**
+     * Reads back bytes that were previously written at the given offset.
+     */
+    void read(long offset, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0)
+                throw new IOException(SQLServerException.getErrString("R_truncatedServerResponse"));
+            position += bytesRead;
+        }
+    }
+
+    /**
+     * @return the number of bytes written to the spill file
+     */
+    long size() {
+        return size;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (logger.isLoggable(Level.FINE))
+                logger.log(Level.FINE, toString() + ": Ignored error closing spill file", e);
+        }
+
+        if (logger.isLoggable(Level.FINER))
+            logger.finer(toString() + " Closed spill file after spilling " + size + " bytes");
+    }
+}
@@ -84,8 +84,21 @@ final class SQLCollation implements java.io.Serializable {
         /*
          * TDS rule for collation: COLLATION = LCID ColFlags Version SortId
          */
-        info = tdsReader.readInt(); // 4 bytes, contains: LCID ColFlags Version
-        sortId = tdsReader.readUnsignedByte(); // 1 byte, contains: SortId
+        this(tdsReader.readInt(), // 4 bytes, contains: LCID ColFlags Version
+                tdsReader.readUnsignedByte()); // 1 byte, contains: SortId
+    }
+
+    /**
+     * Creates the collation with the given TDS collation info and sort ID.
+     * 
+     * @param info
+     *        the first 4 bytes of the TDS collation: LCID, ColFlags and Version
+     * @param sortId
+     *        the 5th byte of the TDS collation
+     */
+    SQLCollation(int info, int sortId) throws UnsupportedEncodingException {
+        this.info = info;
+        this.sortId = sortId;
         if (UTF8_IN_TDSCOLLATION == (info & UTF8_IN_TDSCOLLATION)) {
             encoding = Encoding.UTF8;
         } else {
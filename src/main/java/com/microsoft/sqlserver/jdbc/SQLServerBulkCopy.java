@@ -165,10 +165,15 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
 
     private ResultSet destinationTableMetadata;
 
+    /**
+     * Metadata of the destination table that was read before, which saves the queries for it.
+     */
+    private DestinationMetadata destinationMetadata;
+
     /**
      * Metadata for the destination table columns
      */
-    class BulkColumnMetaData {
+    static class BulkColumnMetaData {
         String columnName;
         SSType ssType = null;
         int jdbcType;
@@ -226,6 +231,34 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
         }
     };
 
+    /**
+     * The metadata of a destination table as the server describes it. Instances are not modified once read, so they
+     * can be reused for later bulk copies into the same table.
+     */
+    static final class DestinationMetadata {
+        private final Column[] columns;
+        private final Map<Integer, BulkColumnMetaData> columnMetadata;
+        private final CekTable cekTable;
+
+        private DestinationMetadata(Column[] columns, Map<Integer, BulkColumnMetaData> columnMetadata,
+                CekTable cekTable) {
+            this.columns = columns;
+            this.columnMetadata = columnMetadata;
+            this.cekTable = cekTable;
+        }
+
+        int getColumnCount() {
+            return columns.length;
+        }
+
+        /**
+         * Returns the column as described by SET FMTONLY, indexed from 1.
+         */
+        Column getColumn(int index) {
+            return columns[index - 1];
+        }
+    }
+
     /**
      * A map to store the metadata information for the destination table.
      */
@@ -252,53 +285,32 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
      */
     private final class BulkTimeoutTimer implements Runnable {
         private final int timeoutSeconds;
-        private int secondsRemaining;
         private final TDSCommand command;
-        private Thread timerThread;
-        private volatile boolean canceled = false;
+        private HashedWheelTimer.Timeout timeout;
 
         BulkTimeoutTimer(int timeoutSeconds, TDSCommand command) {
             assert timeoutSeconds > 0;
             assert null != command;
 
             this.timeoutSeconds = timeoutSeconds;
-            this.secondsRemaining = timeoutSeconds;
             this.command = command;
         }
 
         final void start() {
-            timerThread = new Thread(this);
-            timerThread.setDaemon(true);
-            timerThread.start();
+            timeout = HashedWheelTimer.getTimer().newTimeout(this, timeoutSeconds * 1000L);
         }
 
         final void stop() {
-            canceled = true;
-            timerThread.interrupt();
+            timeout.cancel();
         }
 
         final boolean expired() {
-            return (secondsRemaining <= 0);
+            return timeout.isExpired();
         }
 
         public void run() {
-            try {
-                // Poll every second while time is left on the timer.
-                // Return if/when the timer is canceled.
-                do {
-                    if (canceled)
-                        return;
-
-                    Thread.sleep(1000);
-                } while (--secondsRemaining > 0);
-            } catch (InterruptedException e) {
-                // re-interrupt the current thread, in order to restore the thread's interrupt status.
-                Thread.currentThread().interrupt();
-                return;
-            }
-
-            // If the timer wasn't canceled before it ran out of
-            // time then interrupt the registered command.
+            // The shared timer only runs this once the timeout expired without
+            // being canceled, so interrupt the registered command.
             try {
                 command.interrupt(SQLServerException.getErrString("R_queryTimedOut"));
             } catch (SQLServerException e) {
@@ -1700,16 +1712,43 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
                     SQLServerException.getErrString("R_invalidDestinationTable"), null, false);
         }
 
+        DestinationMetadata metadata = destinationMetadata;
+        if (null == metadata) {
+            metadata = readDestinationMetadata(connection, destinationTableName, stmtColumnEncriptionSetting,
+                    (SQLServerResultSet) destinationTableMetadata);
+        }
+
+        destColumnCount = metadata.getColumnCount();
+        destColumnMetadata = metadata.columnMetadata;
+        destCekTable = metadata.cekTable;
+    }
+
+    /**
+     * Reads the metadata of a destination table.
+     * 
+     * @param connection
+     *        the connection to query
+     * @param destinationTableName
+     *        the name of the destination table
+     * @param stmtColumnEncriptionSetting
+     *        the column encryption setting for the queries
+     * @param fmtOnlyResultSet
+     *        the result of SET FMTONLY ON SELECT * FROM the table if the caller ran it already, or null. It is closed.
+     * @return the metadata of the table
+     * @throws SQLServerException
+     *         when the metadata cannot be read
+     */
+    static DestinationMetadata readDestinationMetadata(SQLServerConnection connection, String destinationTableName,
+            SQLServerStatementColumnEncryptionSetting stmtColumnEncriptionSetting,
+            SQLServerResultSet fmtOnlyResultSet) throws SQLServerException {
         String escapedDestinationTableName = Util.escapeSingleQuotes(destinationTableName);
 
-        SQLServerResultSet rs = null;
+        SQLServerResultSet rs = fmtOnlyResultSet;
         SQLServerStatement stmt = null;
         String metaDataQuery = null;
 
         try {
-            if (null != destinationTableMetadata) {
-                rs = (SQLServerResultSet) destinationTableMetadata;
-            } else {
+            if (null == rs) {
                 stmt = (SQLServerStatement) connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
                         ResultSet.CONCUR_READ_ONLY, connection.getHoldability(), stmtColumnEncriptionSetting);
 
@@ -1718,9 +1757,9 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
                         + escapedDestinationTableName + " '");
             }
 
-            destColumnCount = rs.getMetaData().getColumnCount();
-            destColumnMetadata = new HashMap<>();
-            destCekTable = rs.getCekTable();
+            int columnCount = rs.getMetaData().getColumnCount();
+            Column[] columns = new Column[columnCount];
+            Map<Integer, BulkColumnMetaData> columnMetadata = new HashMap<>();
 
             if (!connection.getServerSupportsColumnEncryption()) {
                 metaDataQuery = "select collation_name from sys.columns where " + "object_id=OBJECT_ID('"
@@ -1732,19 +1771,21 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
 
             try (SQLServerStatement statementMoreMetadata = (SQLServerStatement) connection.createStatement();
                     SQLServerResultSet rsMoreMetaData = statementMoreMetadata.executeQueryInternal(metaDataQuery)) {
-                for (int i = 1; i <= destColumnCount; ++i) {
+                for (int i = 1; i <= columnCount; ++i) {
+                    columns[i - 1] = rs.getColumn(i);
                     if (rsMoreMetaData.next()) {
                         String bulkCopyEncryptionType = null;
                         if (connection.getServerSupportsColumnEncryption()) {
                             bulkCopyEncryptionType = rsMoreMetaData.getString("encryption_type");
                         }
-                        destColumnMetadata.put(i, new BulkColumnMetaData(rs.getColumn(i),
+                        columnMetadata.put(i, new BulkColumnMetaData(rs.getColumn(i),
                                 rsMoreMetaData.getString("collation_name"), bulkCopyEncryptionType));
                     } else {
-                        destColumnMetadata.put(i, new BulkColumnMetaData(rs.getColumn(i)));
+                        columnMetadata.put(i, new BulkColumnMetaData(rs.getColumn(i)));
                     }
                 }
             }
+            return new DestinationMetadata(columns, columnMetadata, rs.getCekTable());
         } catch (SQLException e) {
             // Unable to retrieve metadata for destination
             throw new SQLServerException(SQLServerException.getErrString("R_unableRetrieveColMeta"), e);
@@ -2231,15 +2272,8 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
                             } else {
                                 tdsWriter.writeShort((short) (colValueStr.length()));
                                 // converting string into destination collation using Charset
-
-                                SQLCollation destCollation = destColumnMetadata.get(destColOrdinal).collation;
-                                if (null != destCollation) {
-                                    tdsWriter.writeBytes(colValueStr
-                                            .getBytes(destColumnMetadata.get(destColOrdinal).collation.getCharset()));
-
-                                } else {
-                                    tdsWriter.writeBytes(colValueStr.getBytes());
-                                }
+                                tdsWriter.writeNonUnicodeString(colValueStr,
+                                        destColumnMetadata.get(destColOrdinal).collation);
                             }
                         }
                     }
@@ -2613,13 +2647,8 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
                 writeBulkCopySqlVariantHeader(9 + length, TDSType.BIGCHAR.byteValue(), (byte) 7, tdsWriter);
                 tdsWriter.writeCollationForSqlVariant(variantType); // writes collation info and sortID
                 tdsWriter.writeShort((short) (length));
-                SQLCollation destCollation = destColumnMetadata.get(destColOrdinal).collation;
-                if (null != destCollation) {
-                    tdsWriter.writeBytes(colValue.toString()
-                            .getBytes(destColumnMetadata.get(destColOrdinal).collation.getCharset()));
-                } else {
-                    tdsWriter.writeBytes(colValue.toString().getBytes());
-                }
+                tdsWriter.writeNonUnicodeString(colValue.toString(),
+                        destColumnMetadata.get(destColOrdinal).collation);
                 break;
 
             case BIGVARCHAR:
@@ -2627,14 +2656,8 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
                 writeBulkCopySqlVariantHeader(9 + length, TDSType.BIGVARCHAR.byteValue(), (byte) 7, tdsWriter);
                 tdsWriter.writeCollationForSqlVariant(variantType); // writes collation info and sortID
                 tdsWriter.writeShort((short) (length));
-
-                destCollation = destColumnMetadata.get(destColOrdinal).collation;
-                if (null != destCollation) {
-                    tdsWriter.writeBytes(colValue.toString()
-                            .getBytes(destColumnMetadata.get(destColOrdinal).collation.getCharset()));
-                } else {
-                    tdsWriter.writeBytes(colValue.toString().getBytes());
-                }
+                tdsWriter.writeNonUnicodeString(colValue.toString(),
+                        destColumnMetadata.get(destColOrdinal).collation);
                 break;
 
             case NCHAR:
@@ -2673,13 +2696,8 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
                 tdsWriter.writeCollationForSqlVariant(variantType); // writes collation info and sortID
                 tdsWriter.writeShort((short) (length));
                 // converting string into destination collation using Charset
-                destCollation = destColumnMetadata.get(destColOrdinal).collation;
-                if (null != destCollation) {
-                    tdsWriter.writeBytes(colValue.toString()
-                            .getBytes(destColumnMetadata.get(destColOrdinal).collation.getCharset()));
-                } else {
-                    tdsWriter.writeBytes(colValue.toString().getBytes());
-                }
+                tdsWriter.writeNonUnicodeString(colValue.toString(),
+                        destColumnMetadata.get(destColOrdinal).collation);
                 break;
 
             case BIGBINARY:
@@ -3579,4 +3597,8 @@ public class SQLServerBulkCopy implements java.lang.AutoCloseable, java.io.Seria
     protected void setDestinationTableMetadata(SQLServerResultSet rs) {
         destinationTableMetadata = rs;
     }
+
+    void setDestinationMetadata(DestinationMetadata destinationMetadata) {
+        this.destinationMetadata = destinationMetadata;
+    }
 }
@@ -26,6 +26,9 @@ import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.UUID;
 
 
@@ -41,7 +44,13 @@ import java.util.UUID;
 public class SQLServerCallableStatement extends SQLServerPreparedStatement implements ISQLServerCallableStatement {
 
     /** the call param names */
-    private ArrayList<String> parameterNames;
+    private ProcedureParameterNames parameterNames;
+
+    /** Whether the call param names came from the connection's cache, and may be stale */
+    private boolean parameterNamesFromCache;
+
+    /** The indexes that parameter names have been looked up as, by name without the leading '@' */
+    private HashMap<String, Integer> namedParameterIndexes;
 
     /** Number of registered OUT parameters */
     int nOutParams = 0;
@@ -1232,6 +1241,152 @@ public class SQLServerCallableStatement extends SQLServerPreparedStatement imple
 
     /* JDBC 3.0 */
 
+    /**
+     * Gets the parameter names of the procedure from the server with sp_sproc_columns, and caches them on the connection.
+     * 
+     * @param threePartName
+     *        the procedure name
+     * @param columnName
+     *        the parameter name being looked up, for error messages
+     * @throws SQLServerException
+     *         when an error occurs
+     * @return the parameter names
+     */
+    private ProcedureParameterNames describeParameterNames(ThreePartName threePartName,
+            String columnName) throws SQLServerException {
+        ArrayList<String> names = new ArrayList<>();
+        try (SQLServerStatement s = (SQLServerStatement) connection.createStatement()) {
+            // Note we are concatenating the information from the passed in sql, not any arguments provided by the
+            // user
+            // if the user can execute the sql, any fragments of it is potentially executed via the meta data call
+            // through injection
+            // is not a security issue.
+
+            StringBuilder metaQuery = new StringBuilder("exec sp_sproc_columns ");
+            if (null != threePartName.getDatabasePart()) {
+                metaQuery.append("@procedure_qualifier=");
+                metaQuery.append(threePartName.getDatabasePart());
+                metaQuery.append(", ");
+            }
+            if (null != threePartName.getOwnerPart()) {
+                metaQuery.append("@procedure_owner=");
+                metaQuery.append(threePartName.getOwnerPart());
+                metaQuery.append(", ");
+            }
+            if (null != threePartName.getProcedurePart()) {
+                // we should always have a procedure name part
+                metaQuery.append("@procedure_name=");
+                metaQuery.append(threePartName.getProcedurePart());
+                metaQuery.append(" , @ODBCVer=3");
+            } else {
+                // This should rarely happen, this will only happen if we can't find the stored procedure name
+                // invalidly formatted call syntax.
+                MessageFormat form = new MessageFormat(
+                        SQLServerException.getErrString("R_parameterNotDefinedForProcedure"));
+                Object[] msgArgs = {columnName, ""};
+                SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), "07009", false);
+            }
+
+            ResultSet rs = s.executeQueryInternal(metaQuery.toString());
+            while (rs.next()) {
+                String parameterName = rs.getString(4);
+                names.add(parameterName.trim());
+            }
+        } catch (SQLException e) {
+            SQLServerException.makeFromDriverError(connection, this, e.toString(), null, false);
+        }
+
+        ProcedureParameterNames parameterNames = new ProcedureParameterNames(names);
+
+        // Nothing is returned when the user has no access to the procedure, which may change.
+        if (0 < parameterNames.size())
+            connection.registerCachedProcedureParameterNames(threePartName, parameterNames);
+        return parameterNames;
+    }
+
+    /**
+     * Returns the index of a parameter in the call param names, or -1 if the procedure has no parameter with that name.
+     * 
+     * @param columnNameWithoutAtSign
+     *        the name without the leading '@'
+     */
+    private int indexOfParameter(String columnNameWithoutAtSign) {
+        // In order to be as accurate as possible when locating parameter name
+        // indexes, as well as be deterministic when running on various client
+        // locales, we search for parameter names using the following scheme:
+
+        // 1. Search using case-sensitive non-locale specific (binary) compare first.
+        // 2. Search using case-insensitive, non-locale specific (binary) compare last.
+        int matchPos = parameterNames.indexOf(columnNameWithoutAtSign);
+        if (-1 == matchPos)
+            return -1;
+
+        // @RETURN_VALUE is always in the list. If the user uses return value ?=call(@p1) syntax then
+        // @p1 is index 2 otherwise its index 1.
+        if (bReturnValueSyntax) // 3.2717
+            return matchPos + 1;
+        else
+            return matchPos;
+    }
+
+    /**
+     * Describes the parameters of the procedure again when its cached parameter names turn out to be stale, and moves
+     * the parameters that were set by name to the positions their names now have.
+     * 
+     * @param columnName
+     *        the parameter name being looked up, for error messages
+     * @throws SQLServerException
+     *         when an error occurs
+     * @return true if parameters set by name moved to other positions
+     */
+    private boolean refreshParameterNames(String columnName) throws SQLServerException {
+        ThreePartName threePartName = ThreePartName.parse(procedureName);
+        connection.removeCachedProcedureParameterNames(threePartName);
+        parameterNames = describeParameterNames(threePartName, columnName);
+        parameterNamesFromCache = false;
+        if (null == namedParameterIndexes || namedParameterIndexes.isEmpty())
+            return false;
+
+        HashMap<String, Integer> newIndexes = new HashMap<>();
+        Parameter[] params = inOutParam.clone();
+        boolean moved = false;
+        for (Map.Entry<String, Integer> entry : namedParameterIndexes.entrySet()) {
+            int index = indexOfParameter(entry.getKey());
+            if (index < 1 || index > inOutParam.length) {
+                namedParameterIndexes.clear();
+                return false;
+            }
+            newIndexes.put(entry.getKey(), index);
+            params[index - 1] = inOutParam[entry.getValue() - 1];
+            moved |= index != entry.getValue();
+        }
+
+        // The values can only be moved when the parameters set by name still occupy the same positions between them.
+        if (!new HashSet<>(newIndexes.values()).equals(new HashSet<>(namedParameterIndexes.values()))) {
+            namedParameterIndexes.clear();
+            return false;
+        }
+
+        inOutParam = params;
+        namedParameterIndexes = newIndexes;
+        return moved;
+    }
+
+    @Override
+    boolean retryBasedOnStaleParameterNames(SQLException e, int attempt) throws SQLServerException {
+        // Only retry based on these error codes, which parameter values sent to the wrong positions cause:
+        // 201: Procedure or function %.*ls expects parameter '%.*ls', which was not supplied.
+        // 8114: Error converting data type %ls to %ls.
+        // 8145: %.*ls is not a parameter for procedure %.*ls.
+        // Encryption metadata is resolved by position, so it is not retried with Always Encrypted.
+        if (1 != attempt || !parameterNamesFromCache
+                || Util.shouldHonorAEForParameters(stmtColumnEncriptionSetting, connection))
+            return false;
+        if (201 != e.getErrorCode() && 8114 != e.getErrorCode() && 8145 != e.getErrorCode())
+            return false;
+        return refreshParameterNames(null);
+    }
+
     /**
      * Find a column's index given its name.
      * 
@@ -1242,56 +1397,17 @@ public class SQLServerCallableStatement extends SQLServerPreparedStatement imple
      * @return the index
      */
     private int findColumn(String columnName) throws SQLServerException {
-        if (parameterNames == null) {
-            try (SQLServerStatement s = (SQLServerStatement) connection.createStatement()) {
-                // Note we are concatenating the information from the passed in sql, not any arguments provided by the
-                // user
-                // if the user can execute the sql, any fragments of it is potentially executed via the meta data call
-                // through injection
-                // is not a security issue.
-
-                ThreePartName threePartName = ThreePartName.parse(procedureName);
-                StringBuilder metaQuery = new StringBuilder("exec sp_sproc_columns ");
-                if (null != threePartName.getDatabasePart()) {
-                    metaQuery.append("@procedure_qualifier=");
-                    metaQuery.append(threePartName.getDatabasePart());
-                    metaQuery.append(", ");
-                }
-                if (null != threePartName.getOwnerPart()) {
-                    metaQuery.append("@procedure_owner=");
-                    metaQuery.append(threePartName.getOwnerPart());
-                    metaQuery.append(", ");
-                }
-                if (null != threePartName.getProcedurePart()) {
-                    // we should always have a procedure name part
-                    metaQuery.append("@procedure_name=");
-                    metaQuery.append(threePartName.getProcedurePart());
-                    metaQuery.append(" , @ODBCVer=3");
-                } else {
-                    // This should rarely happen, this will only happen if we can't find the stored procedure name
-                    // invalidly formatted call syntax.
-                    MessageFormat form = new MessageFormat(
-                            SQLServerException.getErrString("R_parameterNotDefinedForProcedure"));
-                    Object[] msgArgs = {columnName, ""};
-                    SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), "07009", false);
-                }
-
-                ResultSet rs = s.executeQueryInternal(metaQuery.toString());
-                parameterNames = new ArrayList<>();
-                while (rs.next()) {
-                    String parameterName = rs.getString(4);
-                    parameterNames.add(parameterName.trim());
-                }
-            } catch (SQLException e) {
-                SQLServerException.makeFromDriverError(connection, this, e.toString(), null, false);
-            }
-
+        if (null == parameterNames) {
+            // Cached parameter names are trusted until the procedure is found to have changed, or until the
+            // application clears them.
+            ThreePartName threePartName = ThreePartName.parse(procedureName);
+            parameterNames = connection.getCachedProcedureParameterNames(threePartName);
+            parameterNamesFromCache = null != parameterNames;
+            if (!parameterNamesFromCache)
+                parameterNames = describeParameterNames(threePartName, columnName);
         }
 
-        int l = 0;
-        if (parameterNames != null)
-            l = parameterNames.size();
-        if (l == 0)// Server didn't return anything, user might not have access
+        if (0 == parameterNames.size())// Server didn't return anything, user might not have access
             return 1;// attempting to look up the first column will return no access exception
 
         // handle `@name` as well as `name`, since `@name` is what's returned
@@ -1303,52 +1419,25 @@ public class SQLServerCallableStatement extends SQLServerPreparedStatement imple
             columnNameWithoutAtSign = columnName;
         }
 
-        // In order to be as accurate as possible when locating parameter name
-        // indexes, as well as be deterministic when running on various client
-        // locales, we search for parameter names using the following scheme:
-
-        // 1. Search using case-sensitive non-locale specific (binary) compare first.
-        // 2. Search using case-insensitive, non-locale specific (binary) compare last.
+        int index = indexOfParameter(columnNameWithoutAtSign);
 
-        int i;
-        int matchPos = -1;
-        // Search using case-sensitive, non-locale specific (binary) compare.
-        // If the user supplies a true match for the parameter name, we will find it here.
-        for (i = 0; i < l; i++) {
-            String sParam = parameterNames.get(i);
-            sParam = sParam.substring(1, sParam.length());
-            if (sParam.equals(columnNameWithoutAtSign)) {
-                matchPos = i;
-                break;
-            }
+        // The procedure may have been altered since its parameter names were cached.
+        if (-1 == index && parameterNamesFromCache) {
+            refreshParameterNames(columnName);
+            index = indexOfParameter(columnNameWithoutAtSign);
         }
 
-        if (-1 == matchPos) {
-            // Check for case-insensitive match using a non-locale aware method.
-            // Use VM supplied String.equalsIgnoreCase to do the "case-insensitive search".
-            for (i = 0; i < l; i++) {
-                String sParam = parameterNames.get(i);
-                sParam = sParam.substring(1, sParam.length());
-                if (sParam.equalsIgnoreCase(columnNameWithoutAtSign)) {
-                    matchPos = i;
-                    break;
-                }
-            }
-        }
-
-        if (-1 == matchPos) {
+        if (-1 == index) {
             MessageFormat form = new MessageFormat(
                     SQLServerException.getErrString("R_parameterNotDefinedForProcedure"));
             Object[] msgArgs = {columnName, procedureName};
             SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), "07009", false);
         }
 
-        // @RETURN_VALUE is always in the list. If the user uses return value ?=call(@p1) syntax then
-        // @p1 is index 2 otherwise its index 1.
-        if (bReturnValueSyntax) // 3.2717
-            return matchPos + 1;
-        else
-            return matchPos;
+        if (null == namedParameterIndexes)
+            namedParameterIndexes = new HashMap<>();
+        namedParameterIndexes.put(columnNameWithoutAtSign, index);
+        return index;
     }
 
     @Override
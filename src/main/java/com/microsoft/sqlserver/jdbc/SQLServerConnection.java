@@ -13,6 +13,11 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.AccessController;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -34,13 +39,17 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
 import javax.sql.XAConnection;
 
 import org.ietf.jgss.GSSCredential;
@@ -366,7 +375,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         }
     }
 
-    class SqlFedAuthInfo {
+    static class SqlFedAuthInfo {
         String spn;
         String stsurl;
 
@@ -453,6 +462,83 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         return multiSubnetFailover;
     }
 
+    private boolean useSocketChannel = SQLServerDriverBooleanProperty.USE_SOCKET_CHANNEL.getDefaultValue();
+
+    final boolean getUseSocketChannel() {
+        return useSocketChannel;
+    }
+
+    private boolean deferSessionStateChanges = SQLServerDriverBooleanProperty.DEFER_SESSION_STATE_CHANGES
+            .getDefaultValue();
+
+    // Auto-commit mode and transaction isolation level the server is known to have applied. When session state changes
+    // are deferred, these differ from databaseAutoCommitMode and transactionIsolationLevel until a response confirms
+    // the changes.
+    private boolean serverAutoCommitMode = true;
+    private int serverTransactionIsolationLevel = Connection.TRANSACTION_READ_COMMITTED;
+
+    // Session state sent with the request of the executing command, which its response has yet to confirm.
+    private boolean sessionStateInFlight = false;
+    private boolean sentAutoCommitMode;
+    private int sentTransactionIsolationLevel;
+
+    // Flag set when a request that carried session state changes failed, so it is unknown whether the server applied
+    // them. The full session state is then sent again in a batch of its own.
+    private boolean sessionStateUnconfirmed = false;
+
+    private int responseBufferingMaxMemory = SQLServerDriverIntProperty.RESPONSE_BUFFERING_MAX_MEMORY
+            .getDefaultValue();
+
+    /**
+     * Returns the number of bytes of a buffered response that may be held in memory, or 0 if there is no limit.
+     */
+    final int getResponseBufferingMaxMemory() {
+        return responseBufferingMaxMemory;
+    }
+
+    // Recent packets of this connection, kept when packetCaptureBufferSize is set.
+    private PacketCapture packetCapture;
+
+    final PacketCapture getPacketCapture() {
+        return packetCapture;
+    }
+
+    private int validationActivityWindow = SQLServerDriverIntProperty.VALIDATION_ACTIVITY_WINDOW.getDefaultValue();
+
+    // System.nanoTime() of the last complete response received, tracked when validationActivityWindow or
+    // connectRetryCount is set.
+    private volatile long lastResponseNanos;
+
+    /**
+     * Notes that a complete response has been received from the server.
+     */
+    final void onResponseReceived() {
+        if (0 != validationActivityWindow || 0 != connectRetryCount)
+            lastResponseNanos = System.nanoTime();
+    }
+
+    private int connectRetryCount = SQLServerDriverIntProperty.CONNECT_RETRY_COUNT.getDefaultValue();
+    private int connectRetryInterval = SQLServerDriverIntProperty.CONNECT_RETRY_INTERVAL.getDefaultValue();
+
+    // A connection is checked for a broken network connection before a request only after it has been idle this long.
+    private static final long SESSION_RECOVERY_IDLE_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    // State of the session, kept to recover it when connectRetryCount is set.
+    private SessionRecovery sessionRecovery = new SessionRecovery();
+
+    // The session that a recovery login restores, or null when no recovery is in progress.
+    private SessionRecovery recoveringSession;
+
+    // The properties the connection was opened with, to log in again when the session is recovered.
+    private Properties recoveryProperties;
+
+    // Incremented each time the session is recovered. Server-side handles of earlier sessions are no longer valid.
+    private volatile int sessionRecoveryCount = 0;
+
+    final int getSessionRecoveryCount() {
+        return sessionRecoveryCount;
+    }
+
     private boolean transparentNetworkIPResolution;
 
     final boolean getTransparentNetworkIPResolution() {
@@ -528,6 +614,31 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         this.useBulkCopyForBatchInsert = useBulkCopyForBatchInsert;
     }
 
+    /**
+     * boolean value for deciding if the driver should combine the rows of batch inserts into multi-row INSERT
+     * statements.
+     */
+    private boolean rewriteBatchedInserts;
+
+    /**
+     * Returns the rewriteBatchedInserts value.
+     * 
+     * @return flag for combining the rows of batch insert operations into multi-row INSERT statements.
+     */
+    public boolean getRewriteBatchedInserts() {
+        return rewriteBatchedInserts;
+    }
+
+    /**
+     * Specifies the flag for combining the rows of batch insert operations into multi-row INSERT statements.
+     * 
+     * @param rewriteBatchedInserts
+     *        boolean value for rewriteBatchedInserts.
+     */
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts) {
+        this.rewriteBatchedInserts = rewriteBatchedInserts;
+    }
+
     boolean userSetTNIR = true;
 
     private boolean sendTimeAsDatetime = SQLServerDriverBooleanProperty.SEND_TIME_AS_DATETIME.getDefaultValue();
@@ -863,6 +974,9 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         maxRows = 0; // default: 0 --> no limit
         nLockTimeout = -1;
         databaseAutoCommitMode = true;// auto commit mode
+        serverAutoCommitMode = true;
+        serverTransactionIsolationLevel = Connection.TRANSACTION_READ_COMMITTED;
+        sessionStateUnconfirmed = false;
         holdability = ResultSet.HOLD_CURSORS_OVER_COMMIT;
         sqlWarnings = null;
         sCatalog = originalCatalog;
@@ -1227,6 +1341,13 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         try {
             activeConnectionProperties = (Properties) propsIn.clone();
 
+            if (null == recoveringSession) {
+                recoveryProperties = (Properties) propsIn.clone();
+                sessionRecovery = new SessionRecovery();
+            } else {
+                sessionRecovery = new SessionRecovery(recoveringSession);
+            }
+
             pooledConnectionParent = pooledConnection;
 
             String hostNameInCertificate = activeConnectionProperties
@@ -1831,6 +1952,129 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 useBulkCopyForBatchInsert = booleanPropertyOn(sPropKey, sPropValue);
             }
 
+            sPropKey = SQLServerDriverBooleanProperty.REWRITE_BATCHED_INSERTS.toString();
+            sPropValue = activeConnectionProperties.getProperty(sPropKey);
+            if (null != sPropValue) {
+                rewriteBatchedInserts = booleanPropertyOn(sPropKey, sPropValue);
+            }
+
+            sPropKey = SQLServerDriverBooleanProperty.USE_SOCKET_CHANNEL.toString();
+            sPropValue = activeConnectionProperties.getProperty(sPropKey);
+            if (null != sPropValue) {
+                useSocketChannel = booleanPropertyOn(sPropKey, sPropValue);
+            }
+
+            sPropKey = SQLServerDriverBooleanProperty.DEFER_SESSION_STATE_CHANGES.toString();
+            sPropValue = activeConnectionProperties.getProperty(sPropKey);
+            if (null != sPropValue) {
+                deferSessionStateChanges = booleanPropertyOn(sPropKey, sPropValue);
+            }
+
+            sPropKey = SQLServerDriverIntProperty.RESPONSE_BUFFERING_MAX_MEMORY.toString();
+            if (activeConnectionProperties.getProperty(sPropKey) != null
+                    && activeConnectionProperties.getProperty(sPropKey).length() > 0) {
+                try {
+                    int n = Integer.parseInt(activeConnectionProperties.getProperty(sPropKey));
+                    if (n >= 0) {
+                        responseBufferingMaxMemory = n;
+                    } else {
+                        MessageFormat form = new MessageFormat(
+                                SQLServerException.getErrString("R_invalidResponseBufferingMaxMemory"));
+                        Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                        SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                    }
+                } catch (NumberFormatException e) {
+                    MessageFormat form = new MessageFormat(
+                            SQLServerException.getErrString("R_invalidResponseBufferingMaxMemory"));
+                    Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                    SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                }
+            }
+
+            sPropKey = SQLServerDriverIntProperty.PACKET_CAPTURE_BUFFER_SIZE.toString();
+            if (activeConnectionProperties.getProperty(sPropKey) != null
+                    && activeConnectionProperties.getProperty(sPropKey).length() > 0) {
+                try {
+                    int n = Integer.parseInt(activeConnectionProperties.getProperty(sPropKey));
+                    if (n > 0) {
+                        packetCapture = new PacketCapture(n);
+                    } else if (n < 0) {
+                        MessageFormat form = new MessageFormat(
+                                SQLServerException.getErrString("R_invalidPacketCaptureBufferSize"));
+                        Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                        SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                    }
+                } catch (NumberFormatException e) {
+                    MessageFormat form = new MessageFormat(
+                            SQLServerException.getErrString("R_invalidPacketCaptureBufferSize"));
+                    Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                    SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                }
+            }
+
+            sPropKey = SQLServerDriverIntProperty.VALIDATION_ACTIVITY_WINDOW.toString();
+            if (activeConnectionProperties.getProperty(sPropKey) != null
+                    && activeConnectionProperties.getProperty(sPropKey).length() > 0) {
+                try {
+                    int n = Integer.parseInt(activeConnectionProperties.getProperty(sPropKey));
+                    if (n >= 0) {
+                        validationActivityWindow = n;
+                    } else {
+                        MessageFormat form = new MessageFormat(
+                                SQLServerException.getErrString("R_invalidValidationActivityWindow"));
+                        Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                        SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                    }
+                } catch (NumberFormatException e) {
+                    MessageFormat form = new MessageFormat(
+                            SQLServerException.getErrString("R_invalidValidationActivityWindow"));
+                    Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                    SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                }
+            }
+
+            sPropKey = SQLServerDriverIntProperty.CONNECT_RETRY_COUNT.toString();
+            if (activeConnectionProperties.getProperty(sPropKey) != null
+                    && activeConnectionProperties.getProperty(sPropKey).length() > 0) {
+                try {
+                    int n = Integer.parseInt(activeConnectionProperties.getProperty(sPropKey));
+                    if (n >= 0 && n <= 255) {
+                        connectRetryCount = n;
+                    } else {
+                        MessageFormat form = new MessageFormat(
+                                SQLServerException.getErrString("R_invalidConnectRetryCount"));
+                        Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                        SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                    }
+                } catch (NumberFormatException e) {
+                    MessageFormat form = new MessageFormat(
+                            SQLServerException.getErrString("R_invalidConnectRetryCount"));
+                    Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                    SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                }
+            }
+
+            sPropKey = SQLServerDriverIntProperty.CONNECT_RETRY_INTERVAL.toString();
+            if (activeConnectionProperties.getProperty(sPropKey) != null
+                    && activeConnectionProperties.getProperty(sPropKey).length() > 0) {
+                try {
+                    int n = Integer.parseInt(activeConnectionProperties.getProperty(sPropKey));
+                    if (n >= 1 && n <= 60) {
+                        connectRetryInterval = n;
+                    } else {
+                        MessageFormat form = new MessageFormat(
+                                SQLServerException.getErrString("R_invalidConnectRetryInterval"));
+                        Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                        SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                    }
+                } catch (NumberFormatException e) {
+                    MessageFormat form = new MessageFormat(
+                            SQLServerException.getErrString("R_invalidConnectRetryInterval"));
+                    Object[] msgArgs = {activeConnectionProperties.getProperty(sPropKey)};
+                    SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+                }
+            }
+
             sPropKey = SQLServerDriverStringProperty.SSL_PROTOCOL.toString();
             sPropValue = activeConnectionProperties.getProperty(sPropKey);
             if (null == sPropValue) {
@@ -1888,6 +2132,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
             long startTime = System.currentTimeMillis();
             login(activeConnectionProperties.getProperty(serverNameProperty), instanceValue, nPort, mirror, fo,
                     loginTimeoutSeconds, startTime);
+            sessionRecovery.onLoginComplete();
 
             // If SSL is to be used for the duration of the connection, then make sure
             // that the final negotiated TDS packet size is no larger than the SSL record size.
@@ -1918,7 +2163,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
             if (!state.equals(State.Opened)) {
                 // if connection is not closed, close it
                 if (!state.equals(State.Closed))
-                    this.close();
+                    closeAfterFailedLogin();
             }
         }
 
@@ -2105,6 +2350,21 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 } else
                     break; // leave the while loop -- we've successfully connected
             } catch (SQLServerException sqlex) {
+                // The instance may have moved since its port was cached. Ask SQL Browser again on the next attempt.
+                if (instancePortFromCache && currentConnectPlaceHolder == currentPrimaryPlaceHolder
+                        && !state.equals(State.Connected)) {
+                    if (connectionlogger.isLoggable(Level.FINE))
+                        connectionlogger.fine(toString() + " Discarding cached SQL Browser port for instance: "
+                                + primaryInstanceName);
+                    InstancePortCache.remove(primary, primaryInstanceName);
+                    instancePortFromCache = false;
+                    currentPrimaryPlaceHolder = null;
+                }
+                if (null != currentFOPlaceHolder && currentConnectPlaceHolder == currentFOPlaceHolder
+                        && !state.equals(State.Connected) && tempFailover.discardCachedInstancePort(this)) {
+                    currentFOPlaceHolder = null;
+                }
+
                 if ((SQLServerException.LOGON_FAILED == sqlex.getErrorCode()) // actual logon failed, i.e. bad password
                         || (SQLServerException.PASSWORD_EXPIRED == sqlex.getErrorCode()) // actual logon failed, i.e.
                                                                                          // password isExpired
@@ -2133,7 +2393,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 ) {
 
                     // close the connection and throw the error back
-                    close();
+                    closeAfterFailedLogin();
                     throw sqlex;
                 } else {
                     // Close the TDS channel from the failed connection attempt so that we don't
@@ -2283,7 +2543,9 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         // look to see primary port number is specified
         if (0 == primaryPortNumber) {
             if (null != primaryInstanceName) {
-                instancePort = getInstancePort(primary, primaryInstanceName);
+                InstancePortCache.InstancePort browserPort = getInstancePort(primary, primaryInstanceName);
+                instancePort = browserPort.port;
+                instancePortFromCache = browserPort.fromCache;
                 if (connectionlogger.isLoggable(Level.FINER))
                     connectionlogger.fine(toString() + " SQL Server port returned by SQL Browser: " + instancePort);
                 try {
@@ -2833,13 +3095,36 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
 
         ex.setDriverErrorCode(driverErrorCode);
 
-        notifyPooledConnection(ex);
+        dumpPacketCaptureOnError();
 
-        close();
+        // A failed attempt to recover the session is reported once the last attempt has failed.
+        if (null == recoveringSession)
+            notifyPooledConnection(ex);
+
+        closeAfterFailedLogin();
 
         throw ex;
     }
 
+    /**
+     * Writes the packet capture, if enabled, to a file in the temporary directory when the connection is terminated
+     * by an error, so that the packets leading up to the failure can be examined.
+     */
+    private void dumpPacketCaptureOnError() {
+        if (null == packetCapture)
+            return;
+
+        try {
+            Path path = Files.createTempFile("mssql-jdbc-" + clientConnectionId + "-", ".pcap");
+            packetCapture.dump(path);
+            if (connectionlogger.isLoggable(Level.WARNING))
+                connectionlogger.warning(toString() + " Wrote packet capture to " + path);
+        } catch (IOException | RuntimeException e) {
+            if (connectionlogger.isLoggable(Level.WARNING))
+                connectionlogger.warning(toString() + " Failed to write packet capture: " + e.getMessage());
+        }
+    }
+
     private final Object schedulerLock = new Object();
 
     /**
@@ -2860,14 +3145,37 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 currentCommand = null;
             }
 
+            // Recover the session if the network connection of an idle connection was broken, before anything of the
+            // new command's request is sent. A request is never sent again once it has been sent, since the server
+            // may have executed it before the connection broke.
+            if (State.Opened == state && canRecoverSession() && !tdsChannel.isNetworkConnectionAlive())
+                recoverSession();
+
+            // Send any deferred session state changes ahead of the new command's request, in the same SQL batch if
+            // the command allows it and otherwise in a batch of their own.
+            if (State.Opened == state && deferSessionStateChanges && hasPendingSessionState()
+                    && !newCommand.carriesSessionState()) {
+                if (!sessionStateUnconfirmed && newCommand.canCarrySessionState())
+                    newCommand.carrySessionState();
+                else
+                    applySessionState();
+            }
+
             // The implementation of this scheduler is pretty simple...
             // Since only one command at a time may use a connection
             // (to avoid TDS protocol errors), just synchronize to
             // serialize command execution.
             boolean commandComplete = false;
+            boolean commandSucceeded = false;
             try {
                 commandComplete = newCommand.execute(tdsChannel.getWriter(), tdsChannel.getReader(newCommand));
+                commandSucceeded = true;
             } finally {
+                // Session state changes at the start of a batch are applied unless the batch failed to compile. A
+                // failed command may not have got that far.
+                if (sessionStateInFlight)
+                    confirmSessionState(commandSucceeded);
+
                 // We should never displace an existing currentCommand
                 // assert null == currentCommand;
 
@@ -2883,6 +3191,88 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         }
     }
 
+    /**
+     * Returns whether the session of the connection could be recovered if its network connection were broken, and the
+     * connection has been idle long enough to check.
+     */
+    private boolean canRecoverSession() {
+        if (0 == connectRetryCount || inXATransaction || !sessionRecovery.isRecoverable())
+            return false;
+
+        // The server rolls back the open transaction of a broken session.
+        for (byte b : getTransactionDescriptor()) {
+            if (0 != b)
+                return false;
+        }
+
+        return System.nanoTime() - lastResponseNanos > SESSION_RECOVERY_IDLE_NANOS;
+    }
+
+    /**
+     * Logs in again over a new network connection and has the server restore the session of the broken connection.
+     * The connection is closed if the session cannot be recovered.
+     */
+    private void recoverSession() throws SQLServerException {
+        if (connectionlogger.isLoggable(Level.FINE))
+            connectionlogger.fine(toString() + " Network connection is broken. Recovering the session.");
+
+        SessionRecovery brokenSession = sessionRecovery;
+        tdsChannel.close();
+
+        // Prepared statement handles belong to the broken session.
+        if (null != preparedStatementHandleCache)
+            preparedStatementHandleCache.clear();
+        cleanupPreparedStatementDiscardActions();
+
+        SQLServerException lastError = null;
+        for (int attempt = 1; attempt <= connectRetryCount; attempt++) {
+            if (attempt > 1) {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(connectRetryInterval));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                // The application may have closed the connection while it waited to retry.
+                if (State.Closed == state)
+                    break;
+            }
+
+            recoveringSession = brokenSession;
+            try {
+                connect(recoveryProperties, pooledConnectionParent);
+                sessionRecoveryCount++;
+                if (connectionlogger.isLoggable(Level.FINE))
+                    connectionlogger.fine(toString() + " Recovered the session. Attempt: " + attempt);
+                return;
+            } catch (SQLServerException e) {
+                lastError = e;
+                if (connectionlogger.isLoggable(Level.FINE))
+                    connectionlogger.fine(toString() + " Failed to recover the session. Attempt: " + attempt + " "
+                            + e.getMessage());
+            } finally {
+                recoveringSession = null;
+            }
+        }
+
+        notifyPooledConnection(lastError);
+        close();
+        throw lastError;
+    }
+
+    /**
+     * Closes the connection after a failed login. While the session is being recovered, only the network connection
+     * of the failed attempt is closed, so that the connection does not appear closed between attempts and a close by
+     * the application can be told apart.
+     */
+    private void closeAfterFailedLogin() throws SQLServerException {
+        if (null == recoveringSession)
+            close();
+        else if (null != tdsChannel)
+            tdsChannel.close();
+    }
+
     void resetCurrentCommand() throws SQLServerException {
         if (null != currentCommand) {
             currentCommand.detach();
@@ -2902,6 +3292,11 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 this.sql = sql;
             }
 
+            @Override
+            boolean canCarrySessionState() {
+                return true;
+            }
+
             final boolean doExecute() throws SQLServerException {
                 startRequest(TDS.PKT_QUERY).writeString(sql);
                 TDSParser.parse(startResponse(), getLogContext());
@@ -2977,6 +3372,106 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         return sql;
     }
 
+    /**
+     * Returns whether auto-commit mode or transaction isolation level changes have been deferred and not yet confirmed
+     * by the server.
+     */
+    final boolean hasPendingSessionState() {
+        return sessionStateUnconfirmed || serverAutoCommitMode != databaseAutoCommitMode
+                || serverTransactionIsolationLevel != transactionIsolationLevel;
+    }
+
+    /**
+     * Returns the statements that apply the deferred session state changes. They are considered applied once the
+     * response to the request that carries them confirms it.
+     *
+     * @return the statements terminated so that a batch can follow them, or an empty string if there are no pending
+     *         changes
+     */
+    final String takePendingSessionState() throws SQLServerException {
+        String sql = "";
+        if (sessionStateUnconfirmed || serverAutoCommitMode != databaseAutoCommitMode)
+            sql = sqlStatementToSetCommit(databaseAutoCommitMode);
+        if (sessionStateUnconfirmed || serverTransactionIsolationLevel != transactionIsolationLevel)
+            sql = sql + sqlStatementToSetTransactionIsolationLevel();
+        if (sql.isEmpty())
+            return sql;
+
+        sessionStateInFlight = true;
+        sentAutoCommitMode = databaseAutoCommitMode;
+        sentTransactionIsolationLevel = transactionIsolationLevel;
+        if (connectionlogger.isLoggable(Level.FINER))
+            connectionlogger.finer(toString() + " Sending deferred session state changes: " + sql);
+        return sql + ";\n";
+    }
+
+    /**
+     * Records whether the server applied the session state changes sent with the last request.
+     *
+     * @param applied
+     *        true if the response to the request confirmed that the changes were applied
+     */
+    private void confirmSessionState(boolean applied) {
+        sessionStateInFlight = false;
+        if (applied) {
+            serverAutoCommitMode = sentAutoCommitMode;
+            serverTransactionIsolationLevel = sentTransactionIsolationLevel;
+            sessionStateUnconfirmed = false;
+        } else {
+            sessionStateUnconfirmed = true;
+            if (connectionlogger.isLoggable(Level.FINER))
+                connectionlogger.finer(toString() + " Deferred session state changes were not confirmed.");
+        }
+    }
+
+    /**
+     * Sends the deferred session state changes in a SQL batch of their own.
+     */
+    private void applySessionState() throws SQLServerException {
+        final class ApplySessionStateCommand extends UninterruptableTDSCommand {
+            ApplySessionStateCommand() {
+                super("applySessionState");
+                carrySessionState();
+            }
+
+            @Override
+            boolean canCarrySessionState() {
+                return true;
+            }
+
+            final boolean doExecute() throws SQLServerException {
+                startRequest(TDS.PKT_QUERY);
+                TDSParser.parse(startResponse(), getLogContext());
+                return true;
+            }
+        }
+
+        executeCommand(new ApplySessionStateCommand());
+    }
+
+    /**
+     * Returns whether a change to the session state can be deferred until the next request.
+     */
+    private boolean canDeferSessionState() {
+        return deferSessionStateChanges && !inXATransaction;
+    }
+
+    /**
+     * Returns whether a transaction may be open on the server. The server reports the start and end of each
+     * transaction, but the report for a response that has not been processed yet may still be outstanding.
+     */
+    private boolean isTransactionPossiblyOpen() {
+        synchronized (schedulerLock) {
+            if (null != currentCommand)
+                return true;
+        }
+        for (byte b : transactionDescriptor) {
+            if (0 != b)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Returns the syntax to set the database commit mode.
      * 
@@ -3042,8 +3537,18 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         }
 
         rolledBackTransaction = false;
+
+        // Without a transaction to commit, the change can wait for the next request. Changing back before then
+        // cancels it out.
+        if (canDeferSessionState() && !(newAutoCommitMode && isTransactionPossiblyOpen())) {
+            databaseAutoCommitMode = newAutoCommitMode;
+            loggerExternal.exiting(getClassNameLogging(), "setAutoCommit");
+            return;
+        }
+
         connectionCommand(commitPendingTransaction + sqlStatementToSetCommit(newAutoCommitMode), "setAutoCommit");
         databaseAutoCommitMode = newAutoCommitMode;
+        serverAutoCommitMode = newAutoCommitMode;
         loggerExternal.exiting(getClassNameLogging(), "setAutoCommit");
     }
 
@@ -3069,7 +3574,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         }
 
         checkClosed();
-        if (!databaseAutoCommitMode)
+        if (!databaseAutoCommitMode && !(canDeferSessionState() && !isTransactionPossiblyOpen()))
             connectionCommand("IF @@TRANCOUNT > 0 COMMIT TRAN", "Connection.commit");
         loggerExternal.exiting(getClassNameLogging(), "commit");
     }
@@ -3085,7 +3590,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         if (databaseAutoCommitMode) {
             SQLServerException.makeFromDriverError(this, this, SQLServerException.getErrString("R_cantInvokeRollback"),
                     null, true);
-        } else
+        } else if (!(canDeferSessionState() && !isTransactionPossiblyOpen()))
             connectionCommand("IF @@TRANCOUNT > 0 ROLLBACK TRAN", "Connection.rollback");
         loggerExternal.exiting(getClassNameLogging(), "rollback");
     }
@@ -3148,6 +3653,15 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         if (null != parameterMetadataCache)
             parameterMetadataCache.clear();
 
+        if (null != parameterEncryptionMetadataCache)
+            parameterEncryptionMetadataCache.clear();
+
+        if (null != procedureParameterNamesCache)
+            procedureParameterNamesCache.clear();
+
+        if (null != bulkCopyDestinationMetadataCache)
+            bulkCopyDestinationMetadataCache.clear();
+
         // Clean-up queue etc. related to batching of prepared statement discard actions (sp_unprepare).
         cleanupPreparedStatementDiscardActions();
 
@@ -3168,7 +3682,8 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
             // the next allocated connection.
             // Also if the app closes a connection handle before committing or rolling back the uncompleted
             // transaction may lock other updates/queries so close the transaction now.
-            if (!databaseAutoCommitMode && !(pooledConnectionParent instanceof XAConnection)) {
+            if (!databaseAutoCommitMode && !(pooledConnectionParent instanceof XAConnection)
+                    && !(canDeferSessionState() && !isTransactionPossiblyOpen())) {
                 connectionCommand("IF @@TRANCOUNT > 0 ROLLBACK TRAN" /* +close connection */, "close connection");
             }
             notifyPooledConnection(null);
@@ -3257,7 +3772,10 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         String sql;
         transactionIsolationLevel = level;
         sql = sqlStatementToSetTransactionIsolationLevel();
-        connectionCommand(sql, "setTransactionIsolation");
+        if (!canDeferSessionState()) {
+            connectionCommand(sql, "setTransactionIsolation");
+            serverTransactionIsolationLevel = level;
+        }
         loggerExternal.exiting(getClassNameLogging(), "setTransactionIsolation");
     }
 
@@ -3583,7 +4101,8 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
             // If we got routed in the current attempt,
             // the server closes the connection. So, we should not
             // be sending anymore commands to the server in that case.
-            if (!isRoutedInCurrentAttempt) {
+            // A recovered session keeps the settings that the server restored.
+            if (!isRoutedInCurrentAttempt && null == recoveringSession) {
                 originalCatalog = sCatalog;
                 String sqlStmt = sqlStatementToInitialize();
                 if (sqlStmt != null) {
@@ -3625,6 +4144,13 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
     private static final int ENVCHANGE_USER_INFO = 19;
     private static final int ENVCHANGE_ROUTING = 20;
 
+    /**
+     * Processes a SESSIONSTATE token, which reports a change to the session state that session recovery restores.
+     */
+    final void processSessionState(TDSReader tdsReader) throws SQLServerException {
+        sessionRecovery.processSessionState(tdsReader);
+    }
+
     final void processEnvChange(TDSReader tdsReader) throws SQLServerException {
         tdsReader.readUnsignedByte(); // token type
         final int envValueLength = tdsReader.readUnsignedShort();
@@ -3652,6 +4178,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 } catch (java.io.UnsupportedEncodingException e) {
                     terminate(SQLServerException.DRIVER_ERROR_INVALID_TDS, e.getMessage(), e);
                 }
+                sessionRecovery.setCollation(databaseCollation);
 
                 break;
 
@@ -3715,13 +4242,17 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
 
             case ENVCHANGE_DATABASE:
                 setCatalogName(tdsReader.readUnicodeString(tdsReader.readUnsignedByte()));
+                sessionRecovery.setDatabase(sCatalog);
+                break;
+
+            case ENVCHANGE_LANGUAGE:
+                sessionRecovery.setLanguage(tdsReader.readUnicodeString(tdsReader.readUnsignedByte()));
                 break;
 
             case ENVCHANGE_CHANGE_MIRROR:
                 setFailoverPartnerServerProvided(tdsReader.readUnicodeString(tdsReader.readUnsignedByte()));
                 break;
             // Skip unsupported, ENVCHANGES
-            case ENVCHANGE_LANGUAGE:
             case ENVCHANGE_CHARSET:
             case ENVCHANGE_SORTLOCALEID:
             case ENVCHANGE_SORTFLAGS:
@@ -4019,13 +4550,62 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
     }
 
     private SqlFedAuthToken getFedAuthToken(SqlFedAuthInfo fedAuthInfo) throws SQLServerException {
-        SqlFedAuthToken fedAuthToken = null;
-
         // fedAuthInfo should not be null.
         assert null != fedAuthInfo;
 
-        String user = activeConnectionProperties.getProperty(SQLServerDriverStringProperty.USER.toString());
-        String password = activeConnectionProperties.getProperty(SQLServerDriverStringProperty.PASSWORD.toString());
+        final String user = activeConnectionProperties.getProperty(SQLServerDriverStringProperty.USER.toString());
+        final String password = activeConnectionProperties
+                .getProperty(SQLServerDriverStringProperty.PASSWORD.toString());
+        final String authentication = authenticationString;
+        final UUID connectionId = clientConnectionId;
+        final String traceID = toString();
+
+        // Renewals get as much time as this login has left.
+        final int timeoutMillis = TimerRemaining(timerExpire);
+
+        // The provider only captures what it needs, so that the cache does not keep the connection alive.
+        SqlFedAuthTokenCache.TokenProvider provider = () -> acquireFedAuthToken(fedAuthInfo, user, password,
+                authentication, connectionId, System.currentTimeMillis() + timeoutMillis, traceID);
+
+        // Tokens are shared by connections that would get the same token from the identity provider. A token for an
+        // identity that is not known is not shared.
+        boolean isPassword = authentication.trim()
+                .equalsIgnoreCase(SqlAuthentication.ActiveDirectoryPassword.toString());
+        String identity = isPassword ? user + "|" + Util.passwordDigest(password)
+                                     : getIntegratedAuthenticationPrincipal();
+        if (null == identity)
+            return provider.acquireToken();
+
+        String cacheKey = authentication.trim().toLowerCase(Locale.ENGLISH) + "|" + fedAuthInfo.stsurl + "|"
+                + fedAuthInfo.spn + "|" + identity;
+        SqlFedAuthToken fedAuthToken = SqlFedAuthTokenCache.getInstance().getToken(cacheKey, provider);
+        if (connectionlogger.isLoggable(Level.FINER))
+            connectionlogger.finer(toString() + " " + SqlFedAuthTokenCache.getInstance());
+        return fedAuthToken;
+    }
+
+    /**
+     * Returns the Kerberos principal that ActiveDirectoryIntegrated authentication acquires tokens for, which is the
+     * principal of the Subject of the calling thread. Returns null if it cannot be determined, such as when the
+     * Windows logon of the process is used.
+     */
+    private static String getIntegratedAuthenticationPrincipal() {
+        if (System.getProperty("os.name").toLowerCase(Locale.ENGLISH).startsWith("windows")
+                && AuthenticationJNI.isDllLoaded())
+            return null;
+
+        Subject subject = Subject.getSubject(AccessController.getContext());
+        if (null == subject)
+            return null;
+
+        Set<KerberosPrincipal> principals = subject.getPrincipals(KerberosPrincipal.class);
+        return (1 == principals.size()) ? principals.iterator().next().getName() : null;
+    }
+
+    private static SqlFedAuthToken acquireFedAuthToken(SqlFedAuthInfo fedAuthInfo, String user, String password,
+            String authenticationString, UUID clientConnectionId, long timerExpire,
+            String traceID) throws SQLServerException {
+        SqlFedAuthToken fedAuthToken = null;
 
         // No:of milliseconds to sleep for the inital back off.
         int sleepInterval = 100;
@@ -4079,7 +4659,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
 
                             if (connectionlogger.isLoggable(Level.FINER)) {
                                 connectionlogger.fine(
-                                        toString() + " SQLServerConnection.getFedAuthToken.AdalException category:"
+                                        traceID + " SQLServerConnection.getFedAuthToken.AdalException category:"
                                                 + errorCategory + " error: " + errorStatus);
                             }
 
@@ -4096,9 +4676,9 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                         }
 
                         if (connectionlogger.isLoggable(Level.FINER)) {
-                            connectionlogger.fine(toString() + " SQLServerConnection.getFedAuthToken sleeping: "
+                            connectionlogger.fine(traceID + " SQLServerConnection.getFedAuthToken sleeping: "
                                     + sleepInterval + " milliseconds.");
-                            connectionlogger.fine(toString() + " SQLServerConnection.getFedAuthToken remaining: "
+                            connectionlogger.fine(traceID + " SQLServerConnection.getFedAuthToken remaining: "
                                     + millisecondsRemaining + " milliseconds.");
                         }
 
@@ -4294,6 +4874,14 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 }
                 break;
             }
+            case TDS.TDS_FEATURE_EXT_SESSIONRECOVERY: {
+                if (connectionlogger.isLoggable(Level.FINER)) {
+                    connectionlogger.finer(
+                            toString() + " Received feature extension acknowledgement for session recovery.");
+                }
+                sessionRecovery.onFeatureExtAck(data);
+                break;
+            }
             default: {
                 // Unknown feature ack
                 if (connectionlogger.isLoggable(Level.SEVERE)) {
@@ -4363,6 +4951,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         // DTC sets the enlisted connection's isolation level to SERIALIZABLE by default.
         // Set the isolation level the way the app wants it.
         connectionCommand(sqlStatementToSetTransactionIsolationLevel(), "JTAEnlistConnection");
+        serverTransactionIsolationLevel = transactionIsolationLevel;
         inXATransaction = true;
     }
 
@@ -4578,6 +5167,9 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
 
         len2 = len2 + writeUTF8SupportFeatureRequest(false, tdsWriter);
 
+        if (0 != connectRetryCount)
+            len2 += SessionRecovery.writeFeatureRequest(recoveringSession, false, tdsWriter);
+
         len2 = len2 + 1; // add 1 to length because of FeatureEx terminator
 
         // Length of entire Login 7 packet
@@ -4762,6 +5354,9 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         writeDataClassificationFeatureRequest(true, tdsWriter);
         writeUTF8SupportFeatureRequest(true, tdsWriter);
 
+        if (0 != connectRetryCount)
+            SessionRecovery.writeFeatureRequest(recoveringSession, true, tdsWriter);
+
         tdsWriter.writeByte((byte) TDS.FEATURE_EXT_TERMINATOR);
         tdsWriter.setDataLoggable(true);
 
@@ -5312,25 +5907,39 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         if (isSessionUnAvailable())
             return false;
 
-        try {
-            SQLServerStatement stmt = new SQLServerStatement(this, ResultSet.TYPE_FORWARD_ONLY,
-                    ResultSet.CONCUR_READ_ONLY, SQLServerStatementColumnEncryptionSetting.UseConnectionSetting);
+        // A connection that has just heard from the server is considered valid without contacting it again.
+        if (0 != validationActivityWindow
+                && System.nanoTime() - lastResponseNanos < TimeUnit.MILLISECONDS.toNanos(validationActivityWindow)) {
+            loggerExternal.exiting(getClassNameLogging(), "isValid", true);
+            return true;
+        }
+
+        final class ValidationCommand extends TDSCommand {
+            ValidationCommand(int timeout, int cancelQueryTimeoutSeconds) {
+                super("isValid", timeout, cancelQueryTimeoutSeconds);
+            }
+
+            final boolean doExecute() throws SQLServerException {
+                startRequest(TDS.PKT_QUERY);
+                TDSParser.parse(startResponse(), getLogContext());
+                return true;
+            }
 
-            // If asked, limit the time to wait for the query to complete.
-            if (0 != timeout)
-                stmt.setQueryTimeout(timeout);
+            @Override
+            boolean canCarrySessionState() {
+                return true;
+            }
+        }
 
-            // Try to execute the query. If this succeeds, then the connection is valid.
-            // If it fails (throws an exception), then the connection is not valid.
+        try {
+            // Send an empty SQL batch. If the server responds, then the connection is valid.
+            // If the request fails (throws an exception), then the connection is not valid.
             // If a timeout was provided, execution throws an "query timed out" exception
-            // if the query fails to execute in that time.
-            stmt.executeQueryInternal("SELECT 1");
-            stmt.close();
+            // if the server does not respond in that time.
+            executeCommand(new ValidationCommand(timeout, getCancelQueryTimeoutSeconds()));
             isValid = true;
         } catch (SQLException e) {
-            // Do not propagate SQLExceptions from query execution or statement closure.
-            // The connection is considered to be invalid if the statement fails to close,
-            // even though query execution succeeded.
+            // Do not propagate SQLExceptions from the validation request.
             connectionlogger.fine(toString() + " Exception checking connection validity: " + e.getMessage());
         }
 
@@ -5373,6 +5982,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
     private Boolean originalEnablePrepareOnFirstPreparedStatementCall;
     private String originalSCatalog;
     private boolean originalUseBulkCopyForBatchInsert;
+    private boolean originalRewriteBatchedInserts;
     private volatile SQLWarning originalSqlWarnings;
     private List<Statement> openStatements;
 
@@ -5391,6 +6001,7 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 originalEnablePrepareOnFirstPreparedStatementCall = getEnablePrepareOnFirstPreparedStatementCall();
                 originalSCatalog = sCatalog;
                 originalUseBulkCopyForBatchInsert = getUseBulkCopyForBatchInsert();
+                originalRewriteBatchedInserts = getRewriteBatchedInserts();
                 originalSqlWarnings = sqlWarnings;
                 openStatements = new LinkedList<Statement>();
                 requestStarted = true;
@@ -5439,6 +6050,9 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
                 if (getUseBulkCopyForBatchInsert() != originalUseBulkCopyForBatchInsert) {
                     setUseBulkCopyForBatchInsert(originalUseBulkCopyForBatchInsert);
                 }
+                if (getRewriteBatchedInserts() != originalRewriteBatchedInserts) {
+                    setRewriteBatchedInserts(originalRewriteBatchedInserts);
+                }
                 sqlWarnings = originalSqlWarnings;
                 if (null != openStatements) {
                     while (!openStatements.isEmpty()) {
@@ -5565,7 +6179,24 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
      */
     private static final int BROWSER_PORT = 1434;
 
-    String getInstancePort(String server, String instanceName) throws SQLServerException {
+    InstancePortCache.InstancePort getInstancePort(String server, String instanceName) throws SQLServerException {
+        String port = InstancePortCache.get(server, instanceName);
+        if (null != port) {
+            if (connectionlogger.isLoggable(Level.FINER))
+                connectionlogger.finer(toString() + " Using cached SQL Browser port " + port + " for server: " + server
+                        + " instance: " + instanceName);
+            return new InstancePortCache.InstancePort(port, true);
+        }
+
+        port = queryInstancePort(server, instanceName);
+        InstancePortCache.put(server, instanceName, port);
+        return new InstancePortCache.InstancePort(port, false);
+    }
+
+    // Set when the port of the primary server's named instance was taken from the SQL Browser cache.
+    private boolean instancePortFromCache = false;
+
+    private String queryInstancePort(String server, String instanceName) throws SQLServerException {
         String browserResult = null;
         DatagramSocket datagramSocket = null;
         String lastErrorMessage = null;
@@ -5747,6 +6378,33 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         this.unprepareUnreferencedPreparedStatementHandles(true);
     }
 
+    @Override
+    public SQLServerPipeline pipeline() throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "pipeline");
+        checkClosed();
+        SQLServerPipeline pipeline = new SQLServerPipeline(this);
+        loggerExternal.exiting(getClassNameLogging(), "pipeline", pipeline);
+        return pipeline;
+    }
+
+    @Override
+    public void dumpPacketCapture(String fileName) throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "dumpPacketCapture", fileName);
+        if (null == packetCapture) {
+            SQLServerException.makeFromDriverError(this, this,
+                    SQLServerException.getErrString("R_packetCaptureNotEnabled"), null, false);
+        }
+
+        try {
+            packetCapture.dump(Paths.get(fileName));
+        } catch (IOException | InvalidPathException e) {
+            MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_packetCaptureDumpFailed"));
+            Object[] msgArgs = {fileName, e.getMessage()};
+            SQLServerException.makeFromDriverError(this, this, form.format(msgArgs), null, false);
+        }
+        loggerExternal.exiting(getClassNameLogging(), "dumpPacketCapture");
+    }
+
     /**
      * Removes references to outstanding un-prepare requests. Should be run when connection is closed.
      */
@@ -5915,6 +6573,204 @@ public class SQLServerConnection implements ISQLServerConnection, java.io.Serial
         parameterMetadataCache.put(key, pmd);
     }
 
+    // Number of statements whose parameter encryption metadata is kept per connection.
+    private static final int PARAMETER_ENCRYPTION_METADATA_CACHE_SIZE = 100;
+
+    /** Encryption metadata of the parameters of a statement, and the database it was described in */
+    private static final class ParameterEncryptionMetadata {
+        final String database;
+        final CryptoMetadata[] cryptoMetadata;
+
+        ParameterEncryptionMetadata(String database, CryptoMetadata[] cryptoMetadata) {
+            this.database = database;
+            this.cryptoMetadata = cryptoMetadata;
+        }
+    }
+
+    private ConcurrentLinkedHashMap<CityHash128Key, ParameterEncryptionMetadata> parameterEncryptionMetadataCache;
+    private final AtomicLong parameterEncryptionMetadataCacheHits = new AtomicLong();
+    private final AtomicLong parameterEncryptionMetadataCacheMisses = new AtomicLong();
+
+    /**
+     * Returns the encryption metadata that sp_describe_parameter_encryption returned for the parameters of a statement
+     * with the same SQL text and parameter definitions in the current database, or null if there is none. Entries are
+     * null for parameters that are not encrypted.
+     */
+    final CryptoMetadata[] getCachedParameterEncryptionMetadata(CityHash128Key key) {
+        ParameterEncryptionMetadata metadata = null;
+        if (null != parameterEncryptionMetadataCache)
+            metadata = parameterEncryptionMetadataCache.get(key);
+
+        boolean isHit = null != metadata && metadata.database.equals(sCatalog);
+        if (isHit)
+            parameterEncryptionMetadataCacheHits.incrementAndGet();
+        else
+            parameterEncryptionMetadataCacheMisses.incrementAndGet();
+
+        if (connectionlogger.isLoggable(Level.FINER)) {
+            connectionlogger.finer(toString() + " Parameter encryption metadata cache " + (isHit ? "hit" : "miss")
+                    + ", hits: " + parameterEncryptionMetadataCacheHits.get() + ", misses: "
+                    + parameterEncryptionMetadataCacheMisses.get());
+        }
+
+        return isHit ? metadata.cryptoMetadata : null;
+    }
+
+    /** Returns the number of statements whose parameter encryption metadata was found in the cache */
+    final long getParameterEncryptionMetadataCacheHits() {
+        return parameterEncryptionMetadataCacheHits.get();
+    }
+
+    /** Returns the number of statements whose parameters had to be described with sp_describe_parameter_encryption */
+    final long getParameterEncryptionMetadataCacheMisses() {
+        return parameterEncryptionMetadataCacheMisses.get();
+    }
+
+    /** Registers the encryption metadata of the parameters of a statement */
+    final void registerCachedParameterEncryptionMetadata(CityHash128Key key, CryptoMetadata[] cryptoMetadata) {
+        if (null == parameterEncryptionMetadataCache) {
+            parameterEncryptionMetadataCache = new Builder<CityHash128Key, ParameterEncryptionMetadata>()
+                    .maximumWeightedCapacity(PARAMETER_ENCRYPTION_METADATA_CACHE_SIZE).build();
+        }
+        parameterEncryptionMetadataCache.put(key, new ParameterEncryptionMetadata(sCatalog, cryptoMetadata));
+    }
+
+    /** Removes the encryption metadata of the parameters of a statement once the server reports that it is stale */
+    final void removeCachedParameterEncryptionMetadata(CityHash128Key key) {
+        if (null != parameterEncryptionMetadataCache)
+            parameterEncryptionMetadataCache.remove(key);
+    }
+
+    // Number of stored procedures whose parameter names are kept per connection.
+    private static final int PROCEDURE_PARAMETER_NAMES_CACHE_SIZE = 100;
+
+    /** Parameter names of a stored procedure, and the database the procedure name was resolved in */
+    private static final class CachedProcedureParameterNames {
+        final String database;
+        final ProcedureParameterNames names;
+
+        CachedProcedureParameterNames(String database, ProcedureParameterNames names) {
+            this.database = database;
+            this.names = names;
+        }
+    }
+
+    private ConcurrentLinkedHashMap<ThreePartName, CachedProcedureParameterNames> procedureParameterNamesCache;
+    private final AtomicLong procedureParameterNamesCacheHits = new AtomicLong();
+    private final AtomicLong procedureParameterNamesCacheMisses = new AtomicLong();
+
+    /**
+     * Returns the parameter names that sp_sproc_columns returned for a stored procedure in the current database, or
+     * null if there are none.
+     */
+    final ProcedureParameterNames getCachedProcedureParameterNames(ThreePartName procedureName) {
+        CachedProcedureParameterNames cached = null;
+        if (null != procedureParameterNamesCache)
+            cached = procedureParameterNamesCache.get(procedureName);
+
+        boolean isHit = null != cached && cached.database.equals(sCatalog);
+        if (isHit)
+            procedureParameterNamesCacheHits.incrementAndGet();
+        else
+            procedureParameterNamesCacheMisses.incrementAndGet();
+
+        if (connectionlogger.isLoggable(Level.FINER)) {
+            connectionlogger.finer(toString() + " Procedure parameter names cache " + (isHit ? "hit" : "miss")
+                    + ", hits: " + procedureParameterNamesCacheHits.get() + ", misses: "
+                    + procedureParameterNamesCacheMisses.get());
+        }
+
+        return isHit ? cached.names : null;
+    }
+
+    /** Returns the number of callable statements whose parameter names were found in the cache */
+    final long getProcedureParameterNamesCacheHits() {
+        return procedureParameterNamesCacheHits.get();
+    }
+
+    /** Returns the number of callable statements whose parameter names had to be read with sp_sproc_columns */
+    final long getProcedureParameterNamesCacheMisses() {
+        return procedureParameterNamesCacheMisses.get();
+    }
+
+    /** Registers the parameter names of a stored procedure */
+    final void registerCachedProcedureParameterNames(ThreePartName procedureName, ProcedureParameterNames names) {
+        if (null == procedureParameterNamesCache) {
+            procedureParameterNamesCache = new Builder<ThreePartName, CachedProcedureParameterNames>()
+                    .maximumWeightedCapacity(PROCEDURE_PARAMETER_NAMES_CACHE_SIZE).build();
+        }
+        procedureParameterNamesCache.put(procedureName, new CachedProcedureParameterNames(sCatalog, names));
+    }
+
+    /** Removes the parameter names of a stored procedure once they are found to be stale */
+    final void removeCachedProcedureParameterNames(ThreePartName procedureName) {
+        if (null != procedureParameterNamesCache)
+            procedureParameterNamesCache.remove(procedureName);
+    }
+
+    @Override
+    public void clearProcedureParameterNamesCache() {
+        loggerExternal.entering(getClassNameLogging(), "clearProcedureParameterNamesCache");
+        if (null != procedureParameterNamesCache)
+            procedureParameterNamesCache.clear();
+        loggerExternal.exiting(getClassNameLogging(), "clearProcedureParameterNamesCache");
+    }
+
+    // Number of tables whose metadata is kept per connection for bulk copying batch inserts.
+    private static final int BULK_COPY_DESTINATION_METADATA_CACHE_SIZE = 100;
+
+    /**
+     * Metadata of a bulk copy destination table, the database the table name was resolved in and the column encryption
+     * setting it was read with
+     */
+    private static final class CachedBulkCopyDestinationMetadata {
+        final String database;
+        final SQLServerStatementColumnEncryptionSetting columnEncryptionSetting;
+        final SQLServerBulkCopy.DestinationMetadata metadata;
+
+        CachedBulkCopyDestinationMetadata(String database,
+                SQLServerStatementColumnEncryptionSetting columnEncryptionSetting,
+                SQLServerBulkCopy.DestinationMetadata metadata) {
+            this.database = database;
+            this.columnEncryptionSetting = columnEncryptionSetting;
+            this.metadata = metadata;
+        }
+    }
+
+    private ConcurrentLinkedHashMap<String, CachedBulkCopyDestinationMetadata> bulkCopyDestinationMetadataCache;
+
+    /**
+     * Returns the metadata of a bulk copy destination table in the current database that was read with the same column
+     * encryption setting, or null if there is none.
+     */
+    final SQLServerBulkCopy.DestinationMetadata getCachedBulkCopyDestinationMetadata(String tableName,
+            SQLServerStatementColumnEncryptionSetting columnEncryptionSetting) {
+        CachedBulkCopyDestinationMetadata cached = null;
+        if (null != bulkCopyDestinationMetadataCache)
+            cached = bulkCopyDestinationMetadataCache.get(tableName);
+
+        return (null != cached && cached.database.equals(sCatalog)
+                && cached.columnEncryptionSetting == columnEncryptionSetting) ? cached.metadata : null;
+    }
+
+    /** Registers the metadata of a bulk copy destination table */
+    final void registerCachedBulkCopyDestinationMetadata(String tableName,
+            SQLServerStatementColumnEncryptionSetting columnEncryptionSetting,
+            SQLServerBulkCopy.DestinationMetadata metadata) {
+        if (null == bulkCopyDestinationMetadataCache) {
+            bulkCopyDestinationMetadataCache = new Builder<String, CachedBulkCopyDestinationMetadata>()
+                    .maximumWeightedCapacity(BULK_COPY_DESTINATION_METADATA_CACHE_SIZE).build();
+        }
+        bulkCopyDestinationMetadataCache.put(tableName,
+                new CachedBulkCopyDestinationMetadata(sCatalog, columnEncryptionSetting, metadata));
+    }
+
+    /** Removes the metadata of a bulk copy destination table, which may have been altered */
+    final void removeCachedBulkCopyDestinationMetadata(String tableName) {
+        if (null != bulkCopyDestinationMetadataCache)
+            bulkCopyDestinationMetadataCache.remove(tableName);
+    }
+
     /** Gets or creates prepared statement handle cache entry if statement pooling is enabled */
     final PreparedStatementHandle getCachedPreparedStatementHandle(CityHash128Key key) {
         if (!isStatementPoolingEnabled())
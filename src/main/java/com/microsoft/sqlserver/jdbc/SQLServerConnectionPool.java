@@ -0,0 +1,433 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+
+
+/**
+ * SQLServerConnectionPool is the pool behind {@link SQLServerPoolingDataSource}.
+ *
+ * Each pooled physical connection is a SQLServerPooledConnection, so handing one out goes through the same code path
+ * as any other pool manager: the logical connection is a SQLServerConnectionPoolProxy, the reset of the previous
+ * session is piggybacked on the next request, and closing the proxy or a fatal error on the connection is reported
+ * through ConnectionEventListener.
+ *
+ * Borrowing and returning do not take locks. Every pooled connection carries an atomic state, and a borrower claims an
+ * idle connection by switching that state. A borrower first tries the connection its thread returned last, then scans
+ * the pool starting at a position derived from its thread, so that concurrent borrowers spread over the pool. When
+ * the pool is at its maximum size, borrowers wait for a returning thread to hand a connection over directly. The list
+ * of connections is only copied when a connection is added or removed. A driver-wide housekeeping thread keeps the
+ * pool at its minimum size and closes connections that have been idle too long.
+ */
+final class SQLServerConnectionPool {
+    private static final Logger logger = Logger
+            .getLogger("com.microsoft.sqlserver.jdbc.internals.SQLServerConnectionPool");
+
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = 2;
+
+    // How long a waiting borrower blocks on the handoff before scanning the pool again.
+    private static final long WAIT_SLICE_MILLIS = 10;
+
+    private static final long HOUSEKEEPING_PERIOD_SECONDS = 30;
+
+    private static final ScheduledThreadPoolExecutor housekeeper;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        housekeeper = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "mssql-jdbc-PoolHousekeeper-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.setRemoveOnCancelPolicy(true);
+    }
+
+    private static final AtomicInteger basePoolID = new AtomicInteger(0);
+
+    /**
+     * A physical connection in the pool.
+     */
+    private final class PoolEntry implements ConnectionEventListener {
+        final SQLServerPooledConnection pooledConnection;
+
+        // New entries are created on behalf of a borrower or a fill, so they start out claimed.
+        final AtomicInteger state = new AtomicInteger(IN_USE);
+        volatile long lastReturnedMillis = System.currentTimeMillis();
+
+        PoolEntry(SQLServerPooledConnection pooledConnection) {
+            this.pooledConnection = pooledConnection;
+        }
+
+        @Override
+        public void connectionClosed(ConnectionEvent event) {
+            release(this);
+        }
+
+        @Override
+        public void connectionErrorOccurred(ConnectionEvent event) {
+            if (logger.isLoggable(Level.FINER))
+                logger.finer(SQLServerConnectionPool.this.toString() + " Discarding " + pooledConnection.toString()
+                        + " after a connection error");
+            remove(this);
+        }
+    }
+
+    private final String traceID;
+    private final SQLServerConnectionPoolDataSource dataSource;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long idleTimeoutMillis;
+
+    // Copy-on-write array of all pooled connections; only changed under entriesLock.
+    private volatile PoolEntry[] entries = new PoolEntry[0];
+    private final Object entriesLock = new Object();
+
+    // Number of connections in the pool, including those being opened.
+    private final AtomicInteger totalConnections = new AtomicInteger(0);
+
+    private final AtomicInteger waiters = new AtomicInteger(0);
+    private final SynchronousQueue<PoolEntry> handoff = new SynchronousQueue<>();
+    private final ThreadLocal<WeakReference<PoolEntry>> lastUsed = new ThreadLocal<>();
+
+    private final AtomicBoolean fillScheduled = new AtomicBoolean(false);
+    private final ScheduledFuture<?> housekeeping;
+    private volatile boolean closed = false;
+
+    SQLServerConnectionPool(SQLServerConnectionPoolDataSource dataSource, int minPoolSize, int maxPoolSize,
+            int idleTimeoutSeconds) throws SQLServerException {
+        if (minPoolSize < 0 || maxPoolSize < 1 || minPoolSize > maxPoolSize) {
+            MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_invalidConnectionPoolSize"));
+            Object[] msgArgs = {minPoolSize, maxPoolSize};
+            SQLServerException.makeFromDriverError(null, null, form.format(msgArgs), null, false);
+        }
+
+        this.traceID = "SQLServerConnectionPool:" + basePoolID.incrementAndGet();
+        this.dataSource = dataSource;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+
+        housekeeping = housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_PERIOD_SECONDS,
+                HOUSEKEEPING_PERIOD_SECONDS, TimeUnit.SECONDS);
+        scheduleFill();
+
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(toString() + " created for " + dataSource.toString() + " minPoolSize:" + minPoolSize
+                    + " maxPoolSize:" + maxPoolSize);
+    }
+
+    @Override
+    public String toString() {
+        return traceID;
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if no idle connection is available and the pool is not at
+     * its maximum size.
+     *
+     * @param timeoutMillis
+     *        how long to wait for a connection to be returned when the pool is at its maximum size
+     * @return a logical connection that returns the physical connection to the pool when it is closed
+     */
+    Connection borrow(long timeoutMillis) throws SQLException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        // Most applications borrow and return on the same thread, so try that thread's last connection first.
+        WeakReference<PoolEntry> lastUsedRef = lastUsed.get();
+        PoolEntry entry = (null == lastUsedRef) ? null : lastUsedRef.get();
+        if (null != entry && entry.state.compareAndSet(IDLE, IN_USE)) {
+            Connection con = handOut(entry);
+            if (null != con)
+                return con;
+        }
+
+        while (true) {
+            checkClosed();
+
+            entry = claimIdle();
+            if (null == entry)
+                entry = createIfBelowMax();
+
+            if (null == entry) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    MessageFormat form = new MessageFormat(
+                            SQLServerException.getErrString("R_connectionPoolTimeout"));
+                    Object[] msgArgs = {timeoutMillis};
+                    SQLServerException.makeFromDriverError(null, this, form.format(msgArgs), null, false);
+                }
+
+                waiters.incrementAndGet();
+                try {
+                    entry = handoff.poll(Math.min(remaining, WAIT_SLICE_MILLIS), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    SQLServerException.makeFromDriverError(null, this, e.getMessage(), null, false);
+                } finally {
+                    waiters.decrementAndGet();
+                }
+
+                // Another borrower may have claimed the connection since it was handed over.
+                if (null == entry || !entry.state.compareAndSet(IDLE, IN_USE))
+                    continue;
+            }
+
+            Connection con = handOut(entry);
+            if (null != con)
+                return con;
+        }
+    }
+
+    /**
+     * Claims an idle connection, scanning from a position that depends on the calling thread.
+     */
+    private PoolEntry claimIdle() {
+        PoolEntry[] snapshot = entries;
+        int n = snapshot.length;
+        if (0 == n)
+            return null;
+
+        int start = (int) (Thread.currentThread().getId() % n);
+        for (int i = 0; i < n; i++) {
+            PoolEntry entry = snapshot[(start + i) % n];
+            if (IDLE == entry.state.get() && entry.state.compareAndSet(IDLE, IN_USE))
+                return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Opens a new pooled connection if the pool is below its maximum size.
+     *
+     * @return the new connection, already claimed, or null if the pool is full
+     */
+    private PoolEntry createIfBelowMax() throws SQLException {
+        while (true) {
+            int total = totalConnections.get();
+            if (total >= maxPoolSize)
+                return null;
+            if (totalConnections.compareAndSet(total, total + 1))
+                break;
+        }
+
+        SQLServerPooledConnection pooledConnection;
+        try {
+            pooledConnection = new SQLServerPooledConnection(dataSource, null, null);
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+
+        PoolEntry entry = new PoolEntry(pooledConnection);
+        pooledConnection.addConnectionEventListener(entry);
+        synchronized (entriesLock) {
+            PoolEntry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+            newEntries[newEntries.length - 1] = entry;
+            entries = newEntries;
+        }
+
+        if (logger.isLoggable(Level.FINER))
+            logger.finer(toString() + " Opened " + pooledConnection.toString() + "; connections:"
+                    + totalConnections.get());
+
+        // The pool may have been closed while the connection was being opened.
+        if (closed) {
+            remove(entry);
+            checkClosed();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns a logical connection for a claimed pooled connection, or null if the physical connection turned out to
+     * be dead and was discarded.
+     */
+    private Connection handOut(PoolEntry entry) throws SQLException {
+        SQLServerConnection physicalConnection = entry.pooledConnection.getPhysicalConnection();
+        if (null == physicalConnection || physicalConnection.isSessionUnAvailable()) {
+            remove(entry);
+            return null;
+        }
+
+        try {
+            return entry.pooledConnection.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            remove(entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a pooled connection whose logical connection was closed.
+     */
+    private void release(PoolEntry entry) {
+        if (closed) {
+            remove(entry);
+            return;
+        }
+
+        WeakReference<PoolEntry> lastUsedRef = lastUsed.get();
+        if (null == lastUsedRef || lastUsedRef.get() != entry)
+            lastUsed.set(new WeakReference<>(entry));
+
+        makeIdle(entry);
+    }
+
+    /**
+     * Makes a claimed pooled connection available, handing it directly to a waiting borrower if there is one.
+     */
+    private void makeIdle(PoolEntry entry) {
+        entry.lastReturnedMillis = System.currentTimeMillis();
+        if (entry.state.compareAndSet(IN_USE, IDLE) && waiters.get() > 0)
+            handoff.offer(entry);
+    }
+
+    /**
+     * Removes a pooled connection from the pool and closes it.
+     */
+    private void remove(PoolEntry entry) {
+        if (REMOVED == entry.state.getAndSet(REMOVED))
+            return;
+
+        synchronized (entriesLock) {
+            PoolEntry[] current = entries;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == entry) {
+                    PoolEntry[] newEntries = new PoolEntry[current.length - 1];
+                    System.arraycopy(current, 0, newEntries, 0, i);
+                    System.arraycopy(current, i + 1, newEntries, i, current.length - i - 1);
+                    entries = newEntries;
+                    break;
+                }
+            }
+        }
+        totalConnections.decrementAndGet();
+
+        entry.pooledConnection.removeConnectionEventListener(entry);
+        try {
+            entry.pooledConnection.close();
+        } catch (SQLException e) {
+            if (logger.isLoggable(Level.FINER))
+                logger.finer(toString() + " Ignored error closing " + entry.pooledConnection.toString() + ": "
+                        + e.getMessage());
+        }
+
+        if (!closed)
+            scheduleFill();
+    }
+
+    /**
+     * Schedules opening connections in the background until the pool is at its minimum size.
+     */
+    private void scheduleFill() {
+        if (totalConnections.get() < minPoolSize && fillScheduled.compareAndSet(false, true)) {
+            try {
+                housekeeper.execute(this::fill);
+            } catch (RuntimeException e) {
+                fillScheduled.set(false);
+            }
+        }
+    }
+
+    private void fill() {
+        fillScheduled.set(false);
+        try {
+            while (!closed && totalConnections.get() < minPoolSize) {
+                PoolEntry entry = createIfBelowMax();
+                if (null == entry)
+                    break;
+                makeIdle(entry);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // The next borrow or housekeeping run tries again.
+            if (logger.isLoggable(Level.FINE))
+                logger.fine(toString() + " Failed to open connection for the pool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle timeout while the pool is above its minimum size,
+     * and refills the pool to its minimum size.
+     */
+    private void housekeep() {
+        if (idleTimeoutMillis > 0) {
+            long now = System.currentTimeMillis();
+            for (PoolEntry entry : entries) {
+                if (totalConnections.get() <= minPoolSize)
+                    break;
+                if (now - entry.lastReturnedMillis > idleTimeoutMillis && entry.state.compareAndSet(IDLE, IN_USE)) {
+                    if (logger.isLoggable(Level.FINER))
+                        logger.finer(toString() + " Closing idle " + entry.pooledConnection.toString());
+                    remove(entry);
+                }
+            }
+        }
+        fill();
+    }
+
+    /**
+     * Closes all idle connections. Connections that are in use are closed when they are returned.
+     */
+    void close() {
+        closed = true;
+        housekeeping.cancel(false);
+        for (PoolEntry entry : entries) {
+            if (entry.state.compareAndSet(IDLE, IN_USE))
+                remove(entry);
+        }
+
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(toString() + " closed");
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void checkClosed() throws SQLServerException {
+        if (closed) {
+            SQLServerException.makeFromDriverError(null, this,
+                    SQLServerException.getErrString("R_connectionPoolClosed"), null, false);
+        }
+    }
+
+    /**
+     * @return the number of connections in the pool, including connections in use
+     */
+    int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return the number of idle connections in the pool
+     */
+    int getIdleConnections() {
+        int idle = 0;
+        for (PoolEntry entry : entries) {
+            if (IDLE == entry.state.get())
+                ++idle;
+        }
+        return idle;
+    }
+}
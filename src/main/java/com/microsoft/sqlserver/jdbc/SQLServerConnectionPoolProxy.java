@@ -579,4 +579,20 @@ class SQLServerConnectionPoolProxy implements ISQLServerConnection, java.io.Seri
     public boolean getDisableStatementPooling() {
         return wrappedConnection.getDisableStatementPooling();
     }
+
+    @Override
+    public SQLServerPipeline pipeline() throws SQLServerException {
+        checkClosed();
+        return wrappedConnection.pipeline();
+    }
+
+    @Override
+    public void dumpPacketCapture(String fileName) throws SQLServerException {
+        wrappedConnection.dumpPacketCapture(fileName);
+    }
+
+    @Override
+    public void clearProcedureParameterNamesCache() {
+        wrappedConnection.clearProcedureParameterNamesCache();
+    }
 }
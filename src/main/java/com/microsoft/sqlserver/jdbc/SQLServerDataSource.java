@@ -854,6 +854,102 @@ public class SQLServerDataSource
                 SQLServerDriverBooleanProperty.USE_BULK_COPY_FOR_BATCH_INSERT.getDefaultValue());
     }
 
+    @Override
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts) {
+        setBooleanProperty(connectionProps, SQLServerDriverBooleanProperty.REWRITE_BATCHED_INSERTS.toString(),
+                rewriteBatchedInserts);
+    }
+
+    @Override
+    public boolean getRewriteBatchedInserts() {
+        return getBooleanProperty(connectionProps, SQLServerDriverBooleanProperty.REWRITE_BATCHED_INSERTS.toString(),
+                SQLServerDriverBooleanProperty.REWRITE_BATCHED_INSERTS.getDefaultValue());
+    }
+
+    @Override
+    public void setUseSocketChannel(boolean useSocketChannel) {
+        setBooleanProperty(connectionProps, SQLServerDriverBooleanProperty.USE_SOCKET_CHANNEL.toString(),
+                useSocketChannel);
+    }
+
+    @Override
+    public boolean getUseSocketChannel() {
+        return getBooleanProperty(connectionProps, SQLServerDriverBooleanProperty.USE_SOCKET_CHANNEL.toString(),
+                SQLServerDriverBooleanProperty.USE_SOCKET_CHANNEL.getDefaultValue());
+    }
+
+    @Override
+    public void setDeferSessionStateChanges(boolean deferSessionStateChanges) {
+        setBooleanProperty(connectionProps, SQLServerDriverBooleanProperty.DEFER_SESSION_STATE_CHANGES.toString(),
+                deferSessionStateChanges);
+    }
+
+    @Override
+    public boolean getDeferSessionStateChanges() {
+        return getBooleanProperty(connectionProps,
+                SQLServerDriverBooleanProperty.DEFER_SESSION_STATE_CHANGES.toString(),
+                SQLServerDriverBooleanProperty.DEFER_SESSION_STATE_CHANGES.getDefaultValue());
+    }
+
+    @Override
+    public void setValidationActivityWindow(int validationActivityWindow) {
+        setIntProperty(connectionProps, SQLServerDriverIntProperty.VALIDATION_ACTIVITY_WINDOW.toString(),
+                validationActivityWindow);
+    }
+
+    @Override
+    public int getValidationActivityWindow() {
+        return getIntProperty(connectionProps, SQLServerDriverIntProperty.VALIDATION_ACTIVITY_WINDOW.toString(),
+                SQLServerDriverIntProperty.VALIDATION_ACTIVITY_WINDOW.getDefaultValue());
+    }
+
+    @Override
+    public void setConnectRetryCount(int connectRetryCount) {
+        setIntProperty(connectionProps, SQLServerDriverIntProperty.CONNECT_RETRY_COUNT.toString(), connectRetryCount);
+    }
+
+    @Override
+    public int getConnectRetryCount() {
+        return getIntProperty(connectionProps, SQLServerDriverIntProperty.CONNECT_RETRY_COUNT.toString(),
+                SQLServerDriverIntProperty.CONNECT_RETRY_COUNT.getDefaultValue());
+    }
+
+    @Override
+    public void setConnectRetryInterval(int connectRetryInterval) {
+        setIntProperty(connectionProps, SQLServerDriverIntProperty.CONNECT_RETRY_INTERVAL.toString(),
+                connectRetryInterval);
+    }
+
+    @Override
+    public int getConnectRetryInterval() {
+        return getIntProperty(connectionProps, SQLServerDriverIntProperty.CONNECT_RETRY_INTERVAL.toString(),
+                SQLServerDriverIntProperty.CONNECT_RETRY_INTERVAL.getDefaultValue());
+    }
+
+    @Override
+    public void setPacketCaptureBufferSize(int packetCaptureBufferSize) {
+        setIntProperty(connectionProps, SQLServerDriverIntProperty.PACKET_CAPTURE_BUFFER_SIZE.toString(),
+                packetCaptureBufferSize);
+    }
+
+    @Override
+    public int getPacketCaptureBufferSize() {
+        return getIntProperty(connectionProps, SQLServerDriverIntProperty.PACKET_CAPTURE_BUFFER_SIZE.toString(),
+                SQLServerDriverIntProperty.PACKET_CAPTURE_BUFFER_SIZE.getDefaultValue());
+    }
+
+    @Override
+    public void setResponseBufferingMaxMemory(int responseBufferingMaxMemory) {
+        setIntProperty(connectionProps, SQLServerDriverIntProperty.RESPONSE_BUFFERING_MAX_MEMORY.toString(),
+                responseBufferingMaxMemory);
+    }
+
+    @Override
+    public int getResponseBufferingMaxMemory() {
+        return getIntProperty(connectionProps, SQLServerDriverIntProperty.RESPONSE_BUFFERING_MAX_MEMORY.toString(),
+                SQLServerDriverIntProperty.RESPONSE_BUFFERING_MAX_MEMORY.getDefaultValue());
+    }
+
     @Override
     public void setJASSConfigurationName(String configurationName) {
         setStringProperty(connectionProps, SQLServerDriverStringProperty.JAAS_CONFIG_NAME.toString(),
@@ -12,13 +12,18 @@ import java.sql.SQLFeatureNotSupportedException;
 import java.text.MessageFormat;
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.ietf.jgss.GSSCredential;
 
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import mssql.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+
 
 /**
  * Implements the java.sql.Driver for SQLServerConnect.
@@ -309,7 +314,12 @@ enum SQLServerDriverIntProperty {
     SOCKET_TIMEOUT("socketTimeout", 0),
     SERVER_PREPARED_STATEMENT_DISCARD_THRESHOLD("serverPreparedStatementDiscardThreshold", SQLServerConnection.DEFAULT_SERVER_PREPARED_STATEMENT_DISCARD_THRESHOLD),
     STATEMENT_POOLING_CACHE_SIZE("statementPoolingCacheSize", SQLServerConnection.DEFAULT_STATEMENT_POOLING_CACHE_SIZE),
-    CANCEL_QUERY_TIMEOUT("cancelQueryTimeout", -1),;
+    CANCEL_QUERY_TIMEOUT("cancelQueryTimeout", -1),
+    RESPONSE_BUFFERING_MAX_MEMORY("responseBufferingMaxMemory", 0),
+    PACKET_CAPTURE_BUFFER_SIZE("packetCaptureBufferSize", 0),
+    VALIDATION_ACTIVITY_WINDOW("validationActivityWindow", 0),
+    CONNECT_RETRY_COUNT("connectRetryCount", 1),
+    CONNECT_RETRY_INTERVAL("connectRetryInterval", 10),;
 
     private final String name;
     private final int defaultValue;
@@ -343,7 +353,10 @@ enum SQLServerDriverBooleanProperty {
     XOPEN_STATES("xopenStates", false),
     FIPS("fips", false),
     ENABLE_PREPARE_ON_FIRST_PREPARED_STATEMENT("enablePrepareOnFirstPreparedStatementCall", SQLServerConnection.DEFAULT_ENABLE_PREPARE_ON_FIRST_PREPARED_STATEMENT_CALL),
-    USE_BULK_COPY_FOR_BATCH_INSERT("useBulkCopyForBatchInsert", false);
+    USE_BULK_COPY_FOR_BATCH_INSERT("useBulkCopyForBatchInsert", false),
+    REWRITE_BATCHED_INSERTS("rewriteBatchedInserts", false),
+    USE_SOCKET_CHANNEL("useSocketChannel", false),
+    DEFER_SESSION_STATE_CHANGES("deferSessionStateChanges", false);
 
     private final String name;
     private final boolean defaultValue;
@@ -504,7 +517,30 @@ public final class SQLServerDriver implements java.sql.Driver {
                     Integer.toString(SQLServerDriverIntProperty.CANCEL_QUERY_TIMEOUT.getDefaultValue()), false, null),
             new SQLServerDriverPropertyInfo(SQLServerDriverBooleanProperty.USE_BULK_COPY_FOR_BATCH_INSERT.toString(),
                     Boolean.toString(SQLServerDriverBooleanProperty.USE_BULK_COPY_FOR_BATCH_INSERT.getDefaultValue()),
-                    false, TRUE_FALSE),};
+                    false, TRUE_FALSE),
+            new SQLServerDriverPropertyInfo(SQLServerDriverBooleanProperty.REWRITE_BATCHED_INSERTS.toString(),
+                    Boolean.toString(SQLServerDriverBooleanProperty.REWRITE_BATCHED_INSERTS.getDefaultValue()), false,
+                    TRUE_FALSE),
+            new SQLServerDriverPropertyInfo(SQLServerDriverBooleanProperty.USE_SOCKET_CHANNEL.toString(),
+                    Boolean.toString(SQLServerDriverBooleanProperty.USE_SOCKET_CHANNEL.getDefaultValue()), false,
+                    TRUE_FALSE),
+            new SQLServerDriverPropertyInfo(SQLServerDriverIntProperty.RESPONSE_BUFFERING_MAX_MEMORY.toString(),
+                    Integer.toString(SQLServerDriverIntProperty.RESPONSE_BUFFERING_MAX_MEMORY.getDefaultValue()), false,
+                    null),
+            new SQLServerDriverPropertyInfo(SQLServerDriverIntProperty.PACKET_CAPTURE_BUFFER_SIZE.toString(),
+                    Integer.toString(SQLServerDriverIntProperty.PACKET_CAPTURE_BUFFER_SIZE.getDefaultValue()), false,
+                    null),
+            new SQLServerDriverPropertyInfo(SQLServerDriverBooleanProperty.DEFER_SESSION_STATE_CHANGES.toString(),
+                    Boolean.toString(SQLServerDriverBooleanProperty.DEFER_SESSION_STATE_CHANGES.getDefaultValue()),
+                    false, TRUE_FALSE),
+            new SQLServerDriverPropertyInfo(SQLServerDriverIntProperty.VALIDATION_ACTIVITY_WINDOW.toString(),
+                    Integer.toString(SQLServerDriverIntProperty.VALIDATION_ACTIVITY_WINDOW.getDefaultValue()), false,
+                    null),
+            new SQLServerDriverPropertyInfo(SQLServerDriverIntProperty.CONNECT_RETRY_COUNT.toString(),
+                    Integer.toString(SQLServerDriverIntProperty.CONNECT_RETRY_COUNT.getDefaultValue()), false, null),
+            new SQLServerDriverPropertyInfo(SQLServerDriverIntProperty.CONNECT_RETRY_INTERVAL.toString(),
+                    Integer.toString(SQLServerDriverIntProperty.CONNECT_RETRY_INTERVAL.getDefaultValue()), false,
+                    null),};
 
     /**
      * Properties that can only be set by using Properties. Cannot set in connection string
@@ -703,17 +739,103 @@ public final class SQLServerDriver implements java.sql.Driver {
         return result;
     }
 
+    /** Size of the parsed connection properties cache */
+    static final private int PARSED_PROPERTIES_CACHE_SIZE = 100;
+
+    /** Cache of connection properties parsed from a URL and merged with supplied properties */
+    static private ConcurrentLinkedHashMap<String, Properties> parsedPropertiesCache;
+
+    static {
+        parsedPropertiesCache = new Builder<String, Properties>().maximumWeightedCapacity(PARSED_PROPERTIES_CACHE_SIZE)
+                .build();
+    }
+
+    /** Properties that the parsed properties cache does not keep in plain text */
+    static final private String[] SENSITIVE_PROPERTIES = {SQLServerDriverStringProperty.PASSWORD.toString(),
+            SQLServerDriverStringProperty.TRUST_STORE_PASSWORD.toString(),
+            SQLServerDriverStringProperty.ACCESS_TOKEN.toString(),
+            SQLServerDriverStringProperty.KEY_STORE_SECRET.toString()};
+
+    /**
+     * Returns the driver name of a sensitive property, or null if the property is not sensitive.
+     */
+    private static String getSensitivePropertyName(String name) {
+        for (String sensitiveProperty : SENSITIVE_PROPERTIES) {
+            if (sensitiveProperty.equalsIgnoreCase(name))
+                return sensitiveProperty;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the key of the parsed properties cache for a URL and supplied properties, or null if they cannot be
+     * cached because a supplied property is not a string. The key holds digests of the values of sensitive properties.
+     */
+    private static String getParsedPropertiesKey(String Url, Properties suppliedProperties,
+            int loginTimeout) throws SQLServerException {
+        StringBuilder key = new StringBuilder(Url);
+        key.append('\0').append(loginTimeout);
+        if (null != suppliedProperties) {
+            // Sort the supplied properties so that the same properties give the same key.
+            TreeMap<String, String> sorted = new TreeMap<>();
+            for (Map.Entry<Object, Object> entry : suppliedProperties.entrySet()) {
+                if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String))
+                    return null;
+                sorted.put((String) entry.getKey(), (String) entry.getValue());
+            }
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                String value = entry.getValue();
+                if (null != getSensitivePropertyName(entry.getKey()))
+                    value = Util.passwordDigest(value);
+                key.append('\0').append(entry.getKey()).append('=').append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Copies the sensitive properties that the caller supplied into properties taken from the parsed properties
+     * cache, which does not keep them.
+     */
+    private static Properties applySensitiveProperties(Properties connectProperties, Properties suppliedProperties) {
+        if (null != suppliedProperties) {
+            for (Map.Entry<Object, Object> entry : suppliedProperties.entrySet()) {
+                String sensitiveProperty = getSensitivePropertyName((String) entry.getKey());
+                if (null != sensitiveProperty)
+                    connectProperties.setProperty(sensitiveProperty, (String) entry.getValue());
+            }
+        }
+        return connectProperties;
+    }
+
     private Properties parseAndMergeProperties(String Url, Properties suppliedProperties) throws SQLServerException {
         if (Url == null) {
             throw new SQLServerException(null, SQLServerException.getErrString("R_nullConnection"), null, 0, false);
         }
 
+        // Applications often connect with the same URL and properties over and over, so the merged properties are
+        // cached. Connections change the properties they are given, so each gets its own copy.
+        int nTimeout = DriverManager.getLoginTimeout();
+        String cacheKey = getParsedPropertiesKey(Url, suppliedProperties, nTimeout);
+        if (null != cacheKey) {
+            Properties cached = parsedPropertiesCache.get(cacheKey);
+            if (null != cached)
+                return applySensitiveProperties((Properties) cached.clone(), suppliedProperties);
+        }
+
         Properties connectProperties = Util.parseUrl(Url, drLogger);
         if (connectProperties == null)
             return null; // If we are the wrong driver dont throw an exception
 
+        // Secrets are not kept in the cache, and only the supplied ones can be applied again without parsing the URL.
+        for (String sensitiveProperty : SENSITIVE_PROPERTIES) {
+            if (null != connectProperties.getProperty(sensitiveProperty)) {
+                cacheKey = null;
+                break;
+            }
+        }
+
         // put the user properties into the connect properties
-        int nTimeout = DriverManager.getLoginTimeout();
         if (nTimeout > 0) {
             connectProperties.put(SQLServerDriverIntProperty.LOGIN_TIMEOUT.toString(),
                     Integer.valueOf(nTimeout).toString());
@@ -721,6 +843,12 @@ public final class SQLServerDriver implements java.sql.Driver {
 
         // Merge connectProperties (from URL) and supplied properties from user.
         connectProperties = mergeURLAndSuppliedProperties(connectProperties, suppliedProperties);
+        if (null != cacheKey) {
+            Properties cached = (Properties) connectProperties.clone();
+            for (String sensitiveProperty : SENSITIVE_PROPERTIES)
+                cached.remove(sensitiveProperty);
+            parsedPropertiesCache.put(cacheKey, cached);
+        }
         return connectProperties;
     }
 
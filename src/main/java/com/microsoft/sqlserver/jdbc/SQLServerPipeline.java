@@ -0,0 +1,393 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import static com.microsoft.sqlserver.jdbc.SQLServerConnection.getCachedParsedSQL;
+import static com.microsoft.sqlserver.jdbc.SQLServerConnection.parseAndCacheSQL;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection.CityHash128Key;
+
+
+/**
+ * Executes a sequence of independent statements in a single round trip to the server.
+ * <p>
+ * Statements added to a pipeline are sent back-to-back as remote procedure calls in one request, and the server
+ * executes them in order. The update count of each statement is matched back to the statement when the response is
+ * read, so executing N statements costs one network round trip instead of N. This is intended for chatty workloads
+ * such as a series of independent INSERT, UPDATE or DELETE statements within a transaction.
+ * <p>
+ * A failure of one statement does not prevent the statements after it from executing. If any statement fails,
+ * {@link #execute()} throws a <code>BatchUpdateException</code> for the first failure whose update counts contain
+ * <code>Statement.EXECUTE_FAILED</code> for each failed statement. Rows returned by a statement in the pipeline are
+ * discarded and reported as a failure of that statement, matching the behavior of <code>executeUpdate</code>.
+ * <p>
+ * Each statement executes through its own call to sp_executesql, which is a separate batch scope. Local temporary
+ * tables that a statement creates, and variables it declares, are dropped when that statement finishes, so later
+ * statements in the pipeline cannot see them. Create temporary tables that the pipeline uses before executing it.
+ * <p>
+ * A pipeline is not thread-safe; it is obtained from {@link ISQLServerConnection#pipeline()} and executes on that
+ * connection.
+ */
+public final class SQLServerPipeline {
+    private static final Logger logger = Logger.getLogger("com.microsoft.sqlserver.jdbc.internals.SQLServerPipeline");
+
+    /** delimiter for multiple RPCs in a single request */
+    private static final int RPC_DELIMITER = 0xFF;
+
+    /**
+     * A statement queued for execution: either SQL text or a prepared statement with a copy of its parameter values.
+     */
+    private static final class Request {
+        final String sql;
+        final SQLServerPreparedStatement pstmt;
+        final Parameter[] params;
+
+        Request(String sql) {
+            this.sql = sql;
+            this.pstmt = null;
+            this.params = null;
+        }
+
+        Request(SQLServerPreparedStatement pstmt, Parameter[] params) {
+            this.sql = null;
+            this.pstmt = pstmt;
+            this.params = params;
+        }
+    }
+
+    private final SQLServerConnection connection;
+    private final List<Request> requests = new ArrayList<>();
+    private int queryTimeout;
+    private final String traceID;
+
+    SQLServerPipeline(SQLServerConnection connection) {
+        this.connection = connection;
+        this.queryTimeout = connection.getQueryTimeoutSeconds();
+        this.traceID = "SQLServerPipeline:" + connection.toString();
+    }
+
+    @Override
+    public String toString() {
+        return traceID;
+    }
+
+    /**
+     * Adds a SQL statement to the pipeline. The statement runs in its own sp_executesql scope, so a local temporary
+     * table (#name) it creates is dropped as soon as it finishes; DDL on permanent objects is unaffected.
+     *
+     * @param sql
+     *        an INSERT, UPDATE, DELETE or DDL statement
+     * @return this pipeline
+     * @throws SQLServerException
+     *         if the connection is closed
+     */
+    public SQLServerPipeline add(String sql) throws SQLServerException {
+        connection.checkClosed();
+
+        if (null == sql) {
+            MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_invalidArgument"));
+            Object[] msgArgs = {"sql"};
+            SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), null, false);
+        }
+
+        if (sql.indexOf('{') >= 0) {
+            CityHash128Key cacheKey = new CityHash128Key(sql);
+            ParsedSQLCacheItem cacheItem = getCachedParsedSQL(cacheKey);
+            if (null == cacheItem)
+                cacheItem = parseAndCacheSQL(cacheKey, sql);
+            sql = cacheItem.processedSQL;
+        }
+
+        requests.add(new Request(sql));
+        return this;
+    }
+
+    /**
+     * Adds an execution of a prepared statement to the pipeline. The statement's current parameter values are copied,
+     * so the statement can be given new values and added again.
+     *
+     * @param pstmt
+     *        a prepared statement created by the same connection. Callable statements, statements that return
+     *        generated keys and statements with encrypted parameters are not supported.
+     * @return this pipeline
+     * @throws SQLServerException
+     *         if the statement is closed, belongs to a different connection or is not supported
+     */
+    public SQLServerPipeline add(PreparedStatement pstmt) throws SQLServerException {
+        connection.checkClosed();
+
+        SQLServerPreparedStatement stmt = null;
+        if (pstmt instanceof SQLServerPreparedStatement) {
+            stmt = (SQLServerPreparedStatement) pstmt;
+        } else {
+            SQLServerException.makeFromDriverError(connection, this,
+                    SQLServerException.getErrString("R_pipelineStatementNotSupported"), null, false);
+        }
+
+        if (stmt.connection != connection) {
+            SQLServerException.makeFromDriverError(connection, this,
+                    SQLServerException.getErrString("R_pipelineStatementFromOtherConnection"), null, false);
+        }
+
+        requests.add(new Request(stmt, stmt.copyParametersForPipeline()));
+        return this;
+    }
+
+    /**
+     * Returns the number of statements waiting to be executed.
+     *
+     * @return the number of statements in the pipeline
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Removes all statements from the pipeline.
+     */
+    public void clear() {
+        requests.clear();
+    }
+
+    /**
+     * Sets the number of seconds to wait for the whole pipeline to execute. The default is the queryTimeout of the
+     * connection.
+     *
+     * @param seconds
+     *        the timeout in seconds; zero means there is no limit
+     * @throws SQLServerException
+     *         if the value is negative
+     */
+    public void setQueryTimeout(int seconds) throws SQLServerException {
+        if (seconds < 0) {
+            MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_invalidQueryTimeOutValue"));
+            Object[] msgArgs = {seconds};
+            SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), null, true);
+        }
+        queryTimeout = seconds;
+    }
+
+    /**
+     * Returns the number of seconds to wait for the whole pipeline to execute.
+     *
+     * @return the timeout in seconds
+     */
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * Sends all statements in the pipeline to the server in one request and returns their update counts. The pipeline
+     * is empty afterwards.
+     *
+     * @return an array with one update count per statement, in the order the statements were added. A statement that
+     *         does not produce an update count is reported as <code>Statement.SUCCESS_NO_INFO</code>.
+     * @throws BatchUpdateException
+     *         if one or more statements failed; the update counts of all statements are available from the exception
+     * @throws SQLServerException
+     *         if the connection is closed or the request could not be sent or read
+     */
+    public int[] execute() throws SQLServerException, BatchUpdateException {
+        connection.checkClosed();
+
+        if (requests.isEmpty())
+            return new int[0];
+
+        PipelineExecCmd command = new PipelineExecCmd(new ArrayList<>(requests));
+        requests.clear();
+        connection.executeCommand(command);
+
+        if (null != command.firstException) {
+            SQLServerException e = command.firstException;
+            throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), command.updateCounts,
+                    e);
+        }
+
+        return command.updateCounts;
+    }
+
+    private final class PipelineExecCmd extends TDSCommand {
+        private final List<Request> pendingRequests;
+        final int[] updateCounts;
+        SQLServerException firstException;
+
+        PipelineExecCmd(List<Request> pendingRequests) {
+            super(traceID + " execute", queryTimeout, connection.getCancelQueryTimeoutSeconds());
+            this.pendingRequests = pendingRequests;
+            this.updateCounts = new int[pendingRequests.size()];
+        }
+
+        final boolean doExecute() throws SQLServerException {
+            TDSWriter tdsWriter = startRequest(TDS.PKT_RPC);
+            for (int i = 0; i < pendingRequests.size(); i++) {
+                if (i > 0)
+                    tdsWriter.writeByte((byte) RPC_DELIMITER);
+
+                Request request = pendingRequests.get(i);
+                if (null != request.pstmt) {
+                    request.pstmt.writePipelineRPC(tdsWriter, request.params);
+                } else {
+                    tdsWriter.writeShort((short) 0xFFFF); // procedure name length -> use ProcIDs
+                    tdsWriter.writeShort(TDS.PROCID_SP_EXECUTESQL);
+                    tdsWriter.writeByte((byte) 0); // RPC procedure option 1
+                    tdsWriter.writeByte((byte) 0); // RPC procedure option 2
+
+                    // <stmt> IN
+                    tdsWriter.writeRPCStringUnicode(request.sql);
+                }
+            }
+
+            if (logger.isLoggable(Level.FINER))
+                logger.finer(toString() + ": Sent " + pendingRequests.size() + " RPCs");
+
+            PipelineResponseHandler handler = new PipelineResponseHandler(this);
+            TDSParser.parse(startResponse(), handler);
+
+            // Statements that were never reached (e.g. the request was canceled) did not execute.
+            for (int i = handler.requestIndex; i < updateCounts.length; i++)
+                updateCounts[i] = Statement.EXECUTE_FAILED;
+
+            return true;
+        }
+
+        void onRequestFailed(SQLServerException e) {
+            if (null == firstException)
+                firstException = e;
+        }
+    }
+
+    /**
+     * Matches the token stream of the response to the requests: each RPC's tokens end with a DONEPROC token, and the
+     * DONEINPROC tokens before it carry the update counts of the statements it ran.
+     */
+    private final class PipelineResponseHandler extends TDSTokenHandler {
+        private final PipelineExecCmd command;
+        int requestIndex = 0;
+
+        // State of the request whose tokens are being read.
+        private int updateCount = Statement.SUCCESS_NO_INFO;
+        private StreamError error;
+        private boolean resultSetReturned;
+        private Column[] columns;
+
+        PipelineResponseHandler(PipelineExecCmd command) {
+            super(command.getLogContext());
+            this.command = command;
+        }
+
+        @Override
+        boolean onDone(TDSReader tdsReader) throws SQLServerException {
+            int tokenType = tdsReader.peekTokenType();
+            StreamDone doneToken = new StreamDone();
+            doneToken.setFromTDS(tdsReader);
+
+            if (doneToken.cmdIsDMLOrDDL())
+                updateCount = (int) doneToken.getUpdateCount();
+
+            if (TDS.TDS_DONEPROC == tokenType && requestIndex < command.updateCounts.length)
+                return completeRequest(doneToken);
+
+            return true;
+        }
+
+        private boolean completeRequest(StreamDone doneToken) {
+            SQLServerException failure = null;
+            if (null != error) {
+                try {
+                    SQLServerException.makeFromDatabaseError(connection, SQLServerPipeline.this, error.getMessage(),
+                            error, false);
+                } catch (SQLServerException e) {
+                    failure = e;
+                }
+            } else if (resultSetReturned) {
+                failure = new SQLServerException(SQLServerException.getErrString("R_resultsetGeneratedForUpdate"),
+                        null, 0, null);
+            } else if (doneToken.isError()) {
+                MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_pipelineStatementFailed"));
+                Object[] msgArgs = {requestIndex + 1};
+                failure = new SQLServerException(form.format(msgArgs), null, 0, null);
+            }
+
+            if (null != failure) {
+                command.updateCounts[requestIndex] = Statement.EXECUTE_FAILED;
+                command.onRequestFailed(failure);
+            } else {
+                command.updateCounts[requestIndex] = updateCount;
+            }
+
+            ++requestIndex;
+            updateCount = Statement.SUCCESS_NO_INFO;
+            error = null;
+            resultSetReturned = false;
+            columns = null;
+
+            // A fatal error closes the connection; there is nothing more to read.
+            return !connection.isSessionUnAvailable();
+        }
+
+        @Override
+        boolean onError(TDSReader tdsReader) throws SQLServerException {
+            StreamError streamError = new StreamError();
+            streamError.setFromTDS(tdsReader);
+            if (null == error)
+                error = streamError;
+            return true;
+        }
+
+        @Override
+        boolean onColMetaData(TDSReader tdsReader) throws SQLServerException {
+            StreamColumns columnMetaData = new StreamColumns(Util.shouldHonorAEForRead(
+                    SQLServerStatementColumnEncryptionSetting.UseConnectionSetting, connection));
+            columnMetaData.setFromTDS(tdsReader);
+            columns = columnMetaData.buildColumns(null, null);
+            resultSetReturned = true;
+            return true;
+        }
+
+        @Override
+        boolean onRow(TDSReader tdsReader) throws SQLServerException {
+            if (TDS.TDS_ROW != tdsReader.readUnsignedByte())
+                assert false;
+
+            for (Column column : columns) {
+                column.skipValue(tdsReader, true);
+                column.clear();
+            }
+            return true;
+        }
+
+        @Override
+        boolean onNBCRow(TDSReader tdsReader) throws SQLServerException {
+            if (TDS.TDS_NBCROW != tdsReader.readUnsignedByte())
+                assert false;
+
+            // Columns whose bit is set in the null bitmap have no value on the wire.
+            byte[] nullBitmap = new byte[(columns.length + 7) >> 3];
+            tdsReader.readBytes(nullBitmap, 0, nullBitmap.length);
+            for (int i = 0; i < columns.length; i++) {
+                if (0 == (nullBitmap[i >> 3] & (1 << (i & 7)))) {
+                    columns[i].skipValue(tdsReader, true);
+                    columns[i].clear();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void onEOF(TDSReader tdsReader) throws SQLServerException {
+            // Errors are reported per request.
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Enumeration;
+import java.util.logging.Level;
+
+import javax.naming.RefAddr;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+
+
+/**
+ * Provides pooled connections without a third-party pool manager. {@link #getConnection()} borrows a connection from a
+ * pool of physical connections that the data source maintains, and closing the returned connection returns it to the
+ * pool. The pool is created on first use with the pool settings in effect at that time.
+ * <p>
+ * Connections requested with {@link #getConnection(String, String)} are not pooled.
+ */
+public class SQLServerPoolingDataSource extends SQLServerConnectionPoolDataSource implements AutoCloseable {
+    private static final long serialVersionUID = 3926741853217594861L;
+
+    private static final String MIN_POOL_SIZE = "minPoolSize";
+    private static final String MAX_POOL_SIZE = "maxPoolSize";
+    private static final String CONNECTION_WAIT_TIMEOUT = "connectionWaitTimeout";
+    private static final String IDLE_TIMEOUT = "idleTimeout";
+
+    private int minPoolSize = 0;
+    private int maxPoolSize = 10;
+    private int connectionWaitTimeout = 30;
+    private int idleTimeout = 600;
+
+    private transient volatile SQLServerConnectionPool pool;
+    private transient boolean closed = false;
+
+    /**
+     * Sets the number of connections the pool keeps open, even when they are idle.
+     *
+     * @param minPoolSize
+     *        the minimum number of connections. The default is 0.
+     */
+    public void setMinPoolSize(int minPoolSize) {
+        this.minPoolSize = minPoolSize;
+    }
+
+    /**
+     * Returns the number of connections the pool keeps open, even when they are idle.
+     *
+     * @return the minimum number of connections
+     */
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of connections the pool opens.
+     *
+     * @param maxPoolSize
+     *        the maximum number of connections. The default is 10.
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * Returns the maximum number of connections the pool opens.
+     *
+     * @return the maximum number of connections
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Sets how long getConnection waits for a connection to be returned when all connections of the pool are in use.
+     *
+     * @param connectionWaitTimeout
+     *        the number of seconds to wait. The default is 30.
+     */
+    public void setConnectionWaitTimeout(int connectionWaitTimeout) {
+        this.connectionWaitTimeout = connectionWaitTimeout;
+    }
+
+    /**
+     * Returns how long getConnection waits for a connection to be returned when all connections of the pool are in
+     * use.
+     *
+     * @return the number of seconds to wait
+     */
+    public int getConnectionWaitTimeout() {
+        return connectionWaitTimeout;
+    }
+
+    /**
+     * Sets how long a connection may stay idle before the pool closes it, as long as the pool stays at or above its
+     * minimum size.
+     *
+     * @param idleTimeout
+     *        the number of seconds, or 0 to keep idle connections open. The default is 600.
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns how long a connection may stay idle before the pool closes it.
+     *
+     * @return the number of seconds, or 0 if idle connections are kept open
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "getConnection");
+        Connection con;
+        try {
+            con = getPool().borrow(connectionWaitTimeout * 1000L);
+        } catch (SQLServerException e) {
+            throw e;
+        } catch (SQLException e) {
+            throw new SQLServerException(e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
+        }
+        loggerExternal.exiting(getClassNameLogging(), "getConnection", con);
+        return con;
+    }
+
+    private SQLServerConnectionPool getPool() throws SQLServerException {
+        SQLServerConnectionPool currentPool = pool;
+        if (null == currentPool) {
+            synchronized (this) {
+                if (closed) {
+                    SQLServerException.makeFromDriverError(null, this,
+                            SQLServerException.getErrString("R_connectionPoolClosed"), null, false);
+                }
+
+                currentPool = pool;
+                if (null == currentPool) {
+                    currentPool = new SQLServerConnectionPool(this, minPoolSize, maxPoolSize, idleTimeout);
+                    pool = currentPool;
+                }
+            }
+        }
+        return currentPool;
+    }
+
+    /**
+     * Closes the idle connections of the pool. Connections that are in use are closed when the application closes
+     * them. The data source cannot be used to borrow connections afterwards.
+     */
+    @Override
+    public void close() {
+        loggerExternal.entering(getClassNameLogging(), "close");
+        synchronized (this) {
+            closed = true;
+            if (null != pool)
+                pool.close();
+        }
+        loggerExternal.exiting(getClassNameLogging(), "close");
+    }
+
+    // Returns the pool for tests and diagnostics.
+    SQLServerConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    // Implement javax.naming.Referenceable interface methods.
+
+    @Override
+    public Reference getReference() {
+        if (loggerExternal.isLoggable(Level.FINER))
+            loggerExternal.entering(getClassNameLogging(), "getReference");
+        Reference ref = getReferenceInternal("com.microsoft.sqlserver.jdbc.SQLServerPoolingDataSource");
+        if (loggerExternal.isLoggable(Level.FINER))
+            loggerExternal.exiting(getClassNameLogging(), "getReference", ref);
+        return ref;
+    }
+
+    @Override
+    Reference getReferenceInternal(String dataSourceClassString) {
+        Reference ref = super.getReferenceInternal(dataSourceClassString);
+        ref.add(new StringRefAddr(MIN_POOL_SIZE, Integer.toString(minPoolSize)));
+        ref.add(new StringRefAddr(MAX_POOL_SIZE, Integer.toString(maxPoolSize)));
+        ref.add(new StringRefAddr(CONNECTION_WAIT_TIMEOUT, Integer.toString(connectionWaitTimeout)));
+        ref.add(new StringRefAddr(IDLE_TIMEOUT, Integer.toString(idleTimeout)));
+        return ref;
+    }
+
+    @Override
+    void initializeFromReference(Reference ref) {
+        // Pool settings are not connection properties, so take them out before the connection properties are read.
+        Reference connectionRef = new Reference(ref.getClassName(), ref.getFactoryClassName(),
+                ref.getFactoryClassLocation());
+        Enumeration<RefAddr> e = ref.getAll();
+        while (e.hasMoreElements()) {
+            RefAddr addr = e.nextElement();
+            String value = (String) addr.getContent();
+            switch (addr.getType()) {
+                case MIN_POOL_SIZE:
+                    minPoolSize = Integer.parseInt(value);
+                    break;
+                case MAX_POOL_SIZE:
+                    maxPoolSize = Integer.parseInt(value);
+                    break;
+                case CONNECTION_WAIT_TIMEOUT:
+                    connectionWaitTimeout = Integer.parseInt(value);
+                    break;
+                case IDLE_TIMEOUT:
+                    idleTimeout = Integer.parseInt(value);
+                    break;
+                default:
+                    connectionRef.add(addr);
+                    break;
+            }
+        }
+        super.initializeFromReference(connectionRef);
+    }
+
+    private Object writeReplace() throws java.io.ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(java.io.ObjectInputStream stream) throws java.io.InvalidObjectException {
+        // For added security/robustness, the only way to rehydrate a serialized SQLServerDataSource
+        // is to use a SerializationProxy. Direct use of readObject() is not supported.
+        throw new java.io.InvalidObjectException("");
+    }
+
+    /**
+     * Implements java.io.Serializable the same way as {@link SQLServerDataSource}
+     */
+    private static class SerializationProxy implements java.io.Serializable {
+        private final Reference ref;
+        private static final long serialVersionUID = -2573049841529368754L;
+
+        SerializationProxy(SQLServerPoolingDataSource ds) {
+            // We do not need the class name so pass null, serialization mechanism
+            // stores the class info.
+            ref = ds.getReferenceInternal(null);
+        }
+
+        private Object readResolve() {
+            SQLServerPoolingDataSource ds = new SQLServerPoolingDataSource();
+            ds.initializeFromReference(ref);
+            return ds;
+        }
+    }
+}
@@ -25,8 +25,11 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 
 import com.microsoft.sqlserver.jdbc.SQLServerConnection.CityHash128Key;
@@ -59,6 +62,16 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
     /** The prepared type definitions */
     private String preparedTypeDefinitions;
 
+    /**
+     * Type definition and output flag of each parameter that preparedTypeDefinitions was built from. Executions with
+     * parameters of the same shape keep the prepared strings without building them again.
+     */
+    private String[] paramTypeDefinitions;
+    private boolean[] paramOutputs;
+
+    /** Key of preparedSQL and preparedTypeDefinitions in the prepared statement handle cache */
+    private CityHash128Key preparedStatementHandleKey;
+
     /** Processed SQL statement text, may not be same as what user initially passed. */
     final String userSQL;
 
@@ -102,11 +115,15 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
     /** The prepared statement handle returned by the server */
     private int prepStmtHandle = 0;
 
+    /** The session of the connection that the prepared statement handle belongs to */
+    private int prepStmtHandleSession = 0;
+
     /** Statement used for getMetadata(). Declared as a field to facilitate closing the statement. */
     private SQLServerStatement internalStmt = null;
 
     private void setPreparedStatementHandle(int handle) {
         this.prepStmtHandle = handle;
+        this.prepStmtHandleSession = connection.getSessionRecoveryCount();
     }
 
     /**
@@ -141,6 +158,18 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         this.useBulkCopyForBatchInsert = useBulkCopyForBatchInsert;
     }
 
+    /**
+     * boolean value for deciding if the driver should combine the rows of batch inserts into multi-row INSERT
+     * statements
+     */
+    private boolean rewriteBatchedInserts;
+
+    // SQL Server accepts 2100 parameters per request, 3 of which sp_prepexec needs itself.
+    private static final int MAX_MULTI_ROW_INSERT_PARAMETERS = 2097;
+
+    // SQL Server accepts 1000 rows in the VALUES clause of an INSERT statement.
+    private static final int MAX_MULTI_ROW_INSERT_ROWS = 1000;
+
     @Override
     public int getPreparedStatementHandle() throws SQLServerException {
         checkClosed();
@@ -153,7 +182,8 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
      * @return Per the description.
      */
     private boolean hasPreparedStatementHandle() {
-        return 0 < prepStmtHandle;
+        // A handle from before the session was recovered does not exist in the recovered session.
+        return 0 < prepStmtHandle && prepStmtHandleSession == connection.getSessionRecoveryCount();
     }
 
     /**
@@ -179,6 +209,12 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
      */
     private boolean encryptionMetadataIsRetrieved = false;
 
+    /** Key of the parameter encryption metadata in the connection's cache, set when the metadata is retrieved */
+    private CityHash128Key encryptionMetadataCacheKey;
+
+    // Error that the server reports when the parameter encryption metadata the client used is stale.
+    private static final int ENCRYPTION_METADATA_MISMATCH = 33514;
+
     private String localUserSQL;
 
     // Internal function used in tracing
@@ -234,6 +270,7 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         userSQLParamPositions = parsedSQL.parameterPositions;
         initParams(userSQLParamPositions.length);
         useBulkCopyForBatchInsert = conn.getUseBulkCopyForBatchInsert();
+        rewriteBatchedInserts = conn.getRewriteBatchedInserts();
     }
 
     /**
@@ -366,11 +403,28 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
      * of the parameters due to changes in scale, length, etc., and, if so, sets the new type definition string.
      */
     private boolean buildPreparedStrings(Parameter[] params, boolean renewDefinition) throws SQLServerException {
-        String newTypeDefinitions = buildParamTypeDefinitions(params, renewDefinition);
+        if (null == paramTypeDefinitions || paramTypeDefinitions.length != params.length) {
+            paramTypeDefinitions = new String[params.length];
+            paramOutputs = new boolean[params.length];
+        }
+
+        boolean shapeChanged;
+        try {
+            shapeChanged = getParamTypeDefinitions(params, renewDefinition, paramTypeDefinitions, paramOutputs);
+        } catch (SQLServerException e) {
+            // Some definitions may have been updated and others not.
+            paramTypeDefinitions = null;
+            throw e;
+        }
+        if (null != preparedTypeDefinitions && !shapeChanged)
+            return false;
+
+        String newTypeDefinitions = buildParamTypeDefinitions(paramTypeDefinitions, paramOutputs);
         if (null != preparedTypeDefinitions && newTypeDefinitions.equalsIgnoreCase(preparedTypeDefinitions))
             return false;
 
         preparedTypeDefinitions = newTypeDefinitions;
+        preparedStatementHandleKey = null;
 
         /* Replace the parameter marker '?' with the param numbers @p1, @p2 etc */
         preparedSQL = connection.replaceParameterMarkers(userSQL, userSQLParamPositions, params, bReturnValueSyntax);
@@ -381,7 +435,8 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
     }
 
     /**
-     * Builds the parameter type definitons for a JDBC prepared statement that will be used to prepare the statement.
+     * Builds the parameter type definitons for the given parameter values without changing the state of the
+     * statement, such as the parameter names used to map encryption information.
      * 
      * @param params
      *        the statement parameters
@@ -392,10 +447,63 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
      * @return the required data type definitions.
      */
     private String buildParamTypeDefinitions(Parameter[] params, boolean renewDefinition) throws SQLServerException {
+        String[] typeDefinitions = new String[params.length];
+        boolean[] outputs = new boolean[params.length];
+        getParamTypeDefinitions(params, renewDefinition, typeDefinitions, outputs);
+        return buildParamTypeDefinitions(typeDefinitions, outputs, null);
+    }
+
+    /**
+     * Gets the type definition and output flag of each parameter. The type definition covers the type, length,
+     * precision and scale that the parameter is declared with.
+     * 
+     * @param typeDefinitions
+     *        receives the type definitions, holding those of an earlier execution on input
+     * @param outputs
+     *        receives the output flags, holding those of an earlier execution on input
+     * @return true if any definition or output flag differs from the earlier execution
+     */
+    private boolean getParamTypeDefinitions(Parameter[] params, boolean renewDefinition, String[] typeDefinitions,
+            boolean[] outputs) throws SQLServerException {
+        boolean changed = false;
+        for (int i = 0; i < params.length; i++) {
+            params[i].renewDefinition = renewDefinition;
+            String typeDefinition = params[i].getTypeDefinition(connection, resultsReader());
+            if (null == typeDefinition) {
+                MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_valueNotSetForParameter"));
+                Object[] msgArgs = {i + 1};
+                SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), null, false);
+            }
+
+            boolean isOutput = params[i].isOutput();
+            if (isOutput != outputs[i] || !typeDefinition.equals(typeDefinitions[i])) {
+                typeDefinitions[i] = typeDefinition;
+                outputs[i] = isOutput;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Builds the parameter declarations of sp_prepexec and sp_executesql from the type definitions of the parameters,
+     * and records the parameter names of the statement.
+     */
+    private String buildParamTypeDefinitions(String[] typeDefinitions, boolean[] outputs) {
+        parameterNames = new ArrayList<>();
+        return buildParamTypeDefinitions(typeDefinitions, outputs, parameterNames);
+    }
+
+    /**
+     * Builds the parameter declarations of sp_prepexec and sp_executesql from the type definitions of the parameters.
+     * 
+     * @param names
+     *        receives the parameter names, or null if they are not needed
+     */
+    private static String buildParamTypeDefinitions(String[] typeDefinitions, boolean[] outputs, List<String> names) {
         StringBuilder sb = new StringBuilder();
-        int nCols = params.length;
+        int nCols = typeDefinitions.length;
         char cParamName[] = new char[10];
-        parameterNames = new ArrayList<>();
 
         for (int i = 0; i < nCols; i++) {
             if (i > 0)
@@ -406,24 +514,26 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
                 sb.append(cParamName[j]);
             sb.append(' ');
 
-            parameterNames.add(i, (new String(cParamName)).trim());
+            if (null != names)
+                names.add(i, (new String(cParamName)).trim());
 
-            params[i].renewDefinition = renewDefinition;
-            String typeDefinition = params[i].getTypeDefinition(connection, resultsReader());
-            if (null == typeDefinition) {
-                MessageFormat form = new MessageFormat(SQLServerException.getErrString("R_valueNotSetForParameter"));
-                Object[] msgArgs = {i + 1};
-                SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), null, false);
-            }
+            sb.append(typeDefinitions[i]);
 
-            sb.append(typeDefinition);
-
-            if (params[i].isOutput())
+            if (outputs[i])
                 sb.append(" OUTPUT");
         }
         return sb.toString();
     }
 
+    /**
+     * Returns the key of preparedSQL and preparedTypeDefinitions in the prepared statement handle cache.
+     */
+    private CityHash128Key getPreparedStatementHandleKey() {
+        if (null == preparedStatementHandleKey)
+            preparedStatementHandleKey = new CityHash128Key(preparedSQL, preparedTypeDefinitions);
+        return preparedStatementHandleKey;
+    }
+
     @Override
     public java.sql.ResultSet executeQuery() throws SQLServerException, SQLTimeoutException {
         loggerExternal.entering(getClassNameLogging(), "executeQuery");
@@ -436,6 +546,24 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         return resultSet;
     }
 
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync(Executor executor) throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "executeQueryAsync");
+        checkClosed();
+        CompletableFuture<ResultSet> future = AsyncStatementExecutor.submit(this, () -> executeQuery(), executor);
+        loggerExternal.exiting(getClassNameLogging(), "executeQueryAsync", future);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Integer> executeUpdateAsync(Executor executor) throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "executeUpdateAsync");
+        checkClosed();
+        CompletableFuture<Integer> future = AsyncStatementExecutor.submit(this, () -> executeUpdate(), executor);
+        loggerExternal.exiting(getClassNameLogging(), "executeUpdateAsync", future);
+        return future;
+    }
+
     /**
      * Executes a query without cursoring for metadata.
      *
@@ -579,7 +707,13 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
             } catch (SQLException e) {
                 if (retryBasedOnFailedReuseOfCachedHandle(e, attempt, needsPrepare, false))
                     continue;
-                else
+                else if (retryBasedOnStaleEncryptionMetadata(e, attempt)) {
+                    hasNewTypeDefinitions = refreshStaleEncryptionMetadata();
+                    continue;
+                } else if (retryBasedOnStaleParameterNames(e, attempt)) {
+                    hasNewTypeDefinitions = buildPreparedStrings(inOutParam, false);
+                    continue;
+                } else
                     throw e;
             }
             break;
@@ -611,6 +745,15 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
                 && connection.isStatementPoolingEnabled();
     }
 
+    /**
+     * Returns if the execution should be retried because it failed in a way that stale cached parameter names of a
+     * stored procedure explain, after the parameters set by name have been moved to their current positions. Only
+     * callable statements set parameters by name.
+     */
+    boolean retryBasedOnStaleParameterNames(SQLException e, int attempt) throws SQLServerException {
+        return false;
+    }
+
     /**
      * Consumes the OUT parameter for the statement object itself.
      *
@@ -638,8 +781,7 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
                 // Cache the reference to the newly created handle, NOT for cursorable handles.
                 if (null == cachedPreparedStatementHandle && !isCursorable(executeMethod)) {
                     cachedPreparedStatementHandle = connection.registerCachedPreparedStatementHandle(
-                            new CityHash128Key(preparedSQL, preparedTypeDefinitions), prepStmtHandle,
-                            executedSqlDirectly);
+                            getPreparedStatementHandleKey(), prepStmtHandle, executedSqlDirectly);
                 }
 
                 param.skipValue(tdsReader, true);
@@ -770,6 +912,56 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
             tdsWriter.writeRPCStringUnicode(preparedTypeDefinitions);
     }
 
+    /**
+     * Returns a copy of the current parameter values for later execution as part of a {@link SQLServerPipeline}.
+     */
+    final Parameter[] copyParametersForPipeline() throws SQLServerException {
+        checkClosed();
+
+        if (this instanceof SQLServerCallableStatement || bRequestedGeneratedKeys) {
+            SQLServerException.makeFromDriverError(connection, this,
+                    SQLServerException.getErrString("R_pipelineStatementNotSupported"), null, false);
+        }
+
+        if (Util.shouldHonorAEForParameters(stmtColumnEncriptionSetting, connection) && 0 < inOutParam.length) {
+            SQLServerException.makeFromDriverError(connection, this,
+                    SQLServerException.getErrString("R_pipelineStatementNotSupported"), null, false);
+        }
+
+        final int numParams = inOutParam.length;
+        Parameter paramValues[] = new Parameter[numParams];
+        for (int i = 0; i < numParams; i++)
+            paramValues[i] = inOutParam[i].cloneForBatch();
+        return paramValues;
+    }
+
+    /**
+     * Writes an sp_executesql RPC for this statement with the given parameter values. Unlike the regular execution
+     * paths, this does not touch the statement's prepared handle or type definitions, so the statement can still be
+     * executed normally afterwards.
+     */
+    final void writePipelineRPC(TDSWriter tdsWriter, Parameter[] params) throws SQLServerException {
+        String typeDefinitions = buildParamTypeDefinitions(params, false);
+        String sql = connection.replaceParameterMarkers(userSQL, userSQLParamPositions, params, bReturnValueSyntax);
+
+        if (getStatementLogger().isLoggable(java.util.logging.Level.FINE))
+            getStatementLogger().fine(toString() + ": pipelining sp_executesql: SQL:" + sql);
+
+        tdsWriter.writeShort((short) 0xFFFF); // procedure name length -> use ProcIDs
+        tdsWriter.writeShort(TDS.PROCID_SP_EXECUTESQL);
+        tdsWriter.writeByte((byte) 0); // RPC procedure option 1
+        tdsWriter.writeByte((byte) 0); // RPC procedure option 2
+
+        // <stmt> IN
+        tdsWriter.writeRPCStringUnicode(sql);
+
+        // <formal parameter defn> IN
+        if (typeDefinitions.length() > 0)
+            tdsWriter.writeRPCStringUnicode(typeDefinitions);
+
+        sendParamsByRPC(tdsWriter, params);
+    }
+
     private void buildServerCursorExecParams(TDSWriter tdsWriter) throws SQLServerException {
         if (getStatementLogger().isLoggable(java.util.logging.Level.FINE))
             getStatementLogger().fine(toString() + ": calling sp_cursorexecute: PreparedHandle:"
@@ -823,6 +1015,17 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
     }
 
     private void getParameterEncryptionMetadata(Parameter[] params) throws SQLServerException {
+        // Statements with the same SQL text and parameter definitions share the metadata described for the first.
+        encryptionMetadataCacheKey = getPreparedStatementHandleKey();
+        CryptoMetadata[] cachedMetadata = connection.getCachedParameterEncryptionMetadata(encryptionMetadataCacheKey);
+        if (null != cachedMetadata && cachedMetadata.length == params.length) {
+            if (getStatementLogger().isLoggable(java.util.logging.Level.FINE)) {
+                getStatementLogger().fine("Reusing cached parameter encryption metadata.");
+            }
+            setParameterEncryptionMetadata(params, cachedMetadata);
+            return;
+        }
+
         /*
          * The parameter list is created from the data types provided by the user for the parameters. the data types do
          * not need to be the same as in the table definition. Also, when string is sent to an int field, the parameter
@@ -899,6 +1102,7 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
 
         // Parameter count in the result set.
         int paramCount = 0;
+        CryptoMetadata[] describedMetadata = new CryptoMetadata[params.length];
         try {
             rs = (SQLServerResultSet) stmt.getResultSet();
             while (rs.next()) {
@@ -918,19 +1122,10 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
                 SQLServerEncryptionType encType = SQLServerEncryptionType
                         .of((byte) rs.getInt(DescribeParameterEncryptionResultSet2.ColumnEncrytionType.value()));
                 if (SQLServerEncryptionType.PlainText != encType) {
-                    params[paramIndex].cryptoMeta = new CryptoMetadata(cekEntry, (short) cekOrdinal,
+                    describedMetadata[paramIndex] = new CryptoMetadata(cekEntry, (short) cekOrdinal,
                             (byte) rs.getInt(DescribeParameterEncryptionResultSet2.ColumnEncryptionAlgorithm.value()),
                             null, encType.value,
                             (byte) rs.getInt(DescribeParameterEncryptionResultSet2.NormalizationRuleVersion.value()));
-                    // Decrypt the symmetric key.(This will also validate and throw if needed).
-                    SQLServerSecurityUtility.decryptSymmetricKey(params[paramIndex].cryptoMeta, connection);
-                } else {
-                    if (true == params[paramIndex].getForceEncryption()) {
-                        MessageFormat form = new MessageFormat(
-                                SQLServerException.getErrString("R_ForceEncryptionTrue_HonorAETrue_UnencryptedColumn"));
-                        Object[] msgArgs = {userSQL, paramIndex + 1};
-                        SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), null, true);
-                    }
                 }
             }
             if (getStatementLogger().isLoggable(java.util.logging.Level.FINE)) {
@@ -962,12 +1157,74 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
             stmt.close();
         }
         connection.resetCurrentCommand();
+
+        setParameterEncryptionMetadata(params, describedMetadata);
+        connection.registerCachedParameterEncryptionMetadata(encryptionMetadataCacheKey, describedMetadata);
+    }
+
+    /**
+     * Sets the encryption metadata of the parameters from what sp_describe_parameter_encryption returned. Each
+     * parameter gets its own copy, since the copy holds the decrypted column encryption key.
+     * 
+     * @param metadata
+     *        the metadata of each parameter, null for parameters that are not encrypted
+     */
+    private void setParameterEncryptionMetadata(Parameter[] params,
+            CryptoMetadata[] metadata) throws SQLServerException {
+        for (int i = 0; i < params.length; i++) {
+            CryptoMetadata md = metadata[i];
+            if (null != md) {
+                params[i].cryptoMeta = new CryptoMetadata(md.getCekTableEntry(), md.getOrdinal(),
+                        md.getEncryptionAlgorithmId(), md.getEncryptionAlgorithmName(), md.getEncryptionType().value,
+                        md.getNormalizationRuleVersion());
+                // Decrypt the symmetric key.(This will also validate and throw if needed).
+                SQLServerSecurityUtility.decryptSymmetricKey(params[i].cryptoMeta, connection);
+            } else {
+                if (true == params[i].getForceEncryption()) {
+                    MessageFormat form = new MessageFormat(
+                            SQLServerException.getErrString("R_ForceEncryptionTrue_HonorAETrue_UnencryptedColumn"));
+                    Object[] msgArgs = {userSQL, i + 1};
+                    SQLServerException.makeFromDriverError(connection, this, form.format(msgArgs), null, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether execution should be retried because the server reported that the parameter encryption metadata
+     * is stale, for instance after a column encryption key was rotated.
+     */
+    private boolean retryBasedOnStaleEncryptionMetadata(SQLException e, int attempt) {
+        return 1 == attempt && ENCRYPTION_METADATA_MISMATCH == e.getErrorCode() && encryptionMetadataIsRetrieved
+                && null != encryptionMetadataCacheKey;
+    }
+
+    /**
+     * Drops the stale parameter encryption metadata from the connection's cache and describes the parameters again.
+     * 
+     * @return whether the parameter type definitions changed
+     */
+    private boolean refreshStaleEncryptionMetadata() throws SQLServerException {
+        connection.removeCachedParameterEncryptionMetadata(encryptionMetadataCacheKey);
+        for (Parameter param : inOutParam)
+            param.cryptoMeta = null;
+
+        buildPreparedStrings(inOutParam, false);
+        getParameterEncryptionMetadata(inOutParam);
+        setMaxRowsAndMaxFieldSize();
+        return buildPreparedStrings(inOutParam, true);
     }
 
     /**
      * Manages re-using cached handles.
      */
     private boolean reuseCachedHandle(boolean hasNewTypeDefinitions, boolean discardCurrentCacheItem) {
+        // Forget a handle from before the session was recovered. The connection has dropped its cached handles.
+        if (0 < prepStmtHandle && !hasPreparedStatementHandle()) {
+            prepStmtHandle = 0;
+            cachedPreparedStatementHandle = null;
+        }
+
         // No re-use of caching for cursorable statements (statements that WILL use sp_cursor*)
         if (isCursorable(executeMethod))
             return false;
@@ -991,7 +1248,7 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         // Check for new cache reference.
         if (null == cachedPreparedStatementHandle) {
             PreparedStatementHandle cachedHandle = connection
-                    .getCachedPreparedStatementHandle(new CityHash128Key(preparedSQL, preparedTypeDefinitions));
+                    .getCachedPreparedStatementHandle(getPreparedStatementHandleKey());
             // If handle was found then re-use, only if AE is not on and is not a batch query with new type definitions
             // (We shouldn't reuse handle
             // if it is batch query and has new type definition, or if it is on, make sure encryptionMetadataIsRetrieved
@@ -1935,7 +2192,13 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         localUserSQL = userSQL;
 
         try {
-            if (this.useBulkCopyForBatchInsert && connection.isAzureDW() && isInsert(localUserSQL)) {
+            if (this.useBulkCopyForBatchInsert && isInsert(localUserSQL)) {
+                if (batchParamValues == null) {
+                    updateCounts = new int[0];
+                    loggerExternal.exiting(getClassNameLogging(), "executeBatch", updateCounts);
+                    return updateCounts;
+                }
+
                 // From the JDBC spec, section 9.1.4 - Making Batch Updates:
                 // The CallableStatement.executeBatch method (inherited from PreparedStatement) will
                 // throw a BatchUpdateException if the stored procedure returns anything other than an
@@ -1955,71 +2218,22 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
                     }
                 }
 
-                if (batchParamValues == null) {
-                    updateCounts = new int[0];
-                    loggerExternal.exiting(getClassNameLogging(), "executeBatch", updateCounts);
-                    return updateCounts;
-                }
-
                 String tableName = parseUserSQLForTableNameDW(false, false, false, false);
                 ArrayList<String> columnList = parseUserSQLForColumnListDW();
                 ArrayList<String> valueList = parseUserSQLForValueListDW(false);
 
                 checkAdditionalQuery();
 
-                try (SQLServerStatement stmt = (SQLServerStatement) connection.createStatement(
-                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, connection.getHoldability(),
-                        stmtColumnEncriptionSetting);
-                        SQLServerResultSet rs = stmt
-                                .executeQueryInternal("sp_executesql N'SET FMTONLY ON SELECT * FROM "
-                                        + Util.escapeSingleQuotes(tableName) + " '");) {
-                    if (null != columnList && columnList.size() > 0) {
-                        if (columnList.size() != valueList.size()) {
-                            throw new IllegalArgumentException(
-                                    "Number of provided columns does not match the table definition.");
-                        }
-                    } else {
-                        if (rs.getColumnCount() != valueList.size()) {
-                            throw new IllegalArgumentException(
-                                    "Number of provided columns does not match the table definition.");
-                        }
-                    }
-
-                    SQLServerBulkBatchInsertRecord batchRecord = new SQLServerBulkBatchInsertRecord(batchParamValues,
-                            columnList, valueList, null);
-
-                    for (int i = 1; i <= rs.getColumnCount(); i++) {
-                        Column c = rs.getColumn(i);
-                        CryptoMetadata cryptoMetadata = c.getCryptoMetadata();
-                        int jdbctype;
-                        TypeInfo ti = c.getTypeInfo();
-                        checkValidColumns(ti);
-                        if (null != cryptoMetadata) {
-                            jdbctype = cryptoMetadata.getBaseTypeInfo().getSSType().getJDBCType().getIntValue();
-                        } else {
-                            jdbctype = ti.getSSType().getJDBCType().getIntValue();
-                        }
-                        batchRecord.addColumnMetadata(i, c.getColumnName(), jdbctype, ti.getPrecision(), ti.getScale());
-                    }
-
-                    SQLServerBulkCopy bcOperation = new SQLServerBulkCopy(connection);
-                    SQLServerBulkCopyOptions option = new SQLServerBulkCopyOptions();
-                    option.setBulkCopyTimeout(queryTimeout);
-                    bcOperation.setBulkCopyOptions(option);
-                    bcOperation.setDestinationTableName(tableName);
-                    bcOperation.setStmtColumnEncriptionSetting(this.getStmtColumnEncriptionSetting());
-                    bcOperation.setDestinationTableMetadata(rs);
-                    bcOperation.writeToServer((ISQLServerBulkRecord) batchRecord);
-                    bcOperation.close();
-                    updateCounts = new int[batchParamValues.size()];
-                    for (int i = 0; i < batchParamValues.size(); ++i) {
-                        updateCounts[i] = 1;
-                    }
+                bulkCopyBatchInsert(tableName, columnList, valueList);
 
-                    batchParamValues = null;
-                    loggerExternal.exiting(getClassNameLogging(), "executeBatch", updateCounts);
-                    return updateCounts;
+                updateCounts = new int[batchParamValues.size()];
+                for (int i = 0; i < batchParamValues.size(); ++i) {
+                    updateCounts[i] = 1;
                 }
+
+                batchParamValues = null;
+                loggerExternal.exiting(getClassNameLogging(), "executeBatch", updateCounts);
+                return updateCounts;
             }
         } catch (SQLException e) {
             // throw a BatchUpdateException with the given error message, and return null for the updateCounts.
@@ -2057,7 +2271,8 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
 
                 PrepStmtBatchExecCmd batchCommand = new PrepStmtBatchExecCmd(this);
 
-                executeStatement(batchCommand);
+                if (!executeBatchAsMultiRowInserts(batchCommand))
+                    executeStatement(batchCommand);
 
                 updateCounts = new int[batchCommand.updateCounts.length];
                 for (int i = 0; i < batchCommand.updateCounts.length; ++i)
@@ -2078,6 +2293,226 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         return updateCounts;
     }
 
+    /**
+     * Inserts the rows of the batch into a table with bulk copy. The metadata of the table is read once per connection.
+     * 
+     * @param tableName
+     *        the table of the INSERT statement
+     * @param columnList
+     *        the columns of the INSERT statement, or an empty list if it has none
+     * @param valueList
+     *        the values of the INSERT statement
+     * @throws IllegalArgumentException
+     *         when the statement cannot be run with bulk copy and has to be executed as usual
+     * @throws SQLException
+     *         when the rows cannot be inserted
+     */
+    private void bulkCopyBatchInsert(String tableName, ArrayList<String> columnList,
+            ArrayList<String> valueList) throws SQLException {
+        SQLServerBulkCopy.DestinationMetadata destinationMetadata = connection
+                .getCachedBulkCopyDestinationMetadata(tableName, stmtColumnEncriptionSetting);
+        if (null == destinationMetadata) {
+            try (SQLServerStatement stmt = (SQLServerStatement) connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY, connection.getHoldability(), stmtColumnEncriptionSetting)) {
+                SQLServerResultSet rs = stmt.executeQueryInternal(
+                        "sp_executesql N'SET FMTONLY ON SELECT * FROM " + Util.escapeSingleQuotes(tableName) + " '");
+                destinationMetadata = SQLServerBulkCopy.readDestinationMetadata(connection, tableName,
+                        stmtColumnEncriptionSetting, rs);
+            }
+
+            for (int i = 1; i <= destinationMetadata.getColumnCount(); i++) {
+                checkValidColumns(destinationMetadata.getColumn(i).getTypeInfo());
+            }
+            connection.registerCachedBulkCopyDestinationMetadata(tableName, stmtColumnEncriptionSetting,
+                    destinationMetadata);
+        }
+
+        // Ordinals of the columns of the INSERT statement's column list. Columns left out of the list are left out of
+        // the bulk copy as well, so that they get their defaults as they would with INSERT.
+        List<Integer> listedColumns = new ArrayList<>();
+        if (null != columnList && columnList.size() > 0) {
+            if (columnList.size() != valueList.size()) {
+                throw new IllegalArgumentException("Number of provided columns does not match the table definition.");
+            }
+
+            // Values are matched to the columns of the table in table order.
+            int matchedColumns = 0;
+            for (int i = 1; i <= destinationMetadata.getColumnCount() && matchedColumns < columnList.size(); i++) {
+                Column c = destinationMetadata.getColumn(i);
+                if (columnList.get(matchedColumns).equalsIgnoreCase(c.getColumnName())) {
+                    // Bulk copy ignores the values of identity columns, where INSERT would fail without
+                    // IDENTITY_INSERT.
+                    if (c.getTypeInfo().isIdentity()) {
+                        throw new IllegalArgumentException("Provided columns include an identity column.");
+                    }
+                    listedColumns.add(i);
+                    matchedColumns++;
+                }
+            }
+            if (matchedColumns != columnList.size()) {
+                throw new IllegalArgumentException("Provided columns do not match the order of the table definition.");
+            }
+        } else {
+            if (destinationMetadata.getColumnCount() != valueList.size()) {
+                throw new IllegalArgumentException("Number of provided columns does not match the table definition.");
+            }
+        }
+
+        SQLServerBulkBatchInsertRecord batchRecord = new SQLServerBulkBatchInsertRecord(batchParamValues, columnList,
+                valueList, null);
+
+        for (int i = 1; i <= destinationMetadata.getColumnCount(); i++) {
+            Column c = destinationMetadata.getColumn(i);
+            CryptoMetadata cryptoMetadata = c.getCryptoMetadata();
+            int jdbctype;
+            TypeInfo ti = c.getTypeInfo();
+            if (null != cryptoMetadata) {
+                jdbctype = cryptoMetadata.getBaseTypeInfo().getSSType().getJDBCType().getIntValue();
+            } else {
+                jdbctype = ti.getSSType().getJDBCType().getIntValue();
+            }
+            batchRecord.addColumnMetadata(i, c.getColumnName(), jdbctype, ti.getPrecision(), ti.getScale());
+        }
+
+        SQLServerBulkCopyOptions option = new SQLServerBulkCopyOptions();
+        option.setBulkCopyTimeout(queryTimeout);
+
+        // Keep the semantics of INSERT on editions that have constraints, triggers and defaults: a NULL value is
+        // inserted as NULL rather than replaced by the default of the column.
+        if (!connection.isAzureDW()) {
+            option.setCheckConstraints(true);
+            option.setFireTriggers(true);
+            option.setKeepNulls(true);
+        }
+
+        try (SQLServerBulkCopy bcOperation = new SQLServerBulkCopy(connection)) {
+            bcOperation.setBulkCopyOptions(option);
+            bcOperation.setDestinationTableName(tableName);
+            bcOperation.setStmtColumnEncriptionSetting(this.getStmtColumnEncriptionSetting());
+            bcOperation.setDestinationMetadata(destinationMetadata);
+            for (int column : listedColumns) {
+                bcOperation.addColumnMapping(column, column);
+            }
+            bcOperation.writeToServer((ISQLServerBulkRecord) batchRecord);
+        } catch (SQLException e) {
+            // The table may have been altered since its metadata was read.
+            connection.removeCachedBulkCopyDestinationMetadata(tableName);
+            throw e;
+        }
+    }
+
+    /**
+     * Executes the batch of an INSERT ... VALUES statement as INSERT statements that each insert as many rows of the
+     * batch as the limits on parameters and rows allow, rather than one execution per row.
+     * 
+     * @param batchCommand
+     *        receives the update counts and the first error, as if it had executed the batch
+     * @return false if the statement cannot be rewritten and the batch has to be executed as usual
+     * @throws SQLServerException
+     *         when an error occurs that ends the batch
+     * @throws SQLTimeoutException
+     *         when an INSERT statement times out
+     */
+    private boolean executeBatchAsMultiRowInserts(
+            PrepStmtBatchExecCmd batchCommand) throws SQLServerException, SQLTimeoutException {
+        final int numBatches = batchParamValues.size();
+        final int numParams = inOutParam.length;
+        if (!rewriteBatchedInserts || bRequestedGeneratedKeys || 0 == numParams || numBatches < 2
+                || !isInsert(userSQL))
+            return false;
+
+        final int rowsPerStatement = Math.min(MAX_MULTI_ROW_INSERT_ROWS, MAX_MULTI_ROW_INSERT_PARAMETERS / numParams);
+        if (rowsPerStatement < 2)
+            return false;
+
+        String[] insertParts;
+        try {
+            insertParts = parseUserSQLForMultiRowInsert();
+        } catch (IllegalArgumentException e) {
+            if (getStatementLogger().isLoggable(java.util.logging.Level.FINE)) {
+                getStatementLogger().fine("Parsing user's Batch Insert SQL Query failed: " + e.getMessage());
+                getStatementLogger().fine("Executing the Batch Insert one row at a time.");
+            }
+            return false;
+        }
+
+        batchCommand.batchException = null;
+        batchCommand.updateCounts = new long[numBatches];
+        for (int i = 0; i < numBatches; i++)
+            batchCommand.updateCounts[i] = Statement.EXECUTE_FAILED; // Init to unknown status EXECUTE_FAILED
+
+        SQLServerPreparedStatement fullInsert = null;
+        try {
+            int numBatchesExecuted = 0;
+            while (numBatchesExecuted < numBatches) {
+                final int rows = Math.min(rowsPerStatement, numBatches - numBatchesExecuted);
+
+                // All but the last statement insert the same number of rows and share a prepared handle.
+                SQLServerPreparedStatement insert;
+                if (rows == rowsPerStatement) {
+                    if (null == fullInsert)
+                        fullInsert = prepareMultiRowInsert(insertParts, rows);
+                    insert = fullInsert;
+                } else {
+                    insert = prepareMultiRowInsert(insertParts, rows);
+                }
+
+                try {
+                    for (int i = 0; i < rows; i++) {
+                        System.arraycopy(batchParamValues.get(numBatchesExecuted + i), 0, insert.inOutParam,
+                                i * numParams, numParams);
+                    }
+
+                    long updateCount = insert.executeLargeUpdate();
+
+                    // The rows of a statement succeed or fail together. Triggers can change the update count, in
+                    // which case it cannot be attributed to the rows.
+                    long rowUpdateCount = (rows == updateCount) ? 1 : Statement.SUCCESS_NO_INFO;
+                    for (int i = 0; i < rows; i++) {
+                        batchCommand.updateCounts[numBatchesExecuted + i] = rowUpdateCount;
+                    }
+                } catch (SQLServerException e) {
+                    // If the failure was severe enough to close the connection or roll back a manual transaction,
+                    // then propagate the error up as a SQLServerException now, rather than continue with the batch.
+                    if (connection.isSessionUnAvailable() || connection.rolledBackTransaction())
+                        throw e;
+
+                    // Otherwise leave EXECUTE_FAILED for the rows of the statement.
+                    if (null == batchCommand.batchException)
+                        batchCommand.batchException = e;
+                } finally {
+                    if (insert != fullInsert)
+                        insert.close();
+                }
+
+                numBatchesExecuted += rows;
+            }
+        } finally {
+            if (null != fullInsert)
+                fullInsert.close();
+        }
+        return true;
+    }
+
+    /**
+     * Prepares an INSERT statement that inserts a number of rows.
+     */
+    private SQLServerPreparedStatement prepareMultiRowInsert(String[] insertParts,
+            int rows) throws SQLServerException {
+        StringBuilder sql = new StringBuilder(insertParts[0].length() + rows * (insertParts[1].length() + 1));
+        sql.append(insertParts[0]).append(insertParts[1]);
+        for (int i = 1; i < rows; i++) {
+            sql.append(',').append(insertParts[1]);
+        }
+
+        SQLServerPreparedStatement insert = (SQLServerPreparedStatement) connection.prepareStatement(sql.toString(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, connection.getHoldability(),
+                stmtColumnEncriptionSetting);
+        insert.queryTimeout = queryTimeout;
+        insert.cancelQueryTimeoutSeconds = cancelQueryTimeoutSeconds;
+        return insert;
+    }
+
     @Override
     public long[] executeLargeBatch() throws SQLServerException, BatchUpdateException, SQLTimeoutException {
         loggerExternal.entering(getClassNameLogging(), "executeLargeBatch");
@@ -2092,7 +2527,13 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         localUserSQL = userSQL;
 
         try {
-            if (this.useBulkCopyForBatchInsert && connection.isAzureDW() && isInsert(localUserSQL)) {
+            if (this.useBulkCopyForBatchInsert && isInsert(localUserSQL)) {
+                if (batchParamValues == null) {
+                    updateCounts = new long[0];
+                    loggerExternal.exiting(getClassNameLogging(), "executeLargeBatch", updateCounts);
+                    return updateCounts;
+                }
+
                 // From the JDBC spec, section 9.1.4 - Making Batch Updates:
                 // The CallableStatement.executeBatch method (inherited from PreparedStatement) will
                 // throw a BatchUpdateException if the stored procedure returns anything other than an
@@ -2112,71 +2553,22 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
                     }
                 }
 
-                if (batchParamValues == null) {
-                    updateCounts = new long[0];
-                    loggerExternal.exiting(getClassNameLogging(), "executeLargeBatch", updateCounts);
-                    return updateCounts;
-                }
-
                 String tableName = parseUserSQLForTableNameDW(false, false, false, false);
                 ArrayList<String> columnList = parseUserSQLForColumnListDW();
                 ArrayList<String> valueList = parseUserSQLForValueListDW(false);
 
                 checkAdditionalQuery();
 
-                try (SQLServerStatement stmt = (SQLServerStatement) connection.createStatement(
-                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, connection.getHoldability(),
-                        stmtColumnEncriptionSetting);
-                        SQLServerResultSet rs = stmt
-                                .executeQueryInternal("sp_executesql N'SET FMTONLY ON SELECT * FROM "
-                                        + Util.escapeSingleQuotes(tableName) + " '");) {
-                    if (null != columnList && columnList.size() > 0) {
-                        if (columnList.size() != valueList.size()) {
-                            throw new IllegalArgumentException(
-                                    "Number of provided columns does not match the table definition.");
-                        }
-                    } else {
-                        if (rs.getColumnCount() != valueList.size()) {
-                            throw new IllegalArgumentException(
-                                    "Number of provided columns does not match the table definition.");
-                        }
-                    }
-
-                    SQLServerBulkBatchInsertRecord batchRecord = new SQLServerBulkBatchInsertRecord(batchParamValues,
-                            columnList, valueList, null);
-
-                    for (int i = 1; i <= rs.getColumnCount(); i++) {
-                        Column c = rs.getColumn(i);
-                        CryptoMetadata cryptoMetadata = c.getCryptoMetadata();
-                        int jdbctype;
-                        TypeInfo ti = c.getTypeInfo();
-                        checkValidColumns(ti);
-                        if (null != cryptoMetadata) {
-                            jdbctype = cryptoMetadata.getBaseTypeInfo().getSSType().getJDBCType().getIntValue();
-                        } else {
-                            jdbctype = ti.getSSType().getJDBCType().getIntValue();
-                        }
-                        batchRecord.addColumnMetadata(i, c.getColumnName(), jdbctype, ti.getPrecision(), ti.getScale());
-                    }
-
-                    SQLServerBulkCopy bcOperation = new SQLServerBulkCopy(connection);
-                    SQLServerBulkCopyOptions option = new SQLServerBulkCopyOptions();
-                    option.setBulkCopyTimeout(queryTimeout);
-                    bcOperation.setBulkCopyOptions(option);
-                    bcOperation.setDestinationTableName(tableName);
-                    bcOperation.setStmtColumnEncriptionSetting(this.getStmtColumnEncriptionSetting());
-                    bcOperation.setDestinationTableMetadata(rs);
-                    bcOperation.writeToServer((ISQLServerBulkRecord) batchRecord);
-                    bcOperation.close();
-                    updateCounts = new long[batchParamValues.size()];
-                    for (int i = 0; i < batchParamValues.size(); ++i) {
-                        updateCounts[i] = 1;
-                    }
+                bulkCopyBatchInsert(tableName, columnList, valueList);
 
-                    batchParamValues = null;
-                    loggerExternal.exiting(getClassNameLogging(), "executeLargeBatch", updateCounts);
-                    return updateCounts;
+                updateCounts = new long[batchParamValues.size()];
+                for (int i = 0; i < batchParamValues.size(); ++i) {
+                    updateCounts[i] = 1;
                 }
+
+                batchParamValues = null;
+                loggerExternal.exiting(getClassNameLogging(), "executeLargeBatch", updateCounts);
+                return updateCounts;
             }
         } catch (SQLException e) {
             // throw a BatchUpdateException with the given error message, and return null for the updateCounts.
@@ -2214,7 +2606,8 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
 
                 PrepStmtBatchExecCmd batchCommand = new PrepStmtBatchExecCmd(this);
 
-                executeStatement(batchCommand);
+                if (!executeBatchAsMultiRowInserts(batchCommand))
+                    executeStatement(batchCommand);
 
                 updateCounts = new long[batchCommand.updateCounts.length];
 
@@ -2290,6 +2683,78 @@ public class SQLServerPreparedStatement extends SQLServerStatement implements IS
         }
     }
 
+    /**
+     * Splits an INSERT statement into the part up to and including VALUES, and the row of values, so that the row of
+     * values can be repeated to insert several rows.
+     * 
+     * @return the part up to VALUES, and the row of values including its parentheses
+     * @throws IllegalArgumentException
+     *         when the statement is not a plain INSERT ... VALUES statement with all parameters in its row of values
+     */
+    private String[] parseUserSQLForMultiRowInsert() {
+        localUserSQL = userSQL;
+        StringBuilder sb = new StringBuilder("INSERT INTO ");
+        sb.append(parseUserSQLForTableNameDW(false, false, false, false)).append(' ');
+
+        // optional column list
+        while (checkAndRemoveCommentsAndSpace(false)) {}
+        if (checkSQLLength(1) && localUserSQL.charAt(0) == '(') {
+            int tempint = ParameterUtils.scanSQLForChar(')', localUserSQL, 1);
+            if (tempint >= localUserSQL.length()) {
+                throw new IllegalArgumentException("Invalid SQL Query.");
+            }
+            sb.append(localUserSQL.substring(0, tempint + 1)).append(' ');
+            localUserSQL = localUserSQL.substring(tempint + 1);
+            while (checkAndRemoveCommentsAndSpace(false)) {}
+        }
+
+        // look for keyword "VALUES"
+        if (!(checkSQLLength(6) && localUserSQL.substring(0, 6).equalsIgnoreCase("VALUES"))) {
+            throw new IllegalArgumentException("Only INSERT ... VALUES statements can be rewritten.");
+        }
+        sb.append("VALUES ");
+        localUserSQL = localUserSQL.substring(6);
+        while (checkAndRemoveCommentsAndSpace(false)) {}
+
+        // the row of values, which can have nested parentheses
+        if (!(checkSQLLength(1) && localUserSQL.charAt(0) == '(')) {
+            throw new IllegalArgumentException("Invalid SQL Query.");
+        }
+        int depth = 0;
+        int end = 0;
+        do {
+            int open = ParameterUtils.scanSQLForChar('(', localUserSQL, end);
+            int close = ParameterUtils.scanSQLForChar(')', localUserSQL, end);
+            if (close >= localUserSQL.length()) {
+                throw new IllegalArgumentException("Invalid SQL Query.");
+            }
+            if (open < close) {
+                depth++;
+                end = open + 1;
+            } else {
+                depth--;
+                end = close + 1;
+            }
+        } while (depth > 0);
+        String values = localUserSQL.substring(0, end);
+        localUserSQL = localUserSQL.substring(end);
+
+        checkAdditionalQuery();
+
+        // Every parameter has to be in the row of values.
+        int numParams = 0;
+        int tempint = ParameterUtils.scanSQLForChar('?', values, 0);
+        while (tempint < values.length()) {
+            numParams++;
+            tempint = ParameterUtils.scanSQLForChar('?', values, tempint + 1);
+        }
+        if (numParams != inOutParam.length) {
+            throw new IllegalArgumentException("Parameters outside of VALUES are not allowed.");
+        }
+
+        return new String[] {sb.toString(), values};
+    }
+
     private String parseUserSQLForTableNameDW(boolean hasInsertBeenFound, boolean hasIntoBeenFound,
             boolean hasTableBeenFound, boolean isExpectingTableName) {
         // As far as finding the table name goes, There are two cases:
@@ -529,6 +529,40 @@ public final class SQLServerResource extends ListResourceBundle {
             {"R_invalidCancelQueryTimeout", "The cancel timeout value {0} is not valid."},
             {"R_useBulkCopyForBatchInsertPropertyDescription",
                     "Whether the driver will use bulk copy API for batch insert operations"},
+            {"R_rewriteBatchedInsertsPropertyDescription",
+                    "Whether the driver will combine the rows of batch insert operations into multi-row INSERT statements."},
+            {"R_useSocketChannelPropertyDescription",
+                    "Whether the driver will perform network I/O through a non-blocking socket channel with direct buffers."},
+            {"R_responseBufferingMaxMemoryPropertyDescription",
+                    "The maximum number of bytes of a buffered response to hold in memory before the rest is spilled to a temporary file. 0 means no limit."},
+            {"R_invalidResponseBufferingMaxMemory", "The responseBufferingMaxMemory value {0} is not valid."},
+            {"R_responseSpillReadFailed", "Failed to read buffered response data from the spill file: {0}"},
+            {"R_packetCaptureBufferSizePropertyDescription",
+                    "The size in bytes of the ring buffer that keeps the most recent TDS packets of the connection for diagnostics. 0 disables packet capture."},
+            {"R_invalidPacketCaptureBufferSize", "The packetCaptureBufferSize value {0} is not valid."},
+            {"R_packetCaptureNotEnabled", "Packet capture is not enabled for this connection."},
+            {"R_packetCaptureDumpFailed", "Failed to write the packet capture to {0}: {1}"},
+            {"R_invalidConnectionPoolSize",
+                    "The connection pool size is not valid. minPoolSize is {0} and maxPoolSize is {1}."},
+            {"R_connectionPoolTimeout", "Timed out after {0} milliseconds waiting for a connection from the pool."},
+            {"R_connectionPoolClosed", "The connection pool is closed."},
+            {"R_deferSessionStateChangesPropertyDescription",
+                    "Whether the driver will defer auto-commit and transaction isolation level changes until the next request that is sent to the server."},
+            {"R_validationActivityWindowPropertyDescription",
+                    "The number of milliseconds after a response from the server during which isValid reports the connection as valid without contacting the server. 0 means isValid always contacts the server."},
+            {"R_invalidValidationActivityWindow", "The validationActivityWindow value {0} is not valid."},
+            {"R_connectRetryCountPropertyDescription",
+                    "The number of attempts to recover an idle session whose network connection was broken. 0 disables session recovery."},
+            {"R_invalidConnectRetryCount", "The connectRetryCount value {0} is not valid."},
+            {"R_connectRetryIntervalPropertyDescription",
+                    "The number of seconds between attempts to recover a session."},
+            {"R_invalidConnectRetryInterval", "The connectRetryInterval value {0} is not valid."},
+            {"R_invalidSessionRecoveryAck", "The server returned an invalid session recovery acknowledgement."},
+            {"R_pipelineStatementNotSupported",
+                    "Only prepared statements without output parameters, generated keys or encrypted parameters can be added to a pipeline."},
+            {"R_pipelineStatementFromOtherConnection",
+                    "The statement was created by a different connection than the pipeline."},
+            {"R_pipelineStatementFailed", "Statement {0} of the pipeline failed."},
             {"R_UnknownDataClsTokenNumber", "Unknown token for Data Classification."}, // From Server
             {"R_InvalidDataClsVersionNumber", "Invalid version number {0} for Data Classification."}, // From Server
             {"R_unknownUTF8SupportValue", "Unknown value for UTF8 support."},
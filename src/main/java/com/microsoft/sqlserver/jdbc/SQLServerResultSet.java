@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.Clob;
@@ -2186,6 +2187,26 @@ public class SQLServerResultSet implements ISQLServerResultSet, java.io.Serializ
         return value;
     }
 
+    @Override
+    public ByteBuffer getByteBuffer(int columnIndex) throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "getByteBuffer", columnIndex);
+        checkClosed();
+        ByteBuffer value = getterGetColumn(columnIndex).getByteBuffer(tdsReader);
+        lastValueWasNull = (null == value);
+        loggerExternal.exiting(getClassNameLogging(), "getByteBuffer", value);
+        return value;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer(String columnName) throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "getByteBuffer", columnName);
+        checkClosed();
+        ByteBuffer value = getterGetColumn(findColumn(columnName)).getByteBuffer(tdsReader);
+        lastValueWasNull = (null == value);
+        loggerExternal.exiting(getClassNameLogging(), "getByteBuffer", value);
+        return value;
+    }
+
     @Override
     public java.sql.Date getDate(int columnIndex) throws SQLServerException {
         loggerExternal.entering(getClassNameLogging(), "getDate", columnIndex);
@@ -5367,7 +5388,7 @@ public class SQLServerResultSet implements ISQLServerResultSet, java.io.Serializ
         /**
          * Repositions the fetch buffer back to the beginning.
          */
-        final void reset() {
+        final void reset() throws SQLServerException {
             assert null != tdsReader;
             assert null != startMark;
 
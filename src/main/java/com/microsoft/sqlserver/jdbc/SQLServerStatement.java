@@ -16,10 +16,16 @@ import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.ListIterator;
+import java.util.Locale;
+import java.util.Set;
 import java.util.Stack;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
@@ -690,6 +696,24 @@ public class SQLServerStatement implements ISQLServerStatement {
         return resultSet;
     }
 
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync(String sql, Executor executor) throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "executeQueryAsync", sql);
+        checkClosed();
+        CompletableFuture<ResultSet> future = AsyncStatementExecutor.submit(this, () -> executeQuery(sql), executor);
+        loggerExternal.exiting(getClassNameLogging(), "executeQueryAsync", future);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Integer> executeUpdateAsync(String sql, Executor executor) throws SQLServerException {
+        loggerExternal.entering(getClassNameLogging(), "executeUpdateAsync", sql);
+        checkClosed();
+        CompletableFuture<Integer> future = AsyncStatementExecutor.submit(this, () -> executeUpdate(sql), executor);
+        loggerExternal.exiting(getClassNameLogging(), "executeUpdateAsync", future);
+        return future;
+    }
+
     final SQLServerResultSet executeQueryInternal(String sql) throws SQLServerException, SQLTimeoutException {
         checkClosed();
         executeStatement(new StmtExecCmd(this, sql, EXECUTE_QUERY_INTERNAL, NO_GENERATED_KEYS));
@@ -760,6 +784,16 @@ public class SQLServerStatement implements ISQLServerStatement {
             return false;
         }
 
+        @Override
+        boolean canCarrySessionState() {
+            // Server cursors are opened with an RPC.
+            try {
+                return !(stmt.isCursorable(executeMethod) && stmt.isSelect(sql)) && canPrependSessionState(sql);
+            } catch (SQLServerException e) {
+                return false;
+            }
+        }
+
         final void processResponse(TDSReader tdsReader) throws SQLServerException {
             ensureExecuteResultsReader(tdsReader);
             processExecuteResults();
@@ -889,6 +923,11 @@ public class SQLServerStatement implements ISQLServerStatement {
             return false;
         }
 
+        @Override
+        boolean canCarrySessionState() {
+            return stmt.batchStatementBuffer.isEmpty() || canPrependSessionState(stmt.batchStatementBuffer.get(0));
+        }
+
         final void processResponse(TDSReader tdsReader) throws SQLServerException {
             ensureExecuteResultsReader(tdsReader);
             processExecuteResults();
@@ -944,6 +983,36 @@ public class SQLServerStatement implements ISQLServerStatement {
         startResults();
     }
 
+    /**
+     * Statements that may follow other statements in a batch. Statements such as CREATE PROCEDURE or a procedure call
+     * without EXEC must be the first statement of their batch, and a common table expression would be read as part of
+     * the statement before it, so batches that start with anything else are sent as they are.
+     */
+    private static final Set<String> SESSION_STATE_PREFIXABLE_KEYWORDS = new HashSet<>(Arrays.asList("SELECT",
+            "INSERT", "UPDATE", "DELETE", "MERGE", "DECLARE", "SET", "EXEC", "EXECUTE", "IF", "WHILE", "BEGIN",
+            "COMMIT", "ROLLBACK", "SAVE", "TRUNCATE", "DROP", "USE", "PRINT", "RAISERROR", "WAITFOR"));
+
+    /**
+     * Determines if the connection's deferred session state changes can be prepended to a SQL batch, which is the case
+     * when the batch starts with a keyword of a statement that may follow other statements.
+     * 
+     * @param sql
+     *        The SQL batch.
+     * @return True if other statements may precede the batch.
+     */
+    static boolean canPrependSessionState(String sql) {
+        String temp = sql.trim();
+        int wordEnd = 0;
+        while (wordEnd < temp.length() && Character.isLetter(temp.charAt(wordEnd)))
+            ++wordEnd;
+
+        // A word that continues with a digit, an underscore or a dollar sign is a name, such as select_1.
+        if (wordEnd < temp.length() && (Character.isDigit(temp.charAt(wordEnd)) || '_' == temp.charAt(wordEnd)
+                || '$' == temp.charAt(wordEnd)))
+            return false;
+        return SESSION_STATE_PREFIXABLE_KEYWORDS.contains(temp.substring(0, wordEnd).toUpperCase(Locale.ENGLISH));
+    }
+
     /**
      * Determines if the SQL is a SELECT.
      * 
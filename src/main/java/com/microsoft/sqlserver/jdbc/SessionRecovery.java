@@ -0,0 +1,326 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * Keeps the state of a session as the server reports it through the session recovery feature extension, so that a
+ * connection whose network connection broke while it was idle can log in again and have the server restore the
+ * session.
+ *
+ * The server reports the initial state of the session in the feature extension acknowledgement of the login and every
+ * later change in a SESSIONSTATE token. The database, collation and language are reported by ENVCHANGE tokens. To
+ * recover the session, the login of the new connection sends the initial state and the changes back to the server.
+ */
+final class SessionRecovery {
+    private static final int MAX_STATES = 256;
+
+    // The SESSIONSTATE sequence number that tells the client that the session cannot be recovered any more.
+    private static final long SEQUENCE_NUMBER_EXHAUSTED = 0xFFFFFFFFL;
+
+    private boolean negotiated = false;
+    private boolean hasInitialValues = false;
+
+    private String initialDatabase;
+    private SQLCollation initialCollation;
+    private String initialLanguage;
+    private final byte[][] initialState = new byte[MAX_STATES][];
+
+    private String database;
+    private SQLCollation collation;
+    private String language;
+    private final byte[][] delta = new byte[MAX_STATES][];
+    private final long[] deltaSequenceNumber = new long[MAX_STATES];
+    private final boolean[] deltaUnrecoverable = new boolean[MAX_STATES];
+    private int unrecoverableCount = 0;
+    private boolean sequenceExhausted = false;
+
+    SessionRecovery() {}
+
+    /**
+     * Creates the state of a session that is being recovered from a broken session. The server restores the session
+     * from the state of the broken session and reports the changes it makes while doing so.
+     */
+    SessionRecovery(SessionRecovery brokenSession) {
+        hasInitialValues = brokenSession.hasInitialValues;
+        initialDatabase = brokenSession.initialDatabase;
+        initialCollation = brokenSession.initialCollation;
+        initialLanguage = brokenSession.initialLanguage;
+        database = brokenSession.database;
+        collation = brokenSession.collation;
+        language = brokenSession.language;
+        for (int i = 0; i < MAX_STATES; i++) {
+            initialState[i] = brokenSession.initialState[i];
+            // Sequence numbers start over with the new session.
+            delta[i] = brokenSession.delta[i];
+            deltaSequenceNumber[i] = -1;
+        }
+    }
+
+    void setDatabase(String database) {
+        this.database = database;
+    }
+
+    void setCollation(SQLCollation collation) {
+        this.collation = collation;
+    }
+
+    void setLanguage(String language) {
+        this.language = language;
+    }
+
+    /**
+     * Takes the database, collation and language of a new session as its initial values once login is complete.
+     */
+    void onLoginComplete() {
+        if (!hasInitialValues) {
+            initialDatabase = database;
+            initialCollation = collation;
+            initialLanguage = language;
+            hasInitialValues = true;
+        }
+    }
+
+    /**
+     * Returns whether the server accepted session recovery and the session has no state that cannot be recovered.
+     */
+    boolean isRecoverable() {
+        return negotiated && hasInitialValues && 0 == unrecoverableCount && !sequenceExhausted;
+    }
+
+    /**
+     * Processes the feature extension acknowledgement for session recovery, which holds the initial session state.
+     */
+    void onFeatureExtAck(byte[] data) throws SQLServerException {
+        int i = 0;
+        while (i < data.length) {
+            int stateId = data[i++] & 0xFF;
+            if (i >= data.length)
+                throwInvalidAck();
+            int stateLength = data[i++] & 0xFF;
+            if (0xFF == stateLength) {
+                if (i + 4 > data.length)
+                    throwInvalidAck();
+                stateLength = (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16
+                        | (data[i + 3] & 0xFF) << 24;
+                i += 4;
+            }
+            if (stateLength < 0 || i + stateLength > data.length)
+                throwInvalidAck();
+
+            byte[] value = new byte[stateLength];
+            System.arraycopy(data, i, value, 0, stateLength);
+            i += stateLength;
+
+            // A recovered session keeps the initial state of the session it was recovered from.
+            if (null == initialState[stateId])
+                initialState[stateId] = value;
+        }
+        negotiated = true;
+    }
+
+    private static void throwInvalidAck() throws SQLServerException {
+        throw new SQLServerException(SQLServerException.getErrString("R_invalidSessionRecoveryAck"), null);
+    }
+
+    /**
+     * Processes a SESSIONSTATE token.
+     */
+    void processSessionState(TDSReader tdsReader) throws SQLServerException {
+        tdsReader.readUnsignedByte(); // token type
+        long length = tdsReader.readUnsignedInt();
+        if (length < 5 || length > Integer.MAX_VALUE)
+            tdsReader.throwInvalidTDS();
+
+        byte[] data = new byte[(int) length];
+        tdsReader.readBytes(data, 0, data.length);
+        if (!processSessionState(data))
+            tdsReader.throwInvalidTDS();
+    }
+
+    /**
+     * Processes the data of a SESSIONSTATE token, which follows its length.
+     *
+     * @return false if the data is not valid
+     */
+    boolean processSessionState(byte[] data) {
+        if (data.length < 5)
+            return false;
+
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        long sequenceNumber = buffer.getInt() & 0xFFFFFFFFL;
+        boolean recoverable = 0 != (buffer.get() & 0x01);
+
+        if (SEQUENCE_NUMBER_EXHAUSTED == sequenceNumber)
+            sequenceExhausted = true;
+
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < 2)
+                return false;
+            int stateId = buffer.get() & 0xFF;
+            int stateLength = buffer.get() & 0xFF;
+            if (0xFF == stateLength) {
+                if (buffer.remaining() < 4)
+                    return false;
+                stateLength = buffer.getInt();
+            }
+            if (stateLength < 0 || stateLength > buffer.remaining())
+                return false;
+
+            byte[] value = new byte[stateLength];
+            buffer.get(value);
+
+            // Keep only the latest value of each state.
+            if (null == delta[stateId] || deltaSequenceNumber[stateId] <= sequenceNumber) {
+                if (!recoverable && (null == delta[stateId] || !deltaUnrecoverable[stateId]))
+                    unrecoverableCount++;
+                else if (recoverable && null != delta[stateId] && deltaUnrecoverable[stateId])
+                    unrecoverableCount--;
+
+                delta[stateId] = value;
+                deltaSequenceNumber[stateId] = sequenceNumber;
+                deltaUnrecoverable[stateId] = !recoverable;
+            }
+        }
+        return true;
+    }
+
+    private static int getIdentifierLength(String identifier) {
+        return 1 + ((null == identifier) ? 0 : 2 * identifier.length());
+    }
+
+    private static int getStateLength(byte[] value) {
+        return 1 + ((value.length < 0xFF) ? 1 : 5) + value.length;
+    }
+
+    private static boolean isSameCollation(SQLCollation a, SQLCollation b) {
+        if (null == a || null == b)
+            return a == b;
+        return a.getCollationInfo() == b.getCollationInfo() && a.getCollationSortID() == b.getCollationSortID();
+    }
+
+    private static boolean isSameString(String a, String b) {
+        return (null == a) ? (null == b) : a.equals(b);
+    }
+
+    private boolean isChanged(int stateId) {
+        if (null == delta[stateId])
+            return false;
+        byte[] initial = initialState[stateId];
+        return null == initial || !Arrays.equals(initial, delta[stateId]);
+    }
+
+    private static void putIdentifier(ByteBuffer buffer, String identifier) {
+        if (null == identifier) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) identifier.length());
+            buffer.put(identifier.getBytes(UTF_16LE));
+        }
+    }
+
+    private static void putCollation(ByteBuffer buffer, SQLCollation collation) {
+        if (null == collation) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) SQLCollation.tdsLength());
+            buffer.putInt(collation.getCollationInfo());
+            buffer.put((byte) (collation.getCollationSortID() & 0xFF));
+        }
+    }
+
+    private static void putState(ByteBuffer buffer, int stateId, byte[] value) {
+        buffer.put((byte) stateId);
+        if (value.length < 0xFF) {
+            buffer.put((byte) value.length);
+        } else {
+            buffer.put((byte) 0xFF);
+            buffer.putInt(value.length);
+        }
+        buffer.put(value);
+    }
+
+    /**
+     * Writes the session recovery feature extension of a login, or just calculates its length.
+     *
+     * @param brokenSession
+     *        the session to recover, or null to only ask the server to enable session recovery
+     * @return the length of the feature extension
+     */
+    static int writeFeatureRequest(SessionRecovery brokenSession, boolean write,
+            TDSWriter tdsWriter) throws SQLServerException {
+        if (null == brokenSession) {
+            if (write) {
+                tdsWriter.writeByte(TDS.TDS_FEATURE_EXT_SESSIONRECOVERY);
+                tdsWriter.writeInt(0);
+            }
+            return 5; // 1byte = featureID, 4bytes = featureData length
+        }
+        return brokenSession.writeRecoveryData(write, tdsWriter);
+    }
+
+    private int writeRecoveryData(boolean write, TDSWriter tdsWriter) throws SQLServerException {
+        byte[] data = getRecoveryData();
+        if (write) {
+            tdsWriter.writeByte(TDS.TDS_FEATURE_EXT_SESSIONRECOVERY);
+            tdsWriter.writeInt(data.length);
+            tdsWriter.writeBytes(data);
+        }
+
+        // featureID, featureData length, featureData
+        return 1 + 4 + data.length;
+    }
+
+    /**
+     * Returns the feature data of the session recovery feature extension that recovers this session: the initial
+     * state of the session followed by its current state.
+     */
+    byte[] getRecoveryData() {
+        // Only what differs from the initial state is sent as the state to recover.
+        String currentDatabase = isSameString(initialDatabase, database) ? null : database;
+        SQLCollation currentCollation = isSameCollation(initialCollation, collation) ? null : collation;
+        String currentLanguage = isSameString(initialLanguage, language) ? null : language;
+
+        int initialLength = getIdentifierLength(initialDatabase) + ((null == initialCollation) ? 1 : 6)
+                + getIdentifierLength(initialLanguage);
+        int currentLength = getIdentifierLength(currentDatabase) + ((null == currentCollation) ? 1 : 6)
+                + getIdentifierLength(currentLanguage);
+        for (int i = 0; i < MAX_STATES; i++) {
+            if (null != initialState[i])
+                initialLength += getStateLength(initialState[i]);
+            if (isChanged(i))
+                currentLength += getStateLength(delta[i]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + initialLength + 4 + currentLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(initialLength);
+        putIdentifier(buffer, initialDatabase);
+        putCollation(buffer, initialCollation);
+        putIdentifier(buffer, initialLanguage);
+        for (int i = 0; i < MAX_STATES; i++) {
+            if (null != initialState[i])
+                putState(buffer, i, initialState[i]);
+        }
+
+        buffer.putInt(currentLength);
+        putIdentifier(buffer, currentDatabase);
+        putCollation(buffer, currentCollation);
+        putIdentifier(buffer, currentLanguage);
+        for (int i = 0; i < MAX_STATES; i++) {
+            if (isChanged(i))
+                putState(buffer, i, delta[i]);
+        }
+
+        return buffer.array();
+    }
+}
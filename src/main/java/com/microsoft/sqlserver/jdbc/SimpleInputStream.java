@@ -127,7 +127,11 @@ abstract class BaseInputStream extends InputStream {
         // if no mark set already throw
         if (null == currentMark)
             throw new IOException(SQLServerException.getErrString("R_streamWasNotMarkedBefore"));
-        tdsReader.reset(currentMark);
+        try {
+            tdsReader.reset(currentMark);
+        } catch (SQLServerException e) {
+            throw new IOException(e.getMessage());
+        }
     }
 }
 
@@ -0,0 +1,290 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * SocketChannelStreams provides the raw TCP input and output streams of a TDS channel on top of a non-blocking
+ * SocketChannel.
+ *
+ * Reads fill a pooled direct buffer with as much data as the socket has available, so that a single system call
+ * typically returns the header and payload of one or more TDS packets. Writes are staged through a pooled direct
+ * buffer, which avoids the per-call native copy buffers that the classic socket streams allocate for heap arrays.
+ * Read and write waits are bounded by the socket's SO_TIMEOUT through a selector, so socketTimeout and
+ * setNetworkTimeout keep working. TLS, when enabled, is layered on top of these streams exactly as it is for the
+ * classic socket streams.
+ */
+final class SocketChannelStreams {
+    private static final Logger logger = Logger.getLogger("com.microsoft.sqlserver.jdbc.internals.TDS.Channel");
+
+    // Large enough to hold two maximum-size TDS packets.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Direct buffers are expensive to allocate and are only released by GC, so recycle them across connections.
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger numPooledBuffers = new AtomicInteger(0);
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (null == buffer)
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        numPooledBuffers.decrementAndGet();
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        if (numPooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS)
+            bufferPool.offer(buffer);
+        else
+            numPooledBuffers.decrementAndGet();
+    }
+
+    private final String traceID;
+    private final SocketChannel socketChannel;
+    private final Selector readSelector;
+    private final Selector writeSelector;
+
+    // Reads and writes happen on different threads (e.g. sending an attention while a response is being read), so
+    // each direction has its own lock. readBuffer is kept in "read mode" (flipped) between calls; writeBuffer in
+    // "write mode".
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+    private ByteBuffer readBuffer;
+    private ByteBuffer writeBuffer;
+
+    private final InputStream inputStream = new ChannelInputStream();
+    private final OutputStream outputStream = new ChannelOutputStream();
+
+    SocketChannelStreams(SocketChannel socketChannel, String traceID) throws IOException {
+        this.traceID = traceID + " (SocketChannelStreams)";
+        this.socketChannel = socketChannel;
+
+        socketChannel.configureBlocking(false);
+        readSelector = Selector.open();
+        writeSelector = Selector.open();
+        socketChannel.register(readSelector, SelectionKey.OP_READ);
+        socketChannel.register(writeSelector, SelectionKey.OP_WRITE);
+
+        readBuffer = acquireBuffer();
+        ((Buffer) readBuffer).flip();
+        writeBuffer = acquireBuffer();
+
+        if (logger.isLoggable(Level.FINER))
+            logger.finer(toString() + " Using SocketChannel transport");
+    }
+
+    final public String toString() {
+        return traceID;
+    }
+
+    InputStream getInputStream() {
+        return inputStream;
+    }
+
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Waits until the channel is ready for the operation registered with the selector.
+     *
+     * @param timeoutMillis
+     *        the maximum time to wait, or 0 to wait indefinitely
+     */
+    private void await(Selector selector, int timeoutMillis) throws IOException {
+        long deadline = (timeoutMillis > 0) ? (System.currentTimeMillis() + timeoutMillis) : 0;
+
+        while (true) {
+            long remaining = 0;
+            if (timeoutMillis > 0) {
+                remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new SocketTimeoutException("Read timed out");
+            }
+
+            // select(0) blocks indefinitely, which is the semantics of SO_TIMEOUT 0.
+            try {
+                if (selector.select(remaining) > 0) {
+                    selector.selectedKeys().clear();
+                    return;
+                }
+            } catch (ClosedSelectorException e) {
+                throw new IOException(SQLServerException.getErrString("R_connectionIsClosed"), e);
+            }
+
+            if (!socketChannel.isOpen())
+                throw new IOException(SQLServerException.getErrString("R_connectionIsClosed"));
+        }
+    }
+
+    /**
+     * Refills the read buffer from the channel.
+     *
+     * @return the number of bytes buffered, or -1 at end of stream
+     */
+    private int fill() throws IOException {
+        ((Buffer) readBuffer).clear();
+        try {
+            int bytesRead;
+            while (0 == (bytesRead = socketChannel.read(readBuffer)))
+                await(readSelector, socketChannel.socket().getSoTimeout());
+            return bytesRead;
+        } finally {
+            ((Buffer) readBuffer).flip();
+        }
+    }
+
+    private void drain() throws IOException {
+        ((Buffer) writeBuffer).flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                // Like classic socket writes, writes are not subject to SO_TIMEOUT.
+                if (0 == socketChannel.write(writeBuffer))
+                    await(writeSelector, 0);
+            }
+        } finally {
+            ((Buffer) writeBuffer).clear();
+        }
+    }
+
+    /**
+     * Checks, without waiting, whether the connection is still open.
+     *
+     * @return false if the peer closed or reset the connection, or sent data that nobody is waiting for
+     */
+    boolean isConnectionAlive() {
+        synchronized (readLock) {
+            if (null == readBuffer || readBuffer.hasRemaining())
+                return false;
+
+            ((Buffer) readBuffer).clear();
+            try {
+                return 0 == socketChannel.read(readBuffer);
+            } catch (IOException e) {
+                if (logger.isLoggable(Level.FINER))
+                    logger.finer(toString() + " Connection is broken: " + e.getMessage());
+                return false;
+            } finally {
+                ((Buffer) readBuffer).flip();
+            }
+        }
+    }
+
+    /**
+     * Closes the selectors and returns the direct buffers to the pool. The channel itself is closed by the owner of
+     * the socket. Closing the selectors first wakes up any thread waiting on the channel so that it releases its lock.
+     */
+    void close() {
+        closeSelector(readSelector);
+        closeSelector(writeSelector);
+
+        synchronized (readLock) {
+            if (null != readBuffer) {
+                releaseBuffer(readBuffer);
+                readBuffer = null;
+            }
+        }
+        synchronized (writeLock) {
+            if (null != writeBuffer) {
+                releaseBuffer(writeBuffer);
+                writeBuffer = null;
+            }
+        }
+    }
+
+    private void closeSelector(Selector selector) {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            if (logger.isLoggable(Level.FINE))
+                logger.log(Level.FINE, toString() + ": Ignored error closing selector", e);
+        }
+    }
+
+    private final class ChannelInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (-1 == read(b, 0, 1)) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            synchronized (readLock) {
+                if (null == readBuffer)
+                    throw new IOException(SQLServerException.getErrString("R_connectionIsClosed"));
+
+                if (0 == len)
+                    return 0;
+
+                if (!readBuffer.hasRemaining() && -1 == fill())
+                    return -1;
+
+                int bytesToRead = Math.min(len, readBuffer.remaining());
+                readBuffer.get(b, off, bytesToRead);
+                return bytesToRead;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            synchronized (readLock) {
+                return (null == readBuffer) ? 0 : readBuffer.remaining();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            SocketChannelStreams.this.close();
+        }
+    }
+
+    private final class ChannelOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (writeLock) {
+                if (null == writeBuffer)
+                    throw new IOException(SQLServerException.getErrString("R_connectionIsClosed"));
+
+                while (len > 0) {
+                    int bytesToCopy = Math.min(len, writeBuffer.remaining());
+                    writeBuffer.put(b, off, bytesToCopy);
+                    off += bytesToCopy;
+                    len -= bytesToCopy;
+                    drain();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            SocketChannelStreams.this.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+
+package com.microsoft.sqlserver.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Shares federated authentication tokens between the connections of the process that authenticate as the same user
+ * against the same authority and resource, so that a login does not have to wait for the identity provider while a
+ * cached token is still valid.
+ *
+ * A token is renewed in the background shortly before it expires, as long as it has been used since it was last
+ * acquired. Tokens that are no longer used are dropped when they are due for renewal.
+ */
+final class SqlFedAuthTokenCache {
+    private static final Logger logger = Logger
+            .getLogger("com.microsoft.sqlserver.jdbc.internals.SqlFedAuthTokenCache");
+
+    // A cached token is handed out only while it is valid for at least this long.
+    private static final long MIN_REMAINING_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Tokens are renewed this long before they expire, or halfway through their lifetime if that is sooner.
+    private static final long REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // Delay before a failed renewal is retried.
+    private static final long REFRESH_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final ScheduledThreadPoolExecutor refresher;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        refresher = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "mssql-jdbc-FedAuthTokenRefresher-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.setRemoveOnCancelPolicy(true);
+    }
+
+    private static final SqlFedAuthTokenCache instance = new SqlFedAuthTokenCache();
+
+    /**
+     * Acquires a token from the identity provider.
+     */
+    interface TokenProvider {
+        SqlFedAuthToken acquireToken() throws SQLServerException;
+    }
+
+    private final class Entry {
+        final String key;
+        final TokenProvider provider;
+        volatile SqlFedAuthToken token;
+
+        // Set when the token is handed out, cleared when it is renewed.
+        volatile boolean used;
+
+        Entry(String key, TokenProvider provider) {
+            this.key = key;
+            this.provider = provider;
+        }
+
+        void refresh() {
+            if (!used) {
+                if (logger.isLoggable(Level.FINER))
+                    logger.finer("Dropping unused federated authentication token");
+                entries.remove(key, this);
+                return;
+            }
+
+            try {
+                token = provider.acquireToken();
+                used = false;
+                refreshes.incrementAndGet();
+                scheduleRefresh(this);
+            } catch (SQLServerException | RuntimeException e) {
+                refreshFailures.incrementAndGet();
+                if (logger.isLoggable(Level.FINE))
+                    logger.fine("Failed to renew federated authentication token: " + e.getMessage());
+
+                // Try again while the current token can still be handed out. Logins acquire a new token themselves
+                // once it cannot.
+                if (token.expiresOn.getTime() - System.currentTimeMillis() > MIN_REMAINING_MILLIS
+                        + REFRESH_RETRY_MILLIS)
+                    refresher.schedule(this::refresh, REFRESH_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                else
+                    entries.remove(key, this);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    static SqlFedAuthTokenCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns a cached token for the key if one is valid, or acquires one from the provider and caches it.
+     *
+     * @param key
+     *        identifies the authority, resource and user the token is for
+     * @param provider
+     *        acquires the token, and renews it later
+     */
+    SqlFedAuthToken getToken(String key, TokenProvider provider) throws SQLServerException {
+        Entry entry = entries.get(key);
+        if (null != entry) {
+            SqlFedAuthToken token = entry.token;
+            if (token.expiresOn.getTime() - System.currentTimeMillis() > MIN_REMAINING_MILLIS) {
+                entry.used = true;
+                hits.incrementAndGet();
+                return token;
+            }
+        }
+
+        misses.incrementAndGet();
+        SqlFedAuthToken token = provider.acquireToken();
+
+        Entry newEntry = new Entry(key, provider);
+        newEntry.token = token;
+        Entry previous = entries.put(key, newEntry);
+        if (null != previous)
+            previous.used = false;
+        scheduleRefresh(newEntry);
+        return token;
+    }
+
+    private void scheduleRefresh(Entry entry) {
+        long lifetime = entry.token.expiresOn.getTime() - System.currentTimeMillis();
+        long delay = Math.max(Math.min(lifetime - REFRESH_AHEAD_MILLIS, lifetime / 2), 0);
+        refresher.schedule(entry::refresh, delay, TimeUnit.MILLISECONDS);
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getRefreshes() {
+        return refreshes.get();
+    }
+
+    long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+
+    final public String toString() {
+        return "SqlFedAuthTokenCache(size:" + entries.size() + " hits:" + getHits() + " misses:" + getMisses()
+                + " refreshes:" + getRefreshes() + " refreshFailures:" + getRefreshFailures() + ")";
+    }
+}
@@ -5,6 +5,7 @@
 
 package com.microsoft.sqlserver.jdbc;
 
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -71,4 +72,19 @@ class ThreePartName {
         }
         return new ThreePartName(databasePart, ownerPart, procedurePart);
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ThreePartName))
+            return false;
+
+        ThreePartName other = (ThreePartName) obj;
+        return Objects.equals(databasePart, other.databasePart) && Objects.equals(ownerPart, other.ownerPart)
+                && Objects.equals(procedurePart, other.procedurePart);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(databasePart, ownerPart, procedurePart);
+    }
 }
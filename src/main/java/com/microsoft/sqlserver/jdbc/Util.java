@@ -9,6 +9,9 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.util.Date;
@@ -632,6 +635,25 @@ final class Util {
         return sb.toString();
     }
 
+    /**
+     * Returns a digest of a password, so that credentials can be told apart in cache keys without keeping the password
+     * itself.
+     * 
+     * @param password
+     *        the password, or null.
+     * @return hex string of the SHA-256 digest of the password, or "" for null.
+     */
+    static String passwordDigest(String password) throws SQLServerException {
+        if (null == password)
+            return "";
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+            return bytesToHexString(digest, digest.length);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SQLServerException(e.getMessage(), null, 0, e);
+        }
+    }
+
     /**
      * Looks up local hostname of client machine.
      * 
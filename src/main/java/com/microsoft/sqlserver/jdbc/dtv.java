@@ -162,6 +162,17 @@ final class DTV {
         impl.skipValue(type, tdsReader, isDiscard);
     }
 
+    /**
+     * Returns a read-only view of a binary value received from the server, or null if the value is NULL.
+     */
+    final ByteBuffer getByteBuffer(TypeInfo typeInfo, TDSReader tdsReader) throws SQLServerException {
+        if (null == impl)
+            impl = new ServerDTVImpl();
+
+        assert impl instanceof ServerDTVImpl;
+        return ((ServerDTVImpl) impl).getByteBuffer(typeInfo, tdsReader);
+    }
+
     final void initFromCompressedNull() {
         if (null == impl)
             impl = new ServerDTVImpl();
@@ -3358,6 +3369,23 @@ final class ServerDTVImpl extends DTVImpl {
     static final private java.util.logging.Logger aeLogger = java.util.logging.Logger
             .getLogger("com.microsoft.sqlserver.jdbc.DTV");
 
+    ByteBuffer getByteBuffer(TypeInfo typeInfo, TDSReader tdsReader) throws SQLServerException {
+        if (null == valueMark && (!isNull))
+            getValuePrep(typeInfo, tdsReader);
+
+        if (STREAMCONSUMED == valueLength) {
+            throw new SQLServerException(null, SQLServerException.getErrString("R_dataAlreadyAccessed"), null, 0,
+                    false);
+        }
+
+        if (isNull)
+            return null;
+
+        assert DataTypes.UNKNOWN_STREAM_LENGTH != valueLength;
+        tdsReader.reset(valueMark);
+        return tdsReader.readByteBuffer(valueLength);
+    }
+
     private void getValuePrep(TypeInfo typeInfo, TDSReader tdsReader) throws SQLServerException {
         // If we've already seen this value before, then we shouldn't be here.
         assert null == valueMark;
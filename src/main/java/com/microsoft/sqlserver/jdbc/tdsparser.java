@@ -58,6 +58,10 @@ final class TDSParser {
                 case TDS.TDS_ENV_CHG:
                     parsing = tdsTokenHandler.onEnvChange(tdsReader);
                     break;
+                case TDS.TDS_SESSION_STATE:
+                    tdsReader.getConnection().processSessionState(tdsReader);
+                    parsing = true;
+                    break;
                 case TDS.TDS_RET_STAT:
                     parsing = tdsTokenHandler.onRetStatus(tdsReader);
                     break;
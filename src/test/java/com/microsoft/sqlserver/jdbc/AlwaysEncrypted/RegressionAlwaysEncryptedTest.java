@@ -6,6 +6,7 @@ package com.microsoft.sqlserver.jdbc.AlwaysEncrypted;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
@@ -20,6 +21,7 @@ import org.junit.platform.runner.JUnitPlatform;
 import org.junit.runner.RunWith;
 
 import com.microsoft.sqlserver.jdbc.RandomUtil;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
 import com.microsoft.sqlserver.jdbc.TestUtils;
 import com.microsoft.sqlserver.testframework.AbstractSQLGenerator;
 
@@ -82,6 +84,41 @@ public class RegressionAlwaysEncryptedTest extends AESetup {
         }
     }
 
+    @Test
+    public void alwaysEncryptedMetadataCache() throws Exception {
+        try (SQLServerConnection connection = (SQLServerConnection) DriverManager.getConnection(
+                connectionString + ";trustservercertificate=true;columnEncryptionSetting=enabled;", AEInfo);
+                Statement stmt = connection.createStatement()) {
+            dropTables(stmt);
+            createDateTable(stmt);
+
+            Method getHits = SQLServerConnection.class.getDeclaredMethod("getParameterEncryptionMetadataCacheHits");
+            Method getMisses = SQLServerConnection.class
+                    .getDeclaredMethod("getParameterEncryptionMetadataCacheMisses");
+            getHits.setAccessible(true);
+            getMisses.setAccessible(true);
+            long hits = (long) getHits.invoke(connection);
+            long misses = (long) getMisses.invoke(connection);
+
+            // The first statement describes its parameters, the second reuses the metadata without a round trip.
+            populateDateTable(connection);
+            assertEquals(hits, (long) getHits.invoke(connection));
+            assertEquals(misses + 1, (long) getMisses.invoke(connection));
+
+            populateDateTable(connection);
+            assertEquals(hits + 1, (long) getHits.invoke(connection));
+            assertEquals(misses + 1, (long) getMisses.invoke(connection));
+
+            try (ResultSet rs = stmt
+                    .executeQuery("select count(*) from " + AbstractSQLGenerator.escapeIdentifier(dateTable))) {
+                rs.next();
+                assertEquals(2, rs.getInt(1));
+            }
+
+            dropTables(stmt);
+        }
+    }
+
     private void populateDateTable(Connection connection) throws SQLException {
         String sql = "insert into " + AbstractSQLGenerator.escapeIdentifier(dateTable) + " values( " + "?" + ")";
         try (PreparedStatement sqlPstmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
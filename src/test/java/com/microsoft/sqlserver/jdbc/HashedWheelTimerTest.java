@@ -0,0 +1,64 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the HashedWheelTimer class
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class HashedWheelTimerTest {
+
+    @Test
+    public void testTimeoutExpires() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(1, 16);
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(latch::countDown, 50);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.getPendingTimeouts());
+    }
+
+    @Test
+    public void testTimeoutBeyondOneRevolution() throws InterruptedException {
+        // 16 buckets of 1 ms each, so a 100 ms deadline needs several rounds.
+        HashedWheelTimer timer = new HashedWheelTimer(1, 16);
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.newTimeout(latch::countDown, 100);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+    }
+
+    @Test
+    public void testCanceledTimeoutDoesNotFire() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(1, 16);
+        CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(latch::countDown, 20);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.getPendingTimeouts());
+        assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(timeout.isExpired());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the HostAddressCache class and the staggered connection attempts of SocketFinder
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class HostAddressCacheTest {
+
+    // Each test uses its own port, so that the statistics recorded by other tests do not interfere.
+    private static final AtomicInteger nextPort = new AtomicInteger(41000);
+
+    private static InetAddress address(int lastByte) throws IOException {
+        return InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) lastByte});
+    }
+
+    private static InetAddress[] addresses(int... lastBytes) throws IOException {
+        InetAddress[] addresses = new InetAddress[lastBytes.length];
+        for (int i = 0; i < lastBytes.length; i++)
+            addresses[i] = address(lastBytes[i]);
+        return addresses;
+    }
+
+    @Test
+    public void testOrderWithoutHistoryKeepsDnsOrder() throws Exception {
+        int port = nextPort.incrementAndGet();
+        InetAddress[] dnsOrder = addresses(3, 1, 2);
+        assertArrayEquals(dnsOrder, HostAddressCache.order(dnsOrder, port));
+    }
+
+    @Test
+    public void testOrderFastestFirst() throws Exception {
+        int port = nextPort.incrementAndGet();
+        HostAddressCache.recordSuccess(new InetSocketAddress(address(1), port), TimeUnit.MILLISECONDS.toNanos(30));
+        HostAddressCache.recordSuccess(new InetSocketAddress(address(2), port), TimeUnit.MILLISECONDS.toNanos(10));
+        HostAddressCache.recordSuccess(new InetSocketAddress(address(3), port), TimeUnit.MILLISECONDS.toNanos(20));
+
+        // Addresses without history go after those with history.
+        assertArrayEquals(addresses(2, 3, 1, 4), HostAddressCache.order(addresses(4, 1, 2, 3), port));
+
+        // The statistics are per port.
+        assertArrayEquals(addresses(4, 1, 2, 3), HostAddressCache.order(addresses(4, 1, 2, 3), port + 1000));
+    }
+
+    @Test
+    public void testOrderFailedLast() throws Exception {
+        int port = nextPort.incrementAndGet();
+        HostAddressCache.recordSuccess(new InetSocketAddress(address(1), port), TimeUnit.MILLISECONDS.toNanos(1));
+        HostAddressCache.recordFailure(new InetSocketAddress(address(1), port));
+        HostAddressCache.recordSuccess(new InetSocketAddress(address(2), port), TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertArrayEquals(addresses(2, 3, 1), HostAddressCache.order(addresses(1, 2, 3), port));
+
+        // A later success clears the failure.
+        HostAddressCache.recordSuccess(new InetSocketAddress(address(1), port), TimeUnit.MILLISECONDS.toNanos(1));
+        assertArrayEquals(addresses(1, 2, 3), HostAddressCache.order(addresses(1, 2, 3), port));
+    }
+
+    @Test
+    public void testFailurePenaltyExpires() throws Exception {
+        int port = nextPort.incrementAndGet();
+        HostAddressCache.recordFailure(new InetSocketAddress(address(1), port));
+
+        long now = System.nanoTime();
+        assertArrayEquals(addresses(2, 1), HostAddressCache.order(addresses(1, 2), port, now));
+        assertArrayEquals(addresses(2, 1),
+                HostAddressCache.order(addresses(1, 2), port, now + TimeUnit.SECONDS.toNanos(59)));
+        assertArrayEquals(addresses(1, 2),
+                HostAddressCache.order(addresses(1, 2), port, now + TimeUnit.SECONDS.toNanos(61)));
+    }
+
+    @Test
+    public void testGetAllByNameReturnsCopy() throws Exception {
+        InetAddress[] first = HostAddressCache.getAllByName("10.1.2.3");
+        first[0] = null;
+        InetAddress[] second = HostAddressCache.getAllByName("10.1.2.3");
+        assertNotSame(first, second);
+        assertEquals("10.1.2.3", second[0].getHostAddress());
+    }
+
+    @Test
+    public void testCachesAreBounded() throws Exception {
+        for (int i = 0; i < 1000; i++)
+            HostAddressCache.getAllByName("10.2." + (i / 256) + "." + (i % 256));
+        assertTrue(HostAddressCache.getResolutionCacheSize() <= 256);
+
+        int port = nextPort.incrementAndGet();
+        for (int i = 0; i < 3000; i++) {
+            InetAddress address = InetAddress.getByAddress(new byte[] {10, 3, (byte) (i / 256), (byte) (i % 256)});
+            HostAddressCache.recordFailure(new InetSocketAddress(address, port));
+        }
+        assertTrue(HostAddressCache.getStatsCacheSize() <= 1024);
+    }
+
+    /**
+     * Connects to the addresses in the given order like SocketFinder does when it races addresses with threads.
+     */
+    private static Socket findSocketUsingThreading(InetAddress[] addresses, int port) throws Exception {
+        SocketFinder socketFinder = new SocketFinder("test", null);
+        Method method = SocketFinder.class.getDeclaredMethod("findSocketUsingThreading", InetAddress[].class,
+                int.class, int.class);
+        method.setAccessible(true);
+        method.invoke(socketFinder, addresses, port, 5000);
+
+        Field selectedSocket = SocketFinder.class.getDeclaredField("selectedSocket");
+        selectedSocket.setAccessible(true);
+        return (Socket) selectedSocket.get(socketFinder);
+    }
+
+    @Test
+    public void testStaggeredStartConnectsFirstAddressOnly() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("0.0.0.0"))) {
+            InetAddress[] addresses = {InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.2")};
+            try (Socket socket = findSocketUsingThreading(addresses, server.getLocalPort())) {
+                assertEquals(addresses[0], socket.getInetAddress());
+            }
+
+            // The attempt to the second address was never started, since the first connected within the delay.
+            server.accept().close();
+            server.setSoTimeout(500);
+            try {
+                server.accept().close();
+                throw new Exception("The second address was connected to.");
+            } catch (SocketTimeoutException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testStaggeredStartAfterFailure() throws Exception {
+        // Only the second address accepts connections, the first refuses them.
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.2"))) {
+            InetAddress[] addresses = {InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.2")};
+            long start = System.nanoTime();
+            try (Socket socket = findSocketUsingThreading(addresses, server.getLocalPort())) {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertEquals(addresses[1], socket.getInetAddress());
+
+                // The second attempt started when the first failed instead of after the 250 ms delay.
+                assertTrue(elapsedMillis < 250, "connecting took " + elapsedMillis + "ms");
+            }
+
+            // The refused address is now tried last.
+            assertArrayEquals(new InetAddress[] {addresses[1], addresses[0]},
+                    HostAddressCache.order(addresses, server.getLocalPort()));
+        }
+    }
+}
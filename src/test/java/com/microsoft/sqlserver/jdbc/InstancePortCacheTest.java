@@ -0,0 +1,89 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the InstancePortCache class and its use for the primary and failover partner instances
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class InstancePortCacheTest {
+
+    @Test
+    public void testExpiry() {
+        InstancePortCache.put("expiryServer", "instance", "1433");
+
+        long now = System.nanoTime();
+        assertEquals("1433", InstancePortCache.get("expiryServer", "instance", now));
+        assertEquals("1433", InstancePortCache.get("expiryServer", "instance", now + TimeUnit.MINUTES.toNanos(4)));
+        assertNull(InstancePortCache.get("expiryServer", "instance", now + TimeUnit.MINUTES.toNanos(6)));
+
+        // The expired entry is gone, not just hidden.
+        assertNull(InstancePortCache.get("expiryServer", "instance", now));
+    }
+
+    @Test
+    public void testRemove() {
+        InstancePortCache.put("removeServer", "instance", "1433");
+        InstancePortCache.put("removeServer", "otherInstance", "1434");
+        InstancePortCache.remove("removeServer", "instance");
+
+        assertNull(InstancePortCache.get("removeServer", "instance"));
+        assertEquals("1434", InstancePortCache.get("removeServer", "otherInstance"));
+    }
+
+    @Test
+    public void testKeyIsCaseInsensitive() {
+        InstancePortCache.put("CaseServer", "Instance", "1433");
+        assertEquals("1433", InstancePortCache.get("caseserver", "INSTANCE"));
+
+        InstancePortCache.remove("CASESERVER", "instance");
+        assertNull(InstancePortCache.get("CaseServer", "Instance"));
+    }
+
+    @Test
+    public void testGetInstancePortReportsCacheUse() throws Exception {
+        InstancePortCache.put("primaryServer", "instance", "1500");
+        SQLServerConnection con = new SQLServerConnection("InstancePortCacheTest");
+
+        InstancePortCache.InstancePort instancePort = con.getInstancePort("primaryServer", "instance");
+        assertEquals("1500", instancePort.port);
+        assertTrue(instancePort.fromCache);
+    }
+
+    @Test
+    public void testFailoverPartnerDiscardsCachedPort() throws Exception {
+        InstancePortCache.put("partnerServer", "instance", "1500");
+        SQLServerConnection con = new SQLServerConnection("InstancePortCacheTest");
+        FailoverInfo failoverInfo = new FailoverInfo("partnerServer\\instance", con, false);
+
+        ServerPortPlaceHolder placeHolder = failoverInfo.failoverPermissionCheck(con, false);
+        assertEquals("partnerServer", placeHolder.getServerName());
+        assertEquals(1500, placeHolder.getPortNumber());
+
+        assertTrue(failoverInfo.discardCachedInstancePort(con));
+        assertNull(InstancePortCache.get("partnerServer", "instance"));
+        assertFalse(failoverInfo.discardCachedInstancePort(con));
+
+        // The next check looks the port up again for the same instance.
+        InstancePortCache.put("partnerServer", "instance", "1600");
+        placeHolder = failoverInfo.failoverPermissionCheck(con, false);
+        assertEquals("partnerServer", placeHolder.getServerName());
+        assertEquals("instance", placeHolder.getInstanceName());
+        assertEquals(1600, placeHolder.getPortNumber());
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+import javax.security.auth.spi.LoginModule;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the Kerberos login cache and the cache of SPNs enriched with their realm
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class KerbAuthenticationTest {
+
+    private static final String TICKET_LIFETIME_OPTION = "ticketLifetimeMillis";
+
+    private static final Set<Subject> loggedOut = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * Logs in without a KDC and records logouts. With the ticket lifetime option it adds a ticket that expires after
+     * that time.
+     */
+    public static class TestLoginModule implements LoginModule {
+        private Subject subject;
+        private Map<String, ?> options;
+
+        @Override
+        public void initialize(Subject subject, CallbackHandler callbackHandler, Map<String, ?> sharedState,
+                Map<String, ?> options) {
+            this.subject = subject;
+            this.options = options;
+        }
+
+        @Override
+        public boolean login() {
+            return true;
+        }
+
+        @Override
+        public boolean commit() {
+            Object lifetime = options.get(TICKET_LIFETIME_OPTION);
+            if (null != lifetime) {
+                long now = System.currentTimeMillis();
+                KerberosPrincipal client = new KerberosPrincipal("user@TEST");
+                KerberosPrincipal server = new KerberosPrincipal("krbtgt/TEST@TEST");
+                subject.getPrivateCredentials().add(new KerberosTicket(new byte[1], client, server, new byte[16], 17,
+                        null, new Date(now), new Date(now), new Date(now + Long.parseLong((String) lifetime)), null,
+                        null));
+            }
+            return true;
+        }
+
+        @Override
+        public boolean abort() {
+            return true;
+        }
+
+        @Override
+        public boolean logout() {
+            loggedOut.add(subject);
+            return true;
+        }
+    }
+
+    /** Logs in with the test login module, counting the logins */
+    private static KerbAuthentication.LoginFactory loginFactory(AtomicInteger logins, Long ticketLifetimeMillis) {
+        Map<String, String> options = new HashMap<>();
+        if (null != ticketLifetimeMillis)
+            options.put(TICKET_LIFETIME_OPTION, ticketLifetimeMillis.toString());
+        Configuration configuration = new Configuration() {
+            @Override
+            public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+                return new AppConfigurationEntry[] {new AppConfigurationEntry(TestLoginModule.class.getName(),
+                        AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options)};
+            }
+        };
+        return () -> {
+            logins.incrementAndGet();
+            LoginContext lc = new LoginContext("test", new Subject(), null, configuration);
+            lc.login();
+            return lc;
+        };
+    }
+
+    @Test
+    public void testLoginIsShared() throws LoginException {
+        AtomicInteger logins = new AtomicInteger();
+        KerbAuthentication.CachedLogin first = KerbAuthentication.acquireLogin("shared", loginFactory(logins, null));
+        KerbAuthentication.CachedLogin second = KerbAuthentication.acquireLogin("shared", loginFactory(logins, null));
+        assertSame(first, second);
+        assertEquals(1, logins.get());
+
+        first.release();
+        second.release();
+        assertFalse(loggedOut.contains(first.subject));
+    }
+
+    @Test
+    public void testExpiringLoginIsReplacedAndLoggedOut() throws LoginException {
+        AtomicInteger logins = new AtomicInteger();
+        // Tickets that expire within the renewal margin make the login be replaced on its next use.
+        KerbAuthentication.LoginFactory expiring = loginFactory(logins, TimeUnit.MINUTES.toMillis(1));
+        KerbAuthentication.CachedLogin first = KerbAuthentication.acquireLogin("expiring", expiring);
+        KerbAuthentication.CachedLogin second = KerbAuthentication.acquireLogin("expiring", expiring);
+        assertNotSame(first, second);
+        assertEquals(2, logins.get());
+
+        // The replaced login is still in use, so it is logged out only once it is released.
+        assertFalse(loggedOut.contains(first.subject));
+        first.release();
+        assertTrue(loggedOut.contains(first.subject));
+
+        second.release();
+        assertFalse(loggedOut.contains(second.subject));
+    }
+
+    @Test
+    public void testInvalidatedLoginIsLoggedOut() throws LoginException {
+        AtomicInteger logins = new AtomicInteger();
+        KerbAuthentication.CachedLogin first = KerbAuthentication.acquireLogin("invalidated",
+                loginFactory(logins, null));
+        KerbAuthentication.invalidateLogin("invalidated", first);
+        assertFalse(loggedOut.contains(first.subject));
+        first.release();
+        assertTrue(loggedOut.contains(first.subject));
+
+        // The next connection logs in again.
+        KerbAuthentication.CachedLogin second = KerbAuthentication.acquireLogin("invalidated",
+                loginFactory(logins, null));
+        assertNotSame(first, second);
+        assertEquals(2, logins.get());
+        second.release();
+
+        // Invalidating a login that has already been replaced leaves the current one alone.
+        KerbAuthentication.invalidateLogin("invalidated", first);
+        KerbAuthentication.CachedLogin third = KerbAuthentication.acquireLogin("invalidated",
+                loginFactory(logins, null));
+        assertSame(second, third);
+        third.release();
+    }
+
+    @Test
+    public void testEvictedLoginIsLoggedOut() throws LoginException {
+        AtomicInteger logins = new AtomicInteger();
+        KerbAuthentication.CachedLogin first = KerbAuthentication.acquireLogin("evicted0", loginFactory(logins, null));
+        first.release();
+        for (int i = 1; i <= 100; i++)
+            KerbAuthentication.acquireLogin("evicted" + i, loginFactory(logins, null)).release();
+
+        assertTrue(loggedOut.contains(first.subject));
+    }
+
+    @Test
+    public void testEnrichedSpnIsCached() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        Field validatorField = KerbAuthentication.class.getDeclaredField("validator");
+        validatorField.setAccessible(true);
+        Object previousValidator = validatorField.get(null);
+        validatorField.set(null, (KerbAuthentication.RealmValidator) realm -> {
+            lookups.incrementAndGet();
+            return "example.test".equals(realm);
+        });
+        try {
+            SQLServerConnection con = new SQLServerConnection("KerbAuthenticationTest");
+            con.activeConnectionProperties = new Properties();
+
+            KerbAuthentication auth = new KerbAuthentication(con, "spncache.example.test", 1433);
+            assertEquals("MSSQLSvc/spncache.example.test:1433@EXAMPLE.TEST",
+                    auth.getEnrichedSpn("MSSQLSvc/spncache.example.test:1433", true, System.nanoTime()));
+            int lookupsForFirstConnection = lookups.get();
+            assertTrue(lookupsForFirstConnection > 0);
+
+            // Another connection to the same server does not look the realm up again.
+            new KerbAuthentication(con, "spncache.example.test", 1433);
+            assertEquals(lookupsForFirstConnection, lookups.get());
+
+            // Until the cached realm expires.
+            assertEquals("MSSQLSvc/spncache.example.test:1433@EXAMPLE.TEST", auth.getEnrichedSpn(
+                    "MSSQLSvc/spncache.example.test:1433", true, System.nanoTime() + TimeUnit.MINUTES.toNanos(11)));
+            assertTrue(lookups.get() > lookupsForFirstConnection);
+        } finally {
+            validatorField.set(null, previousValidator);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the keys of the SSL contexts shared by connections and the cache that holds them
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class SSLContextCacheTest {
+
+    private static final String HOST = "server.example.test";
+    private static final String SSL_PROTOCOL = "TLS";
+
+    /** Returns a channel for a connection with the given encryption settings, as set when the connection is opened */
+    private static TDSChannel channel(boolean encrypt, boolean trustServerCertificate) throws Exception {
+        SQLServerConnection con = new SQLServerConnection("SSLContextCacheTest");
+        setField(con, "requestedEncryptionLevel", encrypt ? TDS.ENCRYPT_ON : TDS.ENCRYPT_OFF);
+        setField(con, "trustServerCertificate", trustServerCertificate);
+        return new TDSChannel(con);
+    }
+
+    private static void setField(SQLServerConnection con, String name, Object value) throws Exception {
+        Field field = SQLServerConnection.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(con, value);
+    }
+
+    private static String key(TDSChannel channel, String trustStore, String hostNameInCertificate,
+            boolean isFips) throws SQLServerException {
+        return channel.getSSLContextKey(HOST, trustStore, "password", "JKS", hostNameInCertificate, isFips,
+                SSL_PROTOCOL);
+    }
+
+    @Test
+    public void testTrustServerCertificateKeyDiffersFromValidatingKey() throws Exception {
+        String trusting = key(channel(true, true), "trustStore.jks", null, false);
+        String validating = key(channel(true, false), "trustStore.jks", null, false);
+        assertNotEquals(trusting, validating);
+
+        // Connections that do not validate the certificate share a context, whatever their trust store.
+        assertEquals(trusting, key(channel(true, true), "otherTrustStore.jks", "other.example.test", false));
+        assertEquals(trusting, key(channel(false, false), "trustStore.jks", null, false));
+    }
+
+    @Test
+    public void testHostNameInCertificateIsPartOfKey() throws Exception {
+        TDSChannel channel = channel(true, false);
+        String byHost = key(channel, "trustStore.jks", null, false);
+        String byName = key(channel, "trustStore.jks", "cert.example.test", false);
+        assertNotEquals(byHost, byName);
+        assertNotEquals(byName, key(channel, "trustStore.jks", "othercert.example.test", false));
+
+        // The host name in the certificate defaults to the host, and is not case sensitive.
+        assertEquals(byHost, key(channel, "trustStore.jks", HOST.toUpperCase(), false));
+
+        // With FIPS the trust manager does not check the name, so it is not part of the key.
+        assertEquals(key(channel, "trustStore.jks", null, true),
+                key(channel, "trustStore.jks", "cert.example.test", true));
+    }
+
+    @Test
+    public void testTrustStoreIsPartOfKey() throws Exception {
+        TDSChannel channel = channel(true, false);
+        assertNotEquals(key(channel, "trustStore.jks", null, false),
+                key(channel, "otherTrustStore.jks", null, false));
+        assertNotEquals(key(channel, "trustStore.jks", null, false), channel.getSSLContextKey(HOST,
+                "trustStore.jks", "otherPassword", "JKS", null, false, SSL_PROTOCOL));
+    }
+
+    @Test
+    public void testModifiedTrustStoreReplacesContext() throws Exception {
+        File trustStore = File.createTempFile("SSLContextCacheTest", ".jks");
+        try {
+            TDSChannel channel = channel(true, false);
+            String key = key(channel, trustStore.getPath(), null, false);
+            long lastModified = channel.getTrustStoreLastModified(trustStore.getPath());
+            assertTrue(0 != lastModified);
+
+            TDSChannel.CachedSSLContext cached = cache(key, lastModified);
+            assertSame(cached, TDSChannel.getCachedSSLContext(key, lastModified));
+
+            // Modifying the trust store keeps the key, but the cached context is no longer used.
+            Files.write(trustStore.toPath(), new byte[] {1});
+            assertTrue(trustStore.setLastModified(lastModified + 10000));
+            assertEquals(key, key(channel, trustStore.getPath(), null, false));
+            long modified = channel.getTrustStoreLastModified(trustStore.getPath());
+            assertNotEquals(lastModified, modified);
+            assertNull(TDSChannel.getCachedSSLContext(key, modified));
+
+            // The stale context was removed, so it is not used even with the old modification time.
+            assertNull(TDSChannel.getCachedSSLContext(key, lastModified));
+        } finally {
+            trustStore.delete();
+        }
+    }
+
+    @Test
+    public void testTrustStoreIsNotCheckedWithoutValidation() throws Exception {
+        assertEquals(0, channel(true, true).getTrustStoreLastModified("missing.jks"));
+        assertEquals(0, channel(false, false).getTrustStoreLastModified("missing.jks"));
+    }
+
+    @Test
+    public void testCacheIsBounded() throws Exception {
+        for (int i = 0; i < 300; i++)
+            cache("bounded" + i, 0);
+        assertTrue(TDSChannel.getSSLContextCacheSize() <= 100);
+    }
+
+    private static TDSChannel.CachedSSLContext cache(String key, long trustStoreLastModified) throws Exception {
+        SSLContext sslContext = SSLContext.getInstance(SSL_PROTOCOL);
+        TDSChannel.CachedSSLContext cached = new TDSChannel.CachedSSLContext(sslContext, trustStoreLastModified,
+                sslContext.getProvider(), null, null, null);
+        TDSChannel.putCachedSSLContext(key, cached);
+        return cached;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the SessionRecovery class
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class SessionRecoveryTest {
+
+    private static final byte[] LONG_VALUE = new byte[300];
+
+    /** Encodes session states as the feature extension acknowledgement and SESSIONSTATE tokens do */
+    private static void putState(ByteArrayOutputStream out, int stateId, byte[] value) {
+        out.write(stateId);
+        if (value.length < 0xFF) {
+            out.write(value.length);
+        } else {
+            out.write(0xFF);
+            out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value.length).array(), 0, 4);
+        }
+        out.write(value, 0, value.length);
+    }
+
+    private static byte[] sessionState(long sequenceNumber, boolean recoverable, int stateId, byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) sequenceNumber).array(), 0, 4);
+        out.write(recoverable ? 1 : 0);
+        putState(out, stateId, value);
+        return out.toByteArray();
+    }
+
+    private static SessionRecovery newSession() throws SQLServerException {
+        ByteArrayOutputStream ack = new ByteArrayOutputStream();
+        putState(ack, 1, new byte[] {1, 2});
+        putState(ack, 2, LONG_VALUE);
+
+        SessionRecovery session = new SessionRecovery();
+        session.onFeatureExtAck(ack.toByteArray());
+        session.setDatabase("master");
+        session.setLanguage("us_english");
+        session.onLoginComplete();
+        return session;
+    }
+
+    private static String getIdentifier(ByteBuffer buffer) {
+        int length = buffer.get() & 0xFF;
+        if (0 == length)
+            return null;
+        byte[] bytes = new byte[2 * length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_16LE);
+    }
+
+    private static byte[] getState(ByteBuffer buffer, int expectedStateId) {
+        assertEquals(expectedStateId, buffer.get() & 0xFF);
+        int length = buffer.get() & 0xFF;
+        if (0xFF == length)
+            length = buffer.getInt();
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    @Test
+    public void testRecoveryDataRoundTrip() throws SQLServerException {
+        SessionRecovery session = newSession();
+        session.setDatabase("tempdb");
+        assertTrue(session.processSessionState(sessionState(1, true, 1, new byte[] {3})));
+        assertTrue(session.processSessionState(sessionState(2, true, 3, new byte[] {4, 5})));
+        // An older value of a state does not replace a newer one.
+        assertTrue(session.processSessionState(sessionState(0, true, 3, new byte[] {6})));
+        assertTrue(session.isRecoverable());
+
+        byte[] data = session.getRecoveryData();
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        int initialLength = buffer.getInt();
+        int initialStart = buffer.position();
+        assertEquals("master", getIdentifier(buffer));
+        assertEquals(0, buffer.get()); // no collation
+        assertEquals("us_english", getIdentifier(buffer));
+        assertArrayEquals(new byte[] {1, 2}, getState(buffer, 1));
+        assertArrayEquals(LONG_VALUE, getState(buffer, 2));
+        assertEquals(initialLength, buffer.position() - initialStart);
+
+        int currentLength = buffer.getInt();
+        int currentStart = buffer.position();
+        assertEquals("tempdb", getIdentifier(buffer));
+        assertEquals(0, buffer.get()); // collation unchanged
+        assertNull(getIdentifier(buffer)); // language unchanged
+        assertArrayEquals(new byte[] {3}, getState(buffer, 1));
+        assertArrayEquals(new byte[] {4, 5}, getState(buffer, 3));
+        assertEquals(currentLength, buffer.position() - currentStart);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testRecoveredSessionKeepsInitialState() throws SQLServerException {
+        SessionRecovery broken = newSession();
+        broken.setDatabase("tempdb");
+        assertTrue(broken.processSessionState(sessionState(7, true, 1, new byte[] {3})));
+
+        // The new session acknowledges the recovery with the state it restored, which must not become its initial
+        // state.
+        SessionRecovery recovered = new SessionRecovery(broken);
+        ByteArrayOutputStream ack = new ByteArrayOutputStream();
+        putState(ack, 1, new byte[] {3});
+        recovered.onFeatureExtAck(ack.toByteArray());
+        recovered.onLoginComplete();
+        assertTrue(recovered.isRecoverable());
+
+        assertArrayEquals(new byte[] {1, 2}, findState(recovered.getRecoveryData(), false, 1));
+        assertArrayEquals(new byte[] {3}, findState(recovered.getRecoveryData(), true, 1));
+
+        // Sequence numbers start over with the new session.
+        assertTrue(recovered.processSessionState(sessionState(1, true, 1, new byte[] {8})));
+        assertArrayEquals(new byte[] {8}, findState(recovered.getRecoveryData(), true, 1));
+    }
+
+    /** Returns the value of a state in the initial or the current state of recovery data, or null if it is not there */
+    private static byte[] findState(byte[] data, boolean current, int stateId) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int length = buffer.getInt();
+        if (current) {
+            buffer.position(buffer.position() + length);
+            length = buffer.getInt();
+        }
+        int end = buffer.position() + length;
+
+        getIdentifier(buffer);
+        int collationLength = buffer.get() & 0xFF;
+        buffer.position(buffer.position() + collationLength);
+        getIdentifier(buffer);
+        while (buffer.position() < end) {
+            int id = buffer.get(buffer.position()) & 0xFF;
+            byte[] value = getState(buffer, id);
+            if (id == stateId)
+                return value;
+        }
+        return null;
+    }
+
+    @Test
+    public void testUnrecoverableState() throws SQLServerException {
+        SessionRecovery session = newSession();
+        assertTrue(session.processSessionState(sessionState(1, false, 4, new byte[] {1})));
+        assertFalse(session.isRecoverable());
+
+        // A later recoverable value of the same state makes the session recoverable again.
+        assertTrue(session.processSessionState(sessionState(2, true, 4, new byte[] {2})));
+        assertTrue(session.isRecoverable());
+    }
+
+    @Test
+    public void testExhaustedSequenceNumber() throws SQLServerException {
+        SessionRecovery session = newSession();
+        assertTrue(session.processSessionState(sessionState(0xFFFFFFFFL, true, 1, new byte[] {3})));
+        assertFalse(session.isRecoverable());
+    }
+
+    @Test
+    public void testNotNegotiated() {
+        SessionRecovery session = new SessionRecovery();
+        session.onLoginComplete();
+        assertFalse(session.isRecoverable());
+    }
+
+    @Test
+    public void testInvalidData() throws SQLServerException {
+        SessionRecovery session = newSession();
+        assertFalse(session.processSessionState(new byte[] {1, 0, 0, 0}));
+        assertFalse(session.processSessionState(new byte[] {1, 0, 0, 0, 1, 5, 10, 1}));
+
+        assertThrows(SQLServerException.class, () -> new SessionRecovery().onFeatureExtAck(new byte[] {1, 5, 0}));
+    }
+}
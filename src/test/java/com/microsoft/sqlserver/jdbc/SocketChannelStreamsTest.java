@@ -0,0 +1,314 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the SocketChannelStreams class over loopback connections
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class SocketChannelStreamsTest {
+
+    private static final int PACKET_SIZE = 8000;
+
+    /** A loopback connection whose client side is a socket created from a channel, as SocketFinder creates it */
+    private static class Loopback implements AutoCloseable {
+        final ServerSocketChannel server;
+        final Socket client;
+        final Socket peer;
+
+        Loopback() throws IOException {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client = SocketChannel.open().socket();
+            client.connect(server.getLocalAddress());
+            client.setTcpNoDelay(true);
+            peer = server.accept().socket();
+        }
+
+        @Override
+        public void close() throws IOException {
+            client.close();
+            peer.close();
+            server.close();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int bytesRead = in.read(b, off, len);
+            if (-1 == bytesRead)
+                throw new EOFException();
+            off += bytesRead;
+            len -= bytesRead;
+        }
+    }
+
+    /** Writes the data from another thread in chunks of the given size, flushing after each */
+    private static Thread writeInChunks(OutputStream out, byte[] data, int chunkSize) {
+        Thread writer = new Thread(() -> {
+            try {
+                for (int off = 0; off < data.length; off += chunkSize) {
+                    out.write(data, off, Math.min(chunkSize, data.length - off));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        return writer;
+    }
+
+    @Test
+    public void testReadAcrossPacketBoundaries() throws Exception {
+        // More than the 64KB read buffer, written in chunks that do not line up with packets or reads.
+        byte[] data = randomBytes(20 * PACKET_SIZE + 123);
+        try (Loopback loopback = new Loopback()) {
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            try {
+                Thread writer = writeInChunks(loopback.peer.getOutputStream(), data, 3001);
+
+                // Read like TDSReader does: a packet header, then the rest of the packet.
+                byte[] received = new byte[data.length];
+                InputStream in = streams.getInputStream();
+                for (int off = 0; off < data.length; off += PACKET_SIZE) {
+                    int headerLength = Math.min(8, data.length - off);
+                    readFully(in, received, off, headerLength);
+                    readFully(in, received, off + headerLength,
+                            Math.min(PACKET_SIZE, data.length - off) - headerLength);
+                }
+                writer.join();
+                assertArrayEquals(data, received);
+            } finally {
+                streams.close();
+            }
+        }
+    }
+
+    @Test
+    public void testWriteLargerThanBuffer() throws Exception {
+        byte[] data = randomBytes(3 * 64 * 1024 + 17);
+        try (Loopback loopback = new Loopback()) {
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            try {
+                byte[] received = new byte[data.length];
+                Thread reader = new Thread(() -> {
+                    try {
+                        readFully(loopback.peer.getInputStream(), received, 0, received.length);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                reader.start();
+
+                OutputStream out = streams.getOutputStream();
+                out.write(data, 0, 5);
+                out.write(data[5]);
+                out.write(data, 6, data.length - 6);
+                reader.join();
+                assertArrayEquals(data, received);
+            } finally {
+                streams.close();
+            }
+        }
+    }
+
+    @Test
+    public void testReadEndOfStream() throws Exception {
+        try (Loopback loopback = new Loopback()) {
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            try {
+                loopback.peer.getOutputStream().write(42);
+                loopback.peer.close();
+
+                InputStream in = streams.getInputStream();
+                assertEquals(42, in.read());
+                assertEquals(-1, in.read());
+            } finally {
+                streams.close();
+            }
+        }
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        try (Loopback loopback = new Loopback()) {
+            // Set before the streams exist, as socketTimeout is.
+            loopback.client.setSoTimeout(200);
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            try {
+                InputStream in = streams.getInputStream();
+                long start = System.currentTimeMillis();
+                assertThrows(SocketTimeoutException.class, () -> in.read(new byte[1], 0, 1));
+                assertTrue(System.currentTimeMillis() - start >= 200);
+
+                // Changed while the streams are in use, as setNetworkTimeout does.
+                loopback.client.setSoTimeout(500);
+                start = System.currentTimeMillis();
+                assertThrows(SocketTimeoutException.class, () -> in.read(new byte[1], 0, 1));
+                assertTrue(System.currentTimeMillis() - start >= 500);
+
+                // The streams stay usable after a timeout.
+                loopback.peer.getOutputStream().write(42);
+                assertEquals(42, in.read());
+            } finally {
+                streams.close();
+            }
+        }
+    }
+
+    @Test
+    public void testCloseWakesBlockedReader() throws Exception {
+        try (Loopback loopback = new Loopback()) {
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            InputStream in = streams.getInputStream();
+            Throwable[] readError = new Throwable[1];
+            Thread reader = new Thread(() -> {
+                try {
+                    in.read(new byte[1], 0, 1);
+                } catch (Throwable t) {
+                    readError[0] = t;
+                }
+            });
+            reader.start();
+
+            Thread.sleep(200);
+            streams.close();
+            reader.join(5000);
+            assertFalse(reader.isAlive());
+            assertTrue(readError[0] instanceof IOException);
+            assertThrows(IOException.class, () -> in.read(new byte[1], 0, 1));
+        }
+    }
+
+    @Test
+    public void testIsConnectionAlive() throws Exception {
+        try (Loopback loopback = new Loopback()) {
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            try {
+                assertTrue(streams.isConnectionAlive());
+
+                // Data that nobody is waiting for means the connection can no longer be trusted.
+                loopback.peer.getOutputStream().write(42);
+                Thread.sleep(100);
+                assertFalse(streams.isConnectionAlive());
+            } finally {
+                streams.close();
+            }
+        }
+
+        try (Loopback loopback = new Loopback()) {
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            try {
+                loopback.peer.close();
+                Thread.sleep(100);
+                assertFalse(streams.isConnectionAlive());
+            } finally {
+                streams.close();
+            }
+        }
+
+        try (Loopback loopback = new Loopback()) {
+            SocketChannelStreams streams = new SocketChannelStreams(loopback.client.getChannel(), "test");
+            streams.close();
+            assertFalse(streams.isConnectionAlive());
+        }
+    }
+
+    /**
+     * Compares the time taken to receive and send TDS-sized packets through the channel streams and through the
+     * socket streams the driver uses otherwise. The best of several rounds is compared, with some allowance for noise.
+     */
+    @Test
+    public void testNotSlowerThanSocketStreams() throws Exception {
+        long socketNanos = Long.MAX_VALUE;
+        long channelNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            socketNanos = Math.min(socketNanos, transferNanos(false));
+            channelNanos = Math.min(channelNanos, transferNanos(true));
+        }
+        assertTrue(channelNanos <= socketNanos * 3 / 2, "channel streams took " + channelNanos / 1000000
+                + "ms, socket streams " + socketNanos / 1000000 + "ms");
+    }
+
+    private static long transferNanos(boolean useChannel) throws Exception {
+        final int numPackets = 2000;
+        byte[] packet = randomBytes(PACKET_SIZE);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Socket client = useChannel ? SocketChannel.open().socket() : new Socket();
+            client.connect(server.getLocalAddress());
+            client.setTcpNoDelay(true);
+            try (Socket peer = server.accept().socket()) {
+                SocketChannelStreams streams = useChannel ? new SocketChannelStreams(client.getChannel(), "test")
+                                                          : null;
+                try {
+                    InputStream in = useChannel ? streams.getInputStream() : client.getInputStream();
+                    OutputStream out = useChannel ? streams.getOutputStream() : client.getOutputStream();
+
+                    // The peer echoes every packet back.
+                    Thread echo = new Thread(() -> {
+                        try {
+                            byte[] b = new byte[PACKET_SIZE];
+                            for (int i = 0; i < numPackets; i++) {
+                                readFully(peer.getInputStream(), b, 0, b.length);
+                                peer.getOutputStream().write(b);
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+                    echo.start();
+
+                    byte[] received = new byte[PACKET_SIZE];
+                    long start = System.nanoTime();
+                    for (int i = 0; i < numPackets; i++) {
+                        out.write(packet);
+                        readFully(in, received, 0, 8);
+                        readFully(in, received, 8, PACKET_SIZE - 8);
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    echo.join();
+                    assertArrayEquals(packet, received);
+                    return elapsed;
+                } finally {
+                    if (null != streams)
+                        streams.close();
+                    client.close();
+                }
+            }
+        }
+    }
+}
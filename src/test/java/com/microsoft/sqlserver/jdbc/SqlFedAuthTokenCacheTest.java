@@ -0,0 +1,71 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the SqlFedAuthTokenCache class
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class SqlFedAuthTokenCacheTest {
+
+    private static SqlFedAuthTokenCache.TokenProvider countingProvider(AtomicInteger calls, long expiresInSeconds) {
+        return () -> new SqlFedAuthToken("token" + calls.incrementAndGet(), expiresInSeconds);
+    }
+
+    @Test
+    public void testCachedTokenIsReused() throws SQLServerException {
+        SqlFedAuthTokenCache cache = new SqlFedAuthTokenCache();
+        AtomicInteger calls = new AtomicInteger();
+        SqlFedAuthTokenCache.TokenProvider provider = countingProvider(calls, 3600);
+
+        SqlFedAuthToken first = cache.getToken("key", provider);
+        SqlFedAuthToken second = cache.getToken("key", provider);
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testDifferentKeysDoNotShareTokens() throws SQLServerException {
+        SqlFedAuthTokenCache cache = new SqlFedAuthTokenCache();
+        AtomicInteger calls = new AtomicInteger();
+        SqlFedAuthTokenCache.TokenProvider provider = countingProvider(calls, 3600);
+
+        SqlFedAuthToken first = cache.getToken("key1", provider);
+        SqlFedAuthToken second = cache.getToken("key2", provider);
+        assertNotSame(first, second);
+        assertEquals(2, calls.get());
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testTokenCloseToExpiryIsNotReused() throws SQLServerException {
+        SqlFedAuthTokenCache cache = new SqlFedAuthTokenCache();
+        AtomicInteger calls = new AtomicInteger();
+
+        // Valid for less than the minimum remaining lifetime of a cached token.
+        SqlFedAuthTokenCache.TokenProvider provider = countingProvider(calls, 30);
+
+        cache.getToken("key", provider);
+        cache.getToken("key", provider);
+        assertEquals(2, calls.get());
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+}
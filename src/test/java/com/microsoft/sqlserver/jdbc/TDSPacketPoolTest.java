@@ -0,0 +1,62 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the TDSPacketPool class
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class TDSPacketPoolTest {
+
+    @Test
+    public void testRecycledPacketIsReused() {
+        TDSPacketPool pool = new TDSPacketPool();
+        TDSPacket packet = pool.acquire(4096);
+        packet.payloadLength = 100;
+        packet.pinned = true;
+        packet.next = new TDSPacket(4096);
+        pool.release(packet);
+
+        TDSPacket reused = pool.acquire(4096);
+        assertSame(packet, reused);
+        assertEquals(0, reused.payloadLength);
+        assertNull(reused.next);
+        assertFalse(reused.pinned);
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void testPacketSizeChangeDropsPooledPackets() {
+        TDSPacketPool pool = new TDSPacketPool();
+        pool.release(pool.acquire(4096));
+
+        TDSPacket packet = pool.acquire(8000);
+        assertEquals(8000, packet.payload.length);
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testClear() {
+        TDSPacketPool pool = new TDSPacketPool();
+        TDSPacket packet = pool.acquire(4096);
+        pool.release(packet);
+        pool.clear();
+        assertNotSame(packet, pool.acquire(4096));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the encoding of strings and character streams by the TDSWriter class, in particular for characters that span
+ * TDS packets
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class TDSWriterTest {
+
+    // The packet size before login, minus the packet header.
+    private static final int PACKET_DATA_SIZE = TDS.INITIAL_PACKET_SIZE - 8;
+
+    // Japanese_CI_AS, whose code page is 932.
+    private static final int JAPANESE_LCID = 0x0411;
+
+    /** Writes a TDS message to a byte array, and returns the message data without the packet headers */
+    private static class MessageCapture {
+        final ByteArrayOutputStream packets = new ByteArrayOutputStream();
+        final TDSWriter writer;
+
+        MessageCapture() throws Exception {
+            TDSChannel channel = new TDSChannel(new SQLServerConnection("TDSWriterTest"));
+            Field outputStream = TDSChannel.class.getDeclaredField("outputStream");
+            outputStream.setAccessible(true);
+            outputStream.set(channel, packets);
+
+            writer = channel.getWriter();
+            // Bulk load messages have no ALL_HEADERS, so the message data is only what the test writes.
+            writer.startMessage(null, TDS.PKT_BULK);
+        }
+
+        byte[] endMessage() throws SQLServerException {
+            writer.endMessage();
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] bytes = packets.toByteArray();
+            int offset = 0;
+            while (offset < bytes.length) {
+                int length = ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+                boolean isLastPacket = offset + length == bytes.length;
+                assertEquals(isLastPacket, TDS.STATUS_BIT_EOM == (bytes[offset + 1] & TDS.STATUS_BIT_EOM));
+
+                // Only the last packet of a message may be shorter than the packet size.
+                assertTrue(isLastPacket || TDS.INITIAL_PACKET_SIZE == length);
+                data.write(bytes, offset + 8, length - 8);
+                offset += length;
+            }
+            return data.toByteArray();
+        }
+    }
+
+    /** Returns bytes that are not a valid encoding of the characters in the tests */
+    private static byte[] prefix(int length) {
+        byte[] prefix = new byte[length];
+        for (int i = 0; i < length; i++)
+            prefix[i] = (byte) 0xFF;
+        return prefix;
+    }
+
+    private static String repeat(String value, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+            sb.append(value);
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = new byte[first.length + second.length];
+        System.arraycopy(first, 0, bytes, 0, first.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    @Test
+    public void testWriteStringAcrossPacketBoundaries() throws Exception {
+        String value = repeat("abc\u00e9\u65e5\u672c\ud83d\ude00", 3 * PACKET_DATA_SIZE);
+
+        // The string starts at even and odd offsets, so that its characters either line up with the packet
+        // boundaries or straddle them.
+        for (int prefixLength : new int[] {0, 1, 2, 3, PACKET_DATA_SIZE - 2, PACKET_DATA_SIZE - 1,
+                PACKET_DATA_SIZE}) {
+            MessageCapture capture = new MessageCapture();
+            capture.writer.writeBytes(prefix(prefixLength));
+            capture.writer.writeString(value);
+            assertArrayEquals(concat(prefix(prefixLength), value.getBytes(StandardCharsets.UTF_16LE)),
+                    capture.endMessage(), "prefix length " + prefixLength);
+        }
+    }
+
+    @Test
+    public void testWriteShortStringsAcrossPacketBoundary() throws Exception {
+        MessageCapture capture = new MessageCapture();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        capture.writer.writeBytes(prefix(1));
+        expected.write(prefix(1));
+        for (int i = 0; i < PACKET_DATA_SIZE; i++) {
+            String value = (0 == i % 2) ? "\u65e5" : "ab";
+            capture.writer.writeString(value);
+            expected.write(value.getBytes(StandardCharsets.UTF_16LE));
+        }
+        assertArrayEquals(expected.toByteArray(), capture.endMessage());
+    }
+
+    @Test
+    public void testWriteNonUnicodeStringMultibyteAcrossPacketBoundaries() throws Exception {
+        SQLCollation collation = new SQLCollation(JAPANESE_LCID, 0);
+        Charset charset = collation.getCharset();
+
+        // Double-byte characters, with single-byte characters and an unmappable one that shift them between even and
+        // odd offsets.
+        String[] values = {repeat("\u65e5\u672c\u8a9e", 3 * PACKET_DATA_SIZE),
+                repeat("\u65e5a\u672c\uff71\u8a9ebc\ud83d\ude00", 3 * PACKET_DATA_SIZE)};
+        for (String value : values) {
+            for (int prefixLength : new int[] {0, 1, 2, 3, PACKET_DATA_SIZE - 2, PACKET_DATA_SIZE - 1,
+                    PACKET_DATA_SIZE}) {
+                MessageCapture capture = new MessageCapture();
+                capture.writer.writeBytes(prefix(prefixLength));
+                capture.writer.writeNonUnicodeString(value, collation);
+                assertArrayEquals(concat(prefix(prefixLength), value.getBytes(charset)), capture.endMessage(),
+                        "prefix length " + prefixLength);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteNonUnicodeStringsWithDifferentCharsets() throws Exception {
+        SQLCollation japanese = new SQLCollation(JAPANESE_LCID, 0);
+        SQLCollation english = new SQLCollation(0x0409, 0);
+        String value = repeat("\u65e5\u00e9x", PACKET_DATA_SIZE);
+
+        MessageCapture capture = new MessageCapture();
+        capture.writer.writeBytes(prefix(1));
+        capture.writer.writeNonUnicodeString(value, japanese);
+        capture.writer.writeNonUnicodeString(value, english);
+        capture.writer.writeNonUnicodeString(value, japanese);
+
+        byte[] japaneseBytes = value.getBytes(japanese.getCharset());
+        byte[] expected = concat(concat(concat(prefix(1), japaneseBytes), value.getBytes(english.getCharset())),
+                japaneseBytes);
+        assertArrayEquals(expected, capture.endMessage());
+    }
+
+    /** Returns the PLP chunks that writeNonUnicodeReader writes for the value: a chunk per packet size of chars */
+    private static byte[] plpChunks(String value, Charset charset) {
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        for (int offset = 0; offset < value.length(); offset += TDS.INITIAL_PACKET_SIZE) {
+            String chunk = value.substring(offset, Math.min(value.length(), offset + TDS.INITIAL_PACKET_SIZE));
+            byte[] bytes;
+            if (null == charset) {
+                bytes = new byte[chunk.length()];
+                for (int i = 0; i < bytes.length; i++)
+                    bytes[i] = (byte) chunk.charAt(i);
+            } else {
+                bytes = chunk.getBytes(charset);
+            }
+            chunks.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).array(), 0, 4);
+            chunks.write(bytes, 0, bytes.length);
+        }
+
+        // The PLP terminator
+        chunks.write(new byte[4], 0, 4);
+        return chunks.toByteArray();
+    }
+
+    @Test
+    public void testWriteNonUnicodeReaderLongerThanPacket() throws Exception {
+        Charset charset = new SQLCollation(JAPANESE_LCID, 0).getCharset();
+        String value = repeat("\u65e5a\u672c\uff71\u8a9ebc", 3 * TDS.INITIAL_PACKET_SIZE + 123);
+
+        for (int prefixLength : new int[] {0, 1}) {
+            MessageCapture capture = new MessageCapture();
+            capture.writer.writeBytes(prefix(prefixLength));
+            capture.writer.writeNonUnicodeReader(new StringReader(value), value.length(), false, charset);
+            assertArrayEquals(concat(prefix(prefixLength), plpChunks(value, charset)), capture.endMessage(),
+                    "prefix length " + prefixLength);
+        }
+    }
+
+    @Test
+    public void testWriteNonUnicodeReaderWithoutCharset() throws Exception {
+        String value = repeat("abc\u00e9", 2 * TDS.INITIAL_PACKET_SIZE + 7);
+
+        MessageCapture capture = new MessageCapture();
+        capture.writer.writeNonUnicodeReader(new StringReader(value), DataTypes.UNKNOWN_STREAM_LENGTH, false, null);
+        assertArrayEquals(plpChunks(value, null), capture.endMessage());
+    }
+}
@@ -153,6 +153,9 @@ public final class TestResource extends ListResourceBundle {
             {"R_expectedValue", "Expected value: "}, {"R_expectedValueAtIndex", "Expected value at index: "},
             {"R_switchFailed", "Switch case is not matched with data"},
             {"R_resultsetNotInstance", "Result set is not instance of SQLServerResultSet"},
+            {"R_packetCaptureNotEnabled", "Packet capture is not enabled for this connection."},
+            {"R_connectionPoolTimeout", "Timed out after"},
+            {"R_connectionPoolClosed", "The connection pool is closed."},
 
     };
 }
@@ -3,6 +3,7 @@ package com.microsoft.sqlserver.jdbc.callablestatement;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.lang.reflect.Method;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -21,6 +22,7 @@ import org.junit.runner.RunWith;
 
 import com.microsoft.sqlserver.jdbc.RandomUtil;
 import com.microsoft.sqlserver.jdbc.SQLServerCallableStatement;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
 import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
 import com.microsoft.sqlserver.jdbc.TestResource;
 import com.microsoft.sqlserver.jdbc.TestUtils;
@@ -37,6 +39,10 @@ public class CallableStatementTest extends AbstractTest {
     private static String outputProcedureNameGUID = RandomUtil.getIdentifier("uniqueidentifier_SP");
     private static String setNullProcedureName = RandomUtil.getIdentifier("CallableStatementTest_setNull_SP");
     private static String inputParamsProcedureName = RandomUtil.getIdentifier("CallableStatementTest_inputParams_SP");
+    private static String cachedParamsProcedureName = RandomUtil
+            .getIdentifier("CallableStatementTest_cachedParams_SP");
+    private static String reorderedParamsProcedureName = RandomUtil
+            .getIdentifier("CallableStatementTest_reorderedParams_SP");
 
     /**
      * Setup before test
@@ -52,6 +58,8 @@ public class CallableStatementTest extends AbstractTest {
             TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(outputProcedureNameGUID), stmt);
             TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(setNullProcedureName), stmt);
             TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(inputParamsProcedureName), stmt);
+            TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(cachedParamsProcedureName), stmt);
+            TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(reorderedParamsProcedureName), stmt);
 
             createGUIDTable(stmt);
             createGUIDStoredProcedure(stmt);
@@ -166,6 +174,108 @@ public class CallableStatementTest extends AbstractTest {
         }
     }
 
+    /**
+     * Parameter names cached by the connection are used without a round trip, and picked up again when the procedure is
+     * altered
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void procedureParameterNamesCacheTest() throws Exception {
+        String call = "{CALL " + AbstractSQLGenerator.escapeIdentifier(cachedParamsProcedureName) + " (?,?)}";
+
+        try (SQLServerConnection con = (SQLServerConnection) DriverManager.getConnection(connectionString);
+                Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE PROCEDURE " + AbstractSQLGenerator.escapeIdentifier(cachedParamsProcedureName)
+                    + " @p1 nvarchar(max), @p2 nvarchar(max) AS SELECT @p1 + @p2 AS result");
+
+            Method getHits = SQLServerConnection.class.getDeclaredMethod("getProcedureParameterNamesCacheHits");
+            Method getMisses = SQLServerConnection.class.getDeclaredMethod("getProcedureParameterNamesCacheMisses");
+            getHits.setAccessible(true);
+            getMisses.setAccessible(true);
+
+            for (int i = 0; i < 2; i++) {
+                try (CallableStatement cs = con.prepareCall(call)) {
+                    cs.setString("P2", "world");
+                    cs.setString("@p1", "hello");
+                    try (ResultSet rs = cs.executeQuery()) {
+                        rs.next();
+                        assertEquals("helloworld", rs.getString(1));
+                    }
+                }
+
+                // Only the first call reads the parameter names from the server.
+                assertEquals(i, (long) getHits.invoke(con));
+                assertEquals(1L, (long) getMisses.invoke(con));
+            }
+
+            // A parameter name that the cached names do not have makes the call read them again.
+            stmt.execute("ALTER PROCEDURE " + AbstractSQLGenerator.escapeIdentifier(cachedParamsProcedureName)
+                    + " @p3 nvarchar(max), @p1 nvarchar(max) AS SELECT @p1 + @p3 AS result");
+
+            try (CallableStatement cs = con.prepareCall(call)) {
+                cs.setString("p3", "world");
+                cs.setString("p1", "hello");
+                try (ResultSet rs = cs.executeQuery()) {
+                    rs.next();
+                    assertEquals("helloworld", rs.getString(1));
+                }
+            }
+
+            // Reordered parameters keep their names, so the application clears the cached names.
+            stmt.execute("ALTER PROCEDURE " + AbstractSQLGenerator.escapeIdentifier(cachedParamsProcedureName)
+                    + " @p1 nvarchar(max), @p3 nvarchar(max) AS SELECT @p1 + @p3 AS result");
+            con.clearProcedureParameterNamesCache();
+
+            try (CallableStatement cs = con.prepareCall(call)) {
+                cs.setString("p3", "world");
+                cs.setString("p1", "hello");
+                try (ResultSet rs = cs.executeQuery()) {
+                    rs.next();
+                    assertEquals("helloworld", rs.getString(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * A call that fails because cached parameter names put values in the wrong positions is retried with the
+     * parameter names read again
+     * 
+     * @throws SQLException
+     */
+    @Test
+    public void procedureParameterNamesStaleCacheRetryTest() throws SQLException {
+        String call = "{CALL " + AbstractSQLGenerator.escapeIdentifier(reorderedParamsProcedureName) + " (?,?)}";
+
+        try (Connection con = DriverManager.getConnection(connectionString); Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE PROCEDURE " + AbstractSQLGenerator.escapeIdentifier(reorderedParamsProcedureName)
+                    + " @a int, @b nvarchar(max) AS SELECT CAST(@a AS nvarchar(max)) + @b AS result");
+
+            try (CallableStatement cs = con.prepareCall(call)) {
+                cs.setInt("a", 1);
+                cs.setString("b", "x");
+                try (ResultSet rs = cs.executeQuery()) {
+                    rs.next();
+                    assertEquals("1x", rs.getString(1));
+                }
+            }
+
+            stmt.execute("ALTER PROCEDURE " + AbstractSQLGenerator.escapeIdentifier(reorderedParamsProcedureName)
+                    + " @b nvarchar(max), @a int AS SELECT CAST(@a AS nvarchar(max)) + @b AS result");
+
+            // The cached names send 'x' to @a, which the server cannot convert.
+            try (CallableStatement cs = con.prepareCall(call)) {
+                cs.setInt("a", 2);
+                cs.setString("b", "y");
+                try (ResultSet rs = cs.executeQuery()) {
+                    rs.next();
+                    assertEquals("2y", rs.getString(1));
+                }
+            }
+        }
+    }
+
     /**
      * Cleanup after test
      * 
@@ -180,6 +290,8 @@ public class CallableStatementTest extends AbstractTest {
             TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(outputProcedureNameGUID), stmt);
             TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(setNullProcedureName), stmt);
             TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(inputParamsProcedureName), stmt);
+            TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(cachedParamsProcedureName), stmt);
+            TestUtils.dropProcedureIfExists(AbstractSQLGenerator.escapeIdentifier(reorderedParamsProcedureName), stmt);
         }
     }
 
@@ -9,14 +9,19 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
 import java.text.MessageFormat;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.Executor;
@@ -92,6 +97,67 @@ public class ConnectionDriverTest extends AbstractTest {
         }
     }
 
+    /**
+     * test that properties parsed from the same URL are reused only with the same supplied properties
+     *
+     * @throws SQLException
+     */
+    @Test
+    public void testParsedPropertiesCache() throws SQLException {
+        SQLServerDriver d = new SQLServerDriver();
+        String url = "jdbc:sqlserver://" + randomServer + ";packetSize=512;";
+        Properties info = new Properties();
+        info.setProperty("applicationName", "first");
+
+        for (int i = 0; i < 2; i++) {
+            for (DriverPropertyInfo anInfo : d.getPropertyInfo(url, info)) {
+                if (anInfo.name.equals("applicationName")) {
+                    assertEquals("first", anInfo.value, TestResource.getResource("R_valuesAreDifferent"));
+                }
+            }
+        }
+
+        info.setProperty("applicationName", "second");
+        for (DriverPropertyInfo anInfo : d.getPropertyInfo(url, info)) {
+            if (anInfo.name.equals("applicationName")) {
+                assertEquals("second", anInfo.value, TestResource.getResource("R_valuesAreDifferent"));
+            }
+            if (anInfo.name.equals("packetSize")) {
+                assertEquals("512", anInfo.value, TestResource.getResource("R_valuesAreDifferent"));
+            }
+        }
+    }
+
+    /**
+     * test that the parsed properties cache does not keep secrets, and applies the supplied ones on each use
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParsedPropertiesCacheSecrets() throws Exception {
+        SQLServerDriver d = new SQLServerDriver();
+        String url = "jdbc:sqlserver://" + randomServer + ";packetSize=1024;";
+        String secret = UUID.randomUUID().toString();
+        Properties info = new Properties();
+        info.setProperty("trustStorePassword", secret);
+
+        for (int i = 0; i < 2; i++) {
+            for (DriverPropertyInfo anInfo : d.getPropertyInfo(url, info)) {
+                if (anInfo.name.equals("trustStorePassword")) {
+                    assertEquals(secret, anInfo.value, TestResource.getResource("R_valuesAreDifferent"));
+                }
+            }
+        }
+
+        Field f = SQLServerDriver.class.getDeclaredField("parsedPropertiesCache");
+        f.setAccessible(true);
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) f.get(null)).entrySet()) {
+            assertTrue(!entry.getKey().toString().contains(secret), TestResource.getResource("R_valuesAreDifferent"));
+            assertTrue(!entry.getValue().toString().contains(secret),
+                    TestResource.getResource("R_valuesAreDifferent"));
+        }
+    }
+
     /**
      * test connection properties with SQLServerDataSource
      */
@@ -279,6 +345,20 @@ public class ConnectionDriverTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testValidationActivityWindow() throws SQLException {
+        try (SQLServerConnection conn = (SQLServerConnection) DriverManager
+                .getConnection(connectionString + ";validationActivityWindow=60000")) {
+            assertTrue(conn.isValid(0), TestResource.getResource("R_newConnectionShouldBeValid"));
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SELECT 1");
+            }
+            assertTrue(conn.isValid(5), TestResource.getResource("R_newConnectionShouldBeValid"));
+            conn.close();
+            assertTrue(!conn.isValid(0), TestResource.getResource("R_closedConnectionShouldBeInvalid"));
+        }
+    }
+
     @Test
     public void testClosedConnection() throws SQLException {
         try (SQLServerConnection conn = (SQLServerConnection) DriverManager.getConnection(connectionString)) {
@@ -575,4 +655,119 @@ public class ConnectionDriverTest extends AbstractTest {
 
         assertTrue(isInterrupted, TestResource.getResource("R_threadInterruptNotSet"));
     }
+
+    @Test
+    public void testPacketCapture() throws Exception {
+        Path captureFile = Files.createTempFile("packetCapture", ".pcap");
+        try (SQLServerConnection conn = (SQLServerConnection) DriverManager
+                .getConnection(connectionString + ";packetCaptureBufferSize=65536");
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT 1");
+            conn.dumpPacketCapture(captureFile.toString());
+
+            // pcap file header followed by at least the request and response of the query
+            byte[] capture = Files.readAllBytes(captureFile);
+            assertTrue(capture.length > 24 + 2 * (16 + 1 + 8));
+        } finally {
+            Files.deleteIfExists(captureFile);
+        }
+
+        try (SQLServerConnection conn = (SQLServerConnection) DriverManager.getConnection(connectionString)) {
+            conn.dumpPacketCapture(captureFile.toString());
+            fail(TestResource.getResource("R_expectedFailPassed"));
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().startsWith(TestResource.getResource("R_packetCaptureNotEnabled")));
+        }
+    }
+
+    @Test
+    public void testDeferSessionStateChanges() throws SQLException {
+        String sessionStateQuery = "SELECT @@OPTIONS & 2, transaction_isolation_level FROM sys.dm_exec_sessions WHERE session_id = @@SPID";
+        try (Connection conn = DriverManager.getConnection(connectionString + ";deferSessionStateChanges=true")) {
+            // Toggling back and forth before the next request leaves nothing to send.
+            conn.setAutoCommit(false);
+            conn.setAutoCommit(true);
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            assertEquals(false, conn.getAutoCommit());
+            assertEquals(Connection.TRANSACTION_SERIALIZABLE, conn.getTransactionIsolation());
+
+            // The deferred changes are applied with the SQL batch.
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sessionStateQuery)) {
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+                assertEquals(4, rs.getInt(2));
+            }
+            conn.commit();
+
+            // The deferred changes are applied ahead of the RPC.
+            conn.setAutoCommit(true);
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            try (PreparedStatement pstmt = conn.prepareStatement(sessionStateQuery);
+                    ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+                assertEquals(1, rs.getInt(2));
+            }
+        }
+    }
+
+    @Test
+    public void testDeferSessionStateChangesUnprefixableBatches() throws SQLException {
+        String isolationLevelQuery = "SELECT transaction_isolation_level FROM sys.dm_exec_sessions"
+                + " WHERE session_id = @@SPID";
+        try (Connection conn = DriverManager.getConnection(connectionString + ";deferSessionStateChanges=true");
+                Statement stmt = conn.createStatement()) {
+            // A common table expression cannot follow the deferred changes in the same batch.
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            try (ResultSet rs = stmt.executeQuery("WITH t AS (" + isolationLevelQuery + ") SELECT * FROM t")) {
+                assertTrue(rs.next());
+                assertEquals(4, rs.getInt(1));
+            }
+
+            // A procedure called without EXEC must be the first statement of its batch.
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            stmt.execute("sp_who");
+            try (ResultSet rs = stmt.executeQuery(isolationLevelQuery)) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testDeferSessionStateChangesBatchFailsToCompile() throws SQLException {
+        String isolationLevelQuery = "SELECT transaction_isolation_level FROM sys.dm_exec_sessions"
+                + " WHERE session_id = @@SPID";
+        try (Connection conn = DriverManager.getConnection(connectionString + ";deferSessionStateChanges=true");
+                Statement stmt = conn.createStatement()) {
+            // The deferred change does not run with a batch that fails to compile, so it is sent again.
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            try {
+                stmt.execute("SELECT * FROM WHERE");
+                fail(TestResource.getResource("R_expectedFailPassed"));
+            } catch (SQLException e) {
+                // expected
+            }
+            try (ResultSet rs = stmt.executeQuery(isolationLevelQuery)) {
+                assertTrue(rs.next());
+                assertEquals(4, rs.getInt(1));
+            }
+
+            // Changing back after the failure must still reach the server.
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            try {
+                stmt.execute("SELECT * FROM WHERE");
+                fail(TestResource.getResource("R_expectedFailPassed"));
+            } catch (SQLException e) {
+                // expected
+            }
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            try (ResultSet rs = stmt.executeQuery(isolationLevelQuery)) {
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+            }
+        }
+    }
 }
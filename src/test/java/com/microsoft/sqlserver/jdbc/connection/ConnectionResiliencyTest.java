@@ -0,0 +1,220 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import com.microsoft.sqlserver.testframework.AbstractTest;
+import com.microsoft.sqlserver.testframework.DBConnection;
+
+
+/**
+ * Tests recovering the session of a connection whose network connection was broken by killing its session on the
+ * server.
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class ConnectionResiliencyTest extends AbstractTest {
+
+    private static final String NONEXISTENT_DATABASE = "nonexistentDatabase_ConnectionResiliencyTest";
+
+    /**
+     * Properties that hand out a copy with a database that does not exist the first time they are copied, so that the
+     * first attempt to recover the session fails
+     */
+    private static class FailFirstAttemptProperties extends Properties {
+        private static final long serialVersionUID = 1L;
+        private final Properties failingProperties;
+        private int copies;
+
+        FailFirstAttemptProperties(Properties properties) {
+            putAll(properties);
+            failingProperties = (Properties) properties.clone();
+            failingProperties.setProperty("databaseName", NONEXISTENT_DATABASE);
+        }
+
+        @Override
+        public synchronized Object clone() {
+            return 0 == copies++ ? failingProperties.clone() : super.clone();
+        }
+    }
+
+    @Test
+    public void testRecoverSession() throws Exception {
+        assumeNotAzure();
+        try (SQLServerConnection con = getConnection(1, 1); Statement stmt = con.createStatement()) {
+            stmt.execute("USE tempdb");
+            stmt.execute("SET LANGUAGE Deutsch");
+            int spid = getSpid(con);
+
+            breakConnection(con);
+
+            try (ResultSet rs = stmt.executeQuery("SELECT @@SPID, DB_NAME(), @@LANGUAGE")) {
+                assertTrue(rs.next());
+                assertNotEquals(spid, rs.getInt(1));
+                assertEquals("tempdb", rs.getString(2));
+                assertEquals("Deutsch", rs.getString(3));
+            }
+            assertEquals(1, getSessionRecoveryCount(con));
+        }
+    }
+
+    @Test
+    public void testRecoverSessionWithSocketChannel() throws Exception {
+        assumeNotAzure();
+        // The broken connection is detected by probing the socket channel instead of the socket streams.
+        try (SQLServerConnection con = (SQLServerConnection) DriverManager.getConnection(
+                connectionString + ";connectRetryCount=1;connectRetryInterval=1;useSocketChannel=true");
+                Statement stmt = con.createStatement()) {
+            stmt.execute("USE tempdb");
+            breakConnection(con);
+
+            try (ResultSet rs = stmt.executeQuery("SELECT DB_NAME()")) {
+                assertTrue(rs.next());
+                assertEquals("tempdb", rs.getString(1));
+            }
+            assertEquals(1, getSessionRecoveryCount(con));
+        }
+    }
+
+    @Test
+    public void testNoRecoveryWithoutRetries() throws Exception {
+        assumeNotAzure();
+        try (SQLServerConnection con = getConnection(0, 1); Statement stmt = con.createStatement()) {
+            breakConnection(con);
+
+            assertExecuteFails(stmt);
+            assertEquals(0, getSessionRecoveryCount(con));
+        }
+    }
+
+    @Test
+    public void testNoRecoveryInTransaction() throws Exception {
+        assumeNotAzure();
+        try (SQLServerConnection con = getConnection(1, 1); Statement stmt = con.createStatement()) {
+            con.setAutoCommit(false);
+            stmt.execute("CREATE TABLE #ConnectionResiliencyTest (c1 int);"
+                    + " INSERT INTO #ConnectionResiliencyTest VALUES (1)");
+            breakConnection(con);
+
+            // The server has rolled back the open transaction, so the session must not be recovered.
+            assertExecuteFails(stmt);
+            assertEquals(0, getSessionRecoveryCount(con));
+        }
+    }
+
+    @Test
+    public void testFailedRecoveryClosesConnection() throws Exception {
+        assumeNotAzure();
+        try (SQLServerConnection con = getConnection(1, 1); Statement stmt = con.createStatement()) {
+            setRecoveryProperties(con, new FailFirstAttemptProperties(getRecoveryProperties(con)));
+            breakConnection(con);
+
+            assertExecuteFails(stmt);
+            assertTrue(con.isClosed());
+        }
+    }
+
+    @Test
+    public void testRecoverSessionAfterFailedAttempt() throws Exception {
+        assumeNotAzure();
+        try (SQLServerConnection con = getConnection(2, 1); Statement stmt = con.createStatement()) {
+            stmt.execute("USE tempdb");
+            setRecoveryProperties(con, new FailFirstAttemptProperties(getRecoveryProperties(con)));
+            breakConnection(con);
+
+            try (ResultSet rs = stmt.executeQuery("SELECT DB_NAME()")) {
+                assertTrue(rs.next());
+                assertEquals("tempdb", rs.getString(1));
+            }
+            assertFalse(con.isClosed());
+            assertEquals(1, getSessionRecoveryCount(con));
+        }
+    }
+
+    private static void assumeNotAzure() throws SQLException {
+        try (Connection con = DriverManager.getConnection(connectionString)) {
+            assumeTrue(!DBConnection.isSqlAzure(con), "Killing sessions is not supported against Azure.");
+        }
+    }
+
+    private static SQLServerConnection getConnection(int connectRetryCount,
+            int connectRetryInterval) throws SQLException {
+        return (SQLServerConnection) DriverManager.getConnection(connectionString + ";connectRetryCount="
+                + connectRetryCount + ";connectRetryInterval=" + connectRetryInterval);
+    }
+
+    private static int getSpid(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery("SELECT @@SPID")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Kills the session of the connection from another connection, and makes the connection look idle for long
+     * enough that the driver checks its network connection before the next execution.
+     */
+    private static void breakConnection(SQLServerConnection con) throws Exception {
+        int spid = getSpid(con);
+        try (Connection killer = DriverManager.getConnection(connectionString);
+                Statement stmt = killer.createStatement()) {
+            stmt.execute("KILL " + spid);
+        }
+
+        // Gives the server time to close the network connection.
+        Thread.sleep(1000);
+
+        Field lastResponseNanos = SQLServerConnection.class.getDeclaredField("lastResponseNanos");
+        lastResponseNanos.setAccessible(true);
+        lastResponseNanos.setLong(con, System.nanoTime() - TimeUnit.MINUTES.toNanos(1));
+    }
+
+    private static void assertExecuteFails(Statement stmt) throws Exception {
+        try {
+            stmt.execute("SELECT 1");
+        } catch (SQLException e) {
+            return;
+        }
+        throw new Exception("Test did not throw an exception when it was expected.");
+    }
+
+    private static int getSessionRecoveryCount(SQLServerConnection con) throws Exception {
+        Method method = SQLServerConnection.class.getDeclaredMethod("getSessionRecoveryCount");
+        method.setAccessible(true);
+        return (int) method.invoke(con);
+    }
+
+    private static Properties getRecoveryProperties(SQLServerConnection con) throws Exception {
+        Field field = SQLServerConnection.class.getDeclaredField("recoveryProperties");
+        field.setAccessible(true);
+        return (Properties) field.get(con);
+    }
+
+    private static void setRecoveryProperties(SQLServerConnection con, Properties properties) throws Exception {
+        Field field = SQLServerConnection.class.getDeclaredField("recoveryProperties");
+        field.setAccessible(true);
+        field.set(con, properties);
+    }
+}
@@ -24,6 +24,7 @@ import org.junit.runner.RunWith;
 import com.microsoft.sqlserver.jdbc.ISQLServerDataSource;
 import com.microsoft.sqlserver.jdbc.SQLServerConnectionPoolDataSource;
 import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
+import com.microsoft.sqlserver.jdbc.SQLServerPoolingDataSource;
 import com.microsoft.sqlserver.jdbc.SQLServerXADataSource;
 import com.microsoft.sqlserver.jdbc.TestResource;
 import com.microsoft.sqlserver.testframework.AbstractTest;
@@ -51,6 +52,19 @@ public class NativeMSSQLDataSourceTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testPoolingDataSourceSerialization() throws ClassNotFoundException, IOException {
+        SQLServerPoolingDataSource ds = new SQLServerPoolingDataSource();
+        ds.setURL(connectionString);
+        ds.setMinPoolSize(2);
+        ds.setMaxPoolSize(5);
+
+        SQLServerPoolingDataSource dtn = (SQLServerPoolingDataSource) testSerial(ds);
+        assertEquals(connectionString, dtn.getURL());
+        assertEquals(2, dtn.getMinPoolSize());
+        assertEquals(5, dtn.getMaxPoolSize());
+    }
+
     @Test
     public void testDSNormal() throws ClassNotFoundException, IOException, SQLException {
         SQLServerDataSource ds = new SQLServerDataSource();
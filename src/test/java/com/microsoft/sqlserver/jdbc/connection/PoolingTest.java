@@ -30,6 +30,7 @@ import org.junit.runner.RunWith;
 
 import com.microsoft.sqlserver.jdbc.ISQLServerConnection;
 import com.microsoft.sqlserver.jdbc.RandomUtil;
+import com.microsoft.sqlserver.jdbc.SQLServerPoolingDataSource;
 import com.microsoft.sqlserver.jdbc.SQLServerXADataSource;
 import com.microsoft.sqlserver.jdbc.TestResource;
 import com.microsoft.sqlserver.jdbc.TestUtils;
@@ -174,6 +175,49 @@ public class PoolingTest extends AbstractTest {
         }
     }
 
+    /**
+     * test the driver's own connection pool
+     * 
+     * @throws SQLException
+     */
+    @Test
+    public void testSQLServerPoolingDataSource() throws SQLException {
+        SQLServerPoolingDataSource ds = new SQLServerPoolingDataSource();
+        ds.setURL(connectionString);
+        ds.setMaxPoolSize(1);
+        ds.setConnectionWaitTimeout(1);
+
+        try {
+            connect(ds);
+
+            // the physical connection is reused for the next borrow
+            UUID Id1 = null;
+            UUID Id2 = null;
+            try (ISQLServerConnection con = (ISQLServerConnection) ds.getConnection()) {
+                Id1 = con.getClientConnectionId();
+
+                // the pool is at its maximum size until the connection is returned
+                try (Connection con2 = ds.getConnection()) {
+                    fail(TestResource.getResource("R_expectedFailPassed"));
+                } catch (SQLException e) {
+                    assertTrue(e.getMessage().startsWith(TestResource.getResource("R_connectionPoolTimeout")));
+                }
+            }
+            try (ISQLServerConnection con = (ISQLServerConnection) ds.getConnection()) {
+                Id2 = con.getClientConnectionId();
+            }
+            assertEquals(Id1, Id2, TestResource.getResource("R_idFromPoolNotSame"));
+        } finally {
+            ds.close();
+        }
+
+        try (Connection con = ds.getConnection()) {
+            fail(TestResource.getResource("R_expectedFailPassed"));
+        } catch (SQLException e) {
+            assertEquals(TestResource.getResource("R_connectionPoolClosed"), e.getMessage());
+        }
+    }
+
     /**
      * test connection pool with HikariCP
      * 
@@ -463,6 +463,7 @@ public class RequestBoundaryMethodsTest extends AbstractTest {
         verifiedMethodNames.add("setDisableStatementPooling");
         verifiedMethodNames.add("setTransactionIsolation");
         verifiedMethodNames.add("setUseBulkCopyForBatchInsert");
+        verifiedMethodNames.add("setRewriteBatchedInserts");
         verifiedMethodNames.add("commit");
         verifiedMethodNames.add("clearWarnings");
         verifiedMethodNames.add("prepareStatement");
@@ -488,6 +489,9 @@ public class RequestBoundaryMethodsTest extends AbstractTest {
         verifiedMethodNames.add("isWrapperFor");
         verifiedMethodNames.add("setTypeMap");
         verifiedMethodNames.add("createArrayOf");
+        verifiedMethodNames.add("pipeline");
+        verifiedMethodNames.add("dumpPacketCapture");
+        verifiedMethodNames.add("clearProcedureParameterNamesCache");
 
         return verifiedMethodNames;
     }
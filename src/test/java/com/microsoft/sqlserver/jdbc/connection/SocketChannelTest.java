@@ -0,0 +1,148 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import com.microsoft.sqlserver.jdbc.TestResource;
+import com.microsoft.sqlserver.testframework.AbstractTest;
+
+
+/**
+ * Tests connections that use the socket channel transport (useSocketChannel=true)
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class SocketChannelTest extends AbstractTest {
+
+    private static final String WAITFOR_DELAY = "WAITFOR DELAY '00:00:03'";
+
+    private static SQLServerConnection getConnection(String properties) throws SQLException {
+        return (SQLServerConnection) DriverManager
+                .getConnection(connectionString + ";useSocketChannel=true" + properties);
+    }
+
+    /** Asserts that the connection really reads and writes through the socket channel streams */
+    private static void assertUsesSocketChannel(SQLServerConnection con) throws Exception {
+        Field tdsChannelField = SQLServerConnection.class.getDeclaredField("tdsChannel");
+        tdsChannelField.setAccessible(true);
+        Object tdsChannel = tdsChannelField.get(con);
+        Field streamsField = tdsChannel.getClass().getDeclaredField("socketChannelStreams");
+        streamsField.setAccessible(true);
+        assertNotNull(streamsField.get(tdsChannel));
+    }
+
+    /** Sends and receives values that span many packets */
+    private static void assertLargeRoundTrip(Connection con) throws SQLException {
+        String value = new String(new char[1000000]).replace('\0', 'x');
+        try (PreparedStatement pstmt = con.prepareStatement("SELECT ?, LEN(?)")) {
+            pstmt.setString(1, value);
+            pstmt.setString(2, value);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(value, rs.getString(1));
+                assertEquals(value.length(), rs.getInt(2));
+            }
+        }
+
+        try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(
+                "SELECT TOP 20000 a.object_id, a.name FROM sys.all_objects a CROSS JOIN sys.all_objects b")) {
+            int rows = 0;
+            while (rs.next())
+                rows++;
+            assertEquals(20000, rows);
+        }
+    }
+
+    @Test
+    public void testLargeRoundTrip() throws Exception {
+        try (SQLServerConnection con = getConnection("")) {
+            assertUsesSocketChannel(con);
+            assertLargeRoundTrip(con);
+        }
+    }
+
+    @Test
+    public void testEncryptedLargeRoundTrip() throws Exception {
+        try (SQLServerConnection con = getConnection(";encrypt=true;trustServerCertificate=true")) {
+            assertUsesSocketChannel(con);
+            try (Statement stmt = con.createStatement(); ResultSet rs = stmt
+                    .executeQuery("SELECT encrypt_option FROM sys.dm_exec_connections WHERE session_id = @@SPID")) {
+                assertTrue(rs.next());
+                assertEquals("TRUE", rs.getString(1));
+            }
+            assertLargeRoundTrip(con);
+        }
+    }
+
+    @Test
+    public void testSocketTimeout() throws Exception {
+        try (SQLServerConnection con = getConnection(";socketTimeout=1000")) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute(WAITFOR_DELAY);
+                fail(TestResource.getResource("R_expectedFailPassed"));
+            } catch (SQLException e) {
+                assertEquals(TestResource.getResource("R_readTimedOut"), e.getMessage());
+            }
+            assertTrue(con.isClosed());
+        }
+    }
+
+    @Test
+    public void testNetworkTimeout() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SQLServerConnection con = getConnection("")) {
+            // Applies to a connection whose streams already exist.
+            con.setNetworkTimeout(executor, 1000);
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute(WAITFOR_DELAY);
+                fail(TestResource.getResource("R_expectedFailPassed"));
+            } catch (SQLException e) {
+                assertEquals(TestResource.getResource("R_readTimedOut"), e.getMessage());
+            }
+            assertTrue(con.isClosed());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testQueryTimeoutCancelsThroughChannel() throws Exception {
+        try (SQLServerConnection con = getConnection(""); Statement stmt = con.createStatement()) {
+            // The attention is written while the reading thread waits on the channel.
+            stmt.setQueryTimeout(1);
+            try {
+                stmt.execute(WAITFOR_DELAY);
+                fail(TestResource.getResource("R_expectedFailPassed"));
+            } catch (SQLException e) {
+                assertEquals(TestResource.getResource("R_queryTimedOut"), e.getMessage());
+            }
+
+            assertFalse(con.isClosed());
+            try (ResultSet rs = stmt.executeQuery("SELECT 1")) {
+                assertTrue(rs.next());
+            }
+        }
+    }
+}
@@ -466,6 +466,128 @@ public class BatchExecutionWithBulkCopyTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testRepeatedBatchWithCachedMetadata() throws Exception {
+        String valid = "INSERT INTO " + AbstractSQLGenerator.escapeIdentifier(tableName) + " (c1, c8) values (?, ?)";
+
+        try (Connection connection = DriverManager.getConnection(connectionString + ";useBulkCopyForBatchInsert=true;");
+                SQLServerPreparedStatement pstmt = (SQLServerPreparedStatement) connection.prepareStatement(valid);
+                Statement stmt = (SQLServerStatement) connection.createStatement();) {
+            for (int i = 0; i < 3; i++) {
+                pstmt.setInt(1, i);
+                pstmt.setString(2, "row" + i);
+                pstmt.addBatch();
+                pstmt.setInt(1, i + 10);
+                pstmt.setString(2, "row" + (i + 10));
+                pstmt.addBatch();
+
+                int[] updateCounts = pstmt.executeBatch();
+                assertEquals(2, updateCounts.length);
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*), SUM(c1) FROM "
+                    + AbstractSQLGenerator.escapeIdentifier(tableName) + " WHERE c8 LIKE 'row%'")) {
+                rs.next();
+                assertEquals(6, rs.getInt(1));
+                assertEquals(36, rs.getInt(2));
+            }
+        }
+    }
+
+    @Test
+    public void testNullIntoColumnWithDefault() throws Exception {
+        String valid = "insert into " + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName)
+                + " (c1, c2) values (?, ?)";
+
+        try (Connection connection = DriverManager.getConnection(connectionString + ";useBulkCopyForBatchInsert=true;");
+                SQLServerPreparedStatement pstmt = (SQLServerPreparedStatement) connection.prepareStatement(valid);
+                Statement stmt = (SQLServerStatement) connection.createStatement();) {
+            TestUtils.dropTableIfExists(AbstractSQLGenerator.escapeIdentifier(squareBracketTableName), stmt);
+            String createTable = "create table " + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName)
+                    + " (c1 int, c2 int null default 42)";
+            stmt.execute(createTable);
+
+            pstmt.setInt(1, 1);
+            pstmt.setNull(2, java.sql.Types.INTEGER);
+            pstmt.addBatch();
+
+            pstmt.executeBatch();
+
+            // As with INSERT, an explicit NULL is kept rather than replaced by the default.
+            try (ResultSet rs = stmt
+                    .executeQuery("SELECT c2 FROM " + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName))) {
+                rs.next();
+                assertEquals(null, rs.getObject(1));
+            }
+        }
+    }
+
+    @Test
+    public void testOmittedColumnsGetDefaults() throws Exception {
+        String valid = "insert into " + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName)
+                + " (c1, c4) values (?, ?)";
+
+        try (Connection connection = DriverManager.getConnection(connectionString + ";useBulkCopyForBatchInsert=true;");
+                SQLServerPreparedStatement pstmt = (SQLServerPreparedStatement) connection.prepareStatement(valid);
+                Statement stmt = (SQLServerStatement) connection.createStatement();) {
+            TestUtils.dropTableIfExists(AbstractSQLGenerator.escapeIdentifier(squareBracketTableName), stmt);
+            String createTable = "create table " + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName)
+                    + " (c1 int, c2 int null default 42, c3 int not null default 7, c4 int)";
+            stmt.execute(createTable);
+
+            pstmt.setInt(1, 1);
+            pstmt.setInt(2, 2);
+            pstmt.addBatch();
+            pstmt.setInt(1, 3);
+            pstmt.setInt(2, 4);
+            pstmt.addBatch();
+
+            pstmt.executeBatch();
+
+            // As with INSERT, columns left out of the column list get their defaults.
+            try (ResultSet rs = stmt.executeQuery("SELECT c1, c2, c3, c4 FROM "
+                    + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName) + " ORDER BY c1")) {
+                rs.next();
+                assertEquals(1, rs.getInt(1));
+                assertEquals(42, rs.getInt(2));
+                assertEquals(7, rs.getInt(3));
+                assertEquals(2, rs.getInt(4));
+                rs.next();
+                assertEquals(3, rs.getInt(1));
+                assertEquals(42, rs.getInt(2));
+                assertEquals(7, rs.getInt(3));
+                assertEquals(4, rs.getInt(4));
+            }
+        }
+    }
+
+    @Test
+    public void testIdentityColumnFallsBack() throws Exception {
+        String valid = "insert into " + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName)
+                + " (c1, c2) values (?, ?)";
+
+        try (Connection connection = DriverManager.getConnection(connectionString + ";useBulkCopyForBatchInsert=true;");
+                SQLServerPreparedStatement pstmt = (SQLServerPreparedStatement) connection.prepareStatement(valid);
+                Statement stmt = (SQLServerStatement) connection.createStatement();) {
+            TestUtils.dropTableIfExists(AbstractSQLGenerator.escapeIdentifier(squareBracketTableName), stmt);
+            String createTable = "create table " + AbstractSQLGenerator.escapeIdentifier(squareBracketTableName)
+                    + " (c1 int identity, c2 int)";
+            stmt.execute(createTable);
+
+            pstmt.setInt(1, 5);
+            pstmt.setInt(2, 1);
+            pstmt.addBatch();
+
+            // The batch is executed as INSERT, which fails without IDENTITY_INSERT instead of ignoring the value.
+            try {
+                pstmt.executeBatch();
+                throw new Exception("Test did not throw an exception when it was expected.");
+            } catch (BatchUpdateException e) {
+                assertTrue(e.getMessage().contains("IDENTITY_INSERT"), e.getMessage());
+            }
+        }
+    }
+
     @Test
     public void testAllColumnsLargeBatch() throws Exception {
         String valid = "INSERT INTO " + AbstractSQLGenerator.escapeIdentifier(tableName) + " values " + "(" + "?, "
@@ -12,6 +12,7 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.Connection;
@@ -329,4 +330,65 @@ public class ResultSetTest extends AbstractTest {
             assertEquals(null, rs.getTime(1));
         }
     }
+
+    /**
+     * Tests reading binary values as ByteBuffer views, including values that span packets and NULL values.
+     * 
+     * @throws SQLException
+     */
+    @Test
+    public void testGetByteBuffer() throws SQLException {
+        try (Connection con = DriverManager.getConnection(connectionString); Statement stmt = con.createStatement();
+                ISQLServerResultSet rs = (ISQLServerResultSet) stmt.executeQuery(
+                        "select 0x63C34D6BCAD555EB, cast(replicate(cast(0x0102 as varbinary(max)), 4000) as varbinary(8000)), "
+                                + "cast(null as varbinary(10)), 0x0A0B")) {
+            assertTrue(rs.next());
+
+            ByteBuffer value = rs.getByteBuffer(1);
+            assertTrue(value.isReadOnly());
+            byte[] bytes = new byte[value.remaining()];
+            value.get(bytes);
+            assertArrayEquals(rs.getBytes(1), bytes);
+
+            value = rs.getByteBuffer(2);
+            assertEquals(8000, value.remaining());
+            bytes = new byte[value.remaining()];
+            value.get(bytes);
+            assertArrayEquals(rs.getBytes(2), bytes);
+
+            assertNull(rs.getByteBuffer(3));
+            assertTrue(rs.wasNull());
+
+            value = rs.getByteBuffer(4);
+            assertFalse(rs.wasNull());
+            assertEquals(2, value.remaining());
+            assertEquals(0x0A, value.get(0));
+            assertEquals(0x0B, value.get(1));
+        }
+    }
+
+    /**
+     * Tests that a fully buffered response larger than responseBufferingMaxMemory is spilled and read back intact,
+     * including after scrolling back over it.
+     * 
+     * @throws SQLException
+     */
+    @Test
+    public void testResponseBufferingMaxMemory() throws SQLException {
+        try (Connection con = DriverManager
+                .getConnection(connectionString + ";responseBuffering=full;responseBufferingMaxMemory=16384");
+                Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                ResultSet rs = stmt.executeQuery("select top 2000 row_number() over (order by a.object_id), "
+                        + "replicate('x', 100) from sys.all_objects a cross join sys.all_objects b")) {
+            for (int pass = 0; pass < 2; pass++) {
+                int rows = 0;
+                while (rs.next()) {
+                    assertEquals(++rows, rs.getLong(1));
+                    assertEquals(100, rs.getString(2).length());
+                }
+                assertEquals(2000, rows);
+                rs.beforeFirst();
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc.unit.statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerPreparedStatement;
+import com.microsoft.sqlserver.jdbc.ISQLServerStatement;
+import com.microsoft.sqlserver.jdbc.TestResource;
+import com.microsoft.sqlserver.testframework.AbstractTest;
+
+
+/**
+ * Tests the asynchronous execution methods of statements and prepared statements
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class AsyncExecutionTest extends AbstractTest {
+
+    @Test
+    public void testExecuteQueryAsync() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Connection con = DriverManager.getConnection(connectionString);
+                ISQLServerStatement stmt = (ISQLServerStatement) con.createStatement()) {
+            CompletableFuture<ResultSet> future = stmt.executeQueryAsync("SELECT 42", executor);
+            try (ResultSet rs = future.get()) {
+                assertTrue(rs.next());
+                assertEquals(42, rs.getInt(1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPreparedStatementAsyncWithExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Connection con = DriverManager.getConnection(connectionString); ISQLServerPreparedStatement pstmt = (ISQLServerPreparedStatement) con
+                .prepareStatement("SELECT ? + 1")) {
+            pstmt.setInt(1, 41);
+            try (ResultSet rs = pstmt.executeQueryAsync(executor).get()) {
+                assertTrue(rs.next());
+                assertEquals(42, rs.getInt(1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecuteUpdateAsyncError() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Connection con = DriverManager.getConnection(connectionString);
+                ISQLServerStatement stmt = (ISQLServerStatement) con.createStatement()) {
+            stmt.executeUpdateAsync("RAISERROR('async failure', 16, 1)", executor).get();
+            fail(TestResource.getResource("R_expectedFailPassed"));
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+            assertTrue(e.getCause().getMessage().contains("async failure"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecuteAsyncNullExecutor() throws Exception {
+        try (Connection con = DriverManager.getConnection(connectionString);
+                ISQLServerStatement stmt = (ISQLServerStatement) con.createStatement()) {
+            stmt.executeQueryAsync("SELECT 42", null);
+            fail(TestResource.getResource("R_expectedFailPassed"));
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().contains("executor"));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Microsoft JDBC Driver for SQL Server Copyright(c) Microsoft Corporation All rights reserved. This program is made
+ * available under the terms of the MIT License. See the LICENSE file in the project root for more information.
+ */
+package com.microsoft.sqlserver.jdbc.unit.statement;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.lang.reflect.Field;
+import java.sql.BatchUpdateException;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerConnection;
+import com.microsoft.sqlserver.jdbc.SQLServerPipeline;
+import com.microsoft.sqlserver.jdbc.SQLServerPreparedStatement;
+import com.microsoft.sqlserver.jdbc.TestResource;
+import com.microsoft.sqlserver.testframework.AbstractTest;
+
+
+/**
+ * Tests executing several statements in one round trip through a pipeline
+ *
+ */
+@RunWith(JUnitPlatform.class)
+public class PipelineTest extends AbstractTest {
+
+    @Test
+    public void testPipelineUpdateCounts() throws Exception {
+        try (ISQLServerConnection con = (ISQLServerConnection) DriverManager.getConnection(connectionString);
+                Statement stmt = con.createStatement();
+                PreparedStatement pstmt = con.prepareStatement("INSERT INTO #pipeline VALUES (?, ?)")) {
+            stmt.execute("CREATE TABLE #pipeline (id int, name nvarchar(50))");
+
+            SQLServerPipeline pipeline = con.pipeline();
+            pstmt.setInt(1, 1);
+            pstmt.setString(2, "one");
+            pipeline.add(pstmt);
+            pstmt.setInt(1, 2);
+            pstmt.setString(2, "two");
+            pipeline.add(pstmt);
+            pipeline.add("UPDATE #pipeline SET name = N'updated'");
+            pipeline.add("DELETE FROM #pipeline WHERE id = 3");
+            assertEquals(4, pipeline.size());
+
+            assertArrayEquals(new int[] {1, 1, 2, 0}, pipeline.execute());
+            assertEquals(0, pipeline.size());
+
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM #pipeline WHERE name = N'updated'")) {
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+            }
+
+            // The statement can still be executed normally after being pipelined.
+            pstmt.setInt(1, 3);
+            pstmt.setString(2, "three");
+            assertEquals(1, pstmt.executeUpdate());
+        }
+    }
+
+    @Test
+    public void testPipelineFailure() throws Exception {
+        try (ISQLServerConnection con = (ISQLServerConnection) DriverManager.getConnection(connectionString);
+                Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE #pipeline (id int)");
+
+            SQLServerPipeline pipeline = con.pipeline();
+            pipeline.add("INSERT INTO #pipeline VALUES (1)");
+            pipeline.add("RAISERROR('pipeline failure', 16, 1)");
+            pipeline.add("SELECT * FROM #pipeline");
+            pipeline.add("INSERT INTO #pipeline VALUES (2)");
+            try {
+                pipeline.execute();
+                fail(TestResource.getResource("R_expectedFailPassed"));
+            } catch (BatchUpdateException e) {
+                assertTrue(e.getMessage().contains("pipeline failure"));
+                assertArrayEquals(new int[] {1, Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED, 1},
+                        e.getUpdateCounts());
+            }
+
+            // The connection is still usable.
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM #pipeline")) {
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineTempTableScope() throws Exception {
+        try (ISQLServerConnection con = (ISQLServerConnection) DriverManager.getConnection(connectionString);
+                Statement stmt = con.createStatement()) {
+            // A temporary table created by a pipelined statement is dropped when that statement finishes.
+            SQLServerPipeline pipeline = con.pipeline();
+            pipeline.add("CREATE TABLE #pipelineScope (id int)");
+            pipeline.add("INSERT INTO #pipelineScope VALUES (1)");
+            try {
+                pipeline.execute();
+                fail(TestResource.getResource("R_expectedFailPassed"));
+            } catch (BatchUpdateException e) {
+                assertEquals(2, e.getUpdateCounts().length);
+                assertTrue(Statement.EXECUTE_FAILED != e.getUpdateCounts()[0]);
+                assertEquals(Statement.EXECUTE_FAILED, e.getUpdateCounts()[1]);
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT OBJECT_ID('tempdb..#pipelineScope')")) {
+                assertTrue(rs.next());
+                assertNull(rs.getObject(1));
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineLeavesStatementState() throws Exception {
+        try (ISQLServerConnection con = (ISQLServerConnection) DriverManager.getConnection(connectionString);
+                Statement stmt = con.createStatement();
+                PreparedStatement pstmt = con.prepareStatement("INSERT INTO #pipeline VALUES (?)")) {
+            stmt.execute("CREATE TABLE #pipeline (id int)");
+            pstmt.setInt(1, 1);
+            assertEquals(1, pstmt.executeUpdate());
+
+            Field parameterNames = SQLServerPreparedStatement.class.getDeclaredField("parameterNames");
+            parameterNames.setAccessible(true);
+            Object namesBefore = parameterNames.get(pstmt);
+
+            SQLServerPipeline pipeline = con.pipeline();
+            pstmt.setInt(1, 2);
+            pipeline.add(pstmt);
+            assertArrayEquals(new int[] {1}, pipeline.execute());
+
+            // Writing the pipelined call does not rebuild the statement's own parameter names.
+            assertSame(namesBefore, parameterNames.get(pstmt));
+        }
+    }
+}
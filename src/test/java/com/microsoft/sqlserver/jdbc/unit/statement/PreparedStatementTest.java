@@ -5,6 +5,8 @@
 package com.microsoft.sqlserver.jdbc.unit.statement;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
@@ -12,6 +14,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.lang.reflect.Field;
+import java.math.BigDecimal;
 import java.sql.BatchUpdateException;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -683,6 +686,111 @@ public class PreparedStatementTest extends AbstractTest {
         }
     }
 
+    /**
+     * Test that re-executions keep the prepared handle while the parameter types stay the same and prepare again when
+     * they change.
+     * 
+     * @throws SQLException
+     */
+    @Test
+    public void testParameterShapeChanges() throws SQLException {
+        try (SQLServerConnection con = (SQLServerConnection) DriverManager.getConnection(connectionString)) {
+            con.setEnablePrepareOnFirstPreparedStatementCall(true);
+
+            try (SQLServerPreparedStatement pstmt = (SQLServerPreparedStatement) con.prepareStatement("SELECT ?")) {
+                pstmt.setInt(1, 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    assertEquals(1, rs.getInt(1));
+                }
+                int handle = pstmt.getPreparedStatementHandle();
+                assertNotSame(0, handle);
+
+                pstmt.setInt(1, 2);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    assertEquals(2, rs.getInt(1));
+                }
+                assertEquals(handle, pstmt.getPreparedStatementHandle());
+
+                pstmt.setString(1, "three");
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    assertEquals("three", rs.getString(1));
+                }
+                assertNotEquals(handle, pstmt.getPreparedStatementHandle());
+
+                pstmt.setBigDecimal(1, new BigDecimal("4.5"));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    assertEquals(new BigDecimal("4.5"), rs.getBigDecimal(1));
+                }
+
+                pstmt.setBigDecimal(1, new BigDecimal("5.25"));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    assertEquals(new BigDecimal("5.25"), rs.getBigDecimal(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that batch inserts are combined into multi-row INSERT statements with an update count for every row.
+     * 
+     * @throws SQLException
+     */
+    @Test
+    public void testRewriteBatchedInserts() throws SQLException {
+        String rewriteTableName = RandomUtil.getIdentifier("#rewrite");
+        try (SQLServerConnection con = (SQLServerConnection) DriverManager
+                .getConnection(connectionString + ";rewriteBatchedInserts=true;")) {
+            this.executeSQL(con, "CREATE TABLE " + AbstractSQLGenerator.escapeIdentifier(rewriteTableName)
+                    + " (id INT PRIMARY KEY, name NVARCHAR(20));");
+
+            String sql = "INSERT INTO " + AbstractSQLGenerator.escapeIdentifier(rewriteTableName)
+                    + " (id, name) VALUES (?, ?);";
+
+            // More rows than fit into one statement.
+            final int rows = 2500;
+            try (SQLServerPreparedStatement pstmt = (SQLServerPreparedStatement) con.prepareStatement(sql)) {
+                for (int i = 0; i < rows; i++) {
+                    pstmt.setInt(1, i);
+                    pstmt.setString(2, "name" + i);
+                    pstmt.addBatch();
+                }
+                int[] updateCounts = pstmt.executeBatch();
+                assertEquals(rows, updateCounts.length);
+                for (int updateCount : updateCounts) {
+                    assertEquals(1, updateCount);
+                }
+            }
+            assertEquals(rows, executeSQLReturnFirstInt(con,
+                    "SELECT COUNT(*) FROM " + AbstractSQLGenerator.escapeIdentifier(rewriteTableName)));
+            assertEquals(rows - 1, executeSQLReturnFirstInt(con,
+                    "SELECT MAX(id) FROM " + AbstractSQLGenerator.escapeIdentifier(rewriteTableName)));
+
+            // The rows inserted by a statement fail together.
+            try (SQLServerPreparedStatement pstmt = (SQLServerPreparedStatement) con.prepareStatement(sql)) {
+                pstmt.setInt(1, rows);
+                pstmt.setString(2, "new");
+                pstmt.addBatch();
+                pstmt.setInt(1, 0);
+                pstmt.setString(2, "duplicate");
+                pstmt.addBatch();
+                pstmt.executeBatch();
+                fail(TestResource.getResource("R_expectedExceptionNotThrown"));
+            } catch (BatchUpdateException e) {
+                int[] updateCounts = e.getUpdateCounts();
+                assertEquals(2, updateCounts.length);
+                assertEquals(Statement.EXECUTE_FAILED, updateCounts[0]);
+                assertEquals(Statement.EXECUTE_FAILED, updateCounts[1]);
+            }
+            assertEquals(rows, executeSQLReturnFirstInt(con,
+                    "SELECT COUNT(*) FROM " + AbstractSQLGenerator.escapeIdentifier(rewriteTableName)));
+        }
+    }
+
     private void modifyConnectionForBulkCopyAPI(SQLServerConnection con) throws Exception {
         Field f1 = SQLServerConnection.class.getDeclaredField("isAzureDW");
         f1.setAccessible(true);